@@ -4,8 +4,9 @@ import cv2
 import numpy as np
 import base64
 import os
-import mysql.connector
-from datetime import datetime, date
+import json
+import urllib.error
+import urllib.request
 from face_recognition_model import FaceRecognitionModel
 
 app = Flask(__name__)   
@@ -14,105 +15,106 @@ CORS(app, resources={r"/*": {"origins": "*"}}, supports_credentials=True)
 
 
 # ---------- CONFIG ----------
-DB_CONFIG = {
-    'host': 'localhost',
-    'user': 'root',          # your MySQL user
-    'password': '1234',      # your MySQL password
-    'port': 3308,
-    'database': 'smartattendance'
-}
+# Attendance is written by the Java backend only: it allocates the row ids and keeps the
+# once-per-day state, so this server never inserts into the attendance table itself.
+BACKEND_URL = os.environ.get("ATTENDANCE_BACKEND_URL", "http://localhost:9090")
 
 REGISTERED_FOLDER = r"D:\MCA\III sem\Major Project\smart-attendance-system\python\registered_image"
 MODEL_PATH = r"D:\MCA\III sem\Major Project\smart-attendance-system\python\models\trained_face_model.pkl"
 
 # ---------- LOAD MODEL ----------
 model = FaceRecognitionModel()
-if not model.load_model(MODEL_PATH):
+MODEL_LOADED = model.load_model(MODEL_PATH)
+if not MODEL_LOADED:
     print("❌ Model not found or failed to load.")
 else:
     print("✅ Model loaded successfully!")
 
 # ---------- HELPER FUNCTION ----------
-def store_attendance_in_db(name: str):
-    """Insert recognized student attendance into database and return message."""
+def forward_to_backend(image_data: str, kiosk_id: str):
+    """Send a frame to the backend's /recognize, which recognizes it (via /recognize below) and marks attendance."""
+    body = json.dumps({"image": image_data, "kioskId": kiosk_id}).encode()
+    req = urllib.request.Request(BACKEND_URL + "/api/attendance/recognize", data=body,
+                                 headers={"Content-Type": "application/json"}, method="POST")
     try:
-        conn = mysql.connector.connect(**DB_CONFIG)
-        cursor = conn.cursor(buffered=True)
-
-        reg_part = name[-4:]
-        reg_no = str(int(reg_part))  # remove leading zeros
-
-        cursor.execute("SELECT name FROM student WHERE registration_no = %s", (reg_no,))
-        result = cursor.fetchone()
-        if not result:
-            return f"⚠️ Student not found in DB for reg_no {reg_no}"
-
-        student_name = result[0]
-        today = date.today()
-
-        # check if attendance already marked today
-        cursor.execute(
-            "SELECT COUNT(*) FROM attendance WHERE registration_no = %s AND DATE(timestamp) = %s",
-            (reg_no, today)
-        )
-        already_marked = cursor.fetchone()[0]
-
-        if already_marked:
-            return f"🟡 Attendance already marked for {student_name} ({reg_no}) today."
-
-        # ✅ Safe check: ensure 'id' column exists (only once)
-        cursor.execute("SHOW COLUMNS FROM attendance LIKE 'id'")
-        column_exists = cursor.fetchone()
-        if not column_exists:
-            cursor.execute("ALTER TABLE attendance ADD COLUMN id INT AUTO_INCREMENT PRIMARY KEY FIRST")
-            conn.commit()
-
-        # Insert new attendance record
-        timestamp = datetime.now().strftime('%Y-%m-%d %H:%M:%S')
-        cursor.execute(
-            "INSERT INTO attendance (registration_no, name, timestamp) VALUES (%s, %s, %s)",
-            (reg_no, student_name, timestamp)
-        )
-        conn.commit()
-        return f"✅ Attendance marked for {student_name} ({reg_no}) at {timestamp}"
-
-    except mysql.connector.Error as e:
-        return f"❌ Database Error: {e}"
-    except ValueError:
-        return f"⚠️ Invalid registration number format for '{name}'"
-    finally:
-        if conn.is_connected():
-            cursor.close()
-            conn.close()
+        with urllib.request.urlopen(req, timeout=30) as resp:
+            return json.loads(resp.read() or b"{}"), resp.status
+    except urllib.error.HTTPError as e:
+        payload = e.read()
+        try:
+            return json.loads(payload), e.code
+        except ValueError:
+            return {"message": payload.decode(errors="replace")}, e.code
+
+def decode_image(image_data: str):
+    """Data URL or bare base64 JPEG -> RGB array."""
+    if ',' in image_data:
+        image_data = image_data.split(',', 1)[1]
+    np_arr = np.frombuffer(base64.b64decode(image_data), np.uint8)
+    image = cv2.imdecode(np_arr, cv2.IMREAD_COLOR)
+    if image is None:
+        raise ValueError("Could not decode image")
+    return cv2.cvtColor(image, cv2.COLOR_BGR2RGB)
+
+# ---------- HEALTH ----------
+# Ready only once the model above has loaded: a failed load still starts the server, but with 503 here.
+# The Java backend polls this before sending traffic and restarts the process if it stops answering.
+@app.route('/health', methods=['GET'])
+def health():
+    body = {"ready": MODEL_LOADED, "modelLoaded": MODEL_LOADED, "faces": len(model.known_face_names)}
+    return jsonify(body), 200 if MODEL_LOADED else 503
 
 # ---------- API ENDPOINT ----------
+# Kept for older kiosks. The frame goes to the backend, which calls /recognize below while this
+# request waits, so the server must stay threaded (Flask's default).
 @app.route('/mark_attendance', methods=['POST'])
 def mark_attendance():
+    data = request.get_json(silent=True) or {}
+    if 'image' not in data:
+        return jsonify({"message": "No image received"}), 400
     try:
-        data = request.get_json()
-        if 'image' not in data:
-            return jsonify({"message": "No image received"}), 400
-
-        image_data = data['image'].split(',')[1]
-        image_bytes = base64.b64decode(image_data)
-        np_arr = np.frombuffer(image_bytes, np.uint8)
-        image = cv2.imdecode(np_arr, cv2.IMREAD_COLOR)
-        image_rgb = cv2.cvtColor(image, cv2.COLOR_BGR2RGB)
-
-        results = model.process_image(image_rgb)
-        if not results:
-            return jsonify({"message": "No face detected"}), 200
-
-        recognized_name = results[0]['name']
-        if recognized_name == "Unknown":
-            return jsonify({"message": "Unknown face - attendance not marked"}), 200
-
-        msg = store_attendance_in_db(recognized_name)
-        return jsonify({"message": msg}), 200
-
-    except Exception as e:
+        body, status = forward_to_backend(data['image'], data.get('kioskId') or request.remote_addr)
+        return jsonify(body), status
+    except (urllib.error.URLError, OSError) as e:
         print("❌ Error:", e)
-        return jsonify({"message": f"Error: {str(e)}"}), 500
+        return jsonify({"message": f"Error: attendance backend unreachable: {e}"}), 502
+
+# ---------- RECOGNITION ONLY ----------
+# Used by the Java gateway, which owns timeouts, load shedding and marking attendance.
+@app.route('/recognize', methods=['POST'])
+def recognize():
+    data = request.get_json(silent=True) or {}
+    if 'image' not in data:
+        return jsonify({"message": "No image received"}), 400
+    try:
+        image_rgb = decode_image(data['image'])
+    except Exception as e:
+        return jsonify({"message": f"Bad image: {e}"}), 400
+    results = model.process_image(image_rgb)
+    faces = [{"name": r['name'], "confidence": r.get('confidence', 0.0)} for r in results]
+    return jsonify({"faces": faces}), 200
+
+# Micro-batches from the Java gateway: {"images": [...]} -> {"results": [{"faces": [...]}, ...]} in the same order.
+# A frame that cannot be decoded gets {"error": ...} in its slot; the rest of the batch is still recognized.
+@app.route('/recognize_batch', methods=['POST'])
+def recognize_batch():
+    data = request.get_json(silent=True) or {}
+    images = data.get('images')
+    if not isinstance(images, list):
+        return jsonify({"message": "'images' must be a list"}), 400
+    results = [None] * len(images)
+    decoded, slots = [], []
+    for i, image_data in enumerate(images):
+        try:
+            decoded.append(decode_image(image_data))
+            slots.append(i)
+        except Exception as e:
+            results[i] = {"error": f"Bad image: {e}"}
+    for i, faces in zip(slots, model.process_images(decoded)):
+        # The box lets the Java side tell a new face from the one it already recognized in the same spot
+        results[i] = {"faces": [{"name": f['name'], "confidence": f['confidence'],
+                                 "box": [int(round(v)) for v in f['bbox']]} for f in faces]}
+    return jsonify({"results": results}), 200
 
 if __name__ == "__main__":
     app.run(host="0.0.0.0", port=5000)
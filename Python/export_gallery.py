@@ -0,0 +1,84 @@
+#!/usr/bin/env python3
+"""
+Convert models/trained_face_model.pkl into the binary gallery read by the Java matcher.
+
+Layout (little-endian), kept in sync with GalleryFile.java:
+    header (64 bytes): magic 'AXGL', u16 version, u16 flags, i32 dim, i32 rowCount,
+                       i32 capacity, i32 dictCount, i64 dictOffset, i64 dictBytes, padding
+    owner table:       capacity x i32 dictionary id per row
+    float block:       capacity x dim x f32, starts on a 64-byte boundary
+    dictionary:        dictCount x (u16 length + UTF-8 registration number)
+
+Run this once while the backend is stopped; afterwards the Java side appends to the file itself.
+"""
+
+import argparse
+import pickle
+import re
+import struct
+
+import numpy as np
+
+HEADER_BYTES = 64
+VERSION = 1
+
+
+def registration_no(folder_name: str):
+    """Folder names end in the registration number, zero-padded to at least 4 digits.
+
+    Same rule as StudentRegistrationService.registrationNoOf: all trailing digits, so 12345 stays 12345.
+    None when the name has no trailing digits.
+    """
+    match = re.search(r'\d+$', folder_name)
+    return str(int(match.group())) if match else None
+
+
+def export_gallery(model_path: str, out_path: str, capacity: int = 0) -> int:
+    with open(model_path, 'rb') as f:
+        model_data = pickle.load(f)
+
+    encodings = np.asarray(model_data['known_face_encodings'], dtype='<f4')
+    names = model_data['known_face_names']
+    rows, dim = encodings.shape
+    capacity = max(capacity, rows * 2, 1024)
+
+    dictionary = []
+    ids = {}
+    owners = np.full(capacity, -1, dtype='<i4')
+    skipped = set()
+    for row, name in enumerate(names):
+        reg = registration_no(name)
+        if reg is None:
+            skipped.add(name)
+            continue  # owner stays -1, which the Java side reads as a deleted row
+        if reg not in ids:
+            ids[reg] = len(dictionary)
+            dictionary.append(reg)
+        owners[row] = ids[reg]
+
+    float_start = (HEADER_BYTES + capacity * 4 + 63) & ~63
+    dict_offset = float_start + capacity * dim * 4
+    dict_blob = b''.join(struct.pack('<H', len(r.encode('utf-8'))) + r.encode('utf-8') for r in dictionary)
+
+    with open(out_path, 'wb') as f:
+        header = struct.pack('<4sHHiiiiqq', b'AXGL', VERSION, 0, dim, rows, capacity,
+                             len(dictionary), dict_offset, len(dict_blob))
+        f.write(header.ljust(HEADER_BYTES, b'\0'))
+        f.write(owners.tobytes())
+        f.seek(float_start)
+        f.write(encodings.tobytes())
+        f.seek(dict_offset)
+        f.write(dict_blob)
+
+    print(f"💾 Exported {rows} embeddings for {len(dictionary)} students to {out_path}")
+    if skipped:
+        print(f"⚠️ Skipped folders without a trailing registration number: {', '.join(sorted(skipped))}")
+    return rows
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser(description='Export the pickled model as a binary embedding gallery')
+    parser.add_argument('--model', '-m', default='models/trained_face_model.pkl')
+    parser.add_argument('--out', '-o', default='models/face_gallery.axg')
+    args = parser.parse_args()
+    export_gallery(args.model, args.out)
@@ -104,6 +104,49 @@ class FaceRecognitionModel:
         
         return recognized_results
     
+    def process_images(self, images: List[np.ndarray]) -> List[List[Dict]]:
+        """Detect and recognize faces in several RGB images with batched model calls.
+
+        Images of the same size go through MTCNN together, and every face crop
+        from every image goes through the encoder in a single forward pass.
+        Returns one result list per input image, in order.
+        """
+        results: List[List[Dict]] = [[] for _ in images]
+        if not images:
+            return results
+        try:
+            with torch.no_grad():
+                by_shape: Dict[tuple, List[int]] = {}
+                for i, image in enumerate(images):
+                    by_shape.setdefault(image.shape, []).append(i)
+
+                crops, owners, bboxes = [], [], []
+                for indices in by_shape.values():
+                    batch_boxes, _ = self.mtcnn.detect([images[i] for i in indices])
+                    for i, boxes in zip(indices, batch_boxes):
+                        if boxes is None:
+                            continue
+                        for box in boxes:
+                            face = images[i][int(box[1]):int(box[3]), int(box[0]):int(box[2])]
+                            if face.size == 0:
+                                continue
+                            face = cv2.resize(face, (160, 160))
+                            crops.append(np.transpose(face, (2, 0, 1)).astype(np.float32) / 255.0)
+                            owners.append(i)
+                            bboxes.append(box.tolist())
+
+                if not crops:
+                    return results
+                encodings = self.resnet(torch.tensor(np.stack(crops)).to(self.device)).detach().cpu().numpy()
+                recognized = self.recognize_faces(list(encodings))
+                for i, bbox, (name, confidence) in zip(owners, bboxes, recognized):
+                    results[i].append({'name': name, 'confidence': float(confidence), 'bbox': bbox})
+                return results
+
+        except Exception as e:
+            logger.error(f"Error processing image batch: {e}")
+            return [[] for _ in images]
+
     def process_image(self, image: np.ndarray) -> List[Dict]:
         """Process an image to detect and recognize all faces."""
         try:
@@ -125,9 +168,10 @@ class FaceRecognitionModel:
             recognition_results = self.recognize_faces(test_encodings)
             
             results = []
-            for i, (box, (name, _)) in enumerate(zip(boxes, recognition_results)):
+            for i, (box, (name, confidence)) in enumerate(zip(boxes, recognition_results)):
                 result = {
                     'name': name,
+                    'confidence': float(confidence),
                     'bbox': box.tolist()
                 }
                 results.append(result)
@@ -148,29 +192,8 @@ class FaceRecognitionModel:
             self.known_face_names = []
             
             for person_dir in os.listdir(data_dir):
-                person_path = os.path.join(data_dir, person_dir)
-                
-                if not os.path.isdir(person_path):
-                    continue
-                
-                image_files = [f for f in os.listdir(person_path) 
-                             if f.lower().endswith(('.jpg', '.jpeg', '.png', '.bmp'))]
-                
-                if not image_files:
-                    logger.warning(f"No images found for {person_dir}")
-                    continue
-                
-                for img_file in image_files:
-                    img_path = os.path.join(person_path, img_file)
-                    image = cv2.imread(img_path)
-                    
-                    if image is not None:
-                        image_rgb = cv2.cvtColor(image, cv2.COLOR_BGR2RGB)
-                        
-                        if self.add_face(person_dir, image_rgb):
-                                logger.info(f"Added {person_dir} from {img_file}")
-                        else:
-                                logger.warning(f"Failed to add {person_dir} from {img_file}")
+                if os.path.isdir(os.path.join(data_dir, person_dir)):
+                    self.train_person(data_dir, person_dir)
             
             logger.info(f"Training completed. Added {len(self.known_face_names)} faces.")
             return True
@@ -179,6 +202,76 @@ class FaceRecognitionModel:
             logger.error(f"Error during training: {e}")
             return False
     
+    def train_person(self, data_dir: str, person_dir: str) -> int:
+        """Encode every image in one person's folder; returns the number of faces added."""
+        person_path = os.path.join(data_dir, person_dir)
+        if not os.path.isdir(person_path):
+            logger.warning(f"Folder {person_dir} does not exist")
+            return 0
+        
+        image_files = [f for f in os.listdir(person_path) 
+                     if f.lower().endswith(('.jpg', '.jpeg', '.png', '.bmp'))]
+        
+        if not image_files:
+            logger.warning(f"No images found for {person_dir}")
+            return 0
+        
+        added = 0
+        for img_file in image_files:
+            img_path = os.path.join(person_path, img_file)
+            image = cv2.imread(img_path)
+            
+            if image is not None:
+                image_rgb = cv2.cvtColor(image, cv2.COLOR_BGR2RGB)
+                
+                if self.add_face(person_dir, image_rgb):
+                        logger.info(f"Added {person_dir} from {img_file}")
+                        added += 1
+                else:
+                        logger.warning(f"Failed to add {person_dir} from {img_file}")
+        return added
+    
+    def remove_person(self, name: str) -> int:
+        """Drop all encodings stored under a name; returns how many were removed."""
+        keep = [i for i, n in enumerate(self.known_face_names) if n != name]
+        removed = len(self.known_face_names) - len(keep)
+        self.known_face_encodings = [self.known_face_encodings[i] for i in keep]
+        self.known_face_names = [self.known_face_names[i] for i in keep]
+        return removed
+    
+    def rename_person(self, old_name: str, new_name: str) -> int:
+        """Relabel encodings without re-encoding; returns how many were relabelled."""
+        count = 0
+        for i, n in enumerate(self.known_face_names):
+            if n == old_name:
+                self.known_face_names[i] = new_name
+                count += 1
+        return count
+    
+    def apply_delta(self, data_dir: str, delta: Dict) -> bool:
+        """Patch the loaded model: drop removed folders, relabel renamed ones, re-encode added/changed ones."""
+        try:
+            for name in delta.get('removed', []):
+                logger.info(f"Removed {self.remove_person(name)} encodings for {name}")
+            
+            for old_name, new_name in delta.get('renamed', []):
+                if self.rename_person(old_name, new_name) == 0:
+                    # Never trained under the old name, so encode the folder instead
+                    self.train_person(data_dir, new_name)
+                else:
+                    logger.info(f"Relabelled {old_name} -> {new_name}")
+            
+            for name in delta.get('added', []) + delta.get('changed', []):
+                self.remove_person(name)
+                self.train_person(data_dir, name)
+            
+            logger.info(f"Delta applied. Model now holds {len(self.known_face_names)} faces.")
+            return True
+        
+        except Exception as e:
+            logger.error(f"Error applying training delta: {e}")
+            return False
+    
     def save_model(self, filepath: str) -> bool:
         """Save the trained model to disk."""
         try:
@@ -8,6 +8,9 @@ This script will:
 """
 
 import os
+import sys
+import json
+import argparse
 import cv2
 import numpy as np
 from face_recognition_model import FaceRecognitionModel
@@ -71,6 +74,61 @@ images/
     
     return True  # Directory exists
 
+def train_delta(delta_path):
+    """Patch the saved model with only the folders listed in a delta file written by the backend."""
+    model_path = "models/trained_face_model.pkl"
+    with open(delta_path, "r", encoding="utf-8") as f:
+        delta = json.load(f)
+    
+    print("🚀 Face Recognition Model Delta Training")
+    print("=" * 50)
+    print(f"   added: {len(delta.get('added', []))}, changed: {len(delta.get('changed', []))}, "
+          f"removed: {len(delta.get('removed', []))}, renamed: {len(delta.get('renamed', []))}")
+    
+    model = FaceRecognitionModel(threshold=0.6)
+    if not os.path.exists(model_path) or not model.load_model(model_path):
+        print("⚠️ No saved model to patch, falling back to full training")
+        return train_model()
+    
+    if not model.apply_delta("registered_images", delta):
+        print("❌ Delta training failed!")
+        return None
+    
+    if not model.save_model(model_path):
+        print("❌ Failed to save the model!")
+        return None
+    
+    print(f"💾 Model saved to: {model_path} ({len(model.known_face_names)} faces)")
+    model.trained_delta = delta
+    return model
+
+def export_embeddings(model, out_path):
+    """Write the encodings this run produced, per image folder, for the backend's in-JVM matcher.
+    
+    ModelTrainingScheduler reads the file after a successful run and enrolls them; a delta run only
+    lists the folders it touched, plus the folders whose encodings are gone. A full run lists every
+    folder, so the backend drops whoever else it had enrolled.
+    """
+    delta = getattr(model, 'trained_delta', None)
+    touched = None
+    removed = []
+    if delta is not None:
+        touched = set(delta.get('added', []) + delta.get('changed', []))
+        removed = list(delta.get('removed', []))
+        for old_name, new_name in delta.get('renamed', []):
+            touched.add(new_name)
+            removed.append(old_name)
+    
+    students = {}
+    for encoding, name in zip(model.known_face_encodings, model.known_face_names):
+        if touched is None or name in touched:
+            students.setdefault(name, []).append([float(x) for x in encoding])
+    
+    os.makedirs(os.path.dirname(os.path.abspath(out_path)), exist_ok=True)
+    with open(out_path, "w", encoding="utf-8") as f:
+        json.dump({'full': delta is None, 'students': students, 'removed': removed}, f)
+    print(f"📤 Exported encodings for {len(students)} folders to {out_path}")
+
 def train_model():
     """Train the face recognition model on images in the registered_images directory."""
     print("🚀 Face Recognition Model Training")
@@ -137,8 +195,16 @@ def train_model():
 
 def main():
     """Main function to train the model."""
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--delta", help="JSON file with added/changed/removed/renamed folders to patch in")
+    parser.add_argument("--export-embeddings", help="Also write the new encodings as JSON for the backend matcher")
+    args = parser.parse_args()
+    
     # Train the model
-    model = train_model()
+    model = train_delta(args.delta) if args.delta else train_model()
+    
+    if model and args.export_embeddings:
+        export_embeddings(model, args.export_embeddings)
     
     if model:
         print(f"\n🎯 Training completed!")
@@ -152,6 +218,7 @@ def main():
         print("   - 'registered_images' directory contains person subdirectories")
         print("   - Each subdirectory contains valid image files")
         print("   - Images contain clearly visible faces")
+        sys.exit(1)
 
 if __name__ == "__main__":
     main()
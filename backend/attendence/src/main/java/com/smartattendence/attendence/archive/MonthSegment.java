@@ -0,0 +1,446 @@
+package com.smartattendence.attendence.archive;
+
+import com.smartattendence.attendence.dto.AttendanceView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One closed month of attendance, stored column by column in a single file.
+ *
+ * Rows are sorted by (timestamp, id). Every column is its own Deflate block:
+ * registration numbers and names as codes into sorted dictionaries (a month
+ * repeats the same few thousand students), timestamps as varint deltas in
+ * microseconds, ids as zig-zag varint deltas. The footer holds the row count,
+ * the min/max timestamp and id, and where each block lives, so a scan can skip
+ * a month outside its range, or a student missing from the dictionary,
+ * without inflating anything.
+ *
+ * <pre>
+ * "ATTCOL01" | block * 6 | footer | footer length (int) | "ATTCOL01"
+ * </pre>
+ */
+public final class MonthSegment {
+
+    static final byte[] MAGIC = "ATTCOL01".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int REG_DICT = 0;
+    private static final int NAME_DICT = 1;
+    private static final int REG_CODES = 2;
+    private static final int NAME_CODES = 3;
+    private static final int TIMESTAMPS = 4;
+    private static final int IDS = 5;
+    private static final int BLOCKS = 6;
+
+    private static final Comparator<AttendanceView> ORDER =
+            Comparator.comparing(AttendanceView::timestamp).thenComparing(AttendanceView::id);
+
+    private final Path path;
+    private final YearMonth month;
+    private final int rows;
+    private final long minMicros;
+    private final long maxMicros;
+    private final long minId;
+    private final long maxId;
+    private final long[] offsets = new long[BLOCKS];
+    private final int[] lengths = new int[BLOCKS];
+    private final int[] rawLengths = new int[BLOCKS];
+    private final int[] crcs = new int[BLOCKS];
+    private final long fileBytes;
+    private final String[] registrations; // read eagerly: small, and enough to prune per-student scans
+
+    private MonthSegment(Path path, FileChannel ch) throws IOException {
+        this.path = path;
+        this.fileBytes = ch.size();
+        int trailer = 4 + MAGIC.length;
+        if (fileBytes < MAGIC.length + trailer) throw new IOException("Not an archive segment: " + path);
+        ByteBuffer tail = readFully(ch, fileBytes - trailer, trailer);
+        int footerLength = tail.getInt();
+        checkMagic(tail, path);
+        checkMagic(readFully(ch, 0, MAGIC.length), path);
+
+        ByteBuffer footer = readFully(ch, fileBytes - trailer - footerLength, footerLength);
+        this.month = YearMonth.of(footer.getInt(), footer.getInt());
+        this.rows = footer.getInt();
+        this.minMicros = footer.getLong();
+        this.maxMicros = footer.getLong();
+        this.minId = footer.getLong();
+        this.maxId = footer.getLong();
+        for (int b = 0; b < BLOCKS; b++) {
+            offsets[b] = footer.getLong();
+            lengths[b] = footer.getInt();
+            rawLengths[b] = footer.getInt();
+            crcs[b] = footer.getInt();
+        }
+        this.registrations = readDictionary(block(ch, REG_DICT));
+    }
+
+    /**
+     * Writes the rows as the segment for month, atomically replacing any
+     * existing file at path, and opens it.
+     */
+    public static MonthSegment write(Path path, YearMonth month, Collection<AttendanceView> rows) throws IOException {
+        List<AttendanceView> sorted = new ArrayList<>(rows);
+        for (AttendanceView r : sorted) {
+            if (r.id() == null || r.registrationNo() == null || r.timestamp() == null) {
+                throw new IllegalArgumentException("Row without id, registration number or timestamp: " + r);
+            }
+            if (!YearMonth.from(r.timestamp()).equals(month)) {
+                throw new IllegalArgumentException("Row " + r.id() + " at " + r.timestamp() + " is not in " + month);
+            }
+        }
+        sorted.sort(ORDER);
+
+        TreeSet<String> regSet = new TreeSet<>();
+        TreeSet<String> nameSet = new TreeSet<>();
+        for (AttendanceView r : sorted) {
+            regSet.add(r.registrationNo());
+            if (r.name() != null) nameSet.add(r.name());
+        }
+        Map<String, Integer> regCode = codes(regSet);
+        Map<String, Integer> nameCode = codes(nameSet);
+
+        Sink[] cols = new Sink[BLOCKS];
+        for (int b = 0; b < BLOCKS; b++) cols[b] = new Sink();
+        cols[REG_DICT].writeVarLong(regSet.size());
+        for (String s : regSet) cols[REG_DICT].writeString(s);
+        cols[NAME_DICT].writeVarLong(nameSet.size());
+        for (String s : nameSet) cols[NAME_DICT].writeString(s);
+
+        long prevMicros = 0, prevId = 0;
+        long minTs = Long.MAX_VALUE, maxTs = Long.MIN_VALUE, lowId = Long.MAX_VALUE, highId = Long.MIN_VALUE;
+        for (AttendanceView r : sorted) {
+            cols[REG_CODES].writeVarLong(regCode.get(r.registrationNo()));
+            cols[NAME_CODES].writeVarLong(r.name() == null ? 0 : nameCode.get(r.name()) + 1); // 0 = no name
+            long micros = toMicros(r.timestamp());
+            cols[TIMESTAMPS].writeVarLong(micros - prevMicros); // never negative: rows are sorted
+            cols[IDS].writeVarLong(zigZag(r.id() - prevId));
+            prevMicros = micros;
+            prevId = r.id();
+            minTs = Math.min(minTs, micros);
+            maxTs = Math.max(maxTs, micros);
+            lowId = Math.min(lowId, r.id());
+            highId = Math.max(highId, r.id());
+        }
+        if (sorted.isEmpty()) {
+            minTs = maxTs = toMicros(month.atDay(1).atStartOfDay());
+            lowId = highId = 0;
+        }
+
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream footer = new DataOutputStream(footerBytes);
+            footer.writeInt(month.getYear());
+            footer.writeInt(month.getMonthValue());
+            footer.writeInt(sorted.size());
+            footer.writeLong(minTs);
+            footer.writeLong(maxTs);
+            footer.writeLong(lowId);
+            footer.writeLong(highId);
+
+            writeFully(ch, ByteBuffer.wrap(MAGIC));
+            for (int b = 0; b < BLOCKS; b++) {
+                byte[] raw = cols[b].toByteArray();
+                byte[] packed = deflate(raw);
+                CRC32 crc = new CRC32();
+                crc.update(raw);
+                footer.writeLong(ch.position());
+                footer.writeInt(packed.length);
+                footer.writeInt(raw.length);
+                footer.writeInt((int) crc.getValue());
+                writeFully(ch, ByteBuffer.wrap(packed));
+            }
+            footer.flush();
+            ByteBuffer trailer = ByteBuffer.allocate(footerBytes.size() + 4 + MAGIC.length);
+            trailer.put(footerBytes.toByteArray()).putInt(footerBytes.size()).put(MAGIC).flip();
+            writeFully(ch, trailer);
+            ch.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    /** Reads the footer and the registration dictionary; the columns stay on disk until {@link #load()}. */
+    public static MonthSegment open(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MonthSegment(path, ch);
+        }
+    }
+
+    public Path path() { return path; }
+    public YearMonth month() { return month; }
+    public int rows() { return rows; }
+    public long minId() { return minId; }
+    public long maxId() { return maxId; }
+    public long fileBytes() { return fileBytes; }
+    public LocalDateTime minTimestamp() { return fromMicros(minMicros); }
+    public LocalDateTime maxTimestamp() { return fromMicros(maxMicros); }
+
+    /** False only when the student certainly has no rows here; null matches every student. */
+    public boolean mayContain(String registrationNo) {
+        return registrationNo == null || Arrays.binarySearch(registrations, registrationNo) >= 0;
+    }
+
+    /** Whether any row can fall in [from, to). */
+    public boolean overlaps(LocalDateTime from, LocalDateTime to) {
+        return rows > 0 && maxMicros >= ceilMicros(from) && minMicros < ceilMicros(to);
+    }
+
+    /** Inflates and decodes every column. */
+    public Columns load() throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            String[] names = readDictionary(block(ch, NAME_DICT));
+            Source regs = block(ch, REG_CODES);
+            Source nameCodes = block(ch, NAME_CODES);
+            Source ts = block(ch, TIMESTAMPS);
+            Source ids = block(ch, IDS);
+
+            int[] regCol = new int[rows];
+            int[] nameCol = new int[rows];
+            long[] tsCol = new long[rows];
+            long[] idCol = new long[rows];
+            long micros = 0, id = 0;
+            for (int i = 0; i < rows; i++) {
+                regCol[i] = (int) regs.readVarLong();
+                nameCol[i] = (int) nameCodes.readVarLong() - 1;
+                micros += ts.readVarLong();
+                id += unZigZag(ids.readVarLong());
+                tsCol[i] = micros;
+                idCol[i] = id;
+            }
+            return new Columns(registrations, names, regCol, nameCol, tsCol, idCol);
+        }
+    }
+
+    /** Decoded columns of one month; immutable, safe to share between scans. */
+    public static final class Columns {
+        private final String[] registrations;
+        private final String[] names;
+        private final int[] regCodes;
+        private final int[] nameCodes; // -1 = no name
+        private final long[] micros;
+        private final long[] ids;
+        private volatile long[] sortedIds;
+
+        private Columns(String[] registrations, String[] names, int[] regCodes, int[] nameCodes,
+                        long[] micros, long[] ids) {
+            this.registrations = registrations;
+            this.names = names;
+            this.regCodes = regCodes;
+            this.nameCodes = nameCodes;
+            this.micros = micros;
+            this.ids = ids;
+        }
+
+        public int size() { return ids.length; }
+
+        public AttendanceView row(int i) {
+            return new AttendanceView(ids[i], registrations[regCodes[i]],
+                    nameCodes[i] < 0 ? null : names[nameCodes[i]], fromMicros(micros[i]));
+        }
+
+        /**
+         * Rows in [from, to) for one student (or everyone when registrationNo
+         * is null), in (timestamp, id) order. Rows exactly at from must also
+         * have an id above afterId, which is how keyset pages resume. Stops
+         * after limit rows.
+         */
+        public List<AttendanceView> scan(String registrationNo, LocalDateTime from, LocalDateTime to,
+                                         long afterId, int limit) {
+            List<AttendanceView> out = new ArrayList<>();
+            int code = -1;
+            if (registrationNo != null) {
+                code = Arrays.binarySearch(registrations, registrationNo);
+                if (code < 0) return out;
+            }
+            long lo = ceilMicros(from), hi = ceilMicros(to);
+            for (int i = lowerBound(micros, lo); i < micros.length && micros[i] < hi && out.size() < limit; i++) {
+                if (code >= 0 && regCodes[i] != code) continue;
+                if (micros[i] == lo && ids[i] <= afterId) continue;
+                out.add(row(i));
+            }
+            return out;
+        }
+
+        public boolean containsId(long id) {
+            long[] s = sortedIds;
+            if (s == null) {
+                s = ids.clone();
+                Arrays.sort(s);
+                sortedIds = s;
+            }
+            return Arrays.binarySearch(s, id) >= 0;
+        }
+    }
+
+    static long toMicros(LocalDateTime t) {
+        return t.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + t.getNano() / 1000;
+    }
+
+    // Smallest whole microsecond not before t, so "ts >= t" and "ts < t" can be compared in micros
+    static long ceilMicros(LocalDateTime t) {
+        return toMicros(t) + (t.getNano() % 1000 == 0 ? 0 : 1);
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1000, ZoneOffset.UTC);
+    }
+
+    private static int lowerBound(long[] a, long key) {
+        int lo = 0, hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static Map<String, Integer> codes(TreeSet<String> dictionary) {
+        Map<String, Integer> codes = new HashMap<>(dictionary.size() * 2);
+        for (String s : dictionary) codes.put(s, codes.size());
+        return codes;
+    }
+
+    private static String[] readDictionary(Source in) throws IOException {
+        String[] out = new String[(int) in.readVarLong()];
+        for (int i = 0; i < out.length; i++) out[i] = in.readString();
+        return out;
+    }
+
+    private Source block(FileChannel ch, int b) throws IOException {
+        ByteBuffer packed = readFully(ch, offsets[b], lengths[b]);
+        byte[] raw = new byte[rawLengths[b]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(packed.array());
+            int n = 0;
+            while (n < raw.length && !inflater.finished()) {
+                int got = inflater.inflate(raw, n, raw.length - n);
+                if (got == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += got;
+            }
+            if (n != raw.length) throw new IOException("Truncated column block " + b + " in " + path);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt column block " + b + " in " + path, e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        if ((int) crc.getValue() != crcs[b]) throw new IOException("Checksum mismatch in column block " + b + " of " + path);
+        return new Source(raw);
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buf = new byte[64 * 1024];
+            while (!deflater.finished()) out.write(buf, 0, deflater.deflate(buf));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void checkMagic(ByteBuffer buf, Path path) throws IOException {
+        byte[] m = new byte[MAGIC.length];
+        buf.get(m);
+        if (!Arrays.equals(m, MAGIC)) throw new IOException("Not an archive segment: " + path);
+    }
+
+    private static ByteBuffer readFully(FileChannel ch, long position, int length) throws IOException {
+        if (length < 0 || position < 0 || position + length > ch.size()) throw new IOException("Bad block bounds");
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) < 0) throw new IOException("Unexpected end of segment");
+        }
+        return buf.flip();
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    private static final class Sink extends ByteArrayOutputStream {
+        void writeVarLong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void writeString(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(b.length);
+            write(b, 0, b.length);
+        }
+    }
+
+    private static final class Source {
+        private final byte[] buf;
+        private int pos;
+
+        Source(byte[] buf) {
+            this.buf = buf;
+        }
+
+        long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= buf.length) throw new IOException("Column block ended early");
+                byte b = buf[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            int n = (int) readVarLong();
+            if (n < 0 || pos + n > buf.length) throw new IOException("Column block ended early");
+            String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+            pos += n;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.smartattendence.attendence.cache;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of dense student indexes, laid out like a roaring bitmap:
+ * the high 16 bits pick a container, the low 16 bits live either in a sorted
+ * char array (sparse, up to 4096 entries) or in a 65536-bit long[] (dense).
+ * A campus day with a few thousand marks costs a few KB.
+ */
+public class DayBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+
+    private char[] keys = new char[0];
+    private Object[] containers = new Object[0]; // char[] array container or long[] bitmap container
+    private int[] arraySizes = new int[0];
+    private int cardinality;
+
+    /** @return true if the index was not already present */
+    public synchronized boolean add(int x) {
+        char hi = (char) (x >>> 16);
+        char lo = (char) x;
+        int i = Arrays.binarySearch(keys, hi);
+        if (i < 0) {
+            i = -i - 1;
+            keys = insert(keys, i, hi);
+            containers = insert(containers, i, new char[4]);
+            arraySizes = insert(arraySizes, i, 0);
+        }
+        boolean added;
+        if (containers[i] instanceof long[] bits) {
+            long mask = 1L << lo;
+            added = (bits[lo >>> 6] & mask) == 0;
+            bits[lo >>> 6] |= mask;
+        } else {
+            char[] arr = (char[]) containers[i];
+            int n = arraySizes[i];
+            int pos = Arrays.binarySearch(arr, 0, n, lo);
+            added = pos < 0;
+            if (added) {
+                if (n == ARRAY_MAX) {
+                    containers[i] = toBitmap(arr, n);
+                    ((long[]) containers[i])[lo >>> 6] |= 1L << lo;
+                } else {
+                    pos = -pos - 1;
+                    if (n == arr.length) arr = Arrays.copyOf(arr, Math.min(ARRAY_MAX, n * 2));
+                    System.arraycopy(arr, pos, arr, pos + 1, n - pos);
+                    arr[pos] = lo;
+                    containers[i] = arr;
+                    arraySizes[i] = n + 1;
+                }
+            }
+        }
+        if (added) cardinality++;
+        return added;
+    }
+
+    public synchronized boolean contains(int x) {
+        int i = Arrays.binarySearch(keys, (char) (x >>> 16));
+        if (i < 0) return false;
+        char lo = (char) x;
+        if (containers[i] instanceof long[] bits) return (bits[lo >>> 6] & (1L << lo)) != 0;
+        return Arrays.binarySearch((char[]) containers[i], 0, arraySizes[i], lo) >= 0;
+    }
+
+    /** @return true if the index was present */
+    public synchronized boolean remove(int x) {
+        int i = Arrays.binarySearch(keys, (char) (x >>> 16));
+        if (i < 0) return false;
+        char lo = (char) x;
+        boolean removed;
+        if (containers[i] instanceof long[] bits) {
+            long mask = 1L << lo;
+            removed = (bits[lo >>> 6] & mask) != 0;
+            bits[lo >>> 6] &= ~mask;
+        } else {
+            char[] arr = (char[]) containers[i];
+            int n = arraySizes[i];
+            int pos = Arrays.binarySearch(arr, 0, n, lo);
+            removed = pos >= 0;
+            if (removed) {
+                System.arraycopy(arr, pos + 1, arr, pos, n - pos - 1);
+                arraySizes[i] = n - 1;
+            }
+        }
+        if (removed) cardinality--;
+        return removed;
+    }
+
+    public synchronized int cardinality() {
+        return cardinality;
+    }
+
+    public synchronized void forEach(IntConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            int base = keys[i] << 16;
+            if (containers[i] instanceof long[] bits) {
+                for (int w = 0; w < bits.length; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        action.accept(base | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] arr = (char[]) containers[i];
+                for (int j = 0; j < arraySizes[i]; j++) action.accept(base | arr[j]);
+            }
+        }
+    }
+
+    private static long[] toBitmap(char[] arr, int n) {
+        long[] bits = new long[1024];
+        for (int j = 0; j < n; j++) bits[arr[j] >>> 6] |= 1L << arr[j];
+        return bits;
+    }
+
+    private static char[] insert(char[] a, int i, char v) {
+        char[] out = new char[a.length + 1];
+        System.arraycopy(a, 0, out, 0, i);
+        out[i] = v;
+        System.arraycopy(a, i, out, i + 1, a.length - i);
+        return out;
+    }
+
+    private static int[] insert(int[] a, int i, int v) {
+        int[] out = new int[a.length + 1];
+        System.arraycopy(a, 0, out, 0, i);
+        out[i] = v;
+        System.arraycopy(a, i, out, i + 1, a.length - i);
+        return out;
+    }
+
+    private static Object[] insert(Object[] a, int i, Object v) {
+        Object[] out = new Object[a.length + 1];
+        System.arraycopy(a, 0, out, 0, i);
+        out[i] = v;
+        System.arraycopy(a, i, out, i + 1, a.length - i);
+        return out;
+    }
+}
@@ -0,0 +1,42 @@
+package com.smartattendence.attendence.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns every registration number a dense, stable int (0, 1, 2, ...) for
+ * the lifetime of the process, so per-day attendance fits in a bitmap.
+ */
+public class StudentIndex {
+
+    private final Map<String, Integer> indexByReg = new ConcurrentHashMap<>();
+    private final List<String> regByIndex = new ArrayList<>();
+
+    public int indexOf(String regNo) {
+        Integer idx = indexByReg.get(regNo);
+        return idx != null ? idx : assign(regNo);
+    }
+
+    private synchronized int assign(String regNo) {
+        return indexByReg.computeIfAbsent(regNo, r -> {
+            regByIndex.add(r);
+            return regByIndex.size() - 1;
+        });
+    }
+
+    /** Index if the student has been seen, otherwise -1; never assigns. */
+    public int find(String regNo) {
+        Integer idx = indexByReg.get(regNo);
+        return idx != null ? idx : -1;
+    }
+
+    public synchronized String regNoOf(int index) {
+        return regByIndex.get(index);
+    }
+
+    public int size() {
+        return indexByReg.size();
+    }
+}
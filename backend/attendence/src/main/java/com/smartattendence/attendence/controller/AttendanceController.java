@@ -1,15 +1,43 @@
 package com.smartattendence.attendence.controller;
 
+import com.smartattendence.attendence.dto.AttendanceView;
+import com.smartattendence.attendence.dto.KeysetPage;
 import com.smartattendence.attendence.entity.Attendance;
 import com.smartattendence.attendence.entity.Student;
+import com.smartattendence.attendence.recognition.MatchResult;
+import com.smartattendence.attendence.recognition.QuantizedGallery;
+import com.smartattendence.attendence.recognition.RecallReport;
+import com.smartattendence.attendence.services.AttendanceArchive;
+import com.smartattendence.attendence.services.AttendanceBatchWriter;
+import com.smartattendence.attendence.services.AttendanceEventHub;
+import com.smartattendence.attendence.services.AttendanceExportService;
+import com.smartattendence.attendence.services.AttendanceSyncService;
+import com.smartattendence.attendence.services.AttendanceWal;
+import com.smartattendence.attendence.services.FaceMatchService;
+import com.smartattendence.attendence.services.FrameDeduplicator;
+import com.smartattendence.attendence.services.RecognitionGateway;
+import com.smartattendence.attendence.services.RecognizerSidecar;
+import com.smartattendence.attendence.services.StudentRegistrationService;
 import com.smartattendence.attendence.services.StudentService;
+import com.smartattendence.attendence.services.VideoIngestionService;
 import com.smartattendence.attendence.services.AttendanceService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/attendance")
@@ -19,41 +47,297 @@ public class AttendanceController {
     private StudentService studentService;
     @Autowired
     private AttendanceService attendanceService;
+    @Autowired
+    private FaceMatchService faceMatchService;
+    @Autowired
+    private AttendanceBatchWriter batchWriter;
+    @Autowired
+    private AttendanceExportService exportService;
+    @Autowired
+    private AttendanceEventHub eventHub;
+    @Autowired
+    private VideoIngestionService ingestionService;
+    @Autowired
+    private RecognizerSidecar recognizerSidecar;
+    @Autowired
+    private RecognitionGateway recognitionGateway;
+    @Autowired
+    private FrameDeduplicator frameDeduplicator;
+    @Autowired
+    private AttendanceSyncService syncService;
+    @Autowired
+    private AttendanceWal wal;
+    @Autowired
+    private AttendanceArchive archive;
 
+    // ✅ Student is resolved from the face embedding, never from a client-supplied registration number.
+    // For kiosks that compute embeddings on-device; kiosks that only send frames use /recognize
     @PostMapping("/mark")
-    public String markAttendance(@RequestBody FaceMatchDTO dto) {
-        Student student = studentService.getStudentByReg(dto.getRegistrationNo());
-        if (student == null) return "Student not found";
-        attendanceService.markAttendance(student.getRegistrationNo(), student.getName());
-        return "Attendance marked for " + student.getName();
+    public CompletableFuture<String> markAttendance(@RequestBody FaceMatchDTO dto) {
+        if (dto.getEmbedding() == null) return CompletableFuture.completedFuture("No embedding received");
+        if (dto.getEmbedding().length != faceMatchService.dimension()) {
+            return CompletableFuture.completedFuture("Embedding must have " + faceMatchService.dimension() + " values");
+        }
+
+        MatchResult match = faceMatchService.match(dto.getEmbedding());
+        if (match == null) return CompletableFuture.completedFuture("No registered faces");
+        if (!match.matched()) return CompletableFuture.completedFuture("Unknown face - attendance not marked");
+
+        Student student = studentService.getStudentByReg(match.registrationNo());
+        if (student == null) return CompletableFuture.completedFuture("Student not found");
+        return attendanceService.markAttendanceAsync(student.getRegistrationNo(), student.getName())
+                .thenApply(a -> a == null
+                        ? "Attendance already marked for " + student.getName() + " today"
+                        : String.format("Attendance marked for %s (confidence %.2f)", student.getName(), match.confidence()));
+    }
+
+    // ✅ Kiosk frames come here instead of straight to Flask, so the backend can shed and time out load
+    @PostMapping("/recognize")
+    public CompletableFuture<ResponseEntity<Map<String, String>>> recognizeAndMark(@RequestBody FrameDTO dto,
+                                                                               HttpServletRequest request) {
+        if (dto.getImage() == null || dto.getImage().isBlank()) {
+            return CompletableFuture.completedFuture(reply(HttpStatus.BAD_REQUEST, "No image received"));
+        }
+        String kioskId = dto.getKioskId() != null && !dto.getKioskId().isBlank() ? dto.getKioskId() : request.getRemoteAddr();
+        return frameDeduplicator.recognize(kioskId, dto.getImage()).thenCompose(r -> {
+            switch (r.status()) {
+                case BUSY: return CompletableFuture.completedFuture(reply(HttpStatus.TOO_MANY_REQUESTS, r.detail()));
+                case CIRCUIT_OPEN:
+                case NOT_READY: return CompletableFuture.completedFuture(reply(HttpStatus.SERVICE_UNAVAILABLE, r.detail()));
+                case TIMEOUT: return CompletableFuture.completedFuture(reply(HttpStatus.GATEWAY_TIMEOUT, r.detail()));
+                case ERROR: return CompletableFuture.completedFuture(reply(HttpStatus.BAD_GATEWAY, r.detail()));
+                default: break;
+            }
+            if (r.faces().isEmpty()) return CompletableFuture.completedFuture(reply(HttpStatus.OK, "No face detected"));
+
+            String name = r.faces().get(0).name();
+            String regNo = StudentRegistrationService.registrationNoOf(name);
+            if (regNo == null) return CompletableFuture.completedFuture(reply(HttpStatus.OK, "Unknown face - attendance not marked"));
+            Student student = studentService.getStudentByReg(regNo);
+            if (student == null) {
+                return CompletableFuture.completedFuture(reply(HttpStatus.OK, "⚠️ Student not found in DB for reg_no " + regNo));
+            }
+            return attendanceService.markAttendanceAsync(student.getRegistrationNo(), student.getName())
+                    .thenApply(a -> reply(HttpStatus.OK, a == null
+                            ? "🟡 Attendance already marked for " + student.getName() + " (" + regNo + ") today."
+                            : "✅ Attendance marked for " + student.getName() + " (" + regNo + ") at " + a.getTimestamp()));
+        });
+    }
+
+    // ✅ Offline kiosks upload their buffered marks as (gzip) NDJSON; safe to resend, every event has an idempotency key
+    @PostMapping(value = "/sync", consumes = "application/x-ndjson")
+    public Map<String, Object> sync(HttpServletRequest request) throws IOException {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        return syncService.sync(request.getInputStream(), encoding != null && encoding.toLowerCase().contains("gzip"));
     }
 
+    @GetMapping("/sync/stats")
+    public Map<String, Object> syncStats() {
+        return syncService.stats();
+    }
+
+    // ✅ Recorded lecture video or an image-sequence folder, processed in the background
+    @PostMapping("/ingest")
+    public Map<String, Object> ingest(@RequestBody IngestDTO dto) {
+        LocalDateTime sessionStart = dto.getSessionStart() == null ? null : LocalDateTime.parse(dto.getSessionStart());
+        return ingestionService.submit(dto.getPath(), sessionStart, dto.getMinHits(), dto.getMinConfidence()).status();
+    }
+
+    @GetMapping("/ingest")
+    public List<Map<String, Object>> ingestionJobs() {
+        return ingestionService.list();
+    }
+
+    @GetMapping("/ingest/{id}")
+    public Map<String, Object> ingestionJob(@PathVariable String id) {
+        return ingestionService.get(id).status();
+    }
+
+    @PostMapping("/ingest/{id}/cancel")
+    public Map<String, Object> cancelIngestion(@PathVariable String id) {
+        ingestionService.cancel(id);
+        return ingestionService.get(id).status();
+    }
+
+    // ✅ Live feed of new marks for dashboards; browsers reconnect with Last-Event-ID and get what they missed
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(required = false) LocalDate date,
+                             @RequestParam(required = false) String registrationNo,
+                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return eventHub.subscribe(lastEventId, date, registrationNo);
+    }
+
+    @GetMapping("/stream/stats")
+    public Map<String, Object> streamStats() {
+        return eventHub.stats();
+    }
+
+    @GetMapping("/recognize/stats")
+    public Map<String, Object> gatewayStats() {
+        return recognitionGateway.stats();
+    }
+
+    @GetMapping("/recognize/dedupe/stats")
+    public Map<String, Object> dedupeStats() {
+        return frameDeduplicator.stats();
+    }
+
+    private static ResponseEntity<Map<String, String>> reply(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Map.of("message", message));
+    }
+
+    @GetMapping("/recognizer/status")
+    public Map<String, Object> recognizerStatus() {
+        return recognizerSidecar.status();
+    }
+
+    @GetMapping("/writer/stats")
+    public Map<String, Long> writerStats() {
+        return Map.of("batches", batchWriter.batchesWritten(),
+                "marks", batchWriter.marksWritten(),
+                "queueDepth", (long) batchWriter.queueDepth());
+    }
+
+    // ✅ Write-ahead log: ack latency, group size and how far the table is behind
+    @GetMapping("/wal/stats")
+    public Map<String, Object> walStats() {
+        return wal.stats();
+    }
+
+    // ✅ Moves closed months into the columnar archive now instead of waiting for the nightly run
+    @PostMapping("/archive")
+    public Map<String, Object> archiveClosedMonths() {
+        return archive.archiveClosedMonths();
+    }
+
+    @GetMapping("/archive/stats")
+    public Map<String, Object> archiveStats() {
+        return archive.stats();
+    }
+
+    // ✅ HNSW recall vs. exact search, e.g. /matcher/recall?queries=200&ef=16,32,64,128
+    @GetMapping("/matcher/recall")
+    public RecallReport matcherRecall(@RequestParam(defaultValue = "200") int queries,
+                                      @RequestParam(defaultValue = "16,32,64,128") int[] ef) {
+        return faceMatchService.recallReport(queries, ef);
+    }
+
+    @PutMapping("/matcher/ef-search")
+    public String setEfSearch(@RequestParam int ef) {
+        faceMatchService.setEfSearch(ef);
+        return "ef-search set to " + ef;
+    }
+
+    // ✅ Memory per student and accuracy of INT8/PQ codes vs. the float baseline
+    @GetMapping("/matcher/quantization")
+    public QuantizedGallery.Report quantizationReport(@RequestParam(defaultValue = "200") int queries) {
+        return faceMatchService.quantizationReport(queries);
+    }
+
+    @PostMapping("/matcher/quantization/retrain")
+    public String retrainQuantizer() {
+        faceMatchService.retrainQuantizer();
+        return "Quantizer retrained";
+    }
+
+    // ✅ Paginated listing: /page?limit=100&cursor=<nextCursor>&registrationNo=&from=2025-01-01&to=2025-01-31
+    @GetMapping("/page")
+    public KeysetPage<AttendanceView> fetchAttendancePage(@RequestParam(required = false) Integer limit,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) String registrationNo,
+                                                      @RequestParam(required = false) String from,
+                                                      @RequestParam(required = false) String to) {
+        return attendanceService.fetchPage(registrationNo,
+                from == null ? null : LocalDate.parse(from),
+                to == null ? null : LocalDate.parse(to),
+                limit, cursor);
+    }
+
+    // ✅ Streaming export: /export?format=csv|ndjson&gzip=true&from=&to=&registrationNo=&columns=registrationNo,name,timestamp
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "csv") String format,
+                                                        @RequestParam(defaultValue = "false") boolean gzip,
+                                                        @RequestParam(required = false) String columns,
+                                                        @RequestParam(required = false) String registrationNo,
+                                                        @RequestParam(required = false) String from,
+                                                        @RequestParam(required = false) String to) {
+        AttendanceExportService.Format fmt = AttendanceExportService.Format.valueOf(format.toUpperCase());
+        List<String> cols = exportService.resolveColumns(columns);
+        LocalDate fromDate = from == null ? null : LocalDate.parse(from);
+        LocalDate toDate = to == null ? null : LocalDate.parse(to);
+
+        String fileName = "attendance." + (fmt == AttendanceExportService.Format.CSV ? "csv" : "ndjson") + (gzip ? ".gz" : "");
+        MediaType type = gzip ? MediaType.parseMediaType("application/gzip")
+                : fmt == AttendanceExportService.Format.CSV ? MediaType.parseMediaType("text/csv")
+                : MediaType.parseMediaType("application/x-ndjson");
+        StreamingResponseBody body = out -> exportService.export(out, fmt, gzip, cols, registrationNo, fromDate, toDate);
+        return ResponseEntity.ok()
+                .contentType(type)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
+    }
+
+    /** @deprecated loads the whole table; use {@code /page}. */
+    @Deprecated
     @GetMapping("/fetch")
-    public List<Attendance> fetchAttendance() {
+    public List<AttendanceView> fetchAttendance() {
         return attendanceService.fetchAll();
     }
 
 
     // ✅ Fetch attendance for a single student
     @GetMapping("/fetch/{registrationNo}")
-    public List<Attendance> fetchAttendanceByReg(@PathVariable String registrationNo) {
+    public List<AttendanceView> fetchAttendanceByReg(@PathVariable String registrationNo) {
         return attendanceService.getAttendanceByReg(registrationNo);
     }
 
    @GetMapping("/by-date")
-    public List<Attendance> getByDate(@RequestParam String date) {
+    public List<AttendanceView> getByDate(@RequestParam String date) {
         LocalDate localDate = LocalDate.parse(date);
         return attendanceService.getAttendanceByDate(localDate);
     }
 
+    // ✅ e.g. /range?from=2025-01-01&to=2025-01-31&registrationNo=40 (both days inclusive)
+    @GetMapping("/range")
+    public List<AttendanceView> getByRange(@RequestParam String from, @RequestParam String to,
+                                       @RequestParam(required = false) String registrationNo) {
+        return attendanceService.getAttendanceBetween(LocalDate.parse(from), LocalDate.parse(to), registrationNo);
+    }
+
+
+
+    public static class IngestDTO {
+        private String path;
+        private String sessionStart; // e.g. 2025-01-31T09:00
+        private Integer minHits;
+        private Double minConfidence;
 
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+        public String getSessionStart() { return sessionStart; }
+        public void setSessionStart(String sessionStart) { this.sessionStart = sessionStart; }
+        public Integer getMinHits() { return minHits; }
+        public void setMinHits(Integer minHits) { this.minHits = minHits; }
+        public Double getMinConfidence() { return minConfidence; }
+        public void setMinConfidence(Double minConfidence) { this.minConfidence = minConfidence; }
+    }
+
+    public static class FrameDTO {
+        private String image;
+        private String kioskId;
+
+        public String getImage() { return image; }
+        public void setImage(String image) { this.image = image; }
+        public String getKioskId() { return kioskId; }
+        public void setKioskId(String kioskId) { this.kioskId = kioskId; }
+    }
 
     public static class FaceMatchDTO {
-        private String registrationNo;
+        private float[] embedding;
         private String capturedImage;
 
-        public String getRegistrationNo() { return registrationNo; }
-        public void setRegistrationNo(String registrationNo) { this.registrationNo = registrationNo; }
+        public float[] getEmbedding() { return embedding; }
+        public void setEmbedding(float[] embedding) { this.embedding = embedding; }
 
         public String getCapturedImage() { return capturedImage; }
         public void setCapturedImage(String capturedImage) { this.capturedImage = capturedImage; }
@@ -1,10 +1,20 @@
 package com.smartattendence.attendence.controller;
 
+import com.smartattendence.attendence.dto.KeysetPage;
+import com.smartattendence.attendence.dto.StudentView;
 import com.smartattendence.attendence.entity.Student;
 import com.smartattendence.attendence.services.AttendanceService;
+import com.smartattendence.attendence.services.FaceMatchService;
+import com.smartattendence.attendence.services.ModelTrainingScheduler;
+import com.smartattendence.attendence.services.StudentImportService;
+import com.smartattendence.attendence.services.StudentRegistrationService;
 import com.smartattendence.attendence.services.StudentService;
+import com.smartattendence.attendence.services.TrainingManifest;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import java.io.*;
 import java.util.*;
 
@@ -17,100 +27,107 @@ public class StudentController {
     private StudentService studentService;
     @Autowired
     private AttendanceService attendanceService;
+    @Autowired
+    private FaceMatchService faceMatchService;
+    @Autowired
+    private StudentRegistrationService registrationService;
+    @Autowired
+    private ModelTrainingScheduler trainingScheduler;
+    @Autowired
+    private TrainingManifest trainingManifest;
+    @Autowired
+    private StudentImportService importService;
 
+    // ✅ Preferred: multipart/form-data with one "images" part per photo, streamed to disk
+    @PostMapping(value = "/register", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Student register(@RequestParam String name, @RequestParam String email,
+                            @RequestParam String registrationNo, @RequestParam String password,
+                            @RequestPart("images") List<MultipartFile> images) {
+        Student saved = registrationService.registerMultipart(name, email, registrationNo, password, images);
+        trainingManifest.recordFolder(new File(saved.getImagePath()));
 
-    private static final String BASE_FOLDER = "D:\\MCA\\III sem\\Major Project\\smart-attendance-system\\python\\registered_images";
+        // ✅ Trigger model training asynchronously (non-blocking)
+        trainingScheduler.requestTraining("register " + registrationNo);
 
-    @PostMapping("/register")
-    public Student register(@RequestBody StudentDTO dto) {
-        Student existing = studentService.getStudentByReg(dto.getRegistrationNo());
-        if (existing != null) {
-            throw new RuntimeException("ALREADY_REGISTERED");
-        }
+        return saved;
+    }
 
-        String folderName = generateFolderName(dto.getName(), dto.getRegistrationNo());
-        File folder = new File(BASE_FOLDER, folderName);
-        if (!folder.exists()) folder.mkdirs();
-
-        try {
-            int count = 1;
-            for (ImageData img : dto.getImages()) {
-                byte[] decodedBytes = Base64.getDecoder().decode(img.getData());
-                File imageFile = new File(folder, "img" + count + ".jpg");
-                try (FileOutputStream fos = new FileOutputStream(imageFile)) {
-                    fos.write(decodedBytes);
-                }
-                count++;
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Error saving images: " + e.getMessage());
-        }
+    // ✅ Legacy JSON body with base64 images; decoded as it is read instead of buffered by Jackson
+    @PostMapping(value = "/register", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Student registerJson(HttpServletRequest request) throws IOException {
+        Student saved = registrationService.registerJson(request.getInputStream());
+        trainingManifest.recordFolder(new File(saved.getImagePath()));
+        trainingScheduler.requestTraining("register " + saved.getRegistrationNo());
+        return saved;
+    }
 
-        Student s = new Student();
-        s.setName(dto.getName());
-        s.setEmail(dto.getEmail());
-        s.setRegistrationNo(dto.getRegistrationNo());
-        s.setPassword(dto.getPassword());
-        s.setImagePath(folder.getAbsolutePath());
+    // ✅ Bulk onboarding: {"csv": "batch.csv", "images": "batch.zip"}, relative to the import folder; one training run at the end
+    @PostMapping("/import")
+    public Map<String, Object> importStudents(@RequestBody ImportDTO dto) {
+        return importService.submit(dto.getCsv(), dto.getImages()).status();
+    }
 
-        Student saved = studentService.registerStudent(s);
+    @GetMapping("/import")
+    public List<Map<String, Object>> importJobs() {
+        return importService.list();
+    }
 
-        // ✅ Trigger model training asynchronously (non-blocking)
-        triggerModelTrainingAsync();
+    @GetMapping("/import/{id}")
+    public Map<String, Object> importJob(@PathVariable String id) {
+        return importService.get(id).status();
+    }
 
-        return saved;
+    @PostMapping("/import/{id}/cancel")
+    public Map<String, Object> cancelImport(@PathVariable String id) {
+        importService.cancel(id);
+        return importService.get(id).status();
     }
 
-    // ✅ Asynchronous Python training
-    // ✅ Asynchronous Python training
-private void triggerModelTrainingAsync() {
-    new Thread(() -> {
-        try {
-            String pythonExe = "python";
-            String scriptPath = "D:\\MCA\\III sem\\Major Project\\smart-attendance-system\\python\\train_model.py";
-            File workingDir = new File("D:\\MCA\\III sem\\Major Project\\smart-attendance-system\\python");
-
-            ProcessBuilder pb = new ProcessBuilder(pythonExe, scriptPath);
-            pb.directory(workingDir); // ✅ ensures correct working directory
-            pb.redirectErrorStream(true);
-
-            // ✅ Fix UnicodeEncodeError on Windows
-            pb.environment().put("PYTHONIOENCODING", "utf-8");
-
-            Process process = pb.start();
-
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream(), "UTF-8"))) {
-                String line;
-                System.out.println("\n🚀 [Async] Face Recognition Model Training Started...");
-                System.out.println("==================================================");
-                while ((line = reader.readLine()) != null) {
-                    System.out.println(line);
-                }
-            }
+    // ✅ Coalesced: a burst of changes becomes one train_model.py run, never two at once
+    @GetMapping("/training/status")
+    public Map<String, Object> trainingStatus() {
+        return trainingScheduler.status();
+    }
 
-            int exitCode = process.waitFor();
-            if (exitCode == 0) {
-                System.out.println("✅ [Async] Training completed successfully!");
-            } else {
-                System.err.println("❌ [Async] Training script exited with code: " + exitCode);
-            }
+    @PostMapping("/training")
+    public Map<String, Object> requestTraining() {
+        trainingManifest.requestFull();
+        trainingScheduler.requestTraining("manual");
+        return trainingScheduler.status();
+    }
 
-        } catch (Exception e) {
-            System.err.println("⚠️ [Async] Error running train_model.py: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }).start(); // Runs in background thread
-}
 
+    // ✅ Manual enrollment. Training fills the matcher by itself (ModelTrainingScheduler loads what
+    // train_model.py --export-embeddings wrote); use this for encodings computed elsewhere. A full
+    // retrain drops students that have no image folder, so these need one to survive it
+    @PutMapping("/{registrationNo}/embeddings")
+    public String enrollEmbeddings(@PathVariable String registrationNo, @RequestBody float[][] embeddings) {
+        if (studentService.getStudentByReg(registrationNo) == null) throw new RuntimeException("Student not found");
+        faceMatchService.enroll(registrationNo, embeddings);
+        return "Enrolled " + embeddings.length + " embeddings for " + registrationNo;
+    }
 
     @GetMapping("/{registrationNo}")
-    public Student get(@PathVariable String registrationNo) {
-        return studentService.getStudentByReg(registrationNo);
+    public StudentView get(@PathVariable String registrationNo) {
+        return studentService.getStudentView(registrationNo);
+    }
+
+    // ✅ Paginated listing: /page?limit=100&cursor=<nextCursor>
+    @GetMapping("/page")
+    public KeysetPage<StudentView> getPage(@RequestParam(required = false) Integer limit,
+                                       @RequestParam(required = false) String cursor) {
+        return studentService.getStudentPage(limit, cursor);
+    }
+
+    @GetMapping("/cache/stats")
+    public Map<String, Object> cacheStats() {
+        return studentService.registryStats();
     }
 
+    /** @deprecated loads the whole table; use {@code /page}. */
+    @Deprecated
     @GetMapping
-    public List<Student> getAll() {
+    public List<StudentView> getAll() {
         return studentService.getAllStudents();
     }
 
@@ -121,18 +138,23 @@ private void triggerModelTrainingAsync() {
 
         String oldFolder = existing.getImagePath();
         if (!existing.getName().equals(updated.getName())) {
-            String newFolderName = generateFolderName(updated.getName(), existing.getRegistrationNo());
             File oldDir = new File(oldFolder);
-            File newDir = new File(BASE_FOLDER, newFolderName);
+            File newDir = registrationService.imageFolder(updated.getName(), existing.getRegistrationNo());
             if (oldDir.exists()) oldDir.renameTo(newDir);
             existing.setImagePath(newDir.getAbsolutePath());
         }
 
         existing.setName(updated.getName());
         existing.setEmail(updated.getEmail());
-        existing.setPassword(updated.getPassword());
+        // Password is no longer sent to the client; a blank one means "keep the current password"
+        if (updated.getPassword() != null && !updated.getPassword().isBlank()) existing.setPassword(updated.getPassword());
 
-        return studentService.updateStudentByReg(registrationNo, existing);
+        Student saved = studentService.updateStudentByReg(registrationNo, existing);
+        if (!Objects.equals(oldFolder, saved.getImagePath())) {
+            trainingManifest.recordRenamed(new File(oldFolder), new File(saved.getImagePath()));
+            trainingScheduler.requestTraining("update " + registrationNo);
+        }
+        return saved;
     }
 
     @DeleteMapping("/{registrationNo}")
@@ -154,6 +176,9 @@ private void triggerModelTrainingAsync() {
 
     // ✅ 3. Delete student from DB
     studentService.deleteStudentByReg(registrationNo);
+    faceMatchService.remove(registrationNo);
+    trainingManifest.recordRemoved(folder);
+    trainingScheduler.requestTraining("delete " + registrationNo);
     return "Student and related attendance deleted successfully!";
     }
 
@@ -169,34 +194,17 @@ private void triggerModelTrainingAsync() {
         folder.delete();
     }
 
-    private String generateFolderName(String name, String regNo) {
-        String digits = regNo.replaceAll("\\D", "");
-        String padded = String.format("%04d", Integer.parseInt(digits.isEmpty() ? "0" : digits));
-        return name.replaceAll("\\s+", "_") + padded;
-    }
-}
+    public static class ImportDTO {
+        private String csv;
+        private String images;
 
-// ✅ DTO Classes (inner classes for simplicity)
-class StudentDTO {
-    private String name;
-    private String email;
-    private String registrationNo;
-    private String password;
-    private List<ImageData> images;
-
-    public String getName() { return name; }
-    public String getEmail() { return email; }
-    public String getRegistrationNo() { return registrationNo; }
-    public String getPassword() { return password; }
-    public List<ImageData> getImages() { return images; }
-}
-
-class ImageData {
-    private String data;
-    public String getData() { return data; }
+        public String getCsv() { return csv; }
+        public void setCsv(String csv) { this.csv = csv; }
+        public String getImages() { return images; }
+        public void setImages(String images) { this.images = images; }
+    }
 }
 
-
 // package com.smartattendence.attendence.controller;
 
 // import com.smartattendence.attendence.entity.Student;
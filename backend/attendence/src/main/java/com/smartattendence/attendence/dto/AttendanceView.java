@@ -0,0 +1,13 @@
+package com.smartattendence.attendence.dto;
+
+import com.smartattendence.attendence.entity.Attendance;
+
+import java.time.LocalDateTime;
+
+/** Read-only attendance row for listings; built by JPQL constructor expressions. */
+public record AttendanceView(Long id, String registrationNo, String name, LocalDateTime timestamp) {
+
+    public static AttendanceView of(Attendance a) {
+        return new AttendanceView(a.getId(), a.getRegistrationNo(), a.getName(), a.getTimestamp());
+    }
+}
@@ -0,0 +1,39 @@
+package com.smartattendence.attendence.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing. {@code nextCursor} is an opaque
+ * token to pass back as {@code cursor}; it is null on the last page.
+ */
+public record KeysetPage<T>(List<T> items, String nextCursor) {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    private static final String SEPARATOR = "\u0000";
+
+    public static int clampLimit(Integer limit) {
+        if (limit == null || limit <= 0) return DEFAULT_LIMIT;
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    /** Packs the sort key of the last row into a URL-safe token. */
+    public static String encodeCursor(String... keyParts) {
+        String raw = String.join(SEPARATOR, keyParts);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String[] decodeCursor(String cursor, int parts) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] keys = raw.split(SEPARATOR, -1);
+            if (keys.length != parts) throw new IllegalArgumentException();
+            return keys;
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+    }
+}
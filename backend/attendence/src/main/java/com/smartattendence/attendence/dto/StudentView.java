@@ -0,0 +1,9 @@
+package com.smartattendence.attendence.dto;
+
+/**
+ * What the student listing and detail pages need. Selected directly by JPQL
+ * constructor expressions, so no entity (and no password or server-side
+ * image path) is loaded or serialized.
+ */
+public record StudentView(String registrationNo, String name, String email) {
+}
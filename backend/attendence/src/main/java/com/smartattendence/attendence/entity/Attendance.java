@@ -1,21 +1,34 @@
 package com.smartattendence.attendence.entity;
 
 import java.time.LocalDateTime;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
 
 @Entity
-@Table(name = "attendance")
+@Table(name = "attendance", indexes = {
+        @Index(name = "idx_attendance_reg_ts", columnList = "registration_no, timestamp"),
+        @Index(name = "idx_attendance_ts", columnList = "timestamp")
+})
 public class Attendance {
+    public static final int ID_ALLOCATION_SIZE = 100;
+
+    // ✅ Pooled table allocator instead of IDENTITY so Hibernate can JDBC-batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "attendance_id")
+    @TableGenerator(name = "attendance_id", table = "id_generator", pkColumnName = "seq_name",
+            valueColumnName = "next_val", pkColumnValue = "attendance", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;  // ✅ new primary key
 
+    @Column(name = "registration_no")
     private String registrationNo;
     private String name;
+    @Column(name = "timestamp")
     private LocalDateTime timestamp;
 
     public Attendance() {}
@@ -0,0 +1,96 @@
+package com.smartattendence.attendence.entity;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import org.springframework.data.domain.Persistable;
+
+/**
+ * Idempotency key of one event applied through the kiosk sync API, with what it did.
+ * Keys are only unique per kiosk (two kiosks may both count from k1-000001), so the
+ * primary key is (kiosk_id, idempotency_key).
+ */
+@Entity
+@Table(name = "attendance_sync_key")
+@IdClass(AttendanceSyncKey.Key.class)
+public class AttendanceSyncKey implements Persistable<AttendanceSyncKey.Key> {
+
+    public static class Key implements Serializable {
+        private String kioskId;
+        private String key;
+
+        public Key() {}
+
+        public Key(String kioskId, String key) {
+            this.kioskId = kioskId;
+            this.key = key;
+        }
+
+        public String getKioskId() { return kioskId; }
+        public String getKey() { return key; }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && Objects.equals(kioskId, k.kioskId) && Objects.equals(key, k.key);
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(kioskId, key); }
+    }
+
+    @Id
+    @Column(name = "kiosk_id", length = 64)
+    private String kioskId;
+
+    @Id
+    @Column(name = "idempotency_key", length = 64)
+    private String key;
+
+    @Column(length = 16)
+    private String outcome; // APPLIED or ALREADY_MARKED
+
+    @Column(name = "attendance_id")
+    private Long attendanceId;
+
+    @Column(name = "applied_at")
+    private LocalDateTime appliedAt;
+
+    // ✅ Keys are only ever inserted, so saveAll persists without a SELECT per row
+    @Transient
+    private boolean isNew = true;
+
+    public AttendanceSyncKey() {}
+
+    public AttendanceSyncKey(String key, String kioskId, String outcome, Long attendanceId) {
+        this.key = key;
+        this.kioskId = kioskId;
+        this.outcome = outcome;
+        this.attendanceId = attendanceId;
+        this.appliedAt = LocalDateTime.now();
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() { this.isNew = false; }
+
+    @Override
+    public Key getId() { return new Key(kioskId, key); }
+
+    @Override
+    public boolean isNew() { return isNew; }
+
+    public String getKey() { return key; }
+    public String getKioskId() { return kioskId; }
+    public String getOutcome() { return outcome; }
+    public Long getAttendanceId() { return attendanceId; }
+    public void setAttendanceId(Long attendanceId) { this.attendanceId = attendanceId; }
+    public LocalDateTime getAppliedAt() { return appliedAt; }
+}
@@ -0,0 +1,28 @@
+package com.smartattendence.attendence.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Highest write-ahead log sequence number already applied to the attendance
+ * table. Written in the same transaction as the rows it covers, so replaying
+ * the log after a crash never inserts a mark twice.
+ */
+@Entity
+@Table(name = "attendance_wal_checkpoint")
+public class AttendanceWalCheckpoint {
+
+    @Id
+    @Column(name = "log_name", length = 32)
+    private String logName;
+
+    @Column(nullable = false)
+    private Long lsn;
+
+    public String getLogName() { return logName; }
+    public void setLogName(String logName) { this.logName = logName; }
+    public Long getLsn() { return lsn; }
+    public void setLsn(Long lsn) { this.lsn = lsn; }
+}
@@ -0,0 +1,233 @@
+package com.smartattendence.attendence.recognition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory store of every registered student's face embeddings.
+ *
+ * Rows live in fixed-size primitive float blocks (BLOCK_ROWS rows each), so a
+ * scan walks contiguous memory with no per-row objects. Each row remembers the
+ * student slot that owns it. Removal swaps the last row into the hole, keeping
+ * the blocks dense. Readers share a read lock; register/delete take the write lock.
+ */
+public class EmbeddingGallery implements EmbeddingStore {
+
+    static final int BLOCK_ROWS = 1024;
+    private static final int PARALLEL_MIN_ROWS = 8 * BLOCK_ROWS;
+
+    private final int dim;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private float[][] blocks = new float[0][];
+    private int[] rowOwner = new int[BLOCK_ROWS];
+    private float[] rowInvNorm = new float[BLOCK_ROWS];
+    private int size;
+
+    private final List<String> slotRegNo = new ArrayList<>();
+    private final Map<String, Integer> slotByReg = new HashMap<>();
+    private final List<Integer> freeSlots = new ArrayList<>();
+
+    public EmbeddingGallery(int dim) {
+        if (dim <= 0) throw new IllegalArgumentException("Embedding dimension must be positive");
+        this.dim = dim;
+    }
+
+    @Override
+    public int dimension() { return dim; }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try { return size; } finally { lock.readLock().unlock(); }
+    }
+
+    @Override
+    public int studentCount() {
+        lock.readLock().lock();
+        try { return slotByReg.size(); } finally { lock.readLock().unlock(); }
+    }
+
+    @Override
+    public Set<String> registrationNos() {
+        lock.readLock().lock();
+        try { return new HashSet<>(slotByReg.keySet()); } finally { lock.readLock().unlock(); }
+    }
+
+    public boolean contains(String regNo) {
+        lock.readLock().lock();
+        try { return slotByReg.containsKey(regNo); } finally { lock.readLock().unlock(); }
+    }
+
+    @Override
+    public void put(String regNo, float[][] embeddings) {
+        for (float[] e : embeddings) checkDim(e);
+        lock.writeLock().lock();
+        try {
+            removeRows(regNo);
+            Integer slot = slotByReg.get(regNo);
+            if (slot == null) {
+                slot = freeSlots.isEmpty() ? slotRegNo.size() : freeSlots.remove(freeSlots.size() - 1);
+                if (slot == slotRegNo.size()) slotRegNo.add(regNo);
+                else slotRegNo.set(slot, regNo);
+                slotByReg.put(regNo, slot);
+            }
+            for (float[] e : embeddings) appendRow(slot, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(String regNo) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotByReg.remove(regNo);
+            if (slot == null) return false;
+            removeRows(slot);
+            slotRegNo.set(slot, null);
+            freeSlots.add(slot);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Exact nearest-neighbour search over every stored row. */
+    @Override
+    public MatchResult search(float[] query, Metric metric, float threshold) {
+        checkDim(query);
+        float queryInvNorm = inverseNorm(query, 0);
+        lock.readLock().lock();
+        try {
+            if (size == 0) return null;
+            int blockCount = (size + BLOCK_ROWS - 1) / BLOCK_ROWS;
+            long best;
+            if (size >= PARALLEL_MIN_ROWS) {
+                best = IntStream.range(0, blockCount).parallel()
+                        .mapToLong(b -> scanBlock(b, query, queryInvNorm, metric))
+                        .reduce(Long.MAX_VALUE, EmbeddingGallery::closer);
+            } else {
+                best = Long.MAX_VALUE;
+                for (int b = 0; b < blockCount; b++) {
+                    best = closer(best, scanBlock(b, query, queryInvNorm, metric));
+                }
+            }
+            int row = (int) best;
+            float score = Float.intBitsToFloat((int) (best >>> 32));
+            float distance = metric == Metric.L2 ? (float) Math.sqrt(score) : score;
+            return toResult(slotRegNo.get(rowOwner[row]), distance, threshold);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<float[]> sample(int count, Random random) {
+        lock.readLock().lock();
+        try {
+            List<float[]> out = new ArrayList<>(Math.min(count, size));
+            for (int i = 0; i < count && size > 0; i++) {
+                int row = random.nextInt(size);
+                float[] v = new float[dim];
+                System.arraycopy(blocks[row / BLOCK_ROWS], (row % BLOCK_ROWS) * dim, v, 0, dim);
+                out.add(v);
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static MatchResult toResult(String regNo, float distance, float threshold) {
+        float confidence = Math.max(0f, 1f - distance / threshold);
+        return new MatchResult(regNo, distance, confidence, distance < threshold);
+    }
+
+    // Packs (score, row) into one long so parallel reduction needs no objects.
+    // Scores are non-negative, so their float bits sort the same way as the floats.
+    private long scanBlock(int b, float[] query, float queryInvNorm, Metric metric) {
+        float[] block = blocks[b];
+        int rows = Math.min(BLOCK_ROWS, size - b * BLOCK_ROWS);
+        float bestScore = Float.MAX_VALUE;
+        int bestRow = -1;
+        for (int r = 0; r < rows; r++) {
+            int row = b * BLOCK_ROWS + r;
+            float score;
+            if (metric == Metric.L2) {
+                score = VectorMath.l2Squared(block, r * dim, query, 0, dim);
+            } else {
+                float sim = VectorMath.dot(block, r * dim, query, 0, dim) * rowInvNorm[row] * queryInvNorm;
+                score = Math.max(0f, 1f - sim);
+            }
+            if (score < bestScore) {
+                bestScore = score;
+                bestRow = row;
+            }
+        }
+        return ((long) Float.floatToIntBits(bestScore) << 32) | (bestRow & 0xffffffffL);
+    }
+
+    private static long closer(long a, long b) {
+        return (a >>> 32) <= (b >>> 32) ? a : b;
+    }
+
+    private void appendRow(int slot, float[] e) {
+        int block = size / BLOCK_ROWS;
+        if (block == blocks.length) {
+            blocks = Arrays.copyOf(blocks, block + 1);
+            blocks[block] = new float[BLOCK_ROWS * dim];
+            rowOwner = Arrays.copyOf(rowOwner, (block + 1) * BLOCK_ROWS);
+            rowInvNorm = Arrays.copyOf(rowInvNorm, (block + 1) * BLOCK_ROWS);
+        }
+        System.arraycopy(e, 0, blocks[block], (size % BLOCK_ROWS) * dim, dim);
+        rowOwner[size] = slot;
+        rowInvNorm[size] = inverseNorm(e, 0);
+        size++;
+    }
+
+    private void removeRows(String regNo) {
+        Integer slot = slotByReg.get(regNo);
+        if (slot != null) removeRows(slot);
+    }
+
+    private void removeRows(int slot) {
+        int row = 0;
+        while (row < size) {
+            if (rowOwner[row] == slot) {
+                moveRow(size - 1, row);
+                size--;
+            } else {
+                row++;
+            }
+        }
+    }
+
+    private void moveRow(int from, int to) {
+        if (from != to) {
+            System.arraycopy(blocks[from / BLOCK_ROWS], (from % BLOCK_ROWS) * dim,
+                    blocks[to / BLOCK_ROWS], (to % BLOCK_ROWS) * dim, dim);
+            rowOwner[to] = rowOwner[from];
+            rowInvNorm[to] = rowInvNorm[from];
+        }
+    }
+
+    private float inverseNorm(float[] v, int off) {
+        float n = VectorMath.norm(v, off, dim);
+        return n == 0f ? 0f : 1f / n;
+    }
+
+    private void checkDim(float[] e) {
+        if (e == null || e.length != dim) {
+            throw new IllegalArgumentException("Expected embedding of dimension " + dim);
+        }
+    }
+}
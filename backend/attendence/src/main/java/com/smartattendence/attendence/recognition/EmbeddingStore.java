@@ -0,0 +1,33 @@
+package com.smartattendence.attendence.recognition;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Exhaustive per-student embedding storage searched by the matcher.
+ * Implemented by the float gallery and the quantized gallery.
+ */
+public interface EmbeddingStore {
+
+    int dimension();
+
+    /** Number of stored embeddings (rows). */
+    int size();
+
+    int studentCount();
+
+    /** Snapshot of the registration numbers that have embeddings stored. */
+    Set<String> registrationNos();
+
+    /** Replaces all embeddings stored for this student. */
+    void put(String regNo, float[][] embeddings);
+
+    boolean remove(String regNo);
+
+    /** Best match for the probe, or null when the store is empty. */
+    MatchResult search(float[] query, Metric metric, float threshold);
+
+    /** Copies of up to {@code count} randomly chosen stored rows. */
+    List<float[]> sample(int count, Random random);
+}
@@ -0,0 +1,123 @@
+package com.smartattendence.attendence.recognition;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only, memory-mapped view of a binary embedding gallery (replaces trained_face_model.pkl).
+ *
+ * Layout, all little-endian:
+ * <pre>
+ *   0  magic "AXGL"          4 bytes
+ *   4  version               u16 (= 1)
+ *   6  flags                 u16 (reserved, 0)
+ *   8  dimension             i32
+ *  12  rowCount              i32   committed rows; writers bump this last
+ *  16  capacity              i32   rows reserved in the owner table and float block
+ *  20  dictCount             i32   registration numbers in the dictionary
+ *  24  dictOffset            i64
+ *  32  dictBytes             i64
+ *  40  reserved              24 bytes
+ *  64  owner table           capacity x i32 (dictionary id, -1 = deleted row)
+ *      float block           capacity x dimension x f32, 64-byte aligned, fixed stride
+ *      dictionary            dictCount x (u16 length + UTF-8 registration number)
+ * </pre>
+ * The dictionary sits at the end of the file so appends never move the float block.
+ */
+public final class GalleryFile {
+
+    static final int MAGIC = 0x4C475841; // "AXGL" read little-endian
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 64;
+
+    private final int dimension;
+    private final int rowCount;
+    private final IntBuffer owners;
+    private final FloatBuffer vectors;
+    private final List<String> dictionary;
+
+    private GalleryFile(MappedByteBuffer map) {
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        if (map.getInt(0) != MAGIC) throw new IllegalStateException("Not an embedding gallery file");
+        short version = map.getShort(4);
+        if (version != VERSION) throw new IllegalStateException("Unsupported gallery version " + version);
+        this.dimension = map.getInt(8);
+        this.rowCount = map.getInt(12);
+        int capacity = map.getInt(16);
+        int dictCount = map.getInt(20);
+        long dictOffset = map.getLong(24);
+
+        checkMappable(capacity, dimension);
+        long floatStart = floatBlockOffset(capacity);
+        long floatBytes = (long) capacity * dimension * 4;
+        if (floatStart + floatBytes > map.capacity()) throw new IllegalStateException("Gallery file is truncated");
+        this.owners = map.slice(HEADER_BYTES, capacity * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        this.vectors = map.slice((int) floatStart, (int) floatBytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+        this.dictionary = new ArrayList<>(dictCount);
+        int pos = (int) dictOffset;
+        for (int i = 0; i < dictCount; i++) {
+            int len = Short.toUnsignedInt(map.getShort(pos));
+            byte[] bytes = new byte[len];
+            map.get(pos + 2, bytes);
+            dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+            pos += 2 + len;
+        }
+    }
+
+    public static GalleryFile open(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            return new GalleryFile(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    static long floatBlockOffset(int capacity) {
+        long end = HEADER_BYTES + capacity * 4L;
+        return (end + 63) & ~63L;
+    }
+
+    /** A gallery is mapped as one buffer, so its float block must end below 2 GB. */
+    static void checkMappable(int capacity, int dimension) {
+        if (capacity < 0 || dimension <= 0) throw new IllegalStateException("Bad gallery shape " + capacity + " x " + dimension);
+        long end = floatBlockOffset(capacity) + (long) capacity * dimension * 4;
+        if (end > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Gallery of " + capacity + " x " + dimension + " floats is too large to map");
+        }
+    }
+
+    public int dimension() { return dimension; }
+    public int rowCount() { return rowCount; }
+
+    /** Copies row {@code row} of the float block, committed or not, into {@code dst}. */
+    public void readRow(int row, float[] dst) {
+        vectors.get(row * dimension, dst, 0, dimension);
+    }
+
+    /** Live embeddings grouped by registration number, in file order. */
+    public Map<String, float[][]> embeddingsByStudent() {
+        Map<Integer, List<Integer>> rowsByOwner = new LinkedHashMap<>();
+        for (int row = 0; row < rowCount; row++) {
+            int owner = owners.get(row);
+            if (owner >= 0) rowsByOwner.computeIfAbsent(owner, o -> new ArrayList<>()).add(row);
+        }
+        Map<String, float[][]> out = new LinkedHashMap<>();
+        rowsByOwner.forEach((owner, rows) -> {
+            float[][] vs = new float[rows.size()][dimension];
+            for (int i = 0; i < vs.length; i++) vectors.get(rows.get(i) * dimension, vs[i]);
+            out.put(dictionary.get(owner), vs);
+        });
+        return out;
+    }
+}
@@ -0,0 +1,273 @@
+package com.smartattendence.attendence.recognition;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.smartattendence.attendence.recognition.GalleryFile.HEADER_BYTES;
+import static com.smartattendence.attendence.recognition.GalleryFile.floatBlockOffset;
+
+/**
+ * Appends registrations to a {@link GalleryFile} in place.
+ *
+ * New rows go into the reserved capacity and new registration numbers onto the
+ * end of the dictionary; the header counts are written and forced last, so a
+ * crash mid-append leaves the previous gallery intact. Re-enrolling a student
+ * tombstones their old rows only after the new ones are committed: a crash in
+ * between leaves both sets live (until the next enrolment), never neither.
+ * Only when capacity runs out is the file rewritten (compacted, doubled,
+ * atomically renamed over the old one); that renumbers the rows and replaces
+ * {@link #view()}.
+ */
+public class GalleryFileWriter implements Closeable {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final Path path;
+    private FileChannel channel;
+    private int dimension;
+    private int rowCount;
+    private int capacity;
+    private long dictOffset;
+    private long dictBytes;
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> idByReg = new HashMap<>();
+    private final Map<Integer, List<Integer>> rowsById = new HashMap<>();
+    private GalleryFile view;
+
+    private GalleryFileWriter(Path path) {
+        this.path = path;
+    }
+
+    /** Opens an existing gallery, or creates an empty one with the given dimension. */
+    public static GalleryFileWriter openOrCreate(Path path, int dimension) throws IOException {
+        GalleryFileWriter w = new GalleryFileWriter(path);
+        if (Files.exists(path)) {
+            w.load();
+            if (w.dimension != dimension) {
+                w.close();
+                throw new IllegalStateException("Gallery file has dimension " + w.dimension + ", expected " + dimension);
+            }
+        } else {
+            if (path.getParent() != null) Files.createDirectories(path.getParent());
+            writeEmpty(path, dimension, DEFAULT_CAPACITY);
+            w.load();
+        }
+        w.view = GalleryFile.open(path);
+        return w;
+    }
+
+    public int dimension() { return dimension; }
+
+    /**
+     * Read-only mapping of the current file. Rows appended later read through it
+     * as well; its header counts are those of when it was opened.
+     */
+    public synchronized GalleryFile view() {
+        return view;
+    }
+
+    /** Row numbers of every student with live rows, in dictionary order. */
+    public synchronized Map<String, int[]> liveRows() {
+        Map<String, int[]> out = new LinkedHashMap<>();
+        for (int id = 0; id < dictionary.size(); id++) {
+            List<Integer> rows = rowsById.get(id);
+            if (!rows.isEmpty()) out.put(dictionary.get(id), rows.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return out;
+    }
+
+    /** @return the row numbers the embeddings were written to */
+    public synchronized int[] append(String regNo, float[][] embeddings) throws IOException {
+        for (float[] e : embeddings) {
+            if (e.length != dimension) throw new IllegalArgumentException("Expected embedding of dimension " + dimension);
+        }
+        if (rowCount + embeddings.length > capacity) {
+            int live = 0;
+            for (List<Integer> rows : rowsById.values()) live += rows.size();
+            // The old rows stay live until the new ones are committed, so both must fit
+            grow(Math.max(capacity * 2, (live + embeddings.length) * 2));
+        }
+        Integer id = idByReg.get(regNo);
+        if (id == null) id = addToDictionary(regNo);
+        List<Integer> old = rowsById.get(id);
+
+        List<Integer> rows = new ArrayList<>();
+        ByteBuffer row = ByteBuffer.allocate(dimension * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (float[] e : embeddings) {
+            row.clear();
+            row.asFloatBuffer().put(e);
+            writeFully(row, floatBlockOffset(capacity) + (long) rowCount * dimension * 4);
+            writeInt(HEADER_BYTES + rowCount * 4L, id);
+            rows.add(rowCount);
+            rowCount++;
+        }
+        commit();
+        rowsById.put(id, rows);
+        if (!old.isEmpty()) {
+            tombstone(old);
+            channel.force(false);
+        }
+        return rows.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public synchronized boolean remove(String regNo) throws IOException {
+        Integer id = idByReg.get(regNo);
+        if (id == null || rowsById.get(id).isEmpty()) return false;
+        tombstone(rowsById.get(id));
+        channel.force(false);
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+
+    private void tombstone(List<Integer> rows) throws IOException {
+        for (int row : rows) writeInt(HEADER_BYTES + row * 4L, -1);
+        rows.clear();
+    }
+
+    private int addToDictionary(String regNo) throws IOException {
+        byte[] bytes = regNo.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) throw new IllegalArgumentException("Registration number too long");
+        ByteBuffer entry = ByteBuffer.allocate(2 + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putShort((short) bytes.length).put(bytes).flip();
+        writeFully(entry, dictOffset + dictBytes);
+        dictBytes += entry.capacity();
+        int id = dictionary.size();
+        dictionary.add(regNo);
+        idByReg.put(regNo, id);
+        rowsById.put(id, new ArrayList<>());
+        return id;
+    }
+
+    // Data first, then the header that makes it visible.
+    private void commit() throws IOException {
+        channel.force(false);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES - 12).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(rowCount).putInt(capacity).putInt(dictionary.size()).putLong(dictOffset).putLong(dictBytes).flip();
+        writeFully(header, 12);
+        channel.force(false);
+    }
+
+    private void grow(int newCapacity) throws IOException {
+        GalleryFile.checkMappable(newCapacity, dimension);
+        Map<String, float[][]> live;
+        try {
+            live = GalleryFile.open(path).embeddingsByStudent();
+        } finally {
+            channel.close();
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        writeEmpty(tmp, dimension, newCapacity);
+        GalleryFileWriter fresh = new GalleryFileWriter(tmp);
+        fresh.load();
+        for (Map.Entry<String, float[][]> e : live.entrySet()) fresh.appendRows(e.getKey(), e.getValue());
+        fresh.commit();
+        fresh.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dictionary.clear();
+        idByReg.clear();
+        rowsById.clear();
+        load();
+        view = GalleryFile.open(path);
+    }
+
+    // Same as append() but without capacity checks or commit, for bulk copy into a fresh file.
+    private void appendRows(String regNo, float[][] embeddings) throws IOException {
+        int id = addToDictionary(regNo);
+        List<Integer> rows = rowsById.get(id);
+        ByteBuffer row = ByteBuffer.allocate(dimension * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (float[] e : embeddings) {
+            row.clear();
+            row.asFloatBuffer().put(e);
+            writeFully(row, floatBlockOffset(capacity) + (long) rowCount * dimension * 4);
+            writeInt(HEADER_BYTES + rowCount * 4L, id);
+            rows.add(rowCount);
+            rowCount++;
+        }
+    }
+
+    private void load() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt(0) != GalleryFile.MAGIC) throw new IllegalStateException("Not an embedding gallery file");
+        dimension = header.getInt(8);
+        rowCount = header.getInt(12);
+        capacity = header.getInt(16);
+        int dictCount = header.getInt(20);
+        dictOffset = header.getLong(24);
+        dictBytes = header.getLong(32);
+
+        ByteBuffer dict = ByteBuffer.allocate((int) dictBytes).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(dict, dictOffset);
+        dict.flip();
+        for (int i = 0; i < dictCount; i++) {
+            byte[] bytes = new byte[Short.toUnsignedInt(dict.getShort())];
+            dict.get(bytes);
+            String reg = new String(bytes, StandardCharsets.UTF_8);
+            idByReg.put(reg, dictionary.size());
+            // Every dictionary entry gets a row list, also students whose rows are all tombstoned
+            rowsById.put(dictionary.size(), new ArrayList<>());
+            dictionary.add(reg);
+        }
+
+        ByteBuffer owners = ByteBuffer.allocate(rowCount * 4).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(owners, HEADER_BYTES);
+        owners.flip();
+        for (int row = 0; row < rowCount; row++) {
+            int owner = owners.getInt();
+            if (owner >= 0) rowsById.get(owner).add(row);
+        }
+    }
+
+    private static void writeEmpty(Path target, int dimension, int capacity) throws IOException {
+        long dictOffset = floatBlockOffset(capacity) + (long) capacity * dimension * 4;
+        try (FileChannel ch = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(GalleryFile.MAGIC).putShort(GalleryFile.VERSION).putShort((short) 0)
+                    .putInt(dimension).putInt(0).putInt(capacity).putInt(0)
+                    .putLong(dictOffset).putLong(0);
+            header.clear();
+            ch.write(header, 0);
+            // Extend to the end of the float block; the gap reads back as zeros.
+            ch.write(ByteBuffer.allocate(1), dictOffset - 1);
+            ch.force(true);
+        }
+    }
+
+    private void writeInt(long position, int value) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value);
+        b.flip();
+        writeFully(b, position);
+    }
+
+    private void writeFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) position += channel.write(buf, position);
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) throw new IOException("Unexpected end of gallery file");
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.smartattendence.attendence.recognition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hierarchical Navigable Small World graph over face embeddings.
+ *
+ * Writers (enroll / delete) are serialized on the index monitor. Readers take
+ * no lock at all: nodes are immutable once published, neighbour lists are
+ * swapped as whole arrays through AtomicReferenceArray, and the entry point
+ * is a single volatile reference. A reader therefore always walks a
+ * consistent, if slightly stale, graph.
+ *
+ * Deleted embeddings are tombstoned (still traversed, never returned) and the
+ * graph is rebuilt once tombstones pass {@link #REBUILD_TOMBSTONE_RATIO}.
+ */
+public class HnswIndex {
+
+    static final double REBUILD_TOMBSTONE_RATIO = 0.25;
+
+    private final int dim;
+    private final Metric metric;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double levelMult;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private volatile Graph graph = new Graph(new Node[64], null, 0);
+    private final Map<String, int[]> nodesByReg = new HashMap<>();
+    private int tombstones;
+
+    private static final ThreadLocal<int[]> VISITED = ThreadLocal.withInitial(() -> new int[0]);
+    private static final ThreadLocal<int[]> VISIT_EPOCH = ThreadLocal.withInitial(() -> new int[1]);
+
+    public HnswIndex(int dim, Metric metric, int m, int efConstruction, int efSearch) {
+        if (m < 2) throw new IllegalArgumentException("M must be at least 2");
+        this.dim = dim;
+        this.metric = metric;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMult = 1.0 / Math.log(m);
+    }
+
+    public int dimension() { return dim; }
+    public int getEfSearch() { return efSearch; }
+    public void setEfSearch(int efSearch) { this.efSearch = Math.max(1, efSearch); }
+
+    /** Number of live (non-deleted) embeddings. */
+    public synchronized int size() {
+        return graph.count - tombstones;
+    }
+
+    /** Replaces every embedding stored for this student. */
+    public synchronized void put(String regNo, float[][] embeddings) {
+        if (removeLocked(regNo)) rebuildIfSparse(); // re-enrolment leaves tombstones just like remove
+        int[] ids = new int[embeddings.length];
+        for (int i = 0; i < embeddings.length; i++) {
+            ids[i] = insert(regNo, prepare(embeddings[i]));
+        }
+        nodesByReg.put(regNo, ids);
+    }
+
+    public synchronized boolean remove(String regNo) {
+        boolean removed = removeLocked(regNo);
+        if (removed) rebuildIfSparse();
+        return removed;
+    }
+
+    synchronized int tombstones() {
+        return tombstones;
+    }
+
+    /** Best student for the probe, or null when the index is empty. */
+    public MatchResult search(float[] query, float threshold) {
+        return search(query, threshold, efSearch);
+    }
+
+    public MatchResult search(float[] query, float threshold, int ef) {
+        Node[] best = searchNodes(query, 1, ef);
+        if (best.length == 0) return null;
+        float[] q = prepare(query);
+        return EmbeddingGallery.toResult(best[0].regNo, finalDistance(distance(q, best[0].vector)), threshold);
+    }
+
+    /** Up to k closest live nodes, nearest first. */
+    Node[] searchNodes(float[] query, int k, int ef) {
+        if (query.length != dim) throw new IllegalArgumentException("Expected embedding of dimension " + dim);
+        Graph g = graph;
+        Node entry = g.entry;
+        if (entry == null) return new Node[0];
+        float[] q = prepare(query);
+
+        Node cur = entry;
+        float curDist = distance(q, cur.vector);
+        for (int level = entry.level; level > 0; level--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int n : cur.neighbours(level)) {
+                    if (n >= g.count) continue; // linked after this snapshot was taken
+                    Node cand = g.nodes[n];
+                    float d = distance(q, cand.vector);
+                    if (d < curDist) {
+                        curDist = d;
+                        cur = cand;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        PriorityQueue<Scored> found = searchLayer(g, q, cur, curDist, Math.max(ef, k), 0, true);
+        Scored[] sorted = found.toArray(new Scored[0]);
+        Arrays.sort(sorted, (a, b) -> Float.compare(a.dist, b.dist));
+        Node[] out = new Node[Math.min(k, sorted.length)];
+        for (int i = 0; i < out.length; i++) out[i] = g.nodes[sorted[i].id];
+        return out;
+    }
+
+    private int insert(String regNo, float[] vector) {
+        Graph g = graph;
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMult);
+        int id = g.count;
+        Node[] nodes = g.nodes;
+        if (id == nodes.length) nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        Node node = new Node(id, regNo, vector, level);
+        nodes[id] = node;
+
+        Node entry = g.entry;
+        if (entry == null) {
+            graph = new Graph(nodes, node, id + 1);
+            return id;
+        }
+        // Publish the node array first so readers following new links can resolve the id.
+        Graph withNode = new Graph(nodes, entry, id + 1);
+        graph = withNode;
+
+        Node cur = entry;
+        float curDist = distance(vector, cur.vector);
+        for (int l = entry.level; l > level; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int n : cur.neighbours(l)) {
+                    float d = distance(vector, nodes[n].vector);
+                    if (d < curDist) {
+                        curDist = d;
+                        cur = nodes[n];
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        for (int l = Math.min(level, entry.level); l >= 0; l--) {
+            PriorityQueue<Scored> candidates = searchLayer(withNode, vector, cur, curDist, efConstruction, l, false);
+            int maxLinks = l == 0 ? maxM0 : m;
+            int[] selected = selectNeighbours(nodes, candidates, m);
+            node.setNeighbours(l, selected);
+            for (int n : selected) {
+                Node other = nodes[n];
+                int[] existing = other.neighbours(l);
+                int[] grown = Arrays.copyOf(existing, existing.length + 1);
+                grown[existing.length] = id;
+                if (grown.length > maxLinks) grown = shrink(nodes, other, grown, maxLinks);
+                other.setNeighbours(l, grown);
+            }
+            Scored closest = null;
+            for (Scored s : candidates) if (closest == null || s.dist < closest.dist) closest = s;
+            cur = nodes[closest.id];
+            curDist = closest.dist;
+        }
+
+        if (level > entry.level) graph = new Graph(nodes, node, id + 1);
+        return id;
+    }
+
+    // Max-heap of the ef closest nodes found in one layer.
+    private PriorityQueue<Scored> searchLayer(Graph g, float[] q, Node start, float startDist,
+                                              int ef, int level, boolean liveOnly) {
+        int[] visited = visitedFor(g.count);
+        int epoch = nextEpoch(visited);
+        PriorityQueue<Scored> candidates = new PriorityQueue<>((a, b) -> Float.compare(a.dist, b.dist));
+        PriorityQueue<Scored> results = new PriorityQueue<>((a, b) -> Float.compare(b.dist, a.dist));
+        Scored first = new Scored(start.id, startDist);
+        candidates.add(first);
+        if (!liveOnly || !start.deleted) results.add(first);
+        visited[start.id] = epoch;
+
+        while (!candidates.isEmpty()) {
+            Scored c = candidates.poll();
+            if (results.size() >= ef && c.dist > results.peek().dist) break;
+            for (int n : g.nodes[c.id].neighbours(level)) {
+                if (n >= g.count || visited[n] == epoch) continue;
+                visited[n] = epoch;
+                Node other = g.nodes[n];
+                float d = distance(q, other.vector);
+                if (results.size() < ef || d < results.peek().dist) {
+                    Scored s = new Scored(n, d);
+                    candidates.add(s);
+                    if (!liveOnly || !other.deleted) {
+                        results.add(s);
+                        if (results.size() > ef) results.poll();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // Heuristic from the HNSW paper: keep a candidate only if it is closer to the
+    // query than to every neighbour already kept, which preserves graph diversity.
+    private int[] selectNeighbours(Node[] nodes, PriorityQueue<Scored> candidates, int count) {
+        Scored[] sorted = candidates.toArray(new Scored[0]);
+        Arrays.sort(sorted, (a, b) -> Float.compare(a.dist, b.dist));
+        List<Integer> kept = new ArrayList<>(count);
+        for (Scored s : sorted) {
+            if (kept.size() >= count) break;
+            boolean diverse = true;
+            for (int k : kept) {
+                if (distance(nodes[s.id].vector, nodes[k].vector) < s.dist) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) kept.add(s.id);
+        }
+        for (Scored s : sorted) {
+            if (kept.size() >= count) break;
+            if (!kept.contains(s.id)) kept.add(s.id);
+        }
+        return kept.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private int[] shrink(Node[] nodes, Node owner, int[] links, int maxLinks) {
+        PriorityQueue<Scored> scored = new PriorityQueue<>((a, b) -> Float.compare(b.dist, a.dist));
+        for (int n : links) scored.add(new Scored(n, distance(owner.vector, nodes[n].vector)));
+        return selectNeighbours(nodes, scored, maxLinks);
+    }
+
+    private boolean removeLocked(String regNo) {
+        int[] ids = nodesByReg.remove(regNo);
+        if (ids == null) return false;
+        Node[] nodes = graph.nodes;
+        for (int id : ids) {
+            nodes[id].deleted = true;
+            tombstones++;
+        }
+        return true;
+    }
+
+    private void rebuildIfSparse() {
+        if (tombstones > graph.count * REBUILD_TOMBSTONE_RATIO) rebuild();
+    }
+
+    // Builds a fresh graph from the live embeddings on the side, then swaps it in;
+    // readers keep walking the old graph until the single volatile write.
+    private void rebuild() {
+        HnswIndex fresh = new HnswIndex(dim, metric, m, efConstruction, efSearch);
+        Graph old = graph;
+        Map<String, List<Integer>> ids = new HashMap<>();
+        for (int i = 0; i < old.count; i++) {
+            Node n = old.nodes[i];
+            if (n.deleted) continue;
+            ids.computeIfAbsent(n.regNo, r -> new ArrayList<>()).add(fresh.insert(n.regNo, n.vector));
+        }
+        nodesByReg.clear();
+        ids.forEach((reg, list) -> nodesByReg.put(reg, list.stream().mapToInt(Integer::intValue).toArray()));
+        tombstones = 0;
+        graph = fresh.graph;
+    }
+
+    private float[] prepare(float[] v) {
+        if (v.length != dim) throw new IllegalArgumentException("Expected embedding of dimension " + dim);
+        if (metric == Metric.L2) return v;
+        float norm = VectorMath.norm(v, 0, dim);
+        float[] out = new float[dim];
+        if (norm > 0f) for (int i = 0; i < dim; i++) out[i] = v[i] / norm;
+        return out;
+    }
+
+    private float distance(float[] a, float[] b) {
+        if (metric == Metric.L2) return VectorMath.l2Squared(a, 0, b, 0, dim);
+        return Math.max(0f, 1f - VectorMath.dot(a, 0, b, 0, dim));
+    }
+
+    float finalDistance(float d) {
+        return metric == Metric.L2 ? (float) Math.sqrt(d) : d;
+    }
+
+    private static int[] visitedFor(int count) {
+        int[] visited = VISITED.get();
+        if (visited.length < count) {
+            visited = new int[Math.max(count, visited.length * 2)];
+            VISITED.set(visited);
+            VISIT_EPOCH.get()[0] = 0;
+        }
+        return visited;
+    }
+
+    private static int nextEpoch(int[] visited) {
+        int[] epoch = VISIT_EPOCH.get();
+        if (++epoch[0] == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            epoch[0] = 1;
+        }
+        return epoch[0];
+    }
+
+    private record Graph(Node[] nodes, Node entry, int count) {}
+
+    private record Scored(int id, float dist) {}
+
+    static final class Node {
+        private static final int[] EMPTY = new int[0];
+
+        final int id;
+        final String regNo;
+        final float[] vector;
+        final int level;
+        volatile boolean deleted;
+        private final AtomicReferenceArray<int[]> links;
+
+        Node(int id, String regNo, float[] vector, int level) {
+            this.id = id;
+            this.regNo = regNo;
+            this.vector = vector;
+            this.level = level;
+            this.links = new AtomicReferenceArray<>(level + 1);
+            for (int l = 0; l <= level; l++) links.set(l, EMPTY);
+        }
+
+        int[] neighbours(int level) {
+            return level < links.length() ? links.get(level) : EMPTY;
+        }
+
+        void setNeighbours(int level, int[] ids) {
+            links.set(level, ids);
+        }
+    }
+}
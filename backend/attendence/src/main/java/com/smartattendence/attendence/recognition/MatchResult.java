@@ -0,0 +1,12 @@
+package com.smartattendence.attendence.recognition;
+
+/**
+ * Best gallery hit for one probe embedding.
+ *
+ * @param registrationNo owner of the closest stored embedding
+ * @param distance       metric score, lower is closer
+ * @param confidence     0..1, same formula as the Python model: max(0, 1 - distance / threshold)
+ * @param matched        true when distance is under the configured threshold
+ */
+public record MatchResult(String registrationNo, float distance, float confidence, boolean matched) {
+}
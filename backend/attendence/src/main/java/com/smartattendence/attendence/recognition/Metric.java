@@ -0,0 +1,10 @@
+package com.smartattendence.attendence.recognition;
+
+/**
+ * Distance used by the matcher. Scores are always "lower is better":
+ * L2 returns the euclidean distance, COSINE returns 1 - cosine similarity.
+ */
+public enum Metric {
+    L2,
+    COSINE
+}
@@ -0,0 +1,104 @@
+package com.smartattendence.attendence.recognition;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 64-bit difference hash (dHash) of an image: the frame is reduced to a 9x8
+ * grid of mean luminance and each bit says whether a cell is brighter than
+ * its right-hand neighbour. Small changes in lighting, compression or pose
+ * flip only a few bits, so near-identical frames are a small Hamming
+ * distance apart.
+ *
+ * Encoded images are decoded with source subsampling, so only a few thousand
+ * pixels are materialised however large the frame is. {@link #decode} keeps
+ * more detail, for hashing regions of a frame (a face) as well as all of it.
+ */
+public final class PerceptualHash {
+
+    private static final int COLS = 9;
+    private static final int ROWS = 8;
+    // Decode at roughly this many pixels per grid cell in each direction
+    private static final int SAMPLES_PER_CELL = 4;
+
+    private PerceptualHash() {
+    }
+
+    /** A frame decoded with every {@code step}-th pixel in each direction. */
+    public record Decoded(BufferedImage image, int step) {
+
+        public long hash() {
+            return dHash(image);
+        }
+
+        /**
+         * dHash of the box (x1, y1)-(x2, y2), given in the original frame's
+         * pixels and clipped to it, or null when too few decoded pixels are
+         * left in it to fill the grid twice over.
+         */
+        public Long regionHash(int x1, int y1, int x2, int y2) {
+            int left = Math.max(0, x1 / step), top = Math.max(0, y1 / step);
+            int right = Math.min(image.getWidth(), x2 / step), bottom = Math.min(image.getHeight(), y2 / step);
+            if (right - left < 2 * COLS || bottom - top < 2 * ROWS) return null;
+            return dHash(image.getSubimage(left, top, right - left, bottom - top));
+        }
+    }
+
+    public static long dHash(byte[] encoded) throws IOException {
+        return decode(encoded, COLS * SAMPLES_PER_CELL, ROWS * SAMPLES_PER_CELL).hash();
+    }
+
+    /** Decodes with the coarsest subsampling that still leaves at least minWidth x minHeight pixels. */
+    public static Decoded decode(byte[] encoded, int minWidth, int minHeight) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IOException("Unsupported image format");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0), height = reader.getHeight(0);
+                int step = Math.max(1, Math.min(width / minWidth, height / minHeight));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return new Decoded(reader.read(0, param), step);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    public static long dHash(BufferedImage image) {
+        int w = image.getWidth(), h = image.getHeight();
+        if (w < COLS || h < ROWS) throw new IllegalArgumentException("Image smaller than " + COLS + "x" + ROWS);
+        int[] rgb = image.getRGB(0, 0, w, h, null, 0, w);
+        double[] sum = new double[COLS * ROWS];
+        int[] count = new int[COLS * ROWS];
+        for (int y = 0; y < h; y++) {
+            int row = y * ROWS / h;
+            for (int x = 0; x < w; x++) {
+                int p = rgb[y * w + x];
+                int cell = row * COLS + x * COLS / w;
+                sum[cell] += 0.299 * ((p >> 16) & 0xff) + 0.587 * ((p >> 8) & 0xff) + 0.114 * (p & 0xff);
+                count[cell]++;
+            }
+        }
+        long bits = 0;
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLS - 1; col++) {
+                int left = row * COLS + col;
+                bits = (bits << 1) | (sum[left] / count[left] < sum[left + 1] / count[left + 1] ? 1 : 0);
+            }
+        }
+        return bits;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
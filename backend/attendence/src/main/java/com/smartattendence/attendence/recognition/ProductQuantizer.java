@@ -0,0 +1,116 @@
+package com.smartattendence.attendence.recognition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Product quantizer: the vector is split into {@code subspaces} equal chunks and
+ * each chunk is replaced by the index of its nearest k-means centroid (one byte).
+ * A 512-d embedding with 64 subspaces shrinks from 2048 to 64 bytes.
+ * Queries build a subspaces x 256 distance table once and then score each
+ * stored code with table lookups only.
+ */
+public final class ProductQuantizer implements Quantizer {
+
+    private static final int CENTROIDS = 256;
+    private static final int MAX_TRAINING_ROWS = 4096;
+    private static final int ITERATIONS = 8;
+
+    private final int subspaces;
+    private final int subDim;
+    private final int centroids;
+    private final float[][] codebooks; // [subspace][centroid * subDim]
+
+    private ProductQuantizer(int subspaces, int subDim, int centroids, float[][] codebooks) {
+        this.subspaces = subspaces;
+        this.subDim = subDim;
+        this.centroids = centroids;
+        this.codebooks = codebooks;
+    }
+
+    public static ProductQuantizer train(List<float[]> sample, int dim, int subspaces, long seed) {
+        if (subspaces <= 0 || dim % subspaces != 0) {
+            throw new IllegalArgumentException("Dimension " + dim + " is not divisible into " + subspaces + " subspaces");
+        }
+        if (sample.isEmpty()) throw new IllegalArgumentException("Cannot train a product quantizer without data");
+        Random random = new Random(seed);
+        List<float[]> rows = new ArrayList<>(sample);
+        if (rows.size() > MAX_TRAINING_ROWS) {
+            Collections.shuffle(rows, random);
+            rows = rows.subList(0, MAX_TRAINING_ROWS);
+        }
+        int subDim = dim / subspaces;
+        int k = Math.min(CENTROIDS, rows.size());
+        float[][] codebooks = new float[subspaces][];
+        for (int s = 0; s < subspaces; s++) {
+            codebooks[s] = kMeans(rows, s * subDim, subDim, k, random);
+        }
+        return new ProductQuantizer(subspaces, subDim, k, codebooks);
+    }
+
+    private static float[] kMeans(List<float[]> rows, int off, int subDim, int k, Random random) {
+        float[] centres = new float[k * subDim];
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) order.add(i);
+        Collections.shuffle(order, random);
+        for (int c = 0; c < k; c++) System.arraycopy(rows.get(order.get(c)), off, centres, c * subDim, subDim);
+
+        int[] assign = new int[rows.size()];
+        for (int iter = 0; iter < ITERATIONS; iter++) {
+            for (int r = 0; r < rows.size(); r++) assign[r] = nearest(centres, k, subDim, rows.get(r), off);
+            float[] sums = new float[k * subDim];
+            int[] counts = new int[k];
+            for (int r = 0; r < rows.size(); r++) {
+                int c = assign[r];
+                counts[c]++;
+                float[] v = rows.get(r);
+                for (int i = 0; i < subDim; i++) sums[c * subDim + i] += v[off + i];
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) continue; // keep the old centre for empty clusters
+                for (int i = 0; i < subDim; i++) centres[c * subDim + i] = sums[c * subDim + i] / counts[c];
+            }
+        }
+        return centres;
+    }
+
+    private static int nearest(float[] centres, int k, int subDim, float[] v, int off) {
+        int best = 0;
+        float bestD = Float.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            float d = VectorMath.l2Squared(centres, c * subDim, v, off, subDim);
+            if (d < bestD) {
+                bestD = d;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int codeBytes() { return subspaces; }
+
+    @Override
+    public void encode(float[] vector, byte[] dst, int offset) {
+        for (int s = 0; s < subspaces; s++) {
+            dst[offset + s] = (byte) nearest(codebooks[s], centroids, subDim, vector, s * subDim);
+        }
+    }
+
+    @Override
+    public Estimator estimator(float[] query) {
+        float[] table = new float[subspaces * CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            for (int c = 0; c < centroids; c++) {
+                table[s * CENTROIDS + c] = VectorMath.l2Squared(codebooks[s], c * subDim, query, s * subDim, subDim);
+            }
+        }
+        return (codes, offset) -> {
+            float sum = 0f;
+            for (int s = 0; s < subspaces; s++) sum += table[s * CENTROIDS + (codes[offset + s] & 0xff)];
+            return sum;
+        };
+    }
+}
@@ -0,0 +1,447 @@
+package com.smartattendence.attendence.recognition;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Embedding store that scans compressed codes and re-ranks only the best
+ * {@code rerank} candidates at full precision.
+ *
+ * Codes, with each row's owner and row number in the gallery file, are the only
+ * per-row data on the Java heap. Full-precision rows are not copied: they are
+ * read from the memory-mapped {@link GalleryFile} for re-ranking and training,
+ * and the store persists enrolments through its {@link GalleryFileWriter}.
+ * Until {@code trainAfter} rows exist the quantizer is untrained and searches
+ * fall back to exact scanning. Training runs on a snapshot without the lock;
+ * searches keep using the previous codes until the new quantizer is swapped in.
+ * For COSINE, rows and queries are unit-normalized so that
+ * 1 - cos = |a - b|^2 / 2 and the L2 quantizers apply unchanged.
+ */
+public class QuantizedGallery implements EmbeddingStore {
+
+    public enum Mode { INT8, PQ }
+
+    private static final int BLOCK_ROWS = EmbeddingGallery.BLOCK_ROWS;
+    private static final int TRAINING_SAMPLE = 8192;
+
+    private final int dim;
+    private final Mode mode;
+    private final Metric metric;
+    private final int subspaces;
+    private final int rerank;
+    private final int trainAfter;
+    private final GalleryFileWriter file;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean training = new AtomicBoolean();
+
+    private GalleryFile rows; // the mapping rowRef points into; replaced when the file is rewritten
+    private Quantizer quantizer;
+    private byte[][] codeBlocks = new byte[0][];
+    private int[] rowOwner = new int[0];
+    private int[] rowRef = new int[0];
+    private int size;
+
+    private final List<String> slotRegNo = new ArrayList<>();
+    private final Map<String, Integer> slotByReg = new HashMap<>();
+    private final List<Integer> freeSlots = new ArrayList<>();
+
+    /** Loads the students already in the file; training runs before this returns if there are enough rows. */
+    public QuantizedGallery(GalleryFileWriter file, Mode mode, Metric metric, int subspaces, int rerank, int trainAfter) {
+        this.dim = file.dimension();
+        if (mode == Mode.PQ && dim % subspaces != 0) {
+            throw new IllegalArgumentException("Dimension " + dim + " is not divisible into " + subspaces + " subspaces");
+        }
+        this.file = file;
+        this.mode = mode;
+        this.metric = metric;
+        this.subspaces = subspaces;
+        this.rerank = Math.max(1, rerank);
+        this.trainAfter = Math.max(1, trainAfter);
+        reloadLocked();
+        if (size >= this.trainAfter) train();
+    }
+
+    @Override
+    public int dimension() { return dim; }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try { return size; } finally { lock.readLock().unlock(); }
+    }
+
+    @Override
+    public int studentCount() {
+        lock.readLock().lock();
+        try { return slotByReg.size(); } finally { lock.readLock().unlock(); }
+    }
+
+    @Override
+    public Set<String> registrationNos() {
+        lock.readLock().lock();
+        try { return new HashSet<>(slotByReg.keySet()); } finally { lock.readLock().unlock(); }
+    }
+
+    public boolean isTrained() {
+        lock.readLock().lock();
+        try { return quantizer != null; } finally { lock.readLock().unlock(); }
+    }
+
+    /** Writes the embeddings to the gallery file, then indexes them. */
+    @Override
+    public void put(String regNo, float[][] embeddings) {
+        float[][] prepared = new float[embeddings.length][];
+        for (int i = 0; i < prepared.length; i++) prepared[i] = prepare(embeddings[i]);
+        boolean train;
+        lock.writeLock().lock();
+        try {
+            int[] refs;
+            try {
+                refs = file.append(regNo, embeddings);
+            } catch (IOException e) {
+                if (file.view() != rows) reloadLocked();
+                throw new UncheckedIOException("Could not save embeddings of " + regNo, e);
+            }
+            if (file.view() != rows) {
+                // The file ran out of capacity and was rewritten with new row numbers
+                reloadLocked();
+            } else {
+                Integer slot = slotByReg.get(regNo);
+                if (slot != null) removeRows(slot);
+                else {
+                    slot = freeSlots.isEmpty() ? slotRegNo.size() : freeSlots.remove(freeSlots.size() - 1);
+                    if (slot == slotRegNo.size()) slotRegNo.add(regNo);
+                    else slotRegNo.set(slot, regNo);
+                    slotByReg.put(regNo, slot);
+                }
+                for (int i = 0; i < refs.length; i++) appendRow(slot, refs[i], prepared[i]);
+            }
+            train = quantizer == null && size >= trainAfter;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (train) train();
+    }
+
+    @Override
+    public boolean remove(String regNo) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotByReg.get(regNo);
+            if (slot == null) return false;
+            try {
+                file.remove(regNo);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not remove embeddings of " + regNo, e);
+            }
+            slotByReg.remove(regNo);
+            removeRows(slot);
+            slotRegNo.set(slot, null);
+            freeSlots.add(slot);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-fits the quantizer on the current rows and re-encodes everything.
+     * Returns at once if a training run is already in progress.
+     */
+    public void retrain() {
+        if (size() > 0) train();
+    }
+
+    @Override
+    public MatchResult search(float[] query, Metric metric, float threshold) {
+        return search(query, threshold, rerank);
+    }
+
+    /** @param candidates rows re-ranked at full precision; 1 means codes only */
+    public MatchResult search(float[] query, float threshold, int candidates) {
+        float[] q = prepare(query);
+        lock.readLock().lock();
+        try {
+            if (size == 0) return null;
+            int best = quantizer == null ? exactBest(q) : rerankedBest(q, candidates);
+            return EmbeddingGallery.toResult(slotRegNo.get(rowOwner[best]), finalDistance(exactDistance(q, best, new float[dim])), threshold);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Full-precision scan, the accuracy baseline for {@link #report}. */
+    public MatchResult searchExact(float[] query, float threshold) {
+        float[] q = prepare(query);
+        lock.readLock().lock();
+        try {
+            if (size == 0) return null;
+            int best = exactBest(q);
+            return EmbeddingGallery.toResult(slotRegNo.get(rowOwner[best]), finalDistance(exactDistance(q, best, new float[dim])), threshold);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<float[]> sample(int count, Random random) {
+        lock.readLock().lock();
+        try {
+            List<float[]> out = new ArrayList<>(Math.min(count, size));
+            for (int i = 0; i < count && size > 0; i++) {
+                float[] v = new float[dim];
+                readRow(random.nextInt(size), v);
+                out.add(v);
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Memory footprint and accuracy of the quantized search against the float baseline.
+     *
+     * @param heapBytesPerStudent     codes, row owner and file row number kept on the Java heap
+     * @param mappedBytesPerStudent   full-precision rows re-ranked from the mapped gallery file (page cache, not heap)
+     * @param totalBytesPerStudent    heap + mapped, everything the store touches
+     * @param floatBytesPerStudent    what the float gallery keeps on heap for the same rows
+     * @param top1Agreement           queries where the re-ranked result equals exact search
+     * @param codesOnlyAgreement      same, without re-ranking
+     * @param meanDistanceDelta       mean |quantized distance - exact distance| of the returned match
+     */
+    public record Report(Mode mode, boolean trained, int students, int rows, int codeBytes, int rerank,
+                         double heapBytesPerStudent, double mappedBytesPerStudent, double totalBytesPerStudent,
+                         double floatBytesPerStudent,
+                         double top1Agreement, double codesOnlyAgreement, double meanDistanceDelta) {}
+
+    public Report report(int queryCount, float threshold, long seed) {
+        List<float[]> queries = RecallReport.jitteredSample(this, queryCount, new Random(seed));
+        int agree = 0, codesOnlyAgree = 0;
+        double delta = 0;
+        for (float[] q : queries) {
+            MatchResult exact = searchExact(q, threshold);
+            MatchResult reranked = search(q, threshold, rerank);
+            MatchResult codesOnly = search(q, threshold, 1);
+            if (exact.registrationNo().equals(reranked.registrationNo())) agree++;
+            if (exact.registrationNo().equals(codesOnly.registrationNo())) codesOnlyAgree++;
+            delta += Math.abs(reranked.distance() - exact.distance());
+        }
+        lock.readLock().lock();
+        try {
+            int students = Math.max(1, slotByReg.size());
+            int codeBytes = quantizer == null ? 0 : quantizer.codeBytes();
+            double n = Math.max(1, queries.size());
+            double heap = (double) size * (codeBytes + 8) / students;
+            double mapped = (double) size * dim * 4 / students;
+            return new Report(mode, quantizer != null, slotByReg.size(), size, codeBytes, rerank,
+                    heap, mapped, heap + mapped,
+                    (double) size * (dim * 4 + 8) / students,
+                    agree / n, codesOnlyAgree / n, delta / n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int rerankedBest(float[] q, int candidates) {
+        Quantizer.Estimator est = quantizer.estimator(q);
+        int codeBytes = quantizer.codeBytes();
+        int k = Math.min(candidates, size);
+        int[] topRow = new int[k];
+        float[] topD = new float[k];
+        Arrays.fill(topD, Float.MAX_VALUE);
+        int worst = 0;
+        for (int row = 0; row < size; row++) {
+            float d = est.distance(codeBlocks[row / BLOCK_ROWS], (row % BLOCK_ROWS) * codeBytes);
+            if (d < topD[worst]) {
+                topD[worst] = d;
+                topRow[worst] = row;
+                for (int i = 0; i < k; i++) if (topD[i] > topD[worst]) worst = i;
+            }
+        }
+        if (k == 1) return topRow[0];
+        float[] scratch = new float[dim];
+        int best = topRow[0];
+        float bestD = Float.MAX_VALUE;
+        for (int i = 0; i < k; i++) {
+            float d = exactDistance(q, topRow[i], scratch);
+            if (d < bestD) {
+                bestD = d;
+                best = topRow[i];
+            }
+        }
+        return best;
+    }
+
+    private int exactBest(float[] q) {
+        float[] scratch = new float[dim];
+        int best = 0;
+        float bestD = Float.MAX_VALUE;
+        for (int row = 0; row < size; row++) {
+            float d = exactDistance(q, row, scratch);
+            if (d < bestD) {
+                bestD = d;
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    private float exactDistance(float[] q, int row, float[] scratch) {
+        readRow(row, scratch);
+        return VectorMath.l2Squared(scratch, 0, q, 0, dim);
+    }
+
+    private float finalDistance(float l2Squared) {
+        return metric == Metric.L2 ? (float) Math.sqrt(l2Squared) : l2Squared / 2f;
+    }
+
+    // Fits a quantizer on a snapshot of the row numbers without holding the lock, then swaps it in
+    private void train() {
+        if (!training.compareAndSet(false, true)) return;
+        try {
+            GalleryFile snapshot;
+            int[] refs;
+            lock.readLock().lock();
+            try {
+                snapshot = rows;
+                refs = Arrays.copyOf(rowRef, size);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (refs.length == 0) return;
+
+            long start = System.nanoTime();
+            List<float[]> sample = new ArrayList<>();
+            Random random = new Random(refs.length);
+            for (int i = 0; i < Math.min(refs.length, TRAINING_SAMPLE); i++) {
+                float[] v = new float[dim];
+                readRef(snapshot, refs.length <= TRAINING_SAMPLE ? refs[i] : refs[random.nextInt(refs.length)], v);
+                sample.add(v);
+            }
+            Quantizer trained = mode == Mode.INT8
+                    ? ScalarQuantizer.train(sample, dim)
+                    : ProductQuantizer.train(sample, dim, subspaces, refs.length);
+            int codeBytes = trained.codeBytes();
+            byte[] codes = new byte[refs.length * codeBytes];
+            Map<Integer, Integer> codeByRef = new HashMap<>();
+            float[] v = new float[dim];
+            for (int i = 0; i < refs.length; i++) {
+                readRef(snapshot, refs[i], v);
+                trained.encode(v, codes, i * codeBytes);
+                codeByRef.put(refs[i], i);
+            }
+
+            lock.writeLock().lock();
+            try {
+                // Rows enrolled meanwhile are encoded here; after a file rewrite the row numbers mean other rows
+                boolean sameFile = rows == snapshot;
+                byte[][] blocks = new byte[rowOwner.length / BLOCK_ROWS][];
+                for (int b = 0; b < blocks.length; b++) blocks[b] = new byte[BLOCK_ROWS * codeBytes];
+                for (int row = 0; row < size; row++) {
+                    Integer at = sameFile ? codeByRef.get(rowRef[row]) : null;
+                    int offset = (row % BLOCK_ROWS) * codeBytes;
+                    if (at != null) {
+                        System.arraycopy(codes, at * codeBytes, blocks[row / BLOCK_ROWS], offset, codeBytes);
+                    } else {
+                        readRow(row, v);
+                        trained.encode(v, blocks[row / BLOCK_ROWS], offset);
+                    }
+                }
+                quantizer = trained;
+                codeBlocks = blocks;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            System.out.printf("✅ %s quantizer trained on %d rows in %d ms%n", mode, sample.size(), (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            training.set(false);
+        }
+    }
+
+    // Rebuilds the index from the file's live rows, keeping the current quantizer
+    private void reloadLocked() {
+        rows = file.view();
+        slotRegNo.clear();
+        slotByReg.clear();
+        freeSlots.clear();
+        size = 0;
+        float[] v = new float[dim];
+        file.liveRows().forEach((regNo, refs) -> {
+            int slot = slotRegNo.size();
+            slotRegNo.add(regNo);
+            slotByReg.put(regNo, slot);
+            for (int ref : refs) {
+                if (quantizer != null) readRef(rows, ref, v);
+                appendRow(slot, ref, v);
+            }
+        });
+    }
+
+    private void appendRow(int slot, int ref, float[] row) {
+        if (size == rowOwner.length) {
+            int blocks = size / BLOCK_ROWS + 1;
+            rowOwner = Arrays.copyOf(rowOwner, blocks * BLOCK_ROWS);
+            rowRef = Arrays.copyOf(rowRef, blocks * BLOCK_ROWS);
+            codeBlocks = Arrays.copyOf(codeBlocks, blocks);
+            if (quantizer != null) codeBlocks[blocks - 1] = new byte[BLOCK_ROWS * quantizer.codeBytes()];
+        }
+        if (quantizer != null) quantizer.encode(row, codeBlocks[size / BLOCK_ROWS], (size % BLOCK_ROWS) * quantizer.codeBytes());
+        rowOwner[size] = slot;
+        rowRef[size] = ref;
+        size++;
+    }
+
+    private void removeRows(int slot) {
+        int row = 0;
+        while (row < size) {
+            if (rowOwner[row] != slot) {
+                row++;
+                continue;
+            }
+            int last = size - 1;
+            if (last != row) {
+                if (quantizer != null) {
+                    int cb = quantizer.codeBytes();
+                    System.arraycopy(codeBlocks[last / BLOCK_ROWS], (last % BLOCK_ROWS) * cb,
+                            codeBlocks[row / BLOCK_ROWS], (row % BLOCK_ROWS) * cb, cb);
+                }
+                rowOwner[row] = rowOwner[last];
+                rowRef[row] = rowRef[last];
+            }
+            size--;
+        }
+    }
+
+    private void readRow(int row, float[] dst) {
+        readRef(rows, rowRef[row], dst);
+    }
+
+    // A file row as the store sees it: unit-normalized for COSINE
+    private void readRef(GalleryFile source, int ref, float[] dst) {
+        source.readRow(ref, dst);
+        if (metric != Metric.L2) normalize(dst);
+    }
+
+    private float[] prepare(float[] v) {
+        if (v == null || v.length != dim) throw new IllegalArgumentException("Expected embedding of dimension " + dim);
+        float[] out = v.clone();
+        if (metric != Metric.L2) normalize(out);
+        return out;
+    }
+
+    private void normalize(float[] v) {
+        float norm = VectorMath.norm(v, 0, dim);
+        if (norm > 0f) for (int i = 0; i < dim; i++) v[i] /= norm;
+    }
+}
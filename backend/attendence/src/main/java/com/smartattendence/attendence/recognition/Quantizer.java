@@ -0,0 +1,19 @@
+package com.smartattendence.attendence.recognition;
+
+/**
+ * Lossy compression of embeddings into fixed-size byte codes. Distances are
+ * estimated asymmetrically: the query stays in float, only the stored side is
+ * compressed. Estimates are squared L2.
+ */
+public interface Quantizer {
+
+    int codeBytes();
+
+    void encode(float[] vector, byte[] dst, int offset);
+
+    Estimator estimator(float[] query);
+
+    interface Estimator {
+        float distance(byte[] codes, int offset);
+    }
+}
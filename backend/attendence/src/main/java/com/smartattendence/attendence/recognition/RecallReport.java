@@ -0,0 +1,56 @@
+package com.smartattendence.attendence.recognition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Recall-vs-latency comparison of the HNSW index against exact search.
+ * Queries are stored embeddings with small gaussian jitter, which mimics a
+ * fresh camera frame of an enrolled student.
+ */
+public record RecallReport(int queries, int galleryRows, double exactMicros, List<Row> rows) {
+
+    /**
+     * @param ef          search breadth used for this row
+     * @param recall      fraction of queries where HNSW returned the same student as exact search
+     * @param hnswMicros  mean HNSW latency per query
+     * @param speedup     exact latency / HNSW latency
+     */
+    public record Row(int ef, double recall, double hnswMicros, double speedup) {}
+
+    public static RecallReport measure(EmbeddingStore exact, HnswIndex index, Metric metric,
+                                       float threshold, int queryCount, int[] efs, long seed) {
+        List<float[]> queries = jitteredSample(exact, queryCount, new Random(seed));
+        if (queries.isEmpty()) return new RecallReport(0, 0, 0, List.of());
+
+        String[] truth = new String[queries.size()];
+        long start = System.nanoTime();
+        for (int i = 0; i < truth.length; i++) {
+            truth[i] = exact.search(queries.get(i), metric, threshold).registrationNo();
+        }
+        double exactMicros = (System.nanoTime() - start) / 1e3 / truth.length;
+
+        List<Row> rows = new ArrayList<>();
+        for (int ef : efs) {
+            int hits = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < truth.length; i++) {
+                MatchResult r = index.search(queries.get(i), threshold, ef);
+                if (r != null && r.registrationNo().equals(truth[i])) hits++;
+            }
+            double micros = (System.nanoTime() - start) / 1e3 / truth.length;
+            rows.add(new Row(ef, (double) hits / truth.length, micros, micros == 0 ? 0 : exactMicros / micros));
+        }
+        return new RecallReport(truth.length, exact.size(), exactMicros, rows);
+    }
+
+    static List<float[]> jitteredSample(EmbeddingStore store, int count, Random random) {
+        List<float[]> queries = store.sample(count, random);
+        for (float[] q : queries) {
+            float scale = VectorMath.norm(q, 0, q.length) / (float) Math.sqrt(q.length) * 0.05f;
+            for (int i = 0; i < q.length; i++) q[i] += (float) random.nextGaussian() * scale;
+        }
+        return queries;
+    }
+}
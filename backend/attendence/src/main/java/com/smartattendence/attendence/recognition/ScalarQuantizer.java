@@ -0,0 +1,71 @@
+package com.smartattendence.attendence.recognition;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Int8 scalar quantizer: each dimension is mapped linearly onto 0..255 using
+ * the min/max seen in the training sample (4x smaller than float).
+ */
+public final class ScalarQuantizer implements Quantizer {
+
+    private final int dim;
+    private final float[] min;
+    private final float[] step;
+
+    private ScalarQuantizer(float[] min, float[] step) {
+        this.dim = min.length;
+        this.min = min;
+        this.step = step;
+    }
+
+    public static ScalarQuantizer train(List<float[]> sample, int dim) {
+        float[] lo = new float[dim];
+        float[] hi = new float[dim];
+        Arrays.fill(lo, Float.MAX_VALUE);
+        Arrays.fill(hi, -Float.MAX_VALUE);
+        for (float[] v : sample) {
+            for (int i = 0; i < dim; i++) {
+                lo[i] = Math.min(lo[i], v[i]);
+                hi[i] = Math.max(hi[i], v[i]);
+            }
+        }
+        float[] step = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            float range = hi[i] - lo[i];
+            step[i] = range > 0f ? range / 255f : 1f;
+        }
+        return new ScalarQuantizer(lo, step);
+    }
+
+    @Override
+    public int codeBytes() { return dim; }
+
+    @Override
+    public void encode(float[] vector, byte[] dst, int offset) {
+        for (int i = 0; i < dim; i++) {
+            int c = Math.round((vector[i] - min[i]) / step[i]);
+            dst[offset + i] = (byte) Math.max(0, Math.min(255, c));
+        }
+    }
+
+    @Override
+    public Estimator estimator(float[] query) {
+        // Move the query into code space once; the stored side is then a plain
+        // weighted squared difference with weight step^2 per dimension.
+        float[] q = new float[dim];
+        float[] w = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            q[i] = (query[i] - min[i]) / step[i];
+            w[i] = step[i] * step[i];
+        }
+        return (codes, offset) -> {
+            float sum = 0f;
+            for (int i = 0; i < dim; i++) {
+                float d = q[i] - (codes[offset + i] & 0xff);
+                sum += w[i] * d * d;
+            }
+            return sum;
+        };
+    }
+}
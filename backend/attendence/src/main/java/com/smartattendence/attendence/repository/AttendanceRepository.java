@@ -1,6 +1,8 @@
 package com.smartattendence.attendence.repository;
 
+import com.smartattendence.attendence.dto.AttendanceView;
 import com.smartattendence.attendence.entity.Attendance;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -9,8 +11,50 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
-public interface AttendanceRepository extends JpaRepository<Attendance, Long> {
+public interface AttendanceRepository extends JpaRepository<Attendance, Long>, TieredAttendanceRepository {
+    String VIEW = "SELECT new com.smartattendence.attendence.dto.AttendanceView(a.id, a.registrationNo, a.name, a.timestamp)"
+            + " FROM Attendance a";
+
     List<Attendance> findByRegistrationNoOrderByTimestampDesc(String registrationNo);
-   @Query("SELECT a FROM Attendance a WHERE DATE(a.timestamp) = :date")
-    List<Attendance> findByDate(@Param("date") LocalDate date);
+
+    // ✅ Listings select only the four columns they render, never entities.
+    // These read the table alone; the inherited findAllViews, findBetween, ... also cover archived months.
+    @Query(VIEW + " ORDER BY a.timestamp, a.id")
+    List<AttendanceView> findLiveViews();
+
+    @Query(VIEW + " WHERE a.registrationNo = :regNo ORDER BY a.timestamp DESC, a.id DESC")
+    List<AttendanceView> findLiveViewsByStudent(@Param("regNo") String registrationNo);
+
+    // ✅ Half-open range on the bare column so idx_attendance_ts can be used (DATE(timestamp) cannot)
+    @Query(VIEW + " WHERE a.timestamp >= :from AND a.timestamp < :to ORDER BY a.timestamp, a.id")
+    List<AttendanceView> findLiveBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query(VIEW + " WHERE a.registrationNo = :regNo AND a.timestamp >= :from AND a.timestamp < :to ORDER BY a.timestamp, a.id")
+    List<AttendanceView> findLiveByStudentBetween(@Param("regNo") String registrationNo,
+                                              @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    // ✅ Keyset pages ordered by (timestamp, id); InnoDB secondary indexes already end in the primary key
+    @Query(VIEW + " WHERE a.timestamp >= :from AND a.timestamp < :to"
+            + " AND (a.timestamp > :afterTs OR (a.timestamp = :afterTs AND a.id > :afterId))"
+            + " ORDER BY a.timestamp, a.id")
+    List<AttendanceView> findLivePageAfter(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                       @Param("afterTs") LocalDateTime afterTs, @Param("afterId") Long afterId,
+                                       Pageable limit);
+
+    @Query(VIEW + " WHERE a.registrationNo = :regNo AND a.timestamp >= :from AND a.timestamp < :to"
+            + " AND (a.timestamp > :afterTs OR (a.timestamp = :afterTs AND a.id > :afterId))"
+            + " ORDER BY a.timestamp, a.id")
+    List<AttendanceView> findLiveStudentPageAfter(@Param("regNo") String registrationNo,
+                                              @Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                              @Param("afterTs") LocalDateTime afterTs, @Param("afterId") Long afterId,
+                                              Pageable limit);
+
+    default List<AttendanceView> findByDate(LocalDate date) {
+        return findBetween(date.atStartOfDay(), date.plusDays(1).atStartOfDay());
+    }
+
+    List<Attendance> findByTimestampGreaterThanEqualOrderByTimestampAsc(LocalDateTime from);
+
+    @Query("SELECT a.registrationNo, a.timestamp FROM Attendance a WHERE a.timestamp >= :from")
+    List<Object[]> findMarksSince(@Param("from") LocalDateTime from);
 }
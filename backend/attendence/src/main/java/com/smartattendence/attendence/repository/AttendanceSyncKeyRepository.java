@@ -0,0 +1,15 @@
+package com.smartattendence.attendence.repository;
+
+import com.smartattendence.attendence.entity.AttendanceSyncKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface AttendanceSyncKeyRepository extends JpaRepository<AttendanceSyncKey, AttendanceSyncKey.Key> {
+
+    @Query("SELECT k FROM AttendanceSyncKey k WHERE k.kioskId = :kioskId AND k.key IN :keys")
+    List<AttendanceSyncKey> findByKeys(@Param("kioskId") String kioskId, @Param("keys") Collection<String> keys);
+}
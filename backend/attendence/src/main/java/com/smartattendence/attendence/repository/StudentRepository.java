@@ -1,14 +1,36 @@
 package com.smartattendence.attendence.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 import com.smartattendence.attendence.entity.Student;
+import com.smartattendence.attendence.dto.StudentView;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 @Repository
 public interface StudentRepository extends JpaRepository<Student, Long> {
     Student findByRegistrationNo(String registrationNo);
     void deleteByRegistrationNo(String registrationNo);
     boolean existsByRegistrationNo(String registrationNo);
+
+    // ✅ Keyset page over the unique registration_no index
+    List<Student> findByRegistrationNoGreaterThanOrderByRegistrationNoAsc(String after, Pageable limit);
+
+    // ✅ Listing projections: registration no, name and email only
+    @Query("SELECT new com.smartattendence.attendence.dto.StudentView(s.registrationNo, s.name, s.email)"
+            + " FROM Student s WHERE s.registrationNo > :after ORDER BY s.registrationNo")
+    List<StudentView> findViewPageAfter(@Param("after") String after, Pageable limit);
+
+    @Query("SELECT new com.smartattendence.attendence.dto.StudentView(s.registrationNo, s.name, s.email)"
+            + " FROM Student s ORDER BY s.registrationNo")
+    List<StudentView> findAllViews();
+
+    @Query("SELECT s.registrationNo FROM Student s WHERE s.registrationNo IN :regNos")
+    List<String> findExistingRegistrationNos(@Param("regNos") Collection<String> regNos);
 }
 
 
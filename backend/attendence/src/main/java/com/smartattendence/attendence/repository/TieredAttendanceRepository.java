@@ -0,0 +1,28 @@
+package com.smartattendence.attendence.repository;
+
+import com.smartattendence.attendence.dto.AttendanceView;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Attendance listings that read both the archived months and the live table.
+ * Same contracts (and orderings) as the table-only queries they wrap.
+ */
+public interface TieredAttendanceRepository {
+
+    List<AttendanceView> findAllViews();
+
+    List<AttendanceView> findViewsByStudent(String registrationNo);
+
+    List<AttendanceView> findBetween(LocalDateTime from, LocalDateTime to);
+
+    List<AttendanceView> findByStudentBetween(String registrationNo, LocalDateTime from, LocalDateTime to);
+
+    List<AttendanceView> findPageAfter(LocalDateTime from, LocalDateTime to,
+                                       LocalDateTime afterTs, Long afterId, Pageable limit);
+
+    List<AttendanceView> findStudentPageAfter(String registrationNo, LocalDateTime from, LocalDateTime to,
+                                              LocalDateTime afterTs, Long afterId, Pageable limit);
+}
@@ -0,0 +1,94 @@
+package com.smartattendence.attendence.repository;
+
+import com.smartattendence.attendence.dto.AttendanceView;
+import com.smartattendence.attendence.services.AttendanceArchive;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Each listing runs its live query and the matching archive scan, then merges
+ * the two sorted lists. A live row the archive already holds (left behind by
+ * an archival run that died before deleting it) is skipped.
+ */
+public class TieredAttendanceRepositoryImpl implements TieredAttendanceRepository {
+
+    private static final Comparator<AttendanceView> ASC =
+            Comparator.comparing(AttendanceView::timestamp).thenComparing(AttendanceView::id);
+
+    @Lazy
+    @Autowired
+    private AttendanceRepository repo;
+    @Autowired
+    private AttendanceArchive archive;
+
+    @Override
+    public List<AttendanceView> findAllViews() {
+        return merge(archive.findAll(null), repo.findLiveViews(), ASC, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<AttendanceView> findViewsByStudent(String registrationNo) {
+        List<AttendanceView> archived = new ArrayList<>(archive.findAll(registrationNo));
+        Collections.reverse(archived);
+        return merge(archived, repo.findLiveViewsByStudent(registrationNo), ASC.reversed(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<AttendanceView> findBetween(LocalDateTime from, LocalDateTime to) {
+        return merge(archive.find(null, from, to), repo.findLiveBetween(from, to), ASC, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<AttendanceView> findByStudentBetween(String registrationNo, LocalDateTime from, LocalDateTime to) {
+        return merge(archive.find(registrationNo, from, to),
+                repo.findLiveByStudentBetween(registrationNo, from, to), ASC, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<AttendanceView> findPageAfter(LocalDateTime from, LocalDateTime to,
+                                              LocalDateTime afterTs, Long afterId, Pageable limit) {
+        return page(null, from, to, afterTs, afterId, limit,
+                repo.findLivePageAfter(from, to, afterTs, afterId, limit));
+    }
+
+    @Override
+    public List<AttendanceView> findStudentPageAfter(String registrationNo, LocalDateTime from, LocalDateTime to,
+                                                     LocalDateTime afterTs, Long afterId, Pageable limit) {
+        return page(registrationNo, from, to, afterTs, afterId, limit,
+                repo.findLiveStudentPageAfter(registrationNo, from, to, afterTs, afterId, limit));
+    }
+
+    private List<AttendanceView> page(String registrationNo, LocalDateTime from, LocalDateTime to,
+                                      LocalDateTime afterTs, Long afterId, Pageable limit, List<AttendanceView> live) {
+        int size = limit.isPaged() ? limit.getPageSize() : Integer.MAX_VALUE;
+        // Resume right after (afterTs, afterId); a cursor before the range just means "from the start"
+        boolean resume = !afterTs.isBefore(from);
+        List<AttendanceView> archived = archive.find(registrationNo, resume ? afterTs : from, to,
+                resume ? afterId : Long.MIN_VALUE, size);
+        return merge(archived, live, ASC, size);
+    }
+
+    // Both inputs are sorted by order
+    private List<AttendanceView> merge(List<AttendanceView> archived, List<AttendanceView> live,
+                                       Comparator<AttendanceView> order, int limit) {
+        if (archived.isEmpty()) return live.size() > limit ? live.subList(0, limit) : live;
+        List<AttendanceView> out = new ArrayList<>(Math.min(limit, archived.size() + live.size()));
+        int i = 0, j = 0;
+        while (out.size() < limit && (i < archived.size() || j < live.size())) {
+            if (j == live.size() || (i < archived.size() && order.compare(archived.get(i), live.get(j)) <= 0)) {
+                out.add(archived.get(i++));
+            } else {
+                AttendanceView v = live.get(j++);
+                if (!archive.contains(v)) out.add(v);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,416 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.archive.MonthSegment;
+import com.smartattendence.attendence.dto.AttendanceView;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier for attendance: closed months are moved out of the attendance
+ * table into one {@link MonthSegment} file each, and scanned here in the JVM.
+ *
+ * The archival run (nightly, or on demand) takes every month older than the
+ * last keepMonths, merges its table rows into that month's segment (rows are
+ * keyed by id, so a run that died between writing the file and deleting the
+ * rows just merges them again), forces the file to disk, renames it into
+ * place, syncs the directory and only then deletes the rows from the table.
+ * A complete temp file found on startup is a rewrite that died just before
+ * its rename, and the rename is finished; a torn one never replaced
+ * anything and is dropped. Marks that arrive late
+ * for an archived month, e.g. from an offline kiosk, stay in the table until
+ * the next run picks them up.
+ *
+ * Scans prune months by their footer range and registration dictionary,
+ * keep the most recently decoded months in memory, and read several months
+ * in parallel when the result is not limited.
+ */
+@Service
+public class AttendanceArchive {
+
+    private static final String FILE_PREFIX = "attendance-";
+    private static final String FILE_SUFFIX = ".col";
+    private static final String TMP_SUFFIX = ".tmp"; // MonthSegment.write's temp file
+    private static final int DELETE_CHUNK = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int keepMonths;
+    private final ExecutorService scanners;
+    private final ConcurrentSkipListMap<YearMonth, MonthSegment> segments = new ConcurrentSkipListMap<>();
+    // Decoded columns, least recently used first; keyed by segment instance so a rewritten month never serves stale rows
+    private final Map<MonthSegment, MonthSegment.Columns> cache;
+    // Scans read segment files under the read lock; replacing or deleting a file takes the write lock
+    private final ReadWriteLock files = new ReentrantReadWriteLock();
+
+    private final AtomicLong scans = new AtomicLong();
+    private final AtomicLong scanNanos = new AtomicLong();
+    private final AtomicLong segmentsScanned = new AtomicLong();
+    private final AtomicLong segmentsPruned = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong archivedRows = new AtomicLong();
+    private volatile Map<String, Object> lastRun;
+
+    public AttendanceArchive(@Value("${attendance.archive.enabled:true}") boolean enabled,
+                             @Value("${attendance.archive.dir:attendance-archive}") String dir,
+                             @Value("${attendance.archive.keep-months:3}") int keepMonths,
+                             @Value("${attendance.archive.scan-threads:4}") int scanThreads,
+                             @Value("${attendance.archive.cache-months:12}") int cacheMonths) {
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        // The current and previous month always stay live: the daily tracker rebuilds its last days from the table
+        this.keepMonths = Math.max(2, keepMonths);
+        this.scanners = Executors.newFixedThreadPool(Math.max(1, scanThreads), r -> {
+            Thread t = new Thread(r, "attendance-archive-scan");
+            t.setDaemon(true);
+            return t;
+        });
+        int cacheSize = Math.max(0, cacheMonths);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MonthSegment, MonthSegment.Columns> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) return;
+        Files.createDirectories(dir);
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path p : list.toList()) {
+                String name = p.getFileName().toString();
+                if (name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX + TMP_SUFFIX)) recoverTemp(p);
+            }
+        }
+        long rows = 0;
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path p : list.toList()) {
+                String name = p.getFileName().toString();
+                if (name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX)) {
+                    MonthSegment s = MonthSegment.open(p);
+                    segments.put(s.month(), s);
+                    rows += s.rows();
+                }
+            }
+        }
+        System.out.println("✅ Attendance archive: " + segments.size() + " months, " + rows + " rows in " + dir);
+    }
+
+    // MonthSegment.write forces the temp file before renaming it, so a readable one is complete
+    private void recoverTemp(Path tmp) throws IOException {
+        String name = tmp.getFileName().toString();
+        Path target = tmp.resolveSibling(name.substring(0, name.length() - TMP_SUFFIX.length()));
+        try {
+            MonthSegment s = MonthSegment.open(tmp);
+            s.load(); // checks every column's CRC
+            if (!target.getFileName().toString().equals(FILE_PREFIX + s.month() + FILE_SUFFIX)) {
+                throw new IOException("holds " + s.month());
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ Attendance archive: dropping unfinished " + name + " (" + e.getMessage() + ")");
+            Files.delete(tmp);
+            return;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        StudentRegistrationService.syncDirectory(dir);
+        System.out.println("✅ Attendance archive: finished interrupted rewrite of " + target.getFileName());
+    }
+
+    @PreDestroy
+    public void stop() {
+        scanners.shutdownNow();
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public List<AttendanceView> find(String registrationNo, LocalDateTime from, LocalDateTime to) {
+        return find(registrationNo, from, to, Long.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /** Every archived row, or every row of one student when registrationNo is given. */
+    public List<AttendanceView> findAll(String registrationNo) {
+        return find(registrationNo, AttendanceService.OPEN_FROM, AttendanceService.OPEN_TO);
+    }
+
+    /**
+     * Archived rows in [from, to), optionally for one student, in (timestamp,
+     * id) order. Rows exactly at from must have an id above afterId (keyset
+     * pages). At most limit rows; limited scans read months one after another
+     * and stop early, unlimited ones read all matching months in parallel.
+     */
+    public List<AttendanceView> find(String registrationNo, LocalDateTime from, LocalDateTime to,
+                                     long afterId, int limit) {
+        if (segments.isEmpty() || !from.isBefore(to) || limit <= 0) return List.of();
+        long start = System.nanoTime();
+        List<MonthSegment> hits = new ArrayList<>();
+        for (MonthSegment s : segments.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values()) {
+            if (s.overlaps(from, to) && s.mayContain(registrationNo)) hits.add(s);
+            else segmentsPruned.incrementAndGet();
+        }
+        segmentsScanned.addAndGet(hits.size());
+
+        List<AttendanceView> out = new ArrayList<>();
+        if (limit != Integer.MAX_VALUE || hits.size() <= 1) {
+            for (MonthSegment s : hits) {
+                MonthSegment.Columns c = columns(s);
+                if (c != null) out.addAll(c.scan(registrationNo, from, to, afterId, limit - out.size()));
+                if (out.size() >= limit) break;
+            }
+        } else {
+            List<Future<List<AttendanceView>>> parts = new ArrayList<>();
+            for (MonthSegment s : hits) {
+                parts.add(scanners.submit(() -> {
+                    MonthSegment.Columns c = columns(s);
+                    return c == null ? List.<AttendanceView>of() : c.scan(registrationNo, from, to, afterId, limit);
+                }));
+            }
+            // Months are disjoint and already in order, so concatenating keeps (timestamp, id) order
+            for (Future<List<AttendanceView>> part : parts) out.addAll(join(part));
+        }
+        scans.incrementAndGet();
+        scanNanos.addAndGet(System.nanoTime() - start);
+        return out;
+    }
+
+    /** Whether this row (same id, same month) is already archived; used to drop rows a crashed run left in the table. */
+    public boolean contains(AttendanceView row) {
+        if (row.timestamp() == null || row.id() == null) return false;
+        MonthSegment s = segments.get(YearMonth.from(row.timestamp()));
+        if (s == null || row.id() < s.minId() || row.id() > s.maxId()) return false;
+        MonthSegment.Columns c = columns(s);
+        return c != null && c.containsId(row.id());
+    }
+
+    public boolean isArchived(YearMonth month) {
+        return segments.containsKey(month);
+    }
+
+    /** Archived months, oldest first. */
+    public List<YearMonth> archivedMonths() {
+        return new ArrayList<>(segments.keySet());
+    }
+
+    @Scheduled(cron = "${attendance.archive.cron:0 30 2 * * *}")
+    public void archiveNightly() {
+        if (!enabled) return;
+        try {
+            archiveClosedMonths();
+        } catch (RuntimeException e) {
+            System.err.println("❌ Attendance archival failed: " + e.getMessage());
+        }
+    }
+
+    /** Moves every month before the last keepMonths from the table into the archive. */
+    public synchronized Map<String, Object> archiveClosedMonths() {
+        if (!enabled) throw new RuntimeException("Attendance archive is disabled");
+        long start = System.nanoTime();
+        YearMonth cutoff = YearMonth.now().minusMonths(keepMonths - 1);
+        LocalDateTime oldest = jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM attendance WHERE timestamp < ?",
+                LocalDateTime.class, Timestamp.valueOf(cutoff.atDay(1).atStartOfDay()));
+
+        List<String> months = new ArrayList<>();
+        long rows = 0;
+        if (oldest != null) {
+            for (YearMonth m = YearMonth.from(oldest); m.isBefore(cutoff); m = m.plusMonths(1)) {
+                int n = archiveMonth(m);
+                if (n > 0) {
+                    months.add(m.toString());
+                    rows += n;
+                }
+            }
+        }
+        archivedRows.addAndGet(rows);
+
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("at", LocalDateTime.now().toString());
+        run.put("archivedBefore", cutoff.toString());
+        run.put("months", months);
+        run.put("rows", rows);
+        run.put("ms", (System.nanoTime() - start) / 1_000_000);
+        lastRun = run;
+        if (rows > 0) System.out.println("✅ Archived " + rows + " attendance rows from " + months);
+        return run;
+    }
+
+    private int archiveMonth(YearMonth month) {
+        List<AttendanceView> live = jdbcTemplate.query(
+                "SELECT id, registration_no, name, timestamp FROM attendance WHERE timestamp >= ? AND timestamp < ?",
+                (rs, i) -> new AttendanceView(rs.getLong(1), rs.getString(2), rs.getString(3),
+                        rs.getObject(4, LocalDateTime.class)),
+                Timestamp.valueOf(month.atDay(1).atStartOfDay()),
+                Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay()));
+        if (live.isEmpty()) return 0;
+
+        Map<Long, AttendanceView> merged = new HashMap<>();
+        MonthSegment existing = segments.get(month);
+        if (existing != null) {
+            MonthSegment.Columns c = load(existing);
+            for (int i = 0; i < c.size(); i++) merged.put(c.row(i).id(), c.row(i));
+        }
+        for (AttendanceView v : live) merged.putIfAbsent(v.id(), v);
+        replace(month, merged.values());
+
+        // The file is durable; only now may the rows leave the table
+        List<Object> ids = new ArrayList<>(DELETE_CHUNK);
+        for (AttendanceView v : live) {
+            ids.add(v.id());
+            if (ids.size() == DELETE_CHUNK) deleteLive(ids);
+        }
+        if (!ids.isEmpty()) deleteLive(ids);
+        return live.size();
+    }
+
+    private void deleteLive(List<Object> ids) {
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        jdbcTemplate.update("DELETE FROM attendance WHERE id IN (" + placeholders + ")", ids.toArray());
+        ids.clear();
+    }
+
+    /** Removes a student's archived rows, rewriting each month that has any. */
+    public synchronized int deleteStudent(String registrationNo) {
+        int removed = 0;
+        for (MonthSegment s : new ArrayList<>(segments.values())) {
+            if (!s.mayContain(registrationNo)) continue;
+            MonthSegment.Columns c = load(s);
+            List<AttendanceView> keep = new ArrayList<>(c.size());
+            for (int i = 0; i < c.size(); i++) {
+                AttendanceView v = c.row(i);
+                if (registrationNo.equals(v.registrationNo())) removed++;
+                else keep.add(v);
+            }
+            replace(s.month(), keep);
+        }
+        return removed;
+    }
+
+    private void replace(YearMonth month, Collection<AttendanceView> rows) {
+        Path path = dir.resolve(FILE_PREFIX + month + FILE_SUFFIX);
+        files.writeLock().lock();
+        try {
+            MonthSegment old = rows.isEmpty() ? segments.remove(month) : segments.put(month, MonthSegment.write(path, month, rows));
+            if (rows.isEmpty()) Files.deleteIfExists(path);
+            // Make the rename (or delete) itself durable before anyone relies on it, e.g. by deleting table rows
+            StudentRegistrationService.syncDirectory(dir);
+            if (old != null) {
+                synchronized (cache) {
+                    cache.remove(old);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing archived attendance for " + month + ": " + e.getMessage());
+        } finally {
+            files.writeLock().unlock();
+        }
+    }
+
+    // Null when the month was removed since the caller looked it up
+    private MonthSegment.Columns columns(MonthSegment s) {
+        MonthSegment.Columns c;
+        synchronized (cache) {
+            c = cache.get(s);
+        }
+        if (c != null) {
+            cacheHits.incrementAndGet();
+            return c;
+        }
+        cacheMisses.incrementAndGet();
+        files.readLock().lock();
+        try {
+            MonthSegment current = segments.get(s.month()); // the file may have been rewritten meanwhile
+            if (current == null) return null;
+            c = load(current);
+            synchronized (cache) {
+                cache.put(current, c);
+            }
+            return c;
+        } finally {
+            files.readLock().unlock();
+        }
+    }
+
+    private static MonthSegment.Columns load(MonthSegment s) {
+        try {
+            return s.load();
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading archived attendance for " + s.month() + ": " + e.getMessage());
+        }
+    }
+
+    private static List<AttendanceView> join(Future<List<AttendanceView>> part) {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scanning archived attendance");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new RuntimeException("Error scanning archived attendance: " + e.getCause().getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        long rows = 0, bytes = 0;
+        for (MonthSegment m : segments.values()) {
+            rows += m.rows();
+            bytes += m.fileBytes();
+        }
+        long n = scans.get();
+        s.put("enabled", enabled);
+        s.put("keepMonths", keepMonths);
+        s.put("months", segments.size());
+        s.put("firstMonth", segments.isEmpty() ? null : segments.firstKey().toString());
+        s.put("lastMonth", segments.isEmpty() ? null : segments.lastKey().toString());
+        s.put("rows", rows);
+        s.put("bytes", bytes);
+        s.put("bytesPerRow", rows == 0 ? 0 : Math.round(bytes * 10.0 / rows) / 10.0);
+        synchronized (cache) {
+            s.put("cachedMonths", cache.size());
+        }
+        s.put("cacheHits", cacheHits.get());
+        s.put("cacheMisses", cacheMisses.get());
+        s.put("scans", n);
+        s.put("avgScanMicros", n == 0 ? 0 : scanNanos.get() / n / 1000);
+        s.put("segmentsScanned", segmentsScanned.get());
+        s.put("segmentsPruned", segmentsPruned.get());
+        s.put("archivedRows", archivedRows.get());
+        s.put("lastRun", lastRun);
+        return s;
+    }
+}
@@ -0,0 +1,151 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.entity.Attendance;
+import com.smartattendence.attendence.repository.AttendanceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group-commit writer for attendance marks.
+ *
+ * Callers enqueue a mark and get a future back. One flusher thread drains the
+ * bounded queue and writes up to batchSize marks in a single saveAll
+ * transaction, waiting at most maxWaitMs after the first mark of a batch.
+ * With the pooled id allocator and hibernate.jdbc.batch_size these become
+ * multi-row inserts instead of one transaction per recognition. If a batch
+ * fails its marks are retried one at a time, so only the mark that cannot be
+ * written fails.
+ */
+@Service
+public class AttendanceBatchWriter {
+
+    @Autowired
+    private AttendanceRepository repo;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final int batchSize;
+    private final long maxWaitMs;
+    private final BlockingQueue<PendingMark> queue;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private Thread flusher;
+    private volatile boolean running = true;
+
+    private record PendingMark(Attendance attendance, CompletableFuture<Attendance> done) {}
+
+    public AttendanceBatchWriter(@Value("${attendance.writer.batch-size:100}") int batchSize,
+                                 @Value("${attendance.writer.max-wait-ms:20}") long maxWaitMs,
+                                 @Value("${attendance.writer.queue-capacity:10000}") int queueCapacity) {
+        this.batchSize = batchSize;
+        this.maxWaitMs = maxWaitMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    void start() {
+        seedIdAllocator();
+        flusher = new Thread(this::run, "attendance-batch-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Rows inserted earlier through AUTO_INCREMENT already hold low ids; move the
+    // allocator past them (plus one block, because the pooled optimizer hands out
+    // the block below the stored value).
+    private void seedIdAllocator() {
+        jdbcTemplate.update(
+                "INSERT INTO id_generator (seq_name, next_val) "
+                        + "SELECT 'attendance', COALESCE(MAX(id), 0) + ? + 1 FROM attendance "
+                        + "ON DUPLICATE KEY UPDATE next_val = GREATEST(next_val, VALUES(next_val))",
+                Attendance.ID_ALLOCATION_SIZE);
+    }
+
+    public CompletableFuture<Attendance> submit(Attendance attendance) {
+        CompletableFuture<Attendance> done = new CompletableFuture<>();
+        if (!running) {
+            done.completeExceptionally(new RuntimeException("Attendance writer is shut down"));
+        } else if (!queue.offer(new PendingMark(attendance, done))) {
+            done.completeExceptionally(new RuntimeException("Attendance queue full, try again"));
+        }
+        return done;
+    }
+
+    public long batchesWritten() { return batches.get(); }
+    public long marksWritten() { return written.get(); }
+    public int queueDepth() { return queue.size(); }
+
+    private void run() {
+        List<PendingMark> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMark first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || left <= 0) break;
+                    PendingMark next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingMark> batch) {
+        List<Attendance> rows = new ArrayList<>(batch.size());
+        for (PendingMark p : batch) rows.add(p.attendance());
+        try {
+            List<Attendance> saved = repo.saveAll(rows);
+            batches.incrementAndGet();
+            written.addAndGet(saved.size());
+            for (int i = 0; i < batch.size(); i++) batch.get(i).done().complete(saved.get(i));
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                System.err.println("❌ Attendance mark failed: " + e.getMessage());
+                batch.get(0).done().completeExceptionally(e);
+                return;
+            }
+            // The whole batch was rolled back: find out which mark broke it, row by row
+            System.err.println("⚠️ Attendance batch of " + batch.size() + " failed, retrying one by one: " + e.getMessage());
+            for (PendingMark p : batch) {
+                p.attendance().setId(null); // may hold an id from the rolled-back attempt
+                try {
+                    Attendance saved = repo.save(p.attendance());
+                    written.incrementAndGet();
+                    p.done().complete(saved);
+                } catch (Exception rowError) {
+                    System.err.println("❌ Attendance mark for " + p.attendance().getRegistrationNo() + " failed: "
+                            + rowError.getMessage());
+                    p.done().completeExceptionally(rowError);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (flusher != null) flusher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+}
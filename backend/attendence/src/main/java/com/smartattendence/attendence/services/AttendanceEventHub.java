@@ -0,0 +1,251 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.dto.AttendanceView;
+import com.smartattendence.attendence.entity.Attendance;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes every newly written attendance mark to dashboards over Server-Sent
+ * Events, so they no longer re-fetch whole lists to notice new rows.
+ *
+ * Each subscriber has its own bounded queue, drained by its own virtual
+ * thread, so one slow browser never holds up the others or the writer. When a
+ * queue overflows its pending events are coalesced into a single
+ * {@code resync} event, telling that client to re-fetch once and continue
+ * from the live stream.
+ *
+ * The last replaySize events are kept in a ring. A reconnect that sends
+ * {@code Last-Event-ID} is replayed from there; if the id has already fallen
+ * out of the ring (or belongs to an earlier run of the backend) the client
+ * gets {@code resync} instead. Event ids start at the startup time in
+ * microseconds, so they keep increasing across restarts.
+ */
+@Service
+public class AttendanceEventHub {
+
+    public record Event(long id, String type, AttendanceView mark) {}
+
+    private static final Event HEARTBEAT = new Event(0, null, null);
+
+    private final int replaySize;
+    private final int bufferSize;
+    private final long emitterTimeoutMs;
+
+    // Guarded by this
+    private final ArrayDeque<Event> ring = new ArrayDeque<>();
+    private long lastId = System.currentTimeMillis() * 1000;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "attendance-sse-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+
+    public AttendanceEventHub(@Value("${attendance.events.replay-size:1024}") int replaySize,
+                              @Value("${attendance.events.subscriber-buffer:256}") int bufferSize,
+                              @Value("${attendance.events.emitter-timeout-ms:1800000}") long emitterTimeoutMs,
+                              @Value("${attendance.events.heartbeat-ms:15000}") long heartbeatMs) {
+        this.replaySize = replaySize;
+        this.bufferSize = Math.max(2, bufferSize);
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        // Keeps proxies from closing idle streams and notices clients that went away
+        heartbeats.scheduleAtFixedRate(() -> subscribers.forEach(s -> s.offer(HEARTBEAT)),
+                heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        subscribers.forEach(Subscriber::close);
+        senders.shutdown();
+    }
+
+    /** Called once a mark is committed. Never throws. */
+    public void publish(Attendance saved) {
+        try {
+            AttendanceView mark = AttendanceView.of(saved);
+            synchronized (this) {
+                Event e = new Event(++lastId, "mark", mark);
+                ring.addLast(e);
+                if (ring.size() > replaySize) ring.removeFirst();
+                // Under the hub lock so a concurrent subscribe sees each event exactly once, replayed or live
+                for (Subscriber s : subscribers) {
+                    if (s.matches(mark)) s.offer(e);
+                }
+            }
+            published.incrementAndGet();
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Could not publish attendance event: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param lastEventId the browser's Last-Event-ID on reconnect, or null
+     * @param date        only marks made on this day, or null for all
+     * @param regNo       only this student's marks, or null for all
+     */
+    public SseEmitter subscribe(String lastEventId, LocalDate date, String regNo) {
+        Subscriber s = new Subscriber(newEmitter(emitterTimeoutMs), date, regNo);
+        s.emitter.onCompletion(s::close);
+        s.emitter.onTimeout(s::close);
+        s.emitter.onError(error -> s.close());
+
+        Long after = parseId(lastEventId);
+        synchronized (this) {
+            s.offer(HEARTBEAT); // commits the response headers right away
+            if (after != null && after < lastId) {
+                Event oldest = ring.peekFirst();
+                if (oldest == null || oldest.id() > after + 1) {
+                    s.offer(new Event(lastId, "resync", null));
+                } else {
+                    for (Event e : ring) {
+                        if (e.id() > after && s.matches(e.mark())) {
+                            s.offer(e);
+                            replayed.incrementAndGet();
+                        }
+                    }
+                }
+            } else if (after != null && after > lastId) {
+                s.offer(new Event(lastId, "resync", null)); // id from the future: not ours
+            }
+            subscribers.add(s);
+        }
+        return s.emitter;
+    }
+
+    protected SseEmitter newEmitter(long timeoutMs) {
+        return new SseEmitter(timeoutMs);
+    }
+
+    private static Long parseId(String id) {
+        if (id == null || id.isBlank()) return null;
+        try {
+            return Long.parseLong(id.trim());
+        } catch (NumberFormatException e) {
+            return 0L; // unknown id: treat as too old
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("subscribers", subscribers.size());
+        s.put("published", published.get());
+        s.put("delivered", delivered.get());
+        s.put("replayed", replayed.get());
+        s.put("coalescedResyncs", coalesced.get());
+        s.put("droppedEvents", droppedEvents.get());
+        s.put("disconnects", disconnects.get());
+        synchronized (this) {
+            s.put("ringSize", ring.size());
+            s.put("lastEventId", lastId);
+        }
+        s.put("replaySize", replaySize);
+        s.put("subscriberBuffer", bufferSize);
+        return s;
+    }
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final LocalDate date;
+        final String regNo;
+
+        // Guarded by this
+        private final ArrayDeque<Event> queue = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closed;
+
+        Subscriber(SseEmitter emitter, LocalDate date, String regNo) {
+            this.emitter = emitter;
+            this.date = date;
+            this.regNo = regNo == null || regNo.isBlank() ? null : regNo;
+        }
+
+        boolean matches(AttendanceView mark) {
+            if (regNo != null && !regNo.equals(mark.registrationNo())) return false;
+            return date == null || (mark.timestamp() != null && date.equals(mark.timestamp().toLocalDate()));
+        }
+
+        void offer(Event e) {
+            synchronized (this) {
+                if (closed) return;
+                if (e == HEARTBEAT) {
+                    if (!queue.isEmpty()) return; // real traffic is pending anyway
+                } else if (queue.size() >= bufferSize) {
+                    // Slow consumer: replace everything it has not read with one resync
+                    int dropped = 0;
+                    for (Event q : queue) if ("mark".equals(q.type())) dropped++;
+                    queue.clear();
+                    droppedEvents.addAndGet(dropped + 1);
+                    coalesced.incrementAndGet();
+                    queue.add(new Event(e.id(), "resync", null));
+                    return;
+                }
+                queue.add(e);
+                if (draining) return;
+                draining = true;
+            }
+            senders.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                Event e;
+                synchronized (this) {
+                    e = queue.poll();
+                    if (e == null || closed) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    if (e == HEARTBEAT) {
+                        emitter.send(SseEmitter.event().comment("ping"));
+                    } else {
+                        SseEmitter.SseEventBuilder event = SseEmitter.event().id(Long.toString(e.id())).name(e.type());
+                        emitter.send(e.mark() == null ? event.data("{}") : event.data(e.mark(), MediaType.APPLICATION_JSON));
+                        delivered.incrementAndGet();
+                    }
+                } catch (Exception ex) {
+                    // Client went away; the container completes the emitter
+                    close();
+                    emitter.completeWithError(ex);
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                queue.clear();
+            }
+            if (subscribers.remove(this)) disconnects.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartattendence.attendence.dto.AttendanceView;
+import com.smartattendence.attendence.repository.AttendanceRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams attendance rows straight from a MySQL server-side cursor into the
+ * response as CSV or NDJSON. Rows are read with plain JDBC, so no entities are
+ * created and nothing accumulates in a persistence context; memory stays
+ * constant regardless of how many rows are exported.
+ *
+ * Archived months are written one month at a time (archive plus any late
+ * table rows for that month), so the output stays in (timestamp, id) order
+ * across both tiers and at most one month is held in memory.
+ */
+@Service
+public class AttendanceExportService {
+
+    public enum Format { CSV, NDJSON }
+
+    // API column names; also the whitelist for the columns parameter
+    private static final List<String> COLUMNS = List.of("id", "registrationNo", "name", "timestamp");
+
+    private interface RowWriter {
+        void write(AttendanceView row) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private final JdbcTemplate streamingJdbc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private AttendanceRepository repo;
+    @Autowired
+    private AttendanceArchive archive;
+
+    public AttendanceExportService(DataSource dataSource) {
+        this.streamingJdbc = new JdbcTemplate(dataSource);
+        // Connector/J streams row by row only with this fetch size
+        this.streamingJdbc.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    public List<String> resolveColumns(String columns) {
+        if (columns == null || columns.isBlank()) return new ArrayList<>(COLUMNS);
+        List<String> out = new ArrayList<>();
+        for (String c : columns.split(",")) {
+            String name = c.trim();
+            if (!COLUMNS.contains(name)) throw new RuntimeException("Unknown column: " + name);
+            out.add(name);
+        }
+        return out;
+    }
+
+    public void export(OutputStream target, Format format, boolean gzip, List<String> columns,
+                       String registrationNo, LocalDate from, LocalDate to) throws IOException {
+        OutputStream out = gzip ? new GZIPOutputStream(target, 64 * 1024) : target;
+        LocalDateTime start = from == null ? AttendanceService.OPEN_FROM : from.atStartOfDay();
+        LocalDateTime end = to == null ? AttendanceService.OPEN_TO : to.plusDays(1).atStartOfDay();
+        String regNo = registrationNo == null || registrationNo.isBlank() ? null : registrationNo;
+
+        try {
+            RowWriter w = format == Format.CSV ? csvWriter(out, columns) : ndjsonWriter(out, columns);
+            LocalDateTime cursor = start;
+            for (YearMonth m : archive.archivedMonths()) {
+                LocalDateTime monthFrom = max(start, m.atDay(1).atStartOfDay());
+                LocalDateTime monthTo = min(end, m.plusMonths(1).atDay(1).atStartOfDay());
+                if (!monthFrom.isBefore(monthTo)) continue;
+                if (cursor.isBefore(monthFrom)) streamLive(w, regNo, cursor, monthFrom);
+                List<AttendanceView> rows = regNo == null
+                        ? repo.findBetween(monthFrom, monthTo)
+                        : repo.findByStudentBetween(regNo, monthFrom, monthTo);
+                for (AttendanceView row : rows) w.write(row);
+                cursor = monthTo;
+            }
+            if (cursor.isBefore(end)) streamLive(w, regNo, cursor, end);
+            w.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // client went away mid-export
+        }
+        if (gzip) ((GZIPOutputStream) out).finish();
+        out.flush();
+    }
+
+    private void streamLive(RowWriter w, String registrationNo, LocalDateTime from, LocalDateTime to) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, registration_no, name, timestamp FROM attendance WHERE timestamp >= ? AND timestamp < ?");
+        List<Object> params = new ArrayList<>();
+        params.add(Timestamp.valueOf(from));
+        params.add(Timestamp.valueOf(to));
+        if (registrationNo != null) {
+            sql.append(" AND registration_no = ?");
+            params.add(registrationNo);
+        }
+        sql.append(" ORDER BY timestamp, id");
+        streamingJdbc.query(sql.toString(), rs -> {
+            try {
+                w.write(new AttendanceView(rs.getLong(1), rs.getString(2), rs.getString(3),
+                        rs.getObject(4, LocalDateTime.class)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, params.toArray());
+    }
+
+    private RowWriter csvWriter(OutputStream out, List<String> columns) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        w.write(String.join(",", columns));
+        w.write('\n');
+        return new RowWriter() {
+            @Override
+            public void write(AttendanceView row) throws IOException {
+                for (int i = 0; i < columns.size(); i++) {
+                    if (i > 0) w.write(',');
+                    w.write(csv(value(row, columns.get(i))));
+                }
+                w.write('\n');
+            }
+
+            @Override
+            public void finish() throws IOException {
+                w.flush();
+            }
+        };
+    }
+
+    private RowWriter ndjsonWriter(OutputStream out, List<String> columns) throws IOException {
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(out);
+        gen.setRootValueSeparator(new SerializedString("\n"));
+        return new RowWriter() {
+            @Override
+            public void write(AttendanceView row) throws IOException {
+                gen.writeStartObject();
+                for (String column : columns) {
+                    if (column.equals("id")) gen.writeNumberField("id", row.id());
+                    else gen.writeStringField(column, value(row, column));
+                }
+                gen.writeEndObject();
+            }
+
+            @Override
+            public void finish() throws IOException {
+                gen.writeRaw('\n');
+                gen.flush();
+            }
+        };
+    }
+
+    private static String value(AttendanceView row, String column) {
+        Object v = switch (column) {
+            case "id" -> row.id();
+            case "registrationNo" -> row.registrationNo();
+            case "name" -> row.name();
+            default -> row.timestamp();
+        };
+        return v == null ? "" : v.toString();
+    }
+
+    private static String csv(String v) {
+        if (v.indexOf(',') < 0 && v.indexOf('"') < 0 && v.indexOf('\n') < 0 && v.indexOf('\r') < 0) return v;
+        return '"' + v.replace("\"", "\"\"") + '"';
+    }
+
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
@@ -1,37 +1,145 @@
 package com.smartattendence.attendence.services;
 
+import com.smartattendence.attendence.dto.AttendanceView;
+import com.smartattendence.attendence.dto.KeysetPage;
 import com.smartattendence.attendence.entity.Attendance;
+import com.smartattendence.attendence.entity.AttendanceSyncKey;
 import com.smartattendence.attendence.repository.AttendanceRepository;
+import com.smartattendence.attendence.repository.AttendanceSyncKeyRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class AttendanceService {
+    // Bounds used when the caller gives no date filter; both are far outside real data
+    static final LocalDateTime OPEN_FROM = LocalDateTime.of(1970, 1, 1, 0, 0);
+    static final LocalDateTime OPEN_TO = LocalDateTime.of(9999, 1, 1, 0, 0);
+
     @Autowired
     private AttendanceRepository repo;
+    @Autowired
+    private AttendanceBatchWriter batchWriter;
+    @Autowired
+    private DailyAttendanceTracker dailyTracker;
+    @Autowired
+    private AttendanceEventHub eventHub;
+    @Autowired
+    private AttendanceSyncKeyRepository syncKeys;
+    @Autowired
+    private AttendanceWal wal;
+    @Autowired
+    private AttendanceArchive archive;
 
-    public Attendance markAttendance(String regNo, String name) {
+    // ✅ Marks go to the local write-ahead log and complete once it is synced; the table is written behind.
+    // Without the log they are group-committed straight to the database.
+    // Only the first mark per student per day is kept; repeats complete with null.
+    public CompletableFuture<Attendance> markAttendanceAsync(String regNo, String name) {
+        return markAttendanceAsync(regNo, name, LocalDateTime.now());
+    }
+
+    // ✅ Same, for a mark made at another time (e.g. seen in a recorded session); checked against that day
+    public CompletableFuture<Attendance> markAttendanceAsync(String regNo, String name, LocalDateTime timestamp) {
         Attendance a = new Attendance(regNo, name);
-        return repo.save(a);
+        a.setTimestamp(timestamp);
+        LocalDate day = timestamp.toLocalDate();
+        if (dailyTracker.covers(day)) {
+            if (!dailyTracker.markIfFirst(a)) return CompletableFuture.completedFuture(null);
+        } else if (!repo.findByStudentBetween(regNo, day.atStartOfDay(), day.plusDays(1).atStartOfDay()).isEmpty()) {
+            // Older than the tracker's window: the table (and archive) decide
+            return CompletableFuture.completedFuture(null);
+        }
+        if (wal.enabled()) {
+            // Published by the log's flusher, once the row (and its id) exists
+            return wal.append(a).whenComplete((logged, error) -> {
+                if (error != null) dailyTracker.release(a);
+            });
+        }
+        return batchWriter.submit(a).whenComplete((saved, error) -> {
+            if (error != null) dailyTracker.release(a);
+            else eventHub.publish(saved);
+        });
     }
 
-    public List<Attendance> fetchAll() {
-        return repo.findAll();
+    public Attendance markAttendance(String regNo, String name) {
+        return markAttendanceAsync(regNo, name).join();
     }
 
-    public List<Attendance> getAttendanceByReg(String registrationNo) {
-        return repo.findByRegistrationNoOrderByTimestampDesc(registrationNo);
+    /**
+     * Kiosk sync: writes the marks and the idempotency keys in one transaction,
+     * so a key is recorded exactly when its mark is. keys.get(i) belongs to
+     * marks.get(i); any further keys record events that wrote no row.
+     */
+    @Transactional
+    public List<Attendance> saveSynced(List<Attendance> marks, List<AttendanceSyncKey> keys) {
+        List<Attendance> saved = repo.saveAll(marks);
+        for (int i = 0; i < saved.size(); i++) keys.get(i).setAttendanceId(saved.get(i).getId());
+        syncKeys.saveAll(keys);
+        return saved;
     }
-    public List<Attendance> getAttendanceByDate(LocalDate date) {
-    return repo.findByDate(date);
+
+    @Transactional(readOnly = true)
+    public KeysetPage<AttendanceView> fetchPage(String registrationNo, LocalDate from, LocalDate to,
+                                            Integer limit, String cursor) {
+        int size = KeysetPage.clampLimit(limit);
+        LocalDateTime start = from == null ? OPEN_FROM : from.atStartOfDay();
+        LocalDateTime end = to == null ? OPEN_TO : to.plusDays(1).atStartOfDay();
+        LocalDateTime afterTs = start;
+        long afterId = Long.MIN_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] key = KeysetPage.decodeCursor(cursor, 2);
+            afterTs = LocalDateTime.parse(key[0]);
+            afterId = Long.parseLong(key[1]);
+        }
+
+        // Ask for one extra row to learn whether another page exists
+        PageRequest window = PageRequest.ofSize(size + 1);
+        List<AttendanceView> rows = registrationNo == null || registrationNo.isBlank()
+                ? repo.findPageAfter(start, end, afterTs, afterId, window)
+                : repo.findStudentPageAfter(registrationNo, start, end, afterTs, afterId, window);
+        if (rows.size() <= size) return new KeysetPage<>(rows, null);
+        rows = rows.subList(0, size);
+        AttendanceView last = rows.get(size - 1);
+        return new KeysetPage<>(rows, KeysetPage.encodeCursor(last.timestamp().toString(), last.id().toString()));
+    }
+
+    @Transactional(readOnly = true)
+    public List<AttendanceView> fetchAll() {
+        return repo.findAllViews();
+    }
+
+    @Transactional(readOnly = true)
+    public List<AttendanceView> getAttendanceByReg(String registrationNo) {
+        return repo.findViewsByStudent(registrationNo);
+    }
+
+    @Transactional(readOnly = true)
+    public List<AttendanceView> getAttendanceByDate(LocalDate date) {
+        if (date.equals(LocalDate.now())) return dailyTracker.todaysAttendance().stream().map(AttendanceView::of).toList();
+        return repo.findByDate(date);
+    }
+
+    // Inclusive calendar days [from, to]
+    @Transactional(readOnly = true)
+    public List<AttendanceView> getAttendanceBetween(LocalDate from, LocalDate to, String registrationNo) {
+        if (to.isBefore(from)) throw new RuntimeException("'to' date is before 'from' date");
+        LocalDateTime start = from.atStartOfDay();
+        LocalDateTime end = to.plusDays(1).atStartOfDay();
+        if (registrationNo == null || registrationNo.isBlank()) return repo.findBetween(start, end);
+        return repo.findByStudentBetween(registrationNo, start, end);
     }
  
 public void deleteAttendanceByReg(String regNo) {
+        wal.discard(regNo); // first, so a later flush cannot bring marks back
         repo.deleteAll(repo.findByRegistrationNoOrderByTimestampDesc(regNo));
+        archive.deleteStudent(regNo);
+        dailyTracker.forget(regNo);
     }
 }
 
@@ -0,0 +1,369 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartattendence.attendence.entity.Attendance;
+import com.smartattendence.attendence.entity.AttendanceSyncKey;
+import com.smartattendence.attendence.entity.Student;
+import com.smartattendence.attendence.repository.AttendanceSyncKeyRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Applies attendance marks that kiosks buffered while the backend was out of
+ * reach. A batch is NDJSON, optionally gzip-compressed, one event per line:
+ * <pre>
+ *   {"key": "k1-000123", "kioskId": "lab-2", "registrationNo": "40", "timestamp": "2025-01-31T09:01:02"}
+ * </pre>
+ * timestamp is the kiosk's clock, as local date-time, ISO instant/offset or
+ * epoch milliseconds. Kiosks retry whole batches, so every event carries an
+ * idempotency key, unique per kiosk: (kioskId, key) pairs already applied are
+ * answered from a bounded in-memory index, then from the attendance_sync_key
+ * table (one IN query per kiosk), and never applied twice. The remaining
+ * events follow the usual first mark per student per day rule and are written as one batched insert, together
+ * with their keys, in a single transaction.
+ */
+@Service
+public class AttendanceSyncService {
+
+    public enum Status { APPLIED, ALREADY_MARKED, DUPLICATE, REJECTED }
+
+    public record Result(int line, String key, Status status, Long attendanceId, String detail) {}
+
+    private record Event(int index, int line, String key, String kioskId, Student student, LocalDateTime timestamp) {}
+
+    private record Applied(String outcome, Long attendanceId) {}
+
+    private static final int MAX_KEY_LENGTH = 64;
+    private static final int KEY_QUERY_CHUNK = 1000;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private StudentService studentService;
+    @Autowired
+    private AttendanceService attendanceService;
+    @Autowired
+    private DailyAttendanceTracker dailyTracker;
+    @Autowired
+    private AttendanceEventHub eventHub;
+    @Autowired
+    private AttendanceSyncKeyRepository syncKeys;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final int maxEvents;
+    private final long maxBytes;
+    private final int retainDays;
+    private final long maxClockSkewMs;
+
+    private final Map<AttendanceSyncKey.Key, Applied> recentKeys; // guarded by itself
+    // One batch applies at a time, so two uploads of the same batch cannot both miss the key index
+    private final Object applyLock = new Object();
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong alreadyMarked = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong keyMemoryHits = new AtomicLong();
+    private final AtomicLong keyDatabaseHits = new AtomicLong();
+
+    public AttendanceSyncService(@Value("${attendance.sync.max-events:20000}") int maxEvents,
+                                 @Value("${attendance.sync.max-bytes:33554432}") long maxBytes,
+                                 @Value("${attendance.sync.key-cache-size:200000}") int keyCacheSize,
+                                 @Value("${attendance.sync.max-clock-skew-ms:300000}") long maxClockSkewMs,
+                                 @Value("${attendance.tracker.retain-days:7}") int retainDays) {
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+        this.maxClockSkewMs = maxClockSkewMs;
+        this.retainDays = Math.max(1, retainDays);
+        this.recentKeys = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<AttendanceSyncKey.Key, Applied> eldest) {
+                return size() > keyCacheSize;
+            }
+        };
+    }
+
+    // ddl-auto=update never changes a primary key; tables created when it was the key alone get the kiosk added
+    @PostConstruct
+    void migrateKey() {
+        try {
+            Integer columns = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.KEY_COLUMN_USAGE "
+                    + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'attendance_sync_key' AND CONSTRAINT_NAME = 'PRIMARY'",
+                    Integer.class);
+            if (columns != null && columns == 1) {
+                jdbcTemplate.execute("ALTER TABLE attendance_sync_key MODIFY kiosk_id VARCHAR(64) NOT NULL, "
+                        + "DROP PRIMARY KEY, ADD PRIMARY KEY (kiosk_id, idempotency_key)");
+                System.out.println("✅ attendance_sync_key now keyed on (kiosk_id, idempotency_key)");
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not check the attendance_sync_key primary key: " + e.getMessage());
+        }
+    }
+
+    /** @param gzip body was sent with {@code Content-Encoding: gzip} */
+    public Map<String, Object> sync(InputStream body, boolean gzip) throws IOException {
+        long started = System.nanoTime();
+        InputStream in = gzip ? new GZIPInputStream(body, 64 * 1024) : body;
+        List<Result> results = new ArrayList<>();
+        List<Event> candidates = new ArrayList<>();
+        Map<AttendanceSyncKey.Key, Integer> seenKeys = new HashMap<>();
+
+        // Limit counts decompressed bytes, so a small gzip bomb is refused as well
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new StudentRegistrationService.LimitedInputStream(in, maxBytes), StandardCharsets.UTF_8), 64 * 1024)) {
+            String text;
+            int line = 0;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) continue;
+                if (results.size() >= maxEvents) throw new RuntimeException("Sync batch exceeds " + maxEvents + " events");
+                results.add(null);
+                parse(results.size() - 1, line, text, seenKeys, results, candidates);
+            }
+        }
+
+        synchronized (applyLock) {
+            List<Event> fresh = dropApplied(candidates, results);
+            apply(fresh, results);
+        }
+
+        Map<Status, Integer> counts = new LinkedHashMap<>();
+        for (Status s : Status.values()) counts.put(s, 0);
+        for (Result r : results) counts.merge(r.status(), 1, Integer::sum);
+        batches.incrementAndGet();
+        events.addAndGet(results.size());
+        applied.addAndGet(counts.get(Status.APPLIED));
+        alreadyMarked.addAndGet(counts.get(Status.ALREADY_MARKED));
+        duplicates.addAndGet(counts.get(Status.DUPLICATE));
+        rejected.addAndGet(counts.get(Status.REJECTED));
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("events", results.size());
+        out.put("applied", counts.get(Status.APPLIED));
+        out.put("alreadyMarked", counts.get(Status.ALREADY_MARKED));
+        out.put("duplicates", counts.get(Status.DUPLICATE));
+        out.put("rejected", counts.get(Status.REJECTED));
+        out.put("elapsedMs", (System.nanoTime() - started) / 1_000_000);
+        out.put("results", results);
+        return out;
+    }
+
+    private void parse(int index, int line, String text, Map<AttendanceSyncKey.Key, Integer> seenKeys,
+                       List<Result> results, List<Event> candidates) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(text);
+        } catch (IOException e) {
+            results.set(index, new Result(line, null, Status.REJECTED, null, "Not valid JSON"));
+            return;
+        }
+        String key = text(node, "key");
+        String kioskId = text(node, "kioskId");
+        String regNo = text(node, "registrationNo");
+        String problem = null;
+        if (key == null || key.length() > MAX_KEY_LENGTH) problem = "key is required (at most " + MAX_KEY_LENGTH + " chars)";
+        else if (kioskId == null || kioskId.length() > MAX_KEY_LENGTH) problem = "kioskId is required (at most " + MAX_KEY_LENGTH + " chars)";
+        else if (regNo == null) problem = "registrationNo is required";
+        if (problem != null) {
+            results.set(index, new Result(line, key, Status.REJECTED, null, problem));
+            return;
+        }
+
+        Integer earlier = seenKeys.putIfAbsent(new AttendanceSyncKey.Key(kioskId, key), line);
+        if (earlier != null) {
+            results.set(index, new Result(line, key, Status.DUPLICATE, null, "Same key as line " + earlier));
+            return;
+        }
+
+        LocalDateTime timestamp;
+        try {
+            timestamp = timestamp(node.get("timestamp"));
+        } catch (DateTimeParseException e) {
+            results.set(index, new Result(line, key, Status.REJECTED, null, "Unreadable timestamp"));
+            return;
+        }
+        if (timestamp == null) {
+            results.set(index, new Result(line, key, Status.REJECTED, null, "timestamp is required"));
+            return;
+        }
+        // Only days the tracker still holds can be checked for an earlier mark
+        LocalDate oldest = LocalDate.now().minusDays(retainDays - 1);
+        if (timestamp.toLocalDate().isBefore(oldest)) {
+            results.set(index, new Result(line, key, Status.REJECTED, null, "Before " + oldest + ", outside the days the tracker keeps"));
+            return;
+        }
+        if (timestamp.isAfter(LocalDateTime.now().plus(Duration.ofMillis(maxClockSkewMs)))) {
+            results.set(index, new Result(line, key, Status.REJECTED, null, "timestamp is in the future"));
+            return;
+        }
+
+        Student student = studentService.getStudentByReg(regNo);
+        if (student == null) {
+            results.set(index, new Result(line, key, Status.REJECTED, null, "Student not found: " + regNo));
+            return;
+        }
+        candidates.add(new Event(index, line, key, kioskId, student, timestamp));
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode v = node.get(field);
+        if (v == null || v.isNull()) return null;
+        String s = v.asText().trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    private static LocalDateTime timestamp(JsonNode v) {
+        if (v == null || v.isNull()) return null;
+        if (v.isNumber()) return LocalDateTime.ofInstant(Instant.ofEpochMilli(v.asLong()), ZoneId.systemDefault());
+        String s = v.asText().trim();
+        if (s.endsWith("Z") || s.matches(".*[+-]\\d\\d:\\d\\d$")) {
+            return LocalDateTime.ofInstant(OffsetDateTime.parse(s).toInstant(), ZoneId.systemDefault());
+        }
+        return LocalDateTime.parse(s);
+    }
+
+    // Answers keys seen before: memory first, then one IN query per kiosk and chunk for the rest
+    private List<Event> dropApplied(List<Event> candidates, List<Result> results) {
+        Map<String, List<Event>> unknown = new LinkedHashMap<>();
+        synchronized (recentKeys) {
+            for (Event e : candidates) {
+                Applied a = recentKeys.get(idOf(e));
+                if (a == null) {
+                    unknown.computeIfAbsent(e.kioskId(), k -> new ArrayList<>()).add(e);
+                } else {
+                    keyMemoryHits.incrementAndGet();
+                    results.set(e.index(), duplicate(e, a));
+                }
+            }
+        }
+
+        List<Event> fresh = new ArrayList<>();
+        for (Map.Entry<String, List<Event>> kiosk : unknown.entrySet()) {
+            List<Event> events = kiosk.getValue();
+            for (int from = 0; from < events.size(); from += KEY_QUERY_CHUNK) {
+                List<Event> chunk = events.subList(from, Math.min(events.size(), from + KEY_QUERY_CHUNK));
+                Map<String, Applied> stored = new HashMap<>();
+                for (AttendanceSyncKey k : syncKeys.findByKeys(kiosk.getKey(), chunk.stream().map(Event::key).toList())) {
+                    stored.put(k.getKey(), new Applied(k.getOutcome(), k.getAttendanceId()));
+                }
+                for (Event e : chunk) {
+                    Applied a = stored.get(e.key());
+                    if (a == null) {
+                        fresh.add(e);
+                    } else {
+                        keyDatabaseHits.incrementAndGet();
+                        remember(idOf(e), a);
+                        results.set(e.index(), duplicate(e, a));
+                    }
+                }
+            }
+        }
+        return fresh;
+    }
+
+    private static AttendanceSyncKey.Key idOf(Event e) {
+        return new AttendanceSyncKey.Key(e.kioskId(), e.key());
+    }
+
+    private static Result duplicate(Event e, Applied a) {
+        return new Result(e.line(), e.key(), Status.DUPLICATE, a.attendanceId(), "Already applied as " + a.outcome());
+    }
+
+    private void apply(List<Event> fresh, List<Result> results) {
+        // Earliest first, so the kiosk's first sighting of the day is the one kept
+        fresh.sort(Comparator.comparing(Event::timestamp));
+        List<Attendance> marks = new ArrayList<>();
+        List<AttendanceSyncKey> keys = new ArrayList<>();
+        List<Event> markEvents = new ArrayList<>();
+        List<AttendanceSyncKey> repeatKeys = new ArrayList<>();
+        List<Event> repeatEvents = new ArrayList<>();
+        for (Event e : fresh) {
+            Attendance a = new Attendance(e.student().getRegistrationNo(), e.student().getName());
+            a.setTimestamp(e.timestamp());
+            if (dailyTracker.markIfFirst(a)) {
+                marks.add(a);
+                keys.add(new AttendanceSyncKey(e.key(), e.kioskId(), Status.APPLIED.name(), null));
+                markEvents.add(e);
+            } else {
+                repeatKeys.add(new AttendanceSyncKey(e.key(), e.kioskId(), Status.ALREADY_MARKED.name(), null));
+                repeatEvents.add(e);
+            }
+        }
+        if (keys.isEmpty() && repeatKeys.isEmpty()) return;
+
+        keys.addAll(repeatKeys);
+        List<Attendance> saved;
+        try {
+            saved = attendanceService.saveSynced(marks, keys);
+        } catch (RuntimeException ex) {
+            marks.forEach(dailyTracker::release);
+            System.err.println("❌ Kiosk sync of " + keys.size() + " events failed: " + ex.getMessage());
+            // Nothing was recorded, so the kiosk can resend the same batch
+            throw new RuntimeException("Sync failed, retry the batch: " + ex.getMessage());
+        }
+
+        for (int i = 0; i < saved.size(); i++) {
+            Event e = markEvents.get(i);
+            Attendance a = saved.get(i);
+            remember(idOf(e), new Applied(Status.APPLIED.name(), a.getId()));
+            results.set(e.index(), new Result(e.line(), e.key(), Status.APPLIED, a.getId(), null));
+            eventHub.publish(a);
+        }
+        for (Event e : repeatEvents) {
+            remember(idOf(e), new Applied(Status.ALREADY_MARKED.name(), null));
+            results.set(e.index(), new Result(e.line(), e.key(), Status.ALREADY_MARKED, null,
+                    "Already marked on " + e.timestamp().toLocalDate()));
+        }
+        System.out.println("✅ Kiosk sync: " + saved.size() + " marks applied, " + repeatEvents.size() + " already marked");
+    }
+
+    private void remember(AttendanceSyncKey.Key key, Applied a) {
+        synchronized (recentKeys) {
+            recentKeys.put(key, a);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("batches", batches.get());
+        s.put("events", events.get());
+        s.put("applied", applied.get());
+        s.put("alreadyMarked", alreadyMarked.get());
+        s.put("duplicates", duplicates.get());
+        s.put("rejected", rejected.get());
+        s.put("keyMemoryHits", keyMemoryHits.get());
+        s.put("keyDatabaseHits", keyDatabaseHits.get());
+        synchronized (recentKeys) {
+            s.put("keysInMemory", recentKeys.size());
+        }
+        return s;
+    }
+}
@@ -0,0 +1,546 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.entity.Attendance;
+import com.smartattendence.attendence.repository.AttendanceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Local write-ahead log for attendance marks, so marking no longer waits on
+ * (or fails with) MySQL.
+ *
+ * The writer thread takes every mark queued since its last write, appends
+ * them to the active segment file and forces it to disk once for the whole
+ * group; only then are their futures completed. A flusher thread replays the
+ * logged marks into the attendance table in log order, in batches, retrying
+ * with backoff while the database is unavailable.
+ *
+ * Every record has a sequence number (LSN). Each batch insert reads and
+ * advances the LSN stored in attendance_wal_checkpoint in the same
+ * transaction, and skips records at or below it, so neither a crash nor a
+ * retry after a commit whose outcome was unknown inserts anything twice.
+ * Segments rotate at segmentBytes and are deleted once the checkpoint has
+ * passed them. On startup every remaining segment is read back, a torn record
+ * at the end of the last one is cut off, and the marks that were not yet in
+ * the table are queued for the flusher again.
+ *
+ * Deleting a student's attendance logs a discard record: the flusher drops
+ * that student's earlier marks, now and when the log is replayed.
+ *
+ * Record layout: payload length (int), CRC32 of payload (int), payload =
+ * lsn (long), timestamp seconds (long) + nanos (int), registrationNo, name.
+ * A discard record has timestamp seconds DISCARD and an empty name.
+ */
+@Service
+public class AttendanceWal {
+
+    private static final String LOG_NAME = "attendance";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final int MAX_RECORD_BYTES = 4096;
+    private static final long MIN_BACKOFF_MS = 100;
+    private static final long MAX_BACKOFF_MS = 5000;
+    private static final long SHUTDOWN_FLUSH_MS = 5000;
+    private static final long DISCARD = Long.MIN_VALUE;
+
+    private record Pending(Attendance attendance, CompletableFuture<Attendance> done, long enqueuedAt) {}
+
+    private record Entry(long lsn, Attendance attendance) {}
+
+    @Autowired
+    private AttendanceRepository repo;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private DailyAttendanceTracker dailyTracker;
+    @Autowired
+    private AttendanceEventHub eventHub;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final long segmentBytes;
+    private final int flushBatchSize;
+    private final BlockingQueue<Pending> appends;
+    private final LinkedBlockingDeque<Entry> unflushed = new LinkedBlockingDeque<>();
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>(); // first LSN -> file
+    private final Map<String, Long> discardedBefore = new ConcurrentHashMap<>(); // regNo -> LSN of its discard record
+    private final Object flushLock = new Object();
+
+    // Owned by the writer thread
+    private FileChannel active;
+    private long activeSize;
+    private volatile long nextLsn;
+
+    private volatile long checkpoint = -1; // last one this process committed, -1 until the first flush
+    private volatile boolean running = true;
+    private volatile boolean flushing = true;
+    private TransactionTemplate tx;
+    private Thread writer;
+    private Thread flusher;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong ackNanos = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong flushBatches = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong skippedOnReplay = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong segmentsDeleted = new AtomicLong();
+    private volatile String lastFlushError;
+
+    public AttendanceWal(@Value("${attendance.wal.enabled:true}") boolean enabled,
+                         @Value("${attendance.wal.dir:attendance-wal}") String dir,
+                         @Value("${attendance.wal.segment-bytes:8388608}") long segmentBytes,
+                         @Value("${attendance.wal.flush-batch-size:500}") int flushBatchSize,
+                         @Value("${attendance.wal.queue-capacity:10000}") int queueCapacity) {
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.segmentBytes = segmentBytes;
+        this.flushBatchSize = Math.max(1, flushBatchSize);
+        this.appends = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) return;
+        tx = new TransactionTemplate(transactionManager);
+        Files.createDirectories(dir);
+        recover();
+        writer = daemon("attendance-wal-writer", this::writeLoop);
+        flusher = daemon("attendance-wal-flusher", this::flushLoop);
+    }
+
+    private static Thread daemon(String name, Runnable body) {
+        Thread t = new Thread(body, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /** Completes once the mark is on local disk; it reaches the table later, in order. */
+    public CompletableFuture<Attendance> append(Attendance attendance) {
+        CompletableFuture<Attendance> done = new CompletableFuture<>();
+        if (!running) {
+            done.completeExceptionally(new RuntimeException("Attendance log is shut down"));
+        } else if (!appends.offer(new Pending(attendance, done, System.nanoTime()))) {
+            done.completeExceptionally(new RuntimeException("Attendance log queue full, try again"));
+        }
+        return done;
+    }
+
+    /**
+     * Drops the student's marks that are logged but not yet in the table.
+     * Once this returns, no flush still in progress can insert one of them, so
+     * rows deleted afterwards stay deleted.
+     */
+    public void discard(String regNo) {
+        if (!enabled) return;
+        Attendance marker = new Attendance();
+        marker.setRegistrationNo(regNo); // no timestamp: logged as a discard record
+        append(marker).join();
+        synchronized (flushLock) {
+            // wait for a flush that filtered its batch before the discard was registered
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending> group = new ArrayList<>();
+        while (running || !appends.isEmpty()) {
+            try {
+                Pending first = appends.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                group.add(first);
+                appends.drainTo(group);
+                writeGroup(group);
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                System.err.println("❌ Attendance log write of " + group.size() + " marks failed: " + e.getMessage());
+                RuntimeException failure = new RuntimeException("Attendance log write failed: " + e.getMessage());
+                for (Pending p : group) p.done().completeExceptionally(failure);
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void writeGroup(List<Pending> group) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(group.size() * 64);
+        List<Entry> entries = new ArrayList<>(group.size());
+        long lsn = nextLsn;
+        for (Pending p : group) {
+            encode(out, lsn, p.attendance());
+            entries.add(new Entry(lsn++, p.attendance()));
+        }
+
+        long before = activeSize;
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(out.toByteArray());
+            while (buf.hasRemaining()) active.write(buf);
+            active.force(false); // one sync for the whole group
+        } catch (IOException e) {
+            // Do not leave records behind that were never acknowledged
+            try {
+                active.truncate(before);
+                active.position(before);
+            } catch (IOException ignored) {
+                // recovery cuts a torn tail anyway
+            }
+            throw e;
+        }
+        activeSize = before + out.size();
+        nextLsn = lsn;
+        for (Entry e : entries) {
+            if (isDiscard(e)) {
+                discardedBefore.merge(e.attendance().getRegistrationNo(), e.lsn(), Math::max);
+                int queued = unflushed.size();
+                unflushed.removeIf(this::isDiscarded);
+                discarded.addAndGet(queued - unflushed.size());
+            } else {
+                unflushed.add(e);
+            }
+        }
+
+        long now = System.nanoTime();
+        for (Pending p : group) {
+            ackNanos.addAndGet(now - p.enqueuedAt());
+            p.done().complete(p.attendance());
+        }
+        appended.addAndGet(group.size());
+        groups.incrementAndGet();
+
+        if (activeSize >= segmentBytes) {
+            try {
+                openSegment(nextLsn);
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not rotate attendance log, staying on the current segment: " + e.getMessage());
+            }
+        }
+    }
+
+    private void openSegment(long firstLsn) throws IOException {
+        Path file = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+        FileChannel next = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        StudentRegistrationService.syncDirectory(dir);
+        if (active != null) active.close();
+        active = next;
+        activeSize = 0;
+        segments.put(firstLsn, file);
+    }
+
+    private static void encode(ByteArrayOutputStream out, long lsn, Attendance a) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+        DataOutputStream d = new DataOutputStream(payload);
+        d.writeLong(lsn);
+        d.writeLong(a.getTimestamp() == null ? DISCARD : a.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        d.writeInt(a.getTimestamp() == null ? 0 : a.getTimestamp().getNano());
+        d.writeUTF(a.getRegistrationNo());
+        d.writeUTF(a.getName() == null ? "" : a.getName());
+        byte[] bytes = payload.toByteArray();
+        if (bytes.length > MAX_RECORD_BYTES) throw new IOException("attendance record too large");
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(bytes.length);
+        header.writeInt((int) crc.getValue());
+        out.write(bytes);
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+
+        long lastLsn = 0;
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            String name = file.getFileName().toString();
+            segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+            long good = readSegment(file, entries);
+            if (good < Files.size(file)) {
+                if (i == files.size() - 1) {
+                    System.err.println("⚠️ Attendance log: cutting torn tail of " + name + " at byte " + good);
+                    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        ch.truncate(good);
+                        ch.force(true);
+                    }
+                } else {
+                    System.err.println("❌ Attendance log: corrupt record in " + name + " at byte " + good
+                            + ", the rest of that segment is skipped");
+                }
+            }
+        }
+
+        Map<String, Long> discards = new HashMap<>();
+        for (Entry e : entries) {
+            lastLsn = Math.max(lastLsn, e.lsn());
+            if (isDiscard(e)) discards.merge(e.attendance().getRegistrationNo(), e.lsn(), Math::max);
+        }
+        int marks = 0;
+        for (Entry e : entries) {
+            if (isDiscard(e)) continue;
+            Long discardLsn = discards.get(e.attendance().getRegistrationNo());
+            if (discardLsn != null && e.lsn() < discardLsn) {
+                discarded.incrementAndGet();
+                continue;
+            }
+            dailyTracker.markIfFirst(e.attendance()); // the tracker was rebuilt from the table only
+            unflushed.add(e);
+            marks++;
+        }
+        recovered.set(marks);
+
+        if (segments.isEmpty()) {
+            // Fresh log: start above anything an earlier, deleted log could have checkpointed
+            nextLsn = System.currentTimeMillis() * 1000;
+            openSegment(nextLsn);
+        } else {
+            nextLsn = Math.max(lastLsn, segments.lastKey() - 1) + 1;
+            active = FileChannel.open(segments.lastEntry().getValue(), StandardOpenOption.WRITE);
+            activeSize = active.size();
+            active.position(activeSize);
+        }
+        System.out.println("✅ Attendance log: " + segments.size() + " segment(s), " + marks
+                + " mark(s) recovered for replay, next LSN " + nextLsn);
+    }
+
+    /** Appends the segment's valid records to out and returns the length of its valid prefix. */
+    private static long readSegment(Path file, List<Entry> out) throws IOException {
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_BYTES) return good;
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    return good;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) return good;
+
+                DataInputStream d = new DataInputStream(new ByteArrayInputStream(payload));
+                long lsn = d.readLong();
+                long seconds = d.readLong();
+                int nanos = d.readInt();
+                Attendance a = new Attendance();
+                a.setRegistrationNo(d.readUTF());
+                a.setName(d.readUTF());
+                if (seconds != DISCARD) a.setTimestamp(LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+                out.add(new Entry(lsn, a));
+                good += 8 + length;
+            }
+        }
+    }
+
+    private void flushLoop() {
+        List<Entry> batch = new ArrayList<>();
+        long backoff = MIN_BACKOFF_MS;
+        while (flushing) {
+            List<Attendance> committed;
+            try {
+                if (batch.isEmpty()) {
+                    Entry first = unflushed.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    Entry next;
+                    while (batch.size() < flushBatchSize && (next = unflushed.poll()) != null) batch.add(next);
+                }
+                committed = flush(batch);
+                batch.clear();
+                backoff = MIN_BACKOFF_MS;
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                // The marks are safe in the log; keep this batch and try again later
+                flushFailures.incrementAndGet();
+                if (backoff == MIN_BACKOFF_MS) {
+                    System.err.println("⚠️ Attendance log flush failed, retrying: " + e.getMessage());
+                }
+                lastFlushError = e.getMessage();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+                continue;
+            }
+            // The batch is committed; nothing from here on sends it back for a retry
+            for (Attendance a : committed) eventHub.publish(a);
+            deleteAppliedSegments();
+        }
+    }
+
+    /** Inserts the batch and advances the checkpoint; returns the inserted marks, with their ids. */
+    private List<Attendance> flush(List<Entry> batch) {
+        long upTo = batch.get(batch.size() - 1).lsn();
+        List<Entry> todo = new ArrayList<>(batch.size());
+        List<Attendance> saved;
+        synchronized (flushLock) {
+            // The stored checkpoint is read in the same transaction that advances it: after a commit
+            // that failed only on the way back, the retry finds its records already applied.
+            saved = tx.execute(status -> {
+                todo.clear();
+                long applied = readCheckpoint();
+                for (Entry e : batch) if (e.lsn() > applied && !isDiscarded(e)) todo.add(e);
+
+                // Fresh entities each attempt: a rolled-back attempt may have assigned ids to the last ones
+                List<Attendance> rows = new ArrayList<>(todo.size());
+                for (Entry e : todo) {
+                    Attendance row = new Attendance();
+                    row.setRegistrationNo(e.attendance().getRegistrationNo());
+                    row.setName(e.attendance().getName());
+                    row.setTimestamp(e.attendance().getTimestamp());
+                    rows.add(row);
+                }
+                List<Attendance> s = rows.isEmpty() ? List.of() : repo.saveAll(rows);
+                jdbcTemplate.update("INSERT INTO attendance_wal_checkpoint (log_name, lsn) VALUES (?, ?) "
+                        + "ON DUPLICATE KEY UPDATE lsn = GREATEST(lsn, VALUES(lsn))", LOG_NAME, upTo);
+                return s;
+            });
+        }
+        checkpoint = upTo;
+        if (!saved.isEmpty()) {
+            flushed.addAndGet(saved.size());
+            flushBatches.incrementAndGet();
+        }
+        skippedOnReplay.addAndGet(batch.size() - saved.size());
+        discardedBefore.values().removeIf(lsn -> lsn <= upTo);
+        List<Attendance> committed = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            Attendance logged = todo.get(i).attendance();
+            logged.setId(saved.get(i).getId()); // the tracker holds this instance
+            committed.add(logged);
+        }
+        return committed;
+    }
+
+    private static boolean isDiscard(Entry e) {
+        return e.attendance().getTimestamp() == null;
+    }
+
+    private boolean isDiscarded(Entry e) {
+        Long discardLsn = discardedBefore.get(e.attendance().getRegistrationNo());
+        return discardLsn != null && e.lsn() < discardLsn;
+    }
+
+    private long readCheckpoint() {
+        List<Long> lsn = jdbcTemplate.queryForList(
+                "SELECT lsn FROM attendance_wal_checkpoint WHERE log_name = ?", Long.class, LOG_NAME);
+        return lsn.isEmpty() ? 0 : lsn.get(0);
+    }
+
+    // A segment can go once the next one starts at or below checkpoint + 1; the active one always stays
+    private void deleteAppliedSegments() {
+        Long activeFirst = segments.lastKey();
+        for (Long first : new ArrayList<>(segments.headMap(activeFirst).keySet())) {
+            Long next = segments.higherKey(first);
+            if (next == null || next - 1 > checkpoint) break;
+            try {
+                Files.deleteIfExists(segments.get(first));
+                segments.remove(first);
+                segmentsDeleted.incrementAndGet();
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not delete attendance log segment " + segments.get(first) + ": " + e.getMessage());
+                break;
+            }
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException, IOException {
+        if (!enabled) return;
+        running = false;
+        if (writer != null) writer.join(TimeUnit.SECONDS.toMillis(10));
+        Pending p;
+        while ((p = appends.poll()) != null) p.done().completeExceptionally(new RuntimeException("Attendance log is shut down"));
+
+        // Give the flusher a moment to catch up; whatever is left is replayed on the next start
+        long deadline = System.currentTimeMillis() + SHUTDOWN_FLUSH_MS;
+        while (!unflushed.isEmpty() && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        flushing = false;
+        if (flusher != null) flusher.join(TimeUnit.SECONDS.toMillis(10));
+        if (active != null) active.close();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        long n = appended.get(), g = groups.get();
+        s.put("enabled", enabled);
+        s.put("appended", n);
+        s.put("syncs", g);
+        s.put("avgGroupSize", g == 0 ? 0 : Math.round(n * 10.0 / g) / 10.0);
+        s.put("avgAckMicros", n == 0 ? 0 : ackNanos.get() / n / 1000);
+        s.put("queueDepth", appends.size());
+        s.put("unflushed", unflushed.size());
+        s.put("flushed", flushed.get());
+        s.put("flushBatches", flushBatches.get());
+        s.put("flushFailures", flushFailures.get());
+        s.put("lastFlushError", lastFlushError);
+        s.put("recovered", recovered.get());
+        s.put("skippedOnReplay", skippedOnReplay.get());
+        s.put("discarded", discarded.get());
+        s.put("nextLsn", nextLsn);
+        s.put("checkpointLsn", checkpoint);
+        s.put("segments", segments.size());
+        s.put("segmentsDeleted", segmentsDeleted.get());
+        return s;
+    }
+}
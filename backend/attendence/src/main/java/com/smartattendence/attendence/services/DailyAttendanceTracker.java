@@ -0,0 +1,138 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.cache.DayBitmap;
+import com.smartattendence.attendence.cache.StudentIndex;
+import com.smartattendence.attendence.entity.Attendance;
+import com.smartattendence.attendence.repository.AttendanceRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory "who is already marked" state for the last few days.
+ *
+ * Each day is a {@link DayBitmap} over dense student indexes, so the
+ * already-marked check is a bit test instead of a COUNT(*) per frame. Today's
+ * first marks are also kept as records, which serves today's attendance list
+ * without touching MySQL. Rebuilt from the database on startup; rolled over
+ * at midnight.
+ */
+@Service
+public class DailyAttendanceTracker {
+
+    @Autowired
+    private AttendanceRepository repo;
+
+    private final int retainDays;
+    private final StudentIndex students = new StudentIndex();
+    private final ConcurrentSkipListMap<LocalDate, DayBitmap> days = new ConcurrentSkipListMap<>();
+    // The day and its records are swapped together, so a mark read against one day never lands in the next day's list
+    private volatile Today today = new Today(LocalDate.now(), new ConcurrentHashMap<>());
+
+    private record Today(LocalDate date, Map<Integer, Attendance> records) {}
+
+    public DailyAttendanceTracker(@Value("${attendance.tracker.retain-days:7}") int retainDays) {
+        this.retainDays = Math.max(1, retainDays);
+    }
+
+    @PostConstruct
+    void rebuild() {
+        long start = System.nanoTime();
+        LocalDate now = LocalDate.now();
+        LocalDate from = now.minusDays(retainDays - 1);
+        List<Object[]> marks = repo.findMarksSince(from.atStartOfDay());
+        for (Object[] row : marks) {
+            String regNo = (String) row[0];
+            LocalDate day = ((LocalDateTime) row[1]).toLocalDate();
+            bitmap(day).add(students.indexOf(regNo));
+        }
+        Map<Integer, Attendance> records = new ConcurrentHashMap<>();
+        for (Attendance a : repo.findByTimestampGreaterThanEqualOrderByTimestampAsc(now.atStartOfDay())) {
+            records.putIfAbsent(students.indexOf(a.getRegistrationNo()), a);
+        }
+        today = new Today(now, records);
+        System.out.printf("✅ Attendance bitmaps rebuilt: %d marks over %d days in %d ms%n",
+                marks.size(), days.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Scheduled(cron = "0 0 0 * * *")
+    public void rollOver() {
+        rollTo(LocalDate.now());
+    }
+
+    private synchronized Today rollTo(LocalDate date) {
+        if (!date.isAfter(today.date())) return today;
+        today = new Today(date, new ConcurrentHashMap<>());
+        days.headMap(date.minusDays(retainDays - 1)).clear();
+        return today;
+    }
+
+    /**
+     * Atomically claims the first mark of the day for this student.
+     * @return true if the caller should persist the mark, false if one already exists
+     */
+    public boolean markIfFirst(Attendance attendance) {
+        LocalDate day = attendance.getTimestamp().toLocalDate();
+        Today current = today;
+        if (day.isAfter(current.date())) current = rollTo(day);
+        int idx = students.indexOf(attendance.getRegistrationNo());
+        if (!bitmap(day).add(idx)) return false;
+        // If midnight passed since current was read, this lands in the retired day's map, not the new one
+        if (day.equals(current.date())) current.records().put(idx, attendance);
+        return true;
+    }
+
+    /** Undoes {@link #markIfFirst} when the write did not make it to the database. */
+    public void release(Attendance attendance) {
+        LocalDate day = attendance.getTimestamp().toLocalDate();
+        int idx = students.find(attendance.getRegistrationNo());
+        if (idx < 0) return;
+        DayBitmap bits = days.get(day);
+        if (bits != null) bits.remove(idx);
+        today.records().remove(idx, attendance);
+    }
+
+    /** Whether the day is recent enough to be tracked; older days have to be checked in the database. */
+    public boolean covers(LocalDate day) {
+        return !day.isBefore(today.date().minusDays(retainDays - 1));
+    }
+
+    public boolean isMarked(String regNo, LocalDate day) {
+        int idx = students.find(regNo);
+        DayBitmap bits = days.get(day);
+        return idx >= 0 && bits != null && bits.contains(idx);
+    }
+
+    public boolean isMarkedToday(String regNo) {
+        return isMarked(regNo, LocalDate.now());
+    }
+
+    public List<Attendance> todaysAttendance() {
+        List<Attendance> list = new ArrayList<>(today.records().values());
+        list.sort(Comparator.comparing(Attendance::getTimestamp));
+        return list;
+    }
+
+    /** Drops the student from every retained day, e.g. after their attendance was deleted. */
+    public void forget(String regNo) {
+        int idx = students.find(regNo);
+        if (idx < 0) return;
+        for (DayBitmap bits : days.values()) bits.remove(idx);
+        today.records().remove(idx);
+    }
+
+    private DayBitmap bitmap(LocalDate day) {
+        return days.computeIfAbsent(day, d -> new DayBitmap());
+    }
+}
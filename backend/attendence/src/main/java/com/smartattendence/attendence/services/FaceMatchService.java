@@ -0,0 +1,169 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.recognition.EmbeddingGallery;
+import com.smartattendence.attendence.recognition.EmbeddingStore;
+import com.smartattendence.attendence.recognition.GalleryFile;
+import com.smartattendence.attendence.recognition.GalleryFileWriter;
+import com.smartattendence.attendence.recognition.HnswIndex;
+import com.smartattendence.attendence.recognition.MatchResult;
+import com.smartattendence.attendence.recognition.Metric;
+import com.smartattendence.attendence.recognition.QuantizedGallery;
+import com.smartattendence.attendence.recognition.RecallReport;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Resolves a face embedding to a registered student inside the JVM,
+ * replacing the per-request linear scan in FaceRecognitionModel.recognize_faces.
+ *
+ * The exact gallery is always kept as ground truth. With
+ * attendance.matcher.index=HNSW lookups go through the approximate graph instead.
+ * When attendance.matcher.gallery-file is set, enrollments are persisted to the
+ * memory-mapped gallery file and reloaded from it on startup.
+ * attendance.matcher.quantization=INT8|PQ swaps the float gallery for compressed
+ * codes with full-precision re-ranking of the top candidates; it needs the
+ * gallery file, whose mapped rows the re-ranking reads, and writes it itself.
+ */
+@Service
+public class FaceMatchService {
+
+    public enum IndexType { EXACT, HNSW }
+
+    private final EmbeddingStore gallery;
+    private final HnswIndex hnsw;
+    private final IndexType indexType;
+    private final Metric metric;
+    private final float threshold;
+    private final GalleryFileWriter galleryWriter;
+    // The quantized store writes enrolments to the gallery file itself
+    private final boolean storePersists;
+
+    public FaceMatchService(@Value("${attendance.matcher.dimension:512}") int dimension,
+                            @Value("${attendance.matcher.metric:L2}") Metric metric,
+                            @Value("${attendance.matcher.threshold:0.6}") float threshold,
+                            @Value("${attendance.matcher.index:EXACT}") IndexType indexType,
+                            @Value("${attendance.matcher.hnsw.m:16}") int m,
+                            @Value("${attendance.matcher.hnsw.ef-construction:200}") int efConstruction,
+                            @Value("${attendance.matcher.hnsw.ef-search:64}") int efSearch,
+                            @Value("${attendance.matcher.gallery-file:}") String galleryFile,
+                            @Value("${attendance.matcher.quantization:NONE}") String quantization,
+                            @Value("${attendance.matcher.quantization.pq-subspaces:64}") int pqSubspaces,
+                            @Value("${attendance.matcher.quantization.rerank:32}") int rerank,
+                            @Value("${attendance.matcher.quantization.train-after:1000}") int trainAfter) throws IOException {
+        boolean quantized = !"NONE".equalsIgnoreCase(quantization);
+        if (quantized && galleryFile.isBlank()) {
+            throw new RuntimeException("attendance.matcher.quantization needs attendance.matcher.gallery-file");
+        }
+        this.hnsw = indexType == IndexType.HNSW ? new HnswIndex(dimension, metric, m, efConstruction, efSearch) : null;
+        this.indexType = indexType;
+        this.metric = metric;
+        this.threshold = threshold;
+        long start = System.nanoTime();
+        Path path = galleryFile.isBlank() ? null : Path.of(galleryFile);
+        boolean existed = path != null && Files.exists(path);
+        this.galleryWriter = path == null ? null : GalleryFileWriter.openOrCreate(path, dimension);
+        this.storePersists = quantized;
+        this.gallery = quantized
+                ? new QuantizedGallery(galleryWriter, QuantizedGallery.Mode.valueOf(quantization.toUpperCase()),
+                        metric, pqSubspaces, rerank, trainAfter)
+                : new EmbeddingGallery(dimension);
+        if (existed) {
+            GalleryFile.open(path).embeddingsByStudent().forEach((regNo, rows) -> {
+                if (!quantized) gallery.put(regNo, rows);
+                if (hnsw != null) hnsw.put(regNo, rows);
+            });
+            System.out.printf("✅ Loaded %d students from gallery %s in %d ms%n",
+                    gallery.studentCount(), path, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    @PreDestroy
+    void closeGallery() throws IOException {
+        if (galleryWriter != null) galleryWriter.close();
+    }
+
+    public void enroll(String regNo, float[][] embeddings) {
+        if (galleryWriter != null && !storePersists) {
+            try {
+                galleryWriter.append(regNo, embeddings);
+            } catch (IOException e) {
+                throw new RuntimeException("Error saving embeddings: " + e.getMessage());
+            }
+        }
+        try {
+            gallery.put(regNo, embeddings);
+        } catch (UncheckedIOException e) {
+            throw new RuntimeException("Error saving embeddings: " + e.getCause().getMessage());
+        }
+        if (hnsw != null) hnsw.put(regNo, embeddings);
+    }
+
+    public boolean remove(String regNo) {
+        if (galleryWriter != null && !storePersists) {
+            try {
+                galleryWriter.remove(regNo);
+            } catch (IOException e) {
+                throw new RuntimeException("Error removing embeddings: " + e.getMessage());
+            }
+        }
+        try {
+            if (!gallery.remove(regNo)) return false;
+        } catch (UncheckedIOException e) {
+            throw new RuntimeException("Error removing embeddings: " + e.getCause().getMessage());
+        }
+        if (hnsw != null) hnsw.remove(regNo);
+        return true;
+    }
+
+    /** Best match for the probe, or null when nothing is enrolled yet. */
+    public MatchResult match(float[] embedding) {
+        if (hnsw != null) return hnsw.search(embedding, threshold);
+        return gallery.search(embedding, metric, threshold);
+    }
+
+    public int enrolledStudents() {
+        return gallery.studentCount();
+    }
+
+    public Set<String> enrolledRegistrationNos() {
+        return gallery.registrationNos();
+    }
+
+    public int dimension() {
+        return gallery.dimension();
+    }
+
+    public IndexType indexType() {
+        return indexType;
+    }
+
+    public void setEfSearch(int efSearch) {
+        if (hnsw == null) throw new RuntimeException("HNSW index is not enabled");
+        hnsw.setEfSearch(efSearch);
+    }
+
+    public QuantizedGallery.Report quantizationReport(int queries) {
+        return quantized().report(queries, threshold, System.nanoTime());
+    }
+
+    public void retrainQuantizer() {
+        quantized().retrain();
+    }
+
+    private QuantizedGallery quantized() {
+        if (gallery instanceof QuantizedGallery q) return q;
+        throw new RuntimeException("Quantized gallery is not enabled");
+    }
+
+    public RecallReport recallReport(int queries, int[] efs) {
+        if (hnsw == null) throw new RuntimeException("HNSW index is not enabled");
+        return RecallReport.measure(gallery, hnsw, metric, threshold, queries, efs, System.nanoTime());
+    }
+}
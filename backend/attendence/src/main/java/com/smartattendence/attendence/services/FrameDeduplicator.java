@@ -0,0 +1,183 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.recognition.PerceptualHash;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-filter in front of {@link RecognitionGateway}. Kiosks send a frame
+ * every time someone steps in front of the camera, so consecutive frames
+ * from one kiosk are often near-identical. Each frame gets a 64-bit
+ * {@link PerceptualHash dHash}; if it is within maxDistance bits of one of
+ * that kiosk's last few recognized frames and that result is younger than
+ * ttlMs, the cached result is returned and the recognizer is never called.
+ *
+ * The face is a small part of a kiosk frame, so two students in the same
+ * spot against the same background hash close together. A result with faces
+ * is therefore reused only if every face's own box, hashed in the new frame,
+ * is also within maxDistance of that face as recognized; results whose faces
+ * came without a box, or too small a box to hash, are not cached at all.
+ * "No face" results need only the whole frame to match.
+ *
+ * Only successful recognitions are cached, and only per kiosk: frames from
+ * different cameras never match each other.
+ */
+@Service
+public class FrameDeduplicator {
+
+    // faceHashes[i] is the hash of result.faces().get(i)'s box in the frame it was recognized in
+    private record Seen(long hash, long[] faceHashes, RecognitionGateway.Recognition result, long expiresAt) {}
+
+    // Bounds memory if clients invent kiosk ids
+    private static final int MAX_KIOSKS = 1024;
+    // Frames are decoded at about this size, enough detail to hash a face box
+    private static final int DECODE_WIDTH = 320;
+    private static final int DECODE_HEIGHT = 240;
+
+    @Autowired
+    private RecognitionGateway gateway;
+
+    private final boolean enabled;
+    private final int maxDistance;
+    private final long ttlMs;
+    private final int perKiosk;
+
+    private final Map<String, ArrayDeque<Seen>> recent = new ConcurrentHashMap<>();
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong faceMismatches = new AtomicLong();
+    private final AtomicLong hashFailures = new AtomicLong();
+    private final AtomicLong savedRecognizerMs = new AtomicLong();
+    private final AtomicLong hashNanos = new AtomicLong();
+
+    public FrameDeduplicator(@Value("${attendance.dedupe.enabled:true}") boolean enabled,
+                             @Value("${attendance.dedupe.max-distance:4}") int maxDistance,
+                             @Value("${attendance.dedupe.ttl-ms:3000}") long ttlMs,
+                             @Value("${attendance.dedupe.frames-per-kiosk:4}") int perKiosk) {
+        this.enabled = enabled;
+        this.maxDistance = maxDistance;
+        this.ttlMs = ttlMs;
+        this.perKiosk = Math.max(1, perKiosk);
+    }
+
+    public CompletableFuture<RecognitionGateway.Recognition> recognize(String kioskId, String image) {
+        frames.incrementAndGet();
+        if (!enabled) return gateway.recognize(image);
+
+        PerceptualHash.Decoded frame;
+        long hash;
+        long started = System.nanoTime();
+        try {
+            frame = PerceptualHash.decode(decode(image), DECODE_WIDTH, DECODE_HEIGHT);
+            hash = frame.hash();
+        } catch (Exception e) {
+            // Let the recognizer decide what to make of it
+            hashFailures.incrementAndGet();
+            return gateway.recognize(image);
+        } finally {
+            hashNanos.addAndGet(System.nanoTime() - started);
+        }
+
+        RecognitionGateway.Recognition cached = lookup(kioskId, frame, hash);
+        if (cached != null) {
+            hits.incrementAndGet();
+            savedRecognizerMs.addAndGet(cached.latencyMs());
+            return CompletableFuture.completedFuture(cached);
+        }
+        return gateway.recognize(image).thenApply(r -> {
+            if (r.status() == RecognitionGateway.Status.OK) remember(kioskId, frame, hash, r);
+            return r;
+        });
+    }
+
+    private RecognitionGateway.Recognition lookup(String kioskId, PerceptualHash.Decoded frame, long hash) {
+        ArrayDeque<Seen> seen = recent.get(kioskId);
+        if (seen == null) return null;
+        long now = System.currentTimeMillis();
+        synchronized (seen) {
+            RecognitionGateway.Recognition best = null;
+            int bestDistance = Integer.MAX_VALUE;
+            for (Iterator<Seen> it = seen.iterator(); it.hasNext(); ) {
+                Seen s = it.next();
+                if (s.expiresAt() <= now) {
+                    it.remove();
+                    continue;
+                }
+                int d = PerceptualHash.distance(s.hash(), hash);
+                if (d <= maxDistance && d < bestDistance) {
+                    if (!sameFaces(s, frame)) {
+                        faceMismatches.incrementAndGet();
+                        continue;
+                    }
+                    best = s.result();
+                    bestDistance = d;
+                }
+            }
+            if (seen.isEmpty()) recent.remove(kioskId, seen);
+            return best;
+        }
+    }
+
+    private boolean sameFaces(Seen s, PerceptualHash.Decoded frame) {
+        List<RecognitionGateway.Face> faces = s.result().faces();
+        for (int i = 0; i < faces.size(); i++) {
+            Long h = faceHash(frame, faces.get(i));
+            if (h == null || PerceptualHash.distance(h, s.faceHashes()[i]) > maxDistance) return false;
+        }
+        return true;
+    }
+
+    private static Long faceHash(PerceptualHash.Decoded frame, RecognitionGateway.Face face) {
+        int[] b = face.box();
+        return b == null ? null : frame.regionHash(b[0], b[1], b[2], b[3]);
+    }
+
+    private void remember(String kioskId, PerceptualHash.Decoded frame, long hash, RecognitionGateway.Recognition result) {
+        long[] faceHashes = new long[result.faces().size()];
+        for (int i = 0; i < faceHashes.length; i++) {
+            Long h = faceHash(frame, result.faces().get(i));
+            if (h == null) return;
+            faceHashes[i] = h;
+        }
+        if (recent.size() >= MAX_KIOSKS && !recent.containsKey(kioskId)) return;
+        ArrayDeque<Seen> seen = recent.computeIfAbsent(kioskId, k -> new ArrayDeque<>());
+        synchronized (seen) {
+            seen.addFirst(new Seen(hash, faceHashes, result, System.currentTimeMillis() + ttlMs));
+            while (seen.size() > perKiosk) seen.removeLast();
+        }
+    }
+
+    private static byte[] decode(String image) {
+        int comma = image.indexOf(',');
+        return Base64.getMimeDecoder().decode(comma >= 0 ? image.substring(comma + 1) : image);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        long n = frames.get(), hit = hits.get();
+        s.put("enabled", enabled);
+        s.put("maxDistance", maxDistance);
+        s.put("ttlMs", ttlMs);
+        s.put("frames", n);
+        s.put("skipped", hit);
+        s.put("skipRate", n == 0 ? 0 : Math.round(hit * 1000.0 / n) / 1000.0);
+        s.put("faceMismatches", faceMismatches.get());
+        s.put("savedRecognizerMs", savedRecognizerMs.get());
+        s.put("hashFailures", hashFailures.get());
+        s.put("avgHashMicros", n == 0 ? 0 : hashNanos.get() / n / 1000);
+        s.put("kiosksTracked", recent.size());
+        return s;
+    }
+}
@@ -0,0 +1,486 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.entity.Attendance;
+import com.smartattendence.attendence.entity.Student;
+import com.smartattendence.attendence.recognition.PerceptualHash;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One run of the recorded-session pipeline. Stages run on their own threads
+ * and hand work over through bounded queues, so a slow recognizer throttles
+ * decoding instead of letting frames pile up in memory:
+ * <pre>
+ *   decode -> sample -> recognize (N workers) -> aggregate -> commit
+ * </pre>
+ * Videos are decoded by ffmpeg at decodeFps into a JPEG pipe; a folder is
+ * read as an image sequence in file-name order. The sampler keeps a frame
+ * only when its dHash has moved away from the last kept frame, or when
+ * maxSampleGapMs has passed, so a static scene costs a handful of
+ * recognitions. Recognizer workers go through the ingestion lane of
+ * {@link RecognitionGateway}, whose micro-batching groups their concurrent
+ * frames into batch calls and whose own call slots leave the kiosks' alone.
+ * A student is marked once, and only after at least minHits sampled frames
+ * recognized them with at least minConfidence. The mark is dated when the
+ * student was first seen (session start + offset into the recording) and
+ * counts against that day's attendance, not the day the job ran.
+ */
+public class IngestionJob implements Runnable {
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED, CANCELLED }
+
+    public record Settings(String ffmpeg, int decodeFps, int sequenceFps, int sceneChangeDistance,
+                           long minSampleGapMs, long maxSampleGapMs, int queueCapacity, int recognizerWorkers,
+                           int minHits, double minConfidence) {}
+
+    public record Outcome(String registrationNo, String name, int hits, double bestConfidence, double meanConfidence,
+                          long firstSeenMs, long lastSeenMs, String result) {}
+
+    private record Frame(long index, long timestampMs, byte[] jpeg) {}
+
+    private record Recognized(Frame frame, RecognitionGateway.Recognition recognition) {}
+
+    private static final Frame END = new Frame(-1, -1, null);
+    private static final Recognized END_RESULT = new Recognized(END, null);
+    private static final String[] IMAGE_SUFFIXES = {".jpg", ".jpeg", ".png", ".bmp"};
+    private static final int MAX_RECOGNIZE_ATTEMPTS = 20;
+
+    private static final class Tally {
+        int hits;
+        double sumConfidence;
+        double best;
+        long first = Long.MAX_VALUE;
+        long last;
+    }
+
+    private static final class Stage {
+        final String name;
+        final AtomicLong in = new AtomicLong();
+        final AtomicLong out = new AtomicLong();
+        volatile long startedAt;
+        volatile long finishedAt;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void start() {
+            if (startedAt == 0) startedAt = System.nanoTime();
+        }
+
+        Map<String, Object> stats(BlockingQueue<?> input) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            long end = finishedAt != 0 ? finishedAt : System.nanoTime();
+            double seconds = startedAt == 0 ? 0 : (end - startedAt) / 1e9;
+            s.put("in", in.get());
+            s.put("out", out.get());
+            s.put("framesPerSecond", seconds == 0 ? 0 : Math.round(in.get() / seconds * 10) / 10.0);
+            if (input != null) s.put("queued", input.stream().filter(x -> x != END && x != END_RESULT).count());
+            return s;
+        }
+    }
+
+    private final String id;
+    private final File source;
+    private final LocalDateTime sessionStart;
+    private final Settings settings;
+    private final RecognitionGateway gateway;
+    private final StudentService studentService;
+    private final AttendanceService attendanceService;
+
+    private final BlockingQueue<Frame> decoded;
+    private final BlockingQueue<Frame> sampled;
+    private final BlockingQueue<Recognized> recognized;
+
+    private final Stage decodeStage = new Stage("decode");
+    private final Stage sampleStage = new Stage("sample");
+    private final Stage recognizeStage = new Stage("recognize");
+    private final Stage aggregateStage = new Stage("aggregate");
+    private final AtomicLong recognizeRetries = new AtomicLong();
+    private final AtomicLong recognizeFailures = new AtomicLong();
+
+    private final Map<String, Tally> tallies = new TreeMap<>(); // guarded by itself
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+    private volatile State state = State.QUEUED;
+    private volatile String error;
+    private volatile Process ffmpeg;
+    private volatile List<Outcome> outcomes = List.of();
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long startedAt;
+    private volatile long finishedAt;
+
+    IngestionJob(String id, File source, LocalDateTime sessionStart, Settings settings, RecognitionGateway gateway,
+                 StudentService studentService, AttendanceService attendanceService) {
+        this.id = id;
+        this.source = source;
+        this.sessionStart = sessionStart;
+        this.settings = settings;
+        this.gateway = gateway;
+        this.studentService = studentService;
+        this.attendanceService = attendanceService;
+        this.decoded = new ArrayBlockingQueue<>(settings.queueCapacity());
+        this.sampled = new ArrayBlockingQueue<>(settings.queueCapacity());
+        this.recognized = new ArrayBlockingQueue<>(settings.queueCapacity());
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    @Override
+    public void run() {
+        if (state != State.QUEUED) return;
+        state = State.RUNNING;
+        startedAt = System.currentTimeMillis();
+        System.out.println("🚀 Ingestion " + id + " started: " + source);
+        try {
+            AtomicInteger workersLeft = new AtomicInteger(settings.recognizerWorkers());
+            spawn("decode", this::decode);
+            spawn("sample", this::sample);
+            for (int i = 0; i < settings.recognizerWorkers(); i++) spawn("recognize-" + i, () -> recognize(workersLeft));
+            // Aggregation runs here; it ends when every recognizer worker has finished
+            aggregate();
+            for (Thread t : threads) t.join();
+            if (state == State.CANCELLED) return;
+            if (error != null) throw new IOException(error);
+            commit();
+            state = State.DONE;
+            System.out.println("✅ Ingestion " + id + " finished: " + outcomes.size() + " student(s) recognized");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+        } catch (Exception e) {
+            if (state != State.CANCELLED) {
+                error = e.getMessage();
+                state = State.FAILED;
+                System.err.println("❌ Ingestion " + id + " failed: " + e.getMessage());
+            }
+        } finally {
+            finishedAt = System.currentTimeMillis();
+            Process p = ffmpeg;
+            if (p != null) p.destroyForcibly();
+        }
+    }
+
+    public void cancel() {
+        if (state == State.DONE || state == State.FAILED) return;
+        state = State.CANCELLED;
+        Process p = ffmpeg;
+        if (p != null) p.destroyForcibly();
+        threads.forEach(Thread::interrupt);
+    }
+
+    private void spawn(String stage, Runnable body) {
+        Thread t = new Thread(() -> {
+            try {
+                body.run();
+            } catch (RuntimeException e) {
+                if (error == null) error = stage + ": " + e.getMessage();
+                threads.forEach(Thread::interrupt);
+            }
+        }, "ingest-" + id + "-" + stage);
+        t.setDaemon(true);
+        threads.add(t);
+        t.start();
+    }
+
+    // ---------- Stage 1: decode ----------
+
+    private void decode() {
+        decodeStage.start();
+        try {
+            if (source.isDirectory()) decodeSequence();
+            else if (isImage(source.getName())) emit(0, Files.readAllBytes(source.toPath()), 0);
+            else decodeVideo();
+        } catch (IOException e) {
+            throw new RuntimeException("Error decoding " + source.getName() + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            decodeStage.finishedAt = System.nanoTime();
+            end(decoded, END);
+        }
+    }
+
+    private void decodeSequence() throws IOException, InterruptedException {
+        File[] files = source.listFiles(f -> f.isFile() && isImage(f.getName()));
+        if (files == null || files.length == 0) throw new IOException("no images in folder");
+        Arrays.sort(files);
+        for (int i = 0; i < files.length; i++) {
+            emit(i, Files.readAllBytes(files[i].toPath()), i * 1000L / settings.sequenceFps());
+        }
+    }
+
+    // ffmpeg drops frames down to decodeFps and re-encodes them as a stream of concatenated JPEGs
+    private void decodeVideo() throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder(settings.ffmpeg(), "-hide_banner", "-loglevel", "error",
+                "-i", source.getAbsolutePath(), "-vf", "fps=" + settings.decodeFps(),
+                "-f", "image2pipe", "-vcodec", "mjpeg", "-q:v", "4", "-");
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Process p = pb.start();
+        ffmpeg = p;
+        long index = 0;
+        try (InputStream in = new BufferedInputStream(p.getInputStream(), 1 << 16)) {
+            byte[] jpeg;
+            while ((jpeg = nextJpeg(in)) != null) {
+                emit(index, jpeg, index * 1000L / settings.decodeFps());
+                index++;
+            }
+        }
+        int exit = p.waitFor();
+        if (exit != 0 && state != State.CANCELLED) throw new IOException("ffmpeg exited with code " + exit);
+    }
+
+    // Splits the pipe on SOI/EOI markers; 0xFF inside entropy-coded data is always stuffed, so EOI is unambiguous
+    private static byte[] nextJpeg(InputStream in) throws IOException {
+        int prev = -1, b;
+        while ((b = in.read()) >= 0) {
+            if (prev == 0xFF && b == 0xD8) break;
+            prev = b;
+        }
+        if (b < 0) return null;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        out.write(0xFF);
+        out.write(0xD8);
+        prev = -1;
+        while ((b = in.read()) >= 0) {
+            out.write(b);
+            if (prev == 0xFF && b == 0xD9) return out.toByteArray();
+            prev = b;
+        }
+        throw new IOException("truncated frame in ffmpeg output");
+    }
+
+    private void emit(long index, byte[] jpeg, long timestampMs) throws InterruptedException {
+        decodeStage.in.incrementAndGet();
+        decoded.put(new Frame(index, timestampMs, jpeg));
+        decodeStage.out.incrementAndGet();
+    }
+
+    // ---------- Stage 2: adaptive sampling ----------
+
+    private void sample() {
+        sampleStage.start();
+        Long lastHash = null;
+        long lastKeptAt = Long.MIN_VALUE / 2;
+        try {
+            Frame f;
+            while ((f = decoded.take()) != END) {
+                sampleStage.in.incrementAndGet();
+                long gap = f.timestampMs() - lastKeptAt;
+                if (gap < settings.minSampleGapMs()) continue;
+                long hash;
+                try {
+                    hash = PerceptualHash.dHash(f.jpeg());
+                } catch (IOException | RuntimeException e) {
+                    continue; // undecodable frame
+                }
+                boolean sceneChanged = lastHash == null
+                        || PerceptualHash.distance(lastHash, hash) >= settings.sceneChangeDistance();
+                if (!sceneChanged && gap < settings.maxSampleGapMs()) continue;
+                lastHash = hash;
+                lastKeptAt = f.timestampMs();
+                sampled.put(f);
+                sampleStage.out.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sampleStage.finishedAt = System.nanoTime();
+            end(sampled, END);
+        }
+    }
+
+    // ---------- Stage 3: recognition ----------
+
+    private void recognize(AtomicInteger workersLeft) {
+        recognizeStage.start();
+        try {
+            Frame f;
+            while ((f = sampled.take()) != END) {
+                recognizeStage.in.incrementAndGet();
+                RecognitionGateway.Recognition r = recognizeWithRetry(f);
+                if (r.status() == RecognitionGateway.Status.OK) {
+                    recognized.put(new Recognized(f, r));
+                    recognizeStage.out.incrementAndGet();
+                } else {
+                    recognizeFailures.incrementAndGet();
+                }
+            }
+            end(sampled, END); // let the other workers see it too
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (workersLeft.decrementAndGet() == 0) {
+                recognizeStage.finishedAt = System.nanoTime();
+                end(recognized, END_RESULT);
+            }
+        }
+    }
+
+    // Kiosks get turned away when the recognizer is saturated; a recorded session can simply wait its turn
+    private RecognitionGateway.Recognition recognizeWithRetry(Frame f) throws InterruptedException {
+        String image = Base64.getEncoder().encodeToString(f.jpeg());
+        long backoffMs = 50;
+        RecognitionGateway.Recognition r = null;
+        for (int attempt = 0; attempt < MAX_RECOGNIZE_ATTEMPTS; attempt++) {
+            r = gateway.recognize(image, RecognitionGateway.Lane.INGESTION).join();
+            switch (r.status()) {
+                case BUSY, CIRCUIT_OPEN, NOT_READY, TIMEOUT -> {
+                    recognizeRetries.incrementAndGet();
+                    Thread.sleep(backoffMs);
+                    backoffMs = Math.min(backoffMs * 2, 2000);
+                }
+                default -> {
+                    return r;
+                }
+            }
+        }
+        return r;
+    }
+
+    // ---------- Stage 4: aggregation ----------
+
+    private void aggregate() throws InterruptedException {
+        aggregateStage.start();
+        try {
+            Recognized r;
+            while ((r = recognized.take()) != END_RESULT) {
+                aggregateStage.in.incrementAndGet();
+                // One vote per student per frame, however many times they appear in it
+                Map<String, Double> best = new LinkedHashMap<>();
+                for (RecognitionGateway.Face face : r.recognition().faces()) {
+                    if (face.confidence() < settings.minConfidence()) continue;
+                    if (StudentRegistrationService.registrationNoOf(face.name()) == null) continue; // Unknown
+                    best.merge(face.name(), face.confidence(), Math::max);
+                }
+                long ts = r.frame().timestampMs();
+                synchronized (tallies) {
+                    best.forEach((name, confidence) -> {
+                        Tally t = tallies.computeIfAbsent(name, n -> new Tally());
+                        t.hits++;
+                        t.sumConfidence += confidence;
+                        t.best = Math.max(t.best, confidence);
+                        t.first = Math.min(t.first, ts);
+                        t.last = Math.max(t.last, ts);
+                    });
+                }
+                aggregateStage.out.incrementAndGet();
+            }
+        } finally {
+            aggregateStage.finishedAt = System.nanoTime();
+        }
+    }
+
+    // ---------- Stage 5: commit ----------
+
+    private void commit() {
+        List<Outcome> results = new ArrayList<>();
+        Map<String, Tally> snapshot;
+        synchronized (tallies) {
+            snapshot = new TreeMap<>(tallies);
+        }
+        for (Map.Entry<String, Tally> e : snapshot.entrySet()) {
+            Tally t = e.getValue();
+            if (t.hits < settings.minHits()) continue;
+            String regNo = StudentRegistrationService.registrationNoOf(e.getKey());
+            Student student = studentService.getStudentByReg(regNo);
+            String result;
+            String name = e.getKey();
+            if (student == null) {
+                result = "not registered";
+            } else {
+                name = student.getName();
+                LocalDateTime seenAt = sessionStart.plus(Duration.ofMillis(t.first));
+                // A start time given too late would put the end of the recording in the future
+                LocalDateTime now = LocalDateTime.now();
+                if (seenAt.isAfter(now)) seenAt = now;
+                Attendance a = attendanceService.markAttendanceAsync(student.getRegistrationNo(), student.getName(), seenAt).join();
+                result = a == null ? "already marked" : "marked";
+            }
+            double mean = Math.round(t.sumConfidence / t.hits * 1000) / 1000.0;
+            results.add(new Outcome(regNo, name, t.hits, Math.round(t.best * 1000) / 1000.0, mean, t.first, t.last, result));
+        }
+        outcomes = List.copyOf(results);
+    }
+
+    private static boolean isImage(String fileName) {
+        String lower = fileName.toLowerCase();
+        for (String suffix : IMAGE_SUFFIXES) if (lower.endsWith(suffix)) return true;
+        return false;
+    }
+
+    private boolean aborted() {
+        return state == State.CANCELLED || error != null;
+    }
+
+    // Hands the end marker downstream even if this thread was interrupted; after an abort the backlog is dropped
+    private <T> void end(BlockingQueue<T> queue, T marker) {
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            if (aborted()) queue.clear();
+            try {
+                if (queue.offer(marker, 100, TimeUnit.MILLISECONDS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("id", id);
+        s.put("source", source.getName());
+        s.put("sessionStart", sessionStart.toString());
+        s.put("state", state);
+        s.put("error", error);
+        s.put("createdAt", createdAt);
+        long end = finishedAt != 0 ? finishedAt : System.currentTimeMillis();
+        s.put("elapsedMs", startedAt == 0 ? 0 : end - startedAt);
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        stages.put(decodeStage.name, decodeStage.stats(null));
+        stages.put(sampleStage.name, sampleStage.stats(decoded));
+        Map<String, Object> rec = recognizeStage.stats(sampled);
+        rec.put("workers", settings.recognizerWorkers());
+        rec.put("retries", recognizeRetries.get());
+        rec.put("failed", recognizeFailures.get());
+        stages.put(recognizeStage.name, rec);
+        stages.put(aggregateStage.name, aggregateStage.stats(recognized));
+        s.put("stages", stages);
+
+        synchronized (tallies) {
+            s.put("candidates", tallies.size());
+        }
+        s.put("minHits", settings.minHits());
+        s.put("minConfidence", settings.minConfidence());
+        s.put("students", outcomes);
+        return s;
+    }
+}
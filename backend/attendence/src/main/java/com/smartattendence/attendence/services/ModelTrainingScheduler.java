@@ -0,0 +1,296 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-flight, coalescing runner for {@code train_model.py}.
+ *
+ * A request starts (or slides) a debounce window; when it closes one training
+ * run covers every request made during it. The window never stretches past
+ * maxDelayMs from its first request, so a steady trickle of registrations
+ * still trains. Only one run is ever in flight: requests that arrive while it
+ * runs are folded into exactly one follow-up run, scheduled when it ends.
+ * A run that takes longer than timeoutMs is killed and counts as failed.
+ *
+ * Each run is given the {@link TrainingManifest} delta (train_model.py
+ * --delta) so it only re-encodes the folders that changed. The script also
+ * exports the encodings it produced (--export-embeddings); after a successful
+ * run they are enrolled in the in-JVM matcher, which is how
+ * /api/attendance/mark learns new and re-registered faces.
+ */
+@Service
+public class ModelTrainingScheduler {
+
+    public enum State { IDLE, PENDING, RUNNING }
+
+    @Autowired
+    private TrainingManifest manifest;
+    @Autowired
+    private FaceMatchService faceMatchService;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /** What train_model.py --export-embeddings writes; keys are image folder names. A full run lists every folder. */
+    record TrainedEmbeddings(boolean full, Map<String, float[][]> students, List<String> removed) {}
+
+    private final String pythonExe;
+    private final String scriptPath;
+    private final File workingDir;
+    private final long debounceMs;
+    private final long maxDelayMs;
+    private final long timeoutMs;
+
+    // One worker thread and no unbounded thread creation; a rejected task just means the queue is already armed
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "model-training");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // All guarded by this
+    private State state = State.IDLE;
+    private ScheduledFuture<?> scheduled;
+    private long windowStartedAt;
+    private int pendingRequests;
+    private boolean followUp;
+    private long runningSince;
+    private long runs;
+    private long requests;
+    private long lastDurationMs = -1;
+    private Integer lastExitCode;
+    private String lastError;
+    private long lastFinishedAt;
+    private String lastScope;
+
+    public ModelTrainingScheduler(
+            @Value("${attendance.training.python:python}") String pythonExe,
+            @Value("${attendance.training.script}") String scriptPath,
+            @Value("${attendance.training.working-dir}") String workingDir,
+            @Value("${attendance.training.debounce-ms:30000}") long debounceMs,
+            @Value("${attendance.training.max-delay-ms:300000}") long maxDelayMs,
+            @Value("${attendance.training.timeout-ms:3600000}") long timeoutMs) {
+        this.pythonExe = pythonExe;
+        this.scriptPath = scriptPath;
+        this.workingDir = new File(workingDir);
+        this.debounceMs = debounceMs;
+        this.maxDelayMs = maxDelayMs;
+        this.timeoutMs = timeoutMs;
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public synchronized void requestTraining(String reason) {
+        requests++;
+        pendingRequests++;
+        System.out.println("🕒 Model training requested (" + reason + "), " + pendingRequests + " pending");
+        if (state == State.RUNNING) {
+            followUp = true;
+            return;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        long now = System.currentTimeMillis();
+        if (state != State.PENDING) windowStartedAt = now;
+        if (scheduled != null) scheduled.cancel(false);
+        long delay = Math.min(debounceMs, Math.max(0, windowStartedAt + maxDelayMs - now));
+        scheduled = executor.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+        state = State.PENDING;
+    }
+
+    private void run() {
+        int covering;
+        synchronized (this) {
+            if (state != State.PENDING) return;
+            state = State.RUNNING;
+            scheduled = null;
+            covering = pendingRequests;
+            pendingRequests = 0;
+            runningSince = System.currentTimeMillis();
+            runs++;
+        }
+
+        String scope = null;
+        Integer exitCode = null;
+        String error = null;
+        try {
+            TrainingManifest.Delta delta = manifest.takeDelta();
+            scope = delta.full() ? "full" : "delta +" + delta.added().size() + " ~" + delta.changed().size()
+                    + " -" + delta.removed().size() + " >" + delta.renamed().size();
+            if (delta.isEmpty()) {
+                System.out.println("✅ Training skipped, no image folders changed");
+                exitCode = 0;
+            } else {
+                System.out.println("\n🚀 Face Recognition Model Training Started (" + scope + ", covers " + covering + " request(s))...");
+                System.out.println("==================================================");
+                try {
+                    exitCode = runScript(delta);
+                    if (exitCode == 0) {
+                        System.out.println("✅ Training completed successfully!");
+                        publishEmbeddings();
+                    } else {
+                        System.err.println("❌ Training script exited with code: " + exitCode);
+                    }
+                } catch (Exception e) {
+                    error = e.getMessage();
+                    System.err.println("⚠️ Error running train_model.py: " + e.getMessage());
+                    e.printStackTrace();
+                }
+                if (exitCode == null || exitCode != 0) manifest.restore(delta);
+            }
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+            System.err.println("⚠️ Error preparing model training: " + e.getMessage());
+        } finally {
+            // Whatever happened above, the scheduler must not stay RUNNING
+            synchronized (this) {
+                lastScope = scope;
+                lastFinishedAt = System.currentTimeMillis();
+                lastDurationMs = lastFinishedAt - runningSince;
+                lastExitCode = exitCode;
+                lastError = error;
+                state = State.IDLE;
+                if (followUp) {
+                    followUp = false;
+                    schedule();
+                }
+            }
+        }
+    }
+
+    private int runScript(TrainingManifest.Delta delta) throws Exception {
+        List<String> command = new ArrayList<>(List.of(pythonExe, scriptPath,
+                "--export-embeddings", embeddingsFile().toAbsolutePath().toString()));
+        Files.deleteIfExists(embeddingsFile());
+        if (!delta.full()) {
+            Path deltaFile = workingDir.toPath().resolve("models").resolve("training_delta.json");
+            deltaFile.getParent().toFile().mkdirs();
+            manifest.writeDelta(delta, deltaFile);
+            command.add("--delta");
+            command.add(deltaFile.toAbsolutePath().toString());
+        }
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(workingDir); // ✅ ensures correct working directory
+        pb.redirectErrorStream(true);
+
+        // ✅ Fix UnicodeEncodeError on Windows
+        pb.environment().put("PYTHONIOENCODING", "utf-8");
+
+        Process process = pb.start();
+        // Output is copied on its own thread, so a script that hangs without closing it cannot block the timeout
+        Thread output = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    System.out.println(line);
+                }
+            } catch (IOException e) {
+                // the process was killed
+            }
+        }, "model-training-output");
+        output.setDaemon(true);
+        output.start();
+
+        if (!process.waitFor(timeoutMs, TimeUnit.MILLISECONDS)) {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+            process.waitFor(10, TimeUnit.SECONDS);
+            throw new RuntimeException("train_model.py did not finish within " + timeoutMs + " ms and was killed");
+        }
+        output.join(TimeUnit.SECONDS.toMillis(5));
+        return process.exitValue();
+    }
+
+    private Path embeddingsFile() {
+        return workingDir.toPath().resolve("models").resolve("trained_embeddings.json");
+    }
+
+    // The model itself is trained at this point, so a failure here is logged rather than retried
+    private void publishEmbeddings() {
+        Path file = embeddingsFile();
+        if (!Files.exists(file)) {
+            System.err.println("⚠️ train_model.py wrote no embeddings; the matcher was not updated");
+            return;
+        }
+        try {
+            TrainedEmbeddings trained = objectMapper.readValue(file.toFile(), TrainedEmbeddings.class);
+            Set<String> exported = new HashSet<>();
+            Set<String> enrolled = new HashSet<>();
+            int failed = 0;
+            for (Map.Entry<String, float[][]> e : trained.students().entrySet()) {
+                String regNo = StudentRegistrationService.registrationNoOf(e.getKey());
+                if (regNo == null) continue;
+                exported.add(regNo);
+                try {
+                    faceMatchService.enroll(regNo, e.getValue());
+                    enrolled.add(regNo);
+                } catch (RuntimeException ex) {
+                    failed++;
+                    System.err.println("⚠️ Could not enroll " + e.getKey() + ": " + ex.getMessage());
+                }
+            }
+            int removed = 0;
+            for (String folder : trained.removed()) {
+                String regNo = StudentRegistrationService.registrationNoOf(folder);
+                // A renamed folder is listed as removed under its old name but enrolled again under the new one
+                if (regNo != null && !enrolled.contains(regNo) && faceMatchService.remove(regNo)) removed++;
+            }
+            if (trained.full()) {
+                // A full run exports every folder on disk and lists nothing as removed: anyone else enrolled is gone
+                for (String regNo : faceMatchService.enrolledRegistrationNos()) {
+                    if (!exported.contains(regNo) && faceMatchService.remove(regNo)) removed++;
+                }
+            }
+            System.out.println("✅ Matcher updated from training: " + enrolled.size() + " enrolled, " + removed
+                    + " removed" + (failed > 0 ? ", " + failed + " failed" : ""));
+            Files.deleteIfExists(file);
+        } catch (Exception e) {
+            System.err.println("⚠️ Error loading trained embeddings into the matcher: " + e.getMessage());
+        }
+    }
+
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("state", state);
+        s.put("pendingRequests", pendingRequests);
+        s.put("followUpQueued", followUp);
+        s.put("runningForMs", state == State.RUNNING ? System.currentTimeMillis() - runningSince : 0);
+        s.put("nextRunInMs", scheduled == null ? null : Math.max(0, scheduled.getDelay(TimeUnit.MILLISECONDS)));
+        s.put("runs", runs);
+        s.put("requests", requests);
+        s.put("lastDurationMs", lastDurationMs);
+        s.put("lastExitCode", lastExitCode);
+        s.put("lastScope", lastScope);
+        s.put("changedFolders", manifest.pendingCount());
+        s.put("lastError", lastError);
+        s.put("lastFinishedAt", lastFinishedAt == 0 ? null : lastFinishedAt);
+        return s;
+    }
+}
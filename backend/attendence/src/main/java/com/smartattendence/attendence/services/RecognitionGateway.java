@@ -0,0 +1,459 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards kiosk frames to the Python recognizer's {@code /recognize_batch}
+ * and protects both sides:
+ * <ul>
+ *   <li>one shared HTTP/1.1 client, so connections are pooled and kept alive;</li>
+ *   <li>a per-frame deadline covering queueing, the call and the response;</li>
+ *   <li>a bulkhead of maxConcurrent in-flight calls and a bounded queue in
+ *       front of it; extra frames are turned away immediately instead of
+ *       piling up behind a slow model;</li>
+ *   <li>a circuit breaker that opens after consecutive failures, fails fast
+ *       for openMs, then lets a single trial call decide whether to close.</li>
+ * </ul>
+ * Frames are also refused while the sidecar is not ready.
+ *
+ * Video ingestion sends frames through its own {@link Lane}: a separate queue
+ * and a smaller pool of call slots, so a long recording can never take the
+ * slots kiosks need. Both lanes share the client and the circuit breaker.
+ *
+ * Frames from all kiosks are micro-batched: a batch is sent as soon as it has
+ * batchMaxSize frames, as soon as the recognizer is idle, or once its oldest
+ * frame has waited batchMaxWaitMs, whichever comes first. A lone frame on an
+ * idle recognizer therefore goes out at once, and batches only grow while
+ * calls are already in flight. batchMaxSize=1 turns batching off.
+ */
+@Service
+public class RecognitionGateway {
+
+    public enum Status { OK, BUSY, CIRCUIT_OPEN, NOT_READY, TIMEOUT, ERROR }
+
+    public enum Circuit { CLOSED, OPEN, HALF_OPEN }
+
+    /** @param box x1, y1, x2, y2 in the frame's pixels, null if the recognizer did not send one */
+    public record Face(String name, double confidence, int[] box) {}
+
+    public record Recognition(Status status, List<Face> faces, String detail, long latencyMs) {
+        static Recognition rejected(Status status, String detail) {
+            return new Recognition(status, List.of(), detail, 0);
+        }
+    }
+
+    /** KIOSK: a person is waiting at the camera. INGESTION: frames of a recorded session. */
+    public enum Lane { KIOSK, INGESTION }
+
+    private record Frame(String image, CompletableFuture<Recognition> result, long enqueuedAt) {}
+
+    // One lane's queue and call slots; pending guards the queue and the flush timer
+    private static final class LaneState {
+        final int maxConcurrent;
+        final Semaphore bulkhead;
+        final int maxQueued;
+        final ArrayDeque<Frame> pending = new ArrayDeque<>();
+        ScheduledFuture<?> flushTimer;
+
+        LaneState(int maxConcurrent, int maxQueued) {
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            this.bulkhead = new Semaphore(this.maxConcurrent);
+            this.maxQueued = maxQueued;
+        }
+    }
+
+    @Autowired(required = false)
+    private RecognizerSidecar sidecar;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final URI batchUri;
+    private final long deadlineMs;
+    private final int failureThreshold;
+    private final long openMs;
+    private final int batchMaxSize;
+    private final long batchMaxWaitMs;
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+    private final HttpClient http;
+
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "recognizer-batcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Breaker state, guarded by this
+    private Circuit circuit = Circuit.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    private final Map<Status, AtomicLong> frames = new EnumMap<>(Status.class);
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failedCalls = new AtomicLong();
+    private final AtomicLong batchedFrames = new AtomicLong();
+    private final AtomicLong largestBatch = new AtomicLong();
+    private final AtomicLong totalQueueWaitMs = new AtomicLong();
+    private final AtomicLong totalCallMs = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final long startedAt = System.currentTimeMillis();
+
+    // Throughput over the last completed 10 s bucket, guarded by this
+    private long bucketStart = System.currentTimeMillis();
+    private long bucketFrames;
+    private double framesPerSecond;
+
+    @Autowired
+    public RecognitionGateway(@Value("${attendance.gateway.batch-url:http://127.0.0.1:5000/recognize_batch}") String batchUrl,
+                              @Value("${attendance.gateway.deadline-ms:3000}") long deadlineMs,
+                              @Value("${attendance.gateway.max-concurrent:8}") int maxConcurrent,
+                              @Value("${attendance.gateway.failure-threshold:5}") int failureThreshold,
+                              @Value("${attendance.gateway.open-ms:10000}") long openMs,
+                              @Value("${attendance.gateway.batch.max-size:8}") int batchMaxSize,
+                              @Value("${attendance.gateway.batch.max-wait-ms:20}") long batchMaxWaitMs,
+                              @Value("${attendance.gateway.batch.max-queued:64}") int maxQueued,
+                              @Value("${attendance.gateway.ingestion.max-concurrent:2}") int ingestionMaxConcurrent,
+                              @Value("${attendance.gateway.ingestion.max-queued:16}") int ingestionMaxQueued) {
+        this.batchUri = URI.create(batchUrl);
+        this.deadlineMs = deadlineMs;
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+        this.batchMaxSize = Math.max(1, batchMaxSize);
+        this.batchMaxWaitMs = batchMaxWaitMs;
+        lanes.put(Lane.KIOSK, new LaneState(maxConcurrent, Math.max(this.batchMaxSize, maxQueued)));
+        lanes.put(Lane.INGESTION, new LaneState(ingestionMaxConcurrent,
+                Math.max(this.batchMaxSize, ingestionMaxQueued)));
+        for (Status s : Status.values()) frames.put(s, new AtomicLong());
+        timer.setRemoveOnCancelPolicy(true);
+        ExecutorService io = Executors.newFixedThreadPool(Math.max(2, (maxConcurrent + ingestionMaxConcurrent) / 2), r -> {
+            Thread t = new Thread(r, "recognizer-http");
+            t.setDaemon(true);
+            return t;
+        });
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(Math.min(deadlineMs, 1000)))
+                .executor(io)
+                .build();
+    }
+
+    /** Used by tests and the load harness, where there is no Spring context. */
+    public RecognitionGateway(String batchUrl, long deadlineMs, int maxConcurrent, int failureThreshold, long openMs,
+                              int batchMaxSize, long batchMaxWaitMs, int maxQueued,
+                              int ingestionMaxConcurrent, int ingestionMaxQueued, ObjectMapper objectMapper) {
+        this(batchUrl, deadlineMs, maxConcurrent, failureThreshold, openMs, batchMaxSize, batchMaxWaitMs, maxQueued,
+                ingestionMaxConcurrent, ingestionMaxQueued);
+        this.objectMapper = objectMapper;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /** @param image JPEG as a data URL or bare base64, exactly as kiosks capture it */
+    public CompletableFuture<Recognition> recognize(String image) {
+        return recognize(image, Lane.KIOSK);
+    }
+
+    public CompletableFuture<Recognition> recognize(String image, Lane lane) {
+        LaneState l = lanes.get(lane);
+        if (sidecar != null && sidecar.isRunning() && !sidecar.isReady()) {
+            return done(Recognition.rejected(Status.NOT_READY, "Recognizer is starting"));
+        }
+        if (!allowCall()) {
+            return done(Recognition.rejected(Status.CIRCUIT_OPEN, "Recognizer unavailable, retry shortly"));
+        }
+
+        Frame frame = new Frame(image, new CompletableFuture<>(), System.nanoTime());
+        synchronized (l.pending) {
+            if (l.pending.size() >= l.maxQueued) {
+                releaseTrial();
+                return done(Recognition.rejected(Status.BUSY, "Recognizer busy, retry shortly"));
+            }
+            l.pending.add(frame);
+            drain(l);
+        }
+        return frame.result()
+                .completeOnTimeout(Recognition.rejected(Status.TIMEOUT, "Recognizer timed out"), deadlineMs, TimeUnit.MILLISECONDS)
+                .thenApply(this::record);
+    }
+
+    private CompletableFuture<Recognition> done(Recognition r) {
+        return CompletableFuture.completedFuture(record(r));
+    }
+
+    private Recognition record(Recognition r) {
+        frames.get(r.status()).incrementAndGet();
+        if (r.status() != Status.BUSY && r.status() != Status.CIRCUIT_OPEN && r.status() != Status.NOT_READY) {
+            totalLatencyMs.addAndGet(r.latencyMs());
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (now - bucketStart >= 10_000) {
+                    framesPerSecond = bucketFrames * 1000.0 / (now - bucketStart);
+                    bucketStart = now;
+                    bucketFrames = 0;
+                }
+                bucketFrames++;
+            }
+        }
+        return r;
+    }
+
+    // Caller holds l.pending. Sends batches while one is due and one of the lane's call slots is free.
+    private void drain(LaneState l) {
+        while (!l.pending.isEmpty()) {
+            Frame oldest = l.pending.peek();
+            if (oldest.result().isDone()) { // timed out while queued
+                l.pending.poll();
+                releaseTrial();
+                continue;
+            }
+            long waitedMs = (System.nanoTime() - oldest.enqueuedAt()) / 1_000_000;
+            boolean due = l.pending.size() >= batchMaxSize
+                    || l.bulkhead.availablePermits() == l.maxConcurrent
+                    || waitedMs >= batchMaxWaitMs;
+            if (!due) {
+                if (l.flushTimer == null) {
+                    l.flushTimer = timer.schedule(() -> flushFromTimer(l), batchMaxWaitMs - waitedMs, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            // No free slot: the next call to finish drains again
+            if (!l.bulkhead.tryAcquire()) return;
+            List<Frame> batch = new ArrayList<>(batchMaxSize);
+            while (batch.size() < batchMaxSize && !l.pending.isEmpty()) {
+                Frame f = l.pending.poll();
+                if (!f.result().isDone()) batch.add(f);
+                else releaseTrial();
+            }
+            if (batch.isEmpty()) {
+                l.bulkhead.release();
+                continue;
+            }
+            send(l, batch);
+        }
+        if (l.flushTimer != null) {
+            l.flushTimer.cancel(false);
+            l.flushTimer = null;
+        }
+    }
+
+    private void flushFromTimer(LaneState l) {
+        synchronized (l.pending) {
+            l.flushTimer = null;
+            drain(l);
+        }
+    }
+
+    private void send(LaneState l, List<Frame> batch) {
+        long sentAt = System.nanoTime();
+        calls.incrementAndGet();
+        batchedFrames.addAndGet(batch.size());
+        largestBatch.accumulateAndGet(batch.size(), Math::max);
+        List<String> images = new ArrayList<>(batch.size());
+        for (Frame f : batch) {
+            images.add(f.image());
+            totalQueueWaitMs.addAndGet((sentAt - f.enqueuedAt()) / 1_000_000);
+        }
+
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(Map.of("images", images));
+        } catch (Exception e) {
+            finish(l, batch, sentAt, Status.ERROR, e.getMessage(), false);
+            return;
+        }
+        // The oldest frame has the least time left
+        long remainingMs = Math.max(1, deadlineMs - (sentAt - batch.get(0).enqueuedAt()) / 1_000_000);
+        HttpRequest request = HttpRequest.newBuilder(batchUri)
+                .timeout(Duration.ofMillis(remainingMs))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        http.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .orTimeout(remainingMs, TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        boolean timeout = cause instanceof TimeoutException || cause instanceof HttpTimeoutException;
+                        finish(l, batch, sentAt, timeout ? Status.TIMEOUT : Status.ERROR,
+                                timeout ? "Recognizer timed out" : "Recognizer error: " + cause.getMessage(), true);
+                    } else if (response.statusCode() != 200) {
+                        finish(l, batch, sentAt, Status.ERROR, "Recognizer returned " + response.statusCode(), true);
+                    } else {
+                        try {
+                            fanOut(l, batch, sentAt, objectMapper.readTree(response.body()).path("results"));
+                        } catch (Exception e) {
+                            finish(l, batch, sentAt, Status.ERROR, "Bad recognizer response: " + e.getMessage(), true);
+                        }
+                    }
+                });
+    }
+
+    private void fanOut(LaneState l, List<Frame> batch, long sentAt, JsonNode results) {
+        if (results.size() != batch.size()) {
+            throw new IllegalStateException(results.size() + " results for " + batch.size() + " frames");
+        }
+        totalCallMs.addAndGet((System.nanoTime() - sentAt) / 1_000_000);
+        l.bulkhead.release();
+        onSuccess();
+        long now = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+            Frame f = batch.get(i);
+            JsonNode r = results.get(i);
+            long latency = (now - f.enqueuedAt()) / 1_000_000;
+            if (r.has("error")) {
+                // A frame that could not be decoded is that kiosk's problem, not the recognizer's
+                f.result().complete(new Recognition(Status.ERROR, List.of(), r.path("error").asText(), latency));
+                continue;
+            }
+            List<Face> faces = new ArrayList<>();
+            for (JsonNode face : r.path("faces")) {
+                JsonNode b = face.path("box");
+                int[] box = b.isArray() && b.size() == 4
+                        ? new int[] { b.get(0).asInt(), b.get(1).asInt(), b.get(2).asInt(), b.get(3).asInt() }
+                        : null;
+                faces.add(new Face(face.path("name").asText(), face.path("confidence").asDouble(), box));
+            }
+            f.result().complete(new Recognition(Status.OK, faces, null, latency));
+        }
+        drainAfterCall(l);
+    }
+
+    private void finish(LaneState l, List<Frame> batch, long sentAt, Status status, String detail, boolean countFailure) {
+        totalCallMs.addAndGet((System.nanoTime() - sentAt) / 1_000_000);
+        l.bulkhead.release();
+        if (countFailure) {
+            failedCalls.incrementAndGet();
+            onFailure();
+        } else {
+            releaseTrial();
+        }
+        long now = System.nanoTime();
+        for (Frame f : batch) {
+            f.result().complete(new Recognition(status, List.of(), detail, (now - f.enqueuedAt()) / 1_000_000));
+        }
+        drainAfterCall(l);
+    }
+
+    private void drainAfterCall(LaneState l) {
+        synchronized (l.pending) {
+            drain(l);
+        }
+    }
+
+    private synchronized boolean allowCall() {
+        if (circuit == Circuit.CLOSED) return true;
+        if (circuit == Circuit.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMs) return false;
+            circuit = Circuit.HALF_OPEN;
+            trialInFlight = false;
+        }
+        // HALF_OPEN: exactly one trial frame at a time
+        if (trialInFlight) return false;
+        trialInFlight = true;
+        return true;
+    }
+
+    private synchronized void releaseTrial() {
+        if (circuit == Circuit.HALF_OPEN) trialInFlight = false;
+    }
+
+    private synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        if (circuit != Circuit.CLOSED) System.out.println("✅ Recognizer circuit closed");
+        circuit = Circuit.CLOSED;
+        trialInFlight = false;
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        if (circuit == Circuit.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (circuit != Circuit.OPEN) {
+                System.err.println("⚠️ Recognizer circuit opened after " + consecutiveFailures + " failure(s)");
+            }
+            circuit = Circuit.OPEN;
+            openedAt = System.currentTimeMillis();
+            trialInFlight = false;
+        }
+    }
+
+    public synchronized Circuit circuit() {
+        return circuit;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("circuit", circuit());
+        LaneState kiosk = lanes.get(Lane.KIOSK);
+        s.put("inFlight", kiosk.maxConcurrent - kiosk.bulkhead.availablePermits());
+        s.put("maxConcurrent", kiosk.maxConcurrent);
+        synchronized (kiosk.pending) {
+            s.put("queued", kiosk.pending.size());
+        }
+        s.put("maxQueued", kiosk.maxQueued);
+        LaneState ingestion = lanes.get(Lane.INGESTION);
+        Map<String, Object> ingest = new LinkedHashMap<>();
+        ingest.put("inFlight", ingestion.maxConcurrent - ingestion.bulkhead.availablePermits());
+        ingest.put("maxConcurrent", ingestion.maxConcurrent);
+        synchronized (ingestion.pending) {
+            ingest.put("queued", ingestion.pending.size());
+        }
+        ingest.put("maxQueued", ingestion.maxQueued);
+        s.put("ingestion", ingest);
+
+        Map<String, Long> byStatus = new LinkedHashMap<>();
+        frames.forEach((status, n) -> byStatus.put(status.name(), n.get()));
+        s.put("frames", byStatus);
+        long answered = frames.get(Status.OK).get() + frames.get(Status.ERROR).get() + frames.get(Status.TIMEOUT).get();
+        s.put("avgLatencyMs", answered == 0 ? 0 : totalLatencyMs.get() / answered);
+
+        Map<String, Object> batching = new LinkedHashMap<>();
+        long n = calls.get();
+        batching.put("maxSize", batchMaxSize);
+        batching.put("maxWaitMs", batchMaxWaitMs);
+        batching.put("calls", n);
+        batching.put("failedCalls", failedCalls.get());
+        batching.put("avgBatchSize", n == 0 ? 0 : Math.round(batchedFrames.get() * 100.0 / n) / 100.0);
+        batching.put("largestBatch", largestBatch.get());
+        batching.put("avgQueueWaitMs", batchedFrames.get() == 0 ? 0 : totalQueueWaitMs.get() / batchedFrames.get());
+        batching.put("avgCallMs", n == 0 ? 0 : totalCallMs.get() / n);
+        s.put("batching", batching);
+
+        synchronized (this) {
+            s.put("framesPerSecond", Math.round(framesPerSecond * 10) / 10.0);
+        }
+        s.put("uptimeMs", System.currentTimeMillis() - startedAt);
+        return s;
+    }
+}
@@ -0,0 +1,278 @@
+package com.smartattendence.attendence.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the Python recognizer ({@code attendance_api.py}) as a supervised child
+ * process whose lifetime is tied to the Spring context.
+ *
+ * The process only counts as READY once its {@code /health} endpoint answers
+ * 200, i.e. after the model has loaded; callers gate traffic on
+ * {@link #isReady()} / {@link #awaitReady}. If the process exits, stops
+ * answering probes, or never becomes ready within the startup timeout, it is
+ * killed and relaunched with exponential backoff (reset after it has stayed
+ * up for a while). Its stdout is forwarded line by line as key=value log
+ * records.
+ */
+@Service
+public class RecognizerSidecar implements SmartLifecycle {
+
+    public enum State { STOPPED, STARTING, READY, BACKOFF }
+
+    private static final int PROBE_FAILURES_BEFORE_RESTART = 3;
+
+    private final boolean enabled;
+    private final List<String> command;
+    private final File workingDir;
+    private final URI healthUri;
+    private final long probeIntervalMs;
+    private final long startupTimeoutMs;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    private final Object readyLock = new Object();
+
+    private volatile boolean running;
+    private volatile State state = State.STOPPED;
+    private volatile Process process;
+    private Thread supervisor;
+
+    private final AtomicLong launches = new AtomicLong();
+    private final AtomicLong restarts = new AtomicLong();
+    private volatile long lastStartupMs = -1;
+    private volatile long readySince;
+    private volatile long nextBackoffMs;
+    private volatile String lastExit;
+
+    @Autowired
+    public RecognizerSidecar(@Value("${attendance.sidecar.enabled:true}") boolean enabled,
+                             @Value("${attendance.sidecar.command}") List<String> command,
+                             @Value("${attendance.sidecar.working-dir}") String workingDir,
+                             @Value("${attendance.sidecar.health-url:http://127.0.0.1:5000/health}") String healthUrl,
+                             @Value("${attendance.sidecar.probe-interval-ms:1000}") long probeIntervalMs,
+                             @Value("${attendance.sidecar.startup-timeout-ms:120000}") long startupTimeoutMs,
+                             @Value("${attendance.sidecar.initial-backoff-ms:1000}") long initialBackoffMs,
+                             @Value("${attendance.sidecar.max-backoff-ms:60000}") long maxBackoffMs) {
+        this.enabled = enabled;
+        this.command = List.copyOf(command);
+        this.workingDir = new File(workingDir);
+        this.healthUri = URI.create(healthUrl);
+        this.probeIntervalMs = probeIntervalMs;
+        this.startupTimeoutMs = startupTimeoutMs;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.nextBackoffMs = initialBackoffMs;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!enabled || running) return;
+        running = true;
+        supervisor = new Thread(this::supervise, "recognizer-sidecar");
+        supervisor.setDaemon(true);
+        supervisor.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        supervisor.interrupt();
+        kill();
+        try {
+            supervisor.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        setState(State.STOPPED);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    /** Blocks until the recognizer is ready or the timeout passes; returns whether it is ready. */
+    public boolean awaitReady(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (readyLock) {
+            while (state != State.READY) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) return false;
+                readyLock.wait(left);
+            }
+            return true;
+        }
+    }
+
+    private void supervise() {
+        while (running) {
+            long launchedAt = System.currentTimeMillis();
+            setState(State.STARTING);
+            Process p;
+            try {
+                p = launch();
+            } catch (IOException e) {
+                System.err.println("❌ Failed to start recognizer: " + e.getMessage());
+                lastExit = "launch failed: " + e.getMessage();
+                if (!backOff()) return;
+                continue;
+            }
+
+            boolean wasReady = false;
+            int probeFailures = 0;
+            while (running && p.isAlive()) {
+                if (probe()) {
+                    probeFailures = 0;
+                    if (!wasReady) {
+                        wasReady = true;
+                        lastStartupMs = System.currentTimeMillis() - launchedAt;
+                        readySince = System.currentTimeMillis();
+                        setState(State.READY);
+                        System.out.println("✅ Recognizer ready on " + healthUri.getHost() + ":" + healthUri.getPort()
+                                + " after " + lastStartupMs + " ms (pid " + p.pid() + ")");
+                    }
+                } else if (wasReady) {
+                    if (++probeFailures >= PROBE_FAILURES_BEFORE_RESTART) {
+                        System.err.println("⚠️ Recognizer failed " + probeFailures + " health probes, restarting");
+                        lastExit = "unhealthy";
+                        break;
+                    }
+                } else if (System.currentTimeMillis() - launchedAt > startupTimeoutMs) {
+                    System.err.println("⚠️ Recognizer not ready after " + startupTimeoutMs + " ms, restarting");
+                    lastExit = "startup timeout";
+                    break;
+                }
+                if (!sleep(probeIntervalMs)) break;
+            }
+            if (!running) return;
+
+            kill();
+            if (lastExit == null) lastExit = p.isAlive() ? "did not exit" : "exit code " + p.exitValue();
+            System.err.println("❌ Recognizer stopped (" + lastExit + ")");
+            // A process that stayed up long enough earns a fresh backoff
+            if (wasReady && System.currentTimeMillis() - readySince > maxBackoffMs) nextBackoffMs = initialBackoffMs;
+            if (!backOff()) return;
+        }
+    }
+
+    private Process launch() throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(workingDir);
+        pb.redirectErrorStream(true);
+        pb.environment().put("PYTHONIOENCODING", "utf-8");
+        pb.environment().put("PYTHONUNBUFFERED", "1");
+        Process p = pb.start();
+        process = p;
+        lastExit = null;
+        launches.incrementAndGet();
+        System.out.println("🚀 Recognizer launched (pid " + p.pid() + "): " + String.join(" ", command));
+
+        Thread pump = new Thread(() -> pumpOutput(p), "recognizer-stdout-" + p.pid());
+        pump.setDaemon(true);
+        pump.start();
+        return p;
+    }
+
+    private void pumpOutput(Process p) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println("source=recognizer pid=" + p.pid() + " msg=\"" + line.replace("\"", "'") + "\"");
+            }
+        } catch (IOException e) {
+            // stream closes when the process dies
+        }
+    }
+
+    private boolean probe() {
+        try {
+            HttpRequest req = HttpRequest.newBuilder(healthUri).timeout(Duration.ofSeconds(2)).GET().build();
+            return http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean backOff() {
+        setState(State.BACKOFF);
+        long wait = nextBackoffMs;
+        nextBackoffMs = Math.min(nextBackoffMs * 2, maxBackoffMs);
+        System.out.println("🕒 Restarting recognizer in " + wait + " ms");
+        if (!sleep(wait)) return false;
+        restarts.incrementAndGet();
+        return running;
+    }
+
+    private void kill() {
+        Process p = process;
+        if (p == null || !p.isAlive()) return;
+        p.descendants().forEach(ProcessHandle::destroy);
+        p.destroy();
+        try {
+            if (!p.waitFor(5, TimeUnit.SECONDS)) p.destroyForcibly().waitFor(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            p.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void setState(State s) {
+        synchronized (readyLock) {
+            state = s;
+            readyLock.notifyAll();
+        }
+    }
+
+    public Map<String, Object> status() {
+        Process p = process;
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("enabled", enabled);
+        s.put("state", state);
+        s.put("pid", p != null && p.isAlive() ? p.pid() : null);
+        s.put("launches", launches.get());
+        s.put("restarts", restarts.get());
+        s.put("lastStartupMs", lastStartupMs);
+        s.put("uptimeMs", state == State.READY ? System.currentTimeMillis() - readySince : 0);
+        s.put("nextBackoffMs", nextBackoffMs);
+        s.put("lastExit", lastExit);
+        return s;
+    }
+}
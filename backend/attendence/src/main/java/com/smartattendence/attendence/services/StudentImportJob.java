@@ -0,0 +1,511 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.entity.Student;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * One bulk student import: a CSV of students (columns name, email,
+ * registrationNo, password, with a header row) plus a zip holding one folder
+ * of face images per student. A folder in the zip is matched to its row by
+ * registration number or by the generated image-folder name.
+ * <pre>
+ *   parse CSV -> validate (one query) -> unzip -> insert in chunks -> train once
+ * </pre>
+ * The zip is read as a stream: each image goes straight from the archive to
+ * {@code <images>/.import-xxxx/<folder>/imgN.ext}, and each student's folder
+ * is renamed into place right before that student's chunk is inserted. A row
+ * that fails anywhere is reported with its CSV line and skipped; it never
+ * stops the other rows. Whatever was inserted, even on cancel or failure,
+ * ends up in one training request.
+ */
+public class StudentImportJob implements Runnable {
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED, CANCELLED }
+
+    public enum Phase { PARSE, VALIDATE, UNZIP, INSERT, TRAIN, FINISHED }
+
+    public record Settings(int batchSize, long maxImageBytes, int maxErrors) {}
+
+    public record RowError(int line, String registrationNo, String message) {}
+
+    private static final String[] IMAGE_SUFFIXES = {".jpg", ".jpeg", ".png", ".bmp"};
+    private static final int MAX_REG_DIGITS = 9; // imageFolder pads them into an int
+
+    private static final class Row {
+        final int line;
+        final String name;
+        final String email;
+        final String regNo;
+        final String password;
+        File folder;
+        int images;
+        boolean failed;
+
+        Row(int line, String name, String email, String regNo, String password) {
+            this.line = line;
+            this.name = name;
+            this.email = email;
+            this.regNo = regNo;
+            this.password = password;
+        }
+    }
+
+    private final String id;
+    private final File csv;
+    private final File archive;
+    private final Path imagesFolder;
+    private final Settings settings;
+    private final StudentService studentService;
+    private final StudentRegistrationService registrationService;
+    private final TrainingManifest trainingManifest;
+    private final ModelTrainingScheduler trainingScheduler;
+
+    private final List<RowError> errors = new ArrayList<>(); // guarded by itself
+    private final List<File> committed = new ArrayList<>();
+
+    private volatile State state = State.QUEUED;
+    private volatile Phase phase = Phase.PARSE;
+    private volatile String error;
+    private volatile int rows;
+    private volatile int valid;
+    private volatile int toInsert;
+    private volatile int imported;
+    private volatile int failed;
+    private volatile long entries;
+    private volatile long imagesWritten;
+    private volatile long bytesWritten;
+    private volatile long skippedEntries;
+    private volatile long archiveRead;
+    private volatile boolean trainingRequested;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long startedAt;
+    private volatile long finishedAt;
+
+    StudentImportJob(String id, File csv, File archive, Path imagesFolder, Settings settings, StudentService studentService,
+                     StudentRegistrationService registrationService, TrainingManifest trainingManifest,
+                     ModelTrainingScheduler trainingScheduler) {
+        this.id = id;
+        this.csv = csv;
+        this.archive = archive;
+        this.imagesFolder = imagesFolder;
+        this.settings = settings;
+        this.studentService = studentService;
+        this.registrationService = registrationService;
+        this.trainingManifest = trainingManifest;
+        this.trainingScheduler = trainingScheduler;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    @Override
+    public void run() {
+        if (state != State.QUEUED) return;
+        state = State.RUNNING;
+        startedAt = System.currentTimeMillis();
+        System.out.println("🚀 Student import " + id + " started: " + csv.getName() + " + " + archive.getName());
+        Path staging = null;
+        try {
+            List<Row> parsed = parse();
+            if (cancelled()) return;
+
+            phase = Phase.VALIDATE;
+            Map<String, Row> byFolder = validate(parsed);
+            if (cancelled()) return;
+
+            phase = Phase.UNZIP;
+            Files.createDirectories(imagesFolder);
+            // Same directory as the final folders so the renames are atomic
+            staging = Files.createTempDirectory(imagesFolder, ".import-");
+            unzip(byFolder, staging);
+            if (cancelled()) return;
+
+            phase = Phase.INSERT;
+            insert(parsed, staging);
+            if (cancelled()) return;
+
+            state = State.DONE;
+            System.out.println("✅ Student import " + id + " finished: " + imported + " imported, " + failed + " failed");
+        } catch (Exception e) {
+            if (state != State.CANCELLED) {
+                error = e.getMessage();
+                state = State.FAILED;
+                System.err.println("❌ Student import " + id + " failed: " + e.getMessage());
+            }
+        } finally {
+            if (staging != null) StudentRegistrationService.deleteQuietly(staging);
+            train();
+            phase = Phase.FINISHED;
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    public void cancel() {
+        if (state == State.DONE || state == State.FAILED) return;
+        state = State.CANCELLED;
+    }
+
+    private boolean cancelled() {
+        return state == State.CANCELLED;
+    }
+
+    private List<Row> parse() throws IOException {
+        List<Row> out = new ArrayList<>();
+        Map<String, Row> seenRegNos = new HashMap<>();
+        Map<String, Row> seenFolders = new HashMap<>();
+        try (CsvReader in = new CsvReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8)))) {
+            List<String> header = in.next();
+            if (header == null) throw new RuntimeException("CSV is empty");
+            Map<String, Integer> cols = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                cols.put(header.get(i).toLowerCase().replaceAll("[^a-z0-9]", ""), i);
+            }
+            if (!cols.containsKey("name") || !cols.containsKey("registrationno")) {
+                throw new RuntimeException("CSV needs a header with at least name and registrationNo");
+            }
+
+            List<String> record;
+            while ((record = in.next()) != null) {
+                if (record.size() == 1 && record.get(0).isBlank()) continue;
+                Row row = new Row(in.line(), field(record, cols, "name"), field(record, cols, "email"),
+                        field(record, cols, "registrationno"), field(record, cols, "password"));
+                out.add(row);
+                rows = out.size();
+
+                if (row.name == null || row.regNo == null) {
+                    fail(row, "name and registrationNo are required");
+                    continue;
+                }
+                String digits = row.regNo.replaceAll("\\D", "");
+                if (digits.isEmpty() || digits.replaceFirst("^0+(?=.)", "").length() > MAX_REG_DIGITS) {
+                    fail(row, "registrationNo must contain a number of at most " + MAX_REG_DIGITS + " digits");
+                    continue;
+                }
+                Row earlier = seenRegNos.putIfAbsent(row.regNo, row);
+                if (earlier != null) {
+                    fail(row, "duplicate of line " + earlier.line);
+                    continue;
+                }
+                row.folder = registrationService.imageFolder(row.name, row.regNo);
+                earlier = seenFolders.putIfAbsent(row.folder.getName(), row);
+                if (earlier != null) fail(row, "same image folder as line " + earlier.line);
+            }
+        }
+        return out;
+    }
+
+    private static String field(List<String> record, Map<String, Integer> cols, String column) {
+        Integer i = cols.get(column);
+        if (i == null || i >= record.size()) return null;
+        String v = record.get(i).trim();
+        return v.isEmpty() ? null : v;
+    }
+
+    // ✅ One IN query for the whole file instead of an existence check per student
+    private Map<String, Row> validate(List<Row> parsed) {
+        List<String> regNos = new ArrayList<>();
+        for (Row r : parsed) if (!r.failed) regNos.add(r.regNo);
+        Set<String> registered = studentService.findRegistered(regNos);
+
+        Map<String, Row> byFolder = new HashMap<>();
+        for (Row r : parsed) {
+            if (r.failed) continue;
+            if (registered.contains(r.regNo)) {
+                fail(r, "ALREADY_REGISTERED");
+            } else if (r.folder.exists()) {
+                fail(r, "image folder " + r.folder.getName() + " already exists");
+            } else {
+                byFolder.put(r.folder.getName(), r);
+                byFolder.putIfAbsent(r.regNo, r);
+                valid++;
+            }
+        }
+        return byFolder;
+    }
+
+    private void unzip(Map<String, Row> byFolder, Path staging) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        try (FileInputStream file = new FileInputStream(archive);
+             ZipInputStream zip = new ZipInputStream(new BufferedInputStream(file, 64 * 1024))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (cancelled()) return;
+                entries++;
+                archiveRead = file.getChannel().position();
+                if (entry.isDirectory()) continue;
+
+                // The folder an image sits in names its student; the rest of the path is ignored
+                String path = entry.getName().replace('\\', '/');
+                int slash = path.lastIndexOf('/');
+                String fileName = path.substring(slash + 1);
+                String dir = slash < 0 ? "" : path.substring(path.lastIndexOf('/', slash - 1) + 1, slash);
+                Row row = byFolder.get(dir);
+                String suffix = imageSuffix(fileName);
+                if (row == null || row.failed || suffix == null || fileName.startsWith(".")) {
+                    skippedEntries++;
+                    continue;
+                }
+
+                Path folder = staging.resolve(row.folder.getName());
+                if (row.images == 0) Files.createDirectories(folder);
+                Path target = folder.resolve("img" + (row.images + 1) + suffix);
+                long n = copy(zip, target, buf);
+                if (n < 0) {
+                    fail(row, fileName + " exceeds " + settings.maxImageBytes() + " bytes");
+                    StudentRegistrationService.deleteQuietly(folder);
+                    continue;
+                }
+                row.images++;
+                imagesWritten++;
+                bytesWritten += n;
+            }
+            archiveRead = archive.length();
+        }
+        for (Row r : byFolder.values()) {
+            if (!r.failed && r.images == 0) fail(r, "no images for " + r.regNo + " in the archive");
+        }
+    }
+
+    /** Copies the current entry to target and forces it to disk; -1 if it is larger than allowed. */
+    private long copy(InputStream in, Path target, byte[] buf) throws IOException {
+        long written = 0;
+        try (FileChannel ch = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                written += n;
+                if (written > settings.maxImageBytes()) return -1;
+                ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                while (bb.hasRemaining()) ch.write(bb);
+            }
+            ch.force(true);
+        }
+        return written;
+    }
+
+    private static String imageSuffix(String fileName) {
+        String lower = fileName.toLowerCase();
+        for (String suffix : IMAGE_SUFFIXES) if (lower.endsWith(suffix)) return suffix;
+        return null;
+    }
+
+    private void insert(List<Row> parsed, Path staging) throws IOException {
+        List<Row> ready = new ArrayList<>();
+        for (Row r : parsed) if (!r.failed && r.images > 0) ready.add(r);
+        toInsert = ready.size();
+
+        for (int from = 0; from < ready.size(); from += settings.batchSize()) {
+            if (cancelled()) return;
+            List<Row> chunk = new ArrayList<>();
+            List<Student> students = new ArrayList<>();
+            for (Row r : ready.subList(from, Math.min(ready.size(), from + settings.batchSize()))) {
+                try {
+                    Files.move(staging.resolve(r.folder.getName()), r.folder.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    fail(r, "could not move images into place: " + e.getMessage());
+                    continue;
+                }
+                chunk.add(r);
+                students.add(toStudent(r));
+            }
+            if (chunk.isEmpty()) continue;
+            StudentRegistrationService.syncDirectory(imagesFolder);
+
+            try {
+                studentService.insertBatch(students);
+                for (Row r : chunk) committed(r);
+            } catch (RuntimeException e) {
+                // Someone else registered one of these meanwhile: find out which, row by row
+                for (int i = 0; i < chunk.size(); i++) {
+                    Row r = chunk.get(i);
+                    try {
+                        studentService.insertBatch(List.of(students.get(i)));
+                        committed(r);
+                    } catch (RuntimeException rowError) {
+                        fail(r, rowError instanceof DuplicateKeyException ? "ALREADY_REGISTERED" : rowError.getMessage());
+                        StudentRegistrationService.deleteQuietly(r.folder.toPath());
+                    }
+                }
+            }
+            System.out.println("🕒 Student import " + id + ": " + imported + "/" + toInsert + " inserted");
+        }
+    }
+
+    private static Student toStudent(Row r) {
+        Student s = new Student();
+        s.setName(r.name);
+        s.setEmail(r.email);
+        s.setRegistrationNo(r.regNo);
+        s.setPassword(r.password);
+        s.setImagePath(r.folder.getAbsolutePath());
+        return s;
+    }
+
+    private void committed(Row r) {
+        committed.add(r.folder);
+        imported++;
+    }
+
+    // Exactly one training request per import, covering every student that made it in
+    private void train() {
+        if (committed.isEmpty()) return;
+        phase = Phase.TRAIN;
+        try {
+            trainingManifest.recordFolders(committed);
+            trainingScheduler.requestTraining("import " + id + " (" + committed.size() + " students)");
+            trainingRequested = true;
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Student import " + id + " could not request training: " + e.getMessage());
+        }
+    }
+
+    private void fail(Row row, String message) {
+        row.failed = true;
+        failed++;
+        synchronized (errors) {
+            if (errors.size() < settings.maxErrors()) errors.add(new RowError(row.line, row.regNo, message));
+        }
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("id", id);
+        s.put("csv", csv.getName());
+        s.put("archive", archive.getName());
+        s.put("state", state);
+        s.put("phase", phase);
+        s.put("error", error);
+        s.put("createdAt", createdAt);
+        long end = finishedAt != 0 ? finishedAt : System.currentTimeMillis();
+        long elapsed = startedAt == 0 ? 0 : end - startedAt;
+        s.put("elapsedMs", elapsed);
+
+        s.put("rows", rows);
+        s.put("valid", valid);
+        s.put("toInsert", toInsert);
+        s.put("imported", imported);
+        s.put("failed", failed);
+        s.put("studentsPerSecond", elapsed == 0 ? 0 : Math.round(imported * 10000.0 / elapsed) / 10.0);
+
+        Map<String, Object> images = new LinkedHashMap<>();
+        long size = archive.length();
+        images.put("archivePercent", size == 0 ? 100 : Math.min(100, archiveRead * 100 / size));
+        images.put("entries", entries);
+        images.put("written", imagesWritten);
+        images.put("bytesWritten", bytesWritten);
+        images.put("skippedEntries", skippedEntries);
+        s.put("images", images);
+
+        s.put("trainingRequested", trainingRequested);
+        synchronized (errors) {
+            s.put("errors", new ArrayList<>(errors));
+            s.put("errorsTruncated", failed > errors.size());
+        }
+        return s;
+    }
+
+    /** RFC 4180 records: quoted fields may hold commas, doubled quotes and line breaks. */
+    private static final class CsvReader implements AutoCloseable {
+        private final Reader in;
+        private int line = 1;
+        private int recordLine;
+        private int peeked = -2;
+
+        CsvReader(Reader in) {
+            this.in = in;
+        }
+
+        /** Line the last returned record started on. */
+        int line() {
+            return recordLine;
+        }
+
+        List<String> next() throws IOException {
+            int c = read();
+            if (c == 0xFEFF) c = read(); // byte order mark
+            if (c < 0) return null;
+            recordLine = line;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) throw new RuntimeException("Unterminated quote in CSV at line " + recordLine);
+                    if (c == '"') {
+                        int n = read();
+                        if (n == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = n;
+                            continue;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.isEmpty()) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c < 0 || c == '\n' || c == '\r') {
+                    if (c == '\r') {
+                        int n = read();
+                        if (n != '\n') peeked = n;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            int c;
+            if (peeked != -2) {
+                c = peeked;
+                peeked = -2;
+            } else {
+                c = in.read();
+            }
+            if (c == '\n') line++;
+            return c;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
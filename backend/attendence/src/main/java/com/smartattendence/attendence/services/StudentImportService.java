@@ -0,0 +1,127 @@
+package com.smartattendence.attendence.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs {@link StudentImportJob}s, one at a time, for onboarding a whole batch
+ * of students. The CSV and zip are read from the configured import folder
+ * (they are usually far larger than the multipart limits allow). Finished
+ * jobs are kept (up to KEEP_FINISHED) so their per-row report can be read.
+ */
+@Service
+public class StudentImportService {
+
+    private static final int KEEP_FINISHED = 20;
+
+    @Autowired
+    private StudentService studentService;
+    @Autowired
+    private StudentRegistrationService registrationService;
+    @Autowired
+    private TrainingManifest trainingManifest;
+    @Autowired
+    private ModelTrainingScheduler trainingScheduler;
+
+    private final Path baseFolder;
+    private final Path imagesFolder;
+    private final StudentImportJob.Settings settings;
+    // Single runner: two imports racing for the same registration numbers help nobody
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "student-import");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<String, StudentImportJob> jobs = new LinkedHashMap<>(); // guarded by this
+
+    public StudentImportService(@Value("${attendance.import.base-folder}") String baseFolder,
+                                @Value("${attendance.images.base-folder}") String imagesFolder,
+                                @Value("${attendance.import.batch-size:500}") int batchSize,
+                                @Value("${attendance.registration.max-image-bytes:5242880}") long maxImageBytes,
+                                @Value("${attendance.import.max-errors:1000}") int maxErrors) {
+        this.baseFolder = Path.of(baseFolder).toAbsolutePath().normalize();
+        this.imagesFolder = Path.of(imagesFolder);
+        this.settings = new StudentImportJob.Settings(Math.max(1, batchSize), maxImageBytes, maxErrors);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (this) {
+            jobs.values().forEach(StudentImportJob::cancel);
+        }
+        runner.shutdown();
+    }
+
+    /**
+     * @param csvPath     student rows, relative to the import folder
+     * @param archivePath zip of per-student image folders, relative to the import folder
+     */
+    public StudentImportJob submit(String csvPath, String archivePath) {
+        File csv = resolve(csvPath, "csv");
+        File archive = resolve(archivePath, "images");
+        StudentImportJob job = new StudentImportJob(UUID.randomUUID().toString().substring(0, 8), csv, archive,
+                imagesFolder, settings, studentService, registrationService, trainingManifest, trainingScheduler);
+        synchronized (this) {
+            pruneFinished();
+            jobs.put(job.id(), job);
+        }
+        runner.execute(job);
+        return job;
+    }
+
+    // Only files under the base folder may be read
+    private File resolve(String relativePath, String field) {
+        if (relativePath == null || relativePath.isBlank()) throw new RuntimeException(field + " is required");
+        Path p = baseFolder.resolve(relativePath).normalize();
+        if (!p.startsWith(baseFolder)) throw new RuntimeException(field + " must be inside the import folder");
+        File f = p.toFile();
+        if (!f.isFile()) throw new RuntimeException("Not found: " + relativePath);
+        try {
+            if (!f.getCanonicalPath().startsWith(baseFolder.toFile().getCanonicalPath())) {
+                throw new RuntimeException(field + " must be inside the import folder");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error resolving " + relativePath + ": " + e.getMessage());
+        }
+        return f;
+    }
+
+    private void pruneFinished() {
+        List<String> finished = new ArrayList<>();
+        jobs.forEach((id, job) -> {
+            StudentImportJob.State s = job.state();
+            if (s != StudentImportJob.State.QUEUED && s != StudentImportJob.State.RUNNING) finished.add(id);
+        });
+        for (int i = 0; i < finished.size() - KEEP_FINISHED; i++) jobs.remove(finished.get(i));
+    }
+
+    public synchronized StudentImportJob get(String id) {
+        StudentImportJob job = jobs.get(id);
+        if (job == null) throw new RuntimeException("Import job not found: " + id);
+        return job;
+    }
+
+    public void cancel(String id) {
+        get(id).cancel();
+    }
+
+    public synchronized List<Map<String, Object>> list() {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (StudentImportJob job : jobs.values()) out.add(job.status());
+        return out;
+    }
+}
@@ -0,0 +1,335 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartattendence.attendence.entity.Student;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Registers a student together with their face images without ever holding
+ * the images in memory. Images are streamed into a staging folder next to the
+ * final one (multipart parts are moved/copied from the servlet's temp files,
+ * base64 JSON is decoded chunk by chunk), and the folder is renamed into
+ * place once the upload is complete. Peak heap is a few buffers per request
+ * regardless of how many images are sent.
+ *
+ * Each image is written to {@code imgN.jpg.tmp}, forced to disk and renamed,
+ * on virtual threads so the files of one registration are persisted
+ * concurrently. The student row is saved only after every file and the folder
+ * itself are durable; on any failure the folder is removed again.
+ */
+@Service
+public class StudentRegistrationService {
+
+    @Autowired
+    private StudentService studentService;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Path baseFolder;
+    private final long maxImageBytes;
+    private final long maxRequestBytes;
+
+    private final ExecutorService imageWriters = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore writePermits; // caps concurrent file writes across all registrations
+
+    public StudentRegistrationService(
+            @Value("${attendance.images.base-folder}") String baseFolder,
+            @Value("${attendance.registration.max-image-bytes:5242880}") long maxImageBytes,
+            @Value("${attendance.registration.max-request-bytes:52428800}") long maxRequestBytes,
+            @Value("${attendance.registration.write-concurrency:16}") int writeConcurrency) {
+        this.baseFolder = Path.of(baseFolder);
+        this.maxImageBytes = maxImageBytes;
+        this.maxRequestBytes = maxRequestBytes;
+        this.writePermits = new Semaphore(writeConcurrency);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        imageWriters.shutdown();
+    }
+
+    public File imageFolder(String name, String regNo) {
+        String digits = regNo.replaceAll("\\D", "");
+        String padded = String.format("%04d", Integer.parseInt(digits.isEmpty() ? "0" : digits));
+        return baseFolder.resolve(name.replaceAll("\\s+", "_") + padded).toFile();
+    }
+
+    /** Inverse of {@link #imageFolder}: the trailing digits are the numeric registration number. */
+    public static String registrationNoOf(String folderName) {
+        int i = folderName.length();
+        while (i > 0 && Character.isDigit(folderName.charAt(i - 1))) i--;
+        if (i == folderName.length()) return null;
+        return String.valueOf(Long.parseLong(folderName.substring(i)));
+    }
+
+    // ✅ multipart/form-data: each part is already spooled to disk by the servlet container
+    public Student registerMultipart(String name, String email, String regNo, String password,
+                                     List<MultipartFile> images) {
+        if (images == null || images.isEmpty()) throw new RuntimeException("No images uploaded");
+        checkNotRegistered(regNo);
+
+        for (MultipartFile img : images) {
+            if (img.getSize() > maxImageBytes) throw new RuntimeException("Image exceeds " + maxImageBytes + " bytes");
+        }
+
+        Path staging = createStaging();
+        try {
+            List<ImageSource> sources = new ArrayList<>();
+            // Tomcat renames its temp file when it can, otherwise copies through a channel
+            for (MultipartFile img : images) sources.add(tmp -> img.transferTo(tmp.toFile()));
+            persistAll(staging, sources);
+            return complete(name, email, regNo, password, staging);
+        } catch (IOException e) {
+            deleteQuietly(staging);
+            throw new RuntimeException("Error saving images: " + e.getMessage());
+        } catch (RuntimeException e) {
+            deleteQuietly(staging);
+            throw e;
+        }
+    }
+
+    // ✅ Legacy JSON body {name, email, registrationNo, password, images: [{data: "<base64>"}]}, parsed as a stream
+    public Student registerJson(InputStream body) {
+        Path staging = createStaging();
+        String name = null, email = null, regNo = null, password = null;
+        int count = 0;
+        List<ImageSource> decoded = new ArrayList<>();
+        try (JsonParser p = objectMapper.getFactory().createParser(new LimitedInputStream(body, maxRequestBytes))) {
+            if (p.nextToken() != JsonToken.START_OBJECT) throw new RuntimeException("Expected a JSON object");
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "name" -> name = p.getText();
+                    case "email" -> email = p.getText();
+                    case "password" -> password = p.getText();
+                    case "registrationNo" -> {
+                        regNo = p.getText();
+                        checkNotRegistered(regNo); // fail before the images are read
+                    }
+                    case "images" -> {
+                        if (p.currentToken() != JsonToken.START_ARRAY) throw new RuntimeException("'images' must be an array");
+                        while (p.nextToken() == JsonToken.START_OBJECT) {
+                            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                                String imgField = p.currentName();
+                                p.nextToken();
+                                if (!imgField.equals("data")) {
+                                    p.skipChildren();
+                                    continue;
+                                }
+                                count++;
+                                // The body is one stream, so decoding is sequential; syncing and renaming is not
+                                Path tmp = tempFor(staging.resolve("img" + count + ".jpg"));
+                                try (OutputStream out = new LimitedOutputStream(Files.newOutputStream(tmp), maxImageBytes)) {
+                                    p.readBinaryValue(Base64Variants.MIME_NO_LINEFEEDS, out);
+                                }
+                                decoded.add(already -> { });
+                            }
+                        }
+                    }
+                    default -> p.skipChildren();
+                }
+            }
+            if (regNo == null || name == null) throw new RuntimeException("name and registrationNo are required");
+            if (count == 0) throw new RuntimeException("No images uploaded");
+            persistAll(staging, decoded);
+            return complete(name, email, regNo, password, staging);
+        } catch (IOException e) {
+            deleteQuietly(staging);
+            throw new RuntimeException("Error saving images: " + e.getMessage());
+        } catch (RuntimeException e) {
+            deleteQuietly(staging);
+            throw e;
+        }
+    }
+
+    private Student complete(String name, String email, String regNo, String password, Path staging) throws IOException {
+        checkNotRegistered(regNo);
+        File folder = imageFolder(name, regNo);
+        // Not registered, so anything already there is left over from an earlier attempt
+        if (folder.exists()) deleteQuietly(folder.toPath());
+        Files.move(staging, folder.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(baseFolder);
+
+        Student s = new Student();
+        s.setName(name);
+        s.setEmail(email);
+        s.setRegistrationNo(regNo);
+        s.setPassword(password);
+        s.setImagePath(folder.getAbsolutePath());
+        try {
+            return studentService.registerStudent(s);
+        } catch (RuntimeException e) {
+            deleteQuietly(folder.toPath());
+            throw e;
+        }
+    }
+
+    /** Writes source i to {@code img(i+1).jpg} via a synced temp file, all sources concurrently. */
+    private void persistAll(Path staging, List<ImageSource> sources) throws IOException {
+        List<Future<?>> writes = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            ImageSource source = sources.get(i);
+            Path target = staging.resolve("img" + (i + 1) + ".jpg");
+            writes.add(imageWriters.submit(() -> {
+                writePermits.acquire();
+                try {
+                    writeDurably(source, target);
+                } finally {
+                    writePermits.release();
+                }
+                return null;
+            }));
+        }
+
+        IOException failure = null;
+        for (Future<?> w : writes) {
+            try {
+                w.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writes.forEach(f -> f.cancel(true));
+                throw new IOException("interrupted while saving images");
+            }
+        }
+        if (failure != null) throw failure;
+        syncDirectory(staging);
+    }
+
+    private static void writeDurably(ImageSource source, Path target) throws IOException {
+        Path tmp = tempFor(target);
+        source.writeTo(tmp);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path tempFor(Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+
+    // Makes the renames themselves durable; directories cannot be opened for sync on Windows
+    static void syncDirectory(Path dir) {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // best effort
+        }
+    }
+
+    private void checkNotRegistered(String regNo) {
+        if (studentService.getStudentByReg(regNo) != null) throw new RuntimeException("ALREADY_REGISTERED");
+    }
+
+    private Path createStaging() {
+        try {
+            Files.createDirectories(baseFolder);
+            // Same directory as the final folder so the closing rename is atomic
+            return Files.createTempDirectory(baseFolder, ".upload-");
+        } catch (IOException e) {
+            throw new RuntimeException("Error creating upload folder: " + e.getMessage());
+        }
+    }
+
+    static void deleteQuietly(Path dir) {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not clean up " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private interface ImageSource {
+        void writeTo(Path tmp) throws IOException;
+    }
+
+    static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long read;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) count(n);
+            return n;
+        }
+
+        private void count(long n) throws IOException {
+            read += n;
+            if (read > limit) throw new IOException("request exceeds " + limit + " bytes");
+        }
+    }
+
+    private static final class LimitedOutputStream extends FilterOutputStream {
+        private final long limit;
+        private long written;
+
+        LimitedOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            count(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException {
+            count(len);
+            out.write(buf, off, len);
+        }
+
+        private void count(long n) throws IOException {
+            written += n;
+            if (written > limit) throw new IOException("image exceeds " + limit + " bytes");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.entity.Student;
+import com.smartattendence.attendence.repository.StudentRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process, write-through copy of the student table keyed by registration
+ * number, so recognition -> mark never round-trips to MySQL.
+ *
+ * Entries are LRU-evicted beyond {@code maxSize}. While nothing has been
+ * evicted the registry holds every student, so a miss is a definite "not
+ * registered" and needs no database read either. Callers always get their
+ * own copy; the cached instances are never handed out.
+ */
+@Service
+public class StudentRegistry {
+
+    private static final int WARMUP_PAGE = 1000;
+
+    @Autowired
+    private StudentRepository repository;
+
+    private final int maxSize;
+    private final Map<String, Student> entries;
+    private boolean complete; // guarded by this
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public StudentRegistry(@Value("${attendance.student-cache.max-size:50000}") int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Student> eldest) {
+                if (size() <= StudentRegistry.this.maxSize) return false;
+                complete = false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    @PostConstruct
+    public synchronized void warmUp() {
+        entries.clear();
+        complete = true;
+        String after = "";
+        while (true) {
+            List<Student> page = repository.findByRegistrationNoGreaterThanOrderByRegistrationNoAsc(after, PageRequest.ofSize(WARMUP_PAGE));
+            for (Student s : page) entries.put(s.getRegistrationNo(), copyOf(s));
+            if (page.size() < WARMUP_PAGE || entries.size() >= maxSize) {
+                if (page.size() == WARMUP_PAGE) complete = false;
+                break;
+            }
+            after = page.get(page.size() - 1).getRegistrationNo();
+        }
+        System.out.println("✅ Student registry warmed with " + entries.size() + " students"
+                + (complete ? "" : " (partial, misses will hit the database)"));
+    }
+
+    /** Copy of the student, or null if not registered. */
+    public Student get(String regNo) {
+        if (regNo == null) return null;
+        synchronized (this) {
+            Student cached = entries.get(regNo);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return copyOf(cached);
+            }
+            if (complete) {
+                hits.incrementAndGet();
+                return null;
+            }
+        }
+        misses.incrementAndGet();
+        Student loaded = repository.findByRegistrationNo(regNo);
+        if (loaded == null) return null;
+        loads.incrementAndGet();
+        synchronized (this) {
+            entries.putIfAbsent(regNo, copyOf(loaded));
+        }
+        return copyOf(loaded);
+    }
+
+    /** Answers from memory when the registry is complete, otherwise falls back to the database. */
+    public boolean exists(String regNo) {
+        return get(regNo) != null;
+    }
+
+    public synchronized void put(Student student) {
+        entries.put(student.getRegistrationNo(), copyOf(student));
+    }
+
+    public synchronized void evict(String regNo) {
+        entries.remove(regNo);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    public Map<String, Object> stats() {
+        long h = hits.get(), m = misses.get();
+        return Map.of("size", size(),
+                "maxSize", maxSize,
+                "complete", isComplete(),
+                "hits", h,
+                "misses", m,
+                "loads", loads.get(),
+                "evictions", evictions.get(),
+                "hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+    }
+
+    private static Student copyOf(Student s) {
+        Student c = new Student();
+        c.setRegistrationNo(s.getRegistrationNo());
+        c.setName(s.getName());
+        c.setEmail(s.getEmail());
+        c.setPassword(s.getPassword());
+        c.setImagePath(s.getImagePath());
+        return c;
+    }
+}
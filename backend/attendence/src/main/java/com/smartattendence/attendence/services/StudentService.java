@@ -1,30 +1,100 @@
 package com.smartattendence.attendence.services;
 
+import com.smartattendence.attendence.dto.KeysetPage;
+import com.smartattendence.attendence.dto.StudentView;
 import com.smartattendence.attendence.entity.Student;
 import com.smartattendence.attendence.repository.StudentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class StudentService {
 
     @Autowired
     private StudentRepository repository;
+    @Autowired
+    private StudentRegistry registry;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
     public Student registerStudent(Student student) {
-        if (repository.existsByRegistrationNo(student.getRegistrationNo())) {
+        if (registry.exists(student.getRegistrationNo())) {
             throw new RuntimeException("Student already registered");
         }
-        return repository.save(student);
+        Student saved = repository.save(student);
+        registry.put(saved);
+        return saved;
+    }
+
+    // ✅ Bulk import: which of these registration numbers are taken, in one query
+    @Transactional(readOnly = true)
+    public Set<String> findRegistered(Collection<String> regNos) {
+        if (regNos.isEmpty()) return new HashSet<>();
+        return new HashSet<>(repository.findExistingRegistrationNos(regNos));
+    }
+
+    /**
+     * Inserts the chunk as one JDBC batch (a multi-row INSERT with
+     * rewriteBatchedStatements). Student ids are IDENTITY, which makes
+     * Hibernate insert row by row, hence plain JDBC here.
+     */
+    @Transactional
+    public void insertBatch(List<Student> students) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO student (name, email, registration_no, password, image_path) VALUES (?, ?, ?, ?, ?)",
+                students, students.size(), (ps, s) -> {
+                    ps.setString(1, s.getName());
+                    ps.setString(2, s.getEmail());
+                    ps.setString(3, s.getRegistrationNo());
+                    ps.setString(4, s.getPassword());
+                    ps.setString(5, s.getImagePath());
+                });
+        // Cached only once the rows are committed
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (Student s : students) registry.put(s);
+            }
+        });
     }
 
+    // ✅ Served from the in-process registry; the returned object is a copy
     public Student getStudentByReg(String regNo) {
-        return repository.findByRegistrationNo(regNo);
+        return registry.get(regNo);
+    }
+
+    public StudentView getStudentView(String regNo) {
+        Student s = registry.get(regNo);
+        return s == null ? null : new StudentView(s.getRegistrationNo(), s.getName(), s.getEmail());
+    }
+
+    public Map<String, Object> registryStats() {
+        return registry.stats();
+    }
+
+    @Transactional(readOnly = true)
+    public List<StudentView> getAllStudents() {
+        return repository.findAllViews();
     }
 
-    public List<Student> getAllStudents() {
-        return repository.findAll();
+    @Transactional(readOnly = true)
+    public KeysetPage<StudentView> getStudentPage(Integer limit, String cursor) {
+        int size = KeysetPage.clampLimit(limit);
+        String after = cursor == null || cursor.isBlank() ? "" : KeysetPage.decodeCursor(cursor, 1)[0];
+        List<StudentView> rows = repository.findViewPageAfter(after, PageRequest.ofSize(size + 1));
+        if (rows.size() <= size) return new KeysetPage<>(rows, null);
+        rows = rows.subList(0, size);
+        return new KeysetPage<>(rows, KeysetPage.encodeCursor(rows.get(size - 1).registrationNo()));
     }
 
     public Student updateStudentByReg(String regNo, Student updatedData) {
@@ -34,7 +104,9 @@ public class StudentService {
             student.setEmail(updatedData.getEmail());
             student.setPassword(updatedData.getPassword());
             student.setImagePath(updatedData.getImagePath());
-            return repository.save(student);
+            Student saved = repository.save(student);
+            registry.put(saved);
+            return saved;
         }
         throw new RuntimeException("Student not found with Registration No: " + regNo);
     }
@@ -45,6 +117,7 @@ public class StudentService {
             throw new RuntimeException("Student not found with Registration No: " + regNo);
         }
         repository.delete(student); // ensures permanent deletion
+        registry.evict(regNo);
     }
 }
 
@@ -0,0 +1,279 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Content-hash manifest of the registered_images tree, one entry per student
+ * folder, plus the set of folders that changed since the last successful
+ * training run. The training job is handed only that delta so it can patch
+ * the gallery instead of re-encoding every student.
+ *
+ * A rename whose files hash the same as before is reported as a rename, so
+ * the job can relabel encodings without touching the images at all. On
+ * startup the manifest is reconciled with the disk (size/mtime first, hashes
+ * only for files that look different) to pick up changes made while the
+ * backend was down.
+ */
+@Service
+public class TrainingManifest {
+
+    private static final String[] IMAGE_SUFFIXES = {".jpg", ".jpeg", ".png", ".bmp"};
+
+    public record FileEntry(String sha256, long size, long modified) {}
+
+    /** Folders to re-encode or drop, and [old, new] folder pairs to relabel. full=true means rebuild everything. */
+    public record Delta(boolean full, List<String> added, List<String> changed, List<String> removed,
+                        List<List<String>> renamed) {
+        public boolean isEmpty() {
+            return !full && added.isEmpty() && changed.isEmpty() && removed.isEmpty() && renamed.isEmpty();
+        }
+    }
+
+    // What is persisted
+    public static class State {
+        public Map<String, Map<String, FileEntry>> folders = new TreeMap<>();
+        public Set<String> added = new LinkedHashSet<>();
+        public Set<String> changed = new LinkedHashSet<>();
+        public Set<String> removed = new LinkedHashSet<>();
+        public Map<String, String> renamed = new LinkedHashMap<>(); // new -> old
+        public boolean full = true; // nothing trained from this manifest yet
+    }
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Path baseFolder;
+    private final Path manifestFile;
+    private State state = new State(); // guarded by this
+
+    public TrainingManifest(@Value("${attendance.images.base-folder}") String baseFolder,
+                            @Value("${attendance.training.manifest}") String manifestFile) {
+        this.baseFolder = Path.of(baseFolder);
+        this.manifestFile = Path.of(manifestFile);
+    }
+
+    @PostConstruct
+    public synchronized void load() {
+        if (Files.exists(manifestFile)) {
+            try {
+                state = objectMapper.readValue(manifestFile.toFile(), State.class);
+            } catch (IOException e) {
+                System.err.println("⚠️ Unreadable training manifest, next run will be a full retrain: " + e.getMessage());
+                state = new State();
+            }
+        }
+        reconcile();
+        save();
+        System.out.println("✅ Training manifest: " + state.folders.size() + " folders, "
+                + (state.full ? "full retrain pending" : pendingCount() + " pending change(s)"));
+    }
+
+    private void reconcile() {
+        Set<String> onDisk = new LinkedHashSet<>();
+        File[] dirs = baseFolder.toFile().listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (dir.getName().startsWith(".")) continue; // upload staging folders
+                onDisk.add(dir.getName());
+                recordFolderLocked(dir.getName());
+            }
+        }
+        for (String known : new ArrayList<>(state.folders.keySet())) {
+            if (!onDisk.contains(known)) recordRemovedLocked(known);
+        }
+    }
+
+    /** A folder was written (registration) or its images replaced. */
+    public synchronized void recordFolder(File folder) {
+        recordFolderLocked(folder.getName());
+        save();
+    }
+
+    /** Many folders written at once (bulk import); the manifest is saved once. */
+    public synchronized void recordFolders(Collection<File> folders) {
+        for (File folder : folders) recordFolderLocked(folder.getName());
+        save();
+    }
+
+    public synchronized void recordRenamed(File oldFolder, File newFolder) {
+        String from = oldFolder.getName(), to = newFolder.getName();
+        if (from.equals(to)) return;
+        Map<String, FileEntry> before = state.folders.remove(from);
+        Map<String, FileEntry> after = scan(to, before);
+        if (after.isEmpty()) {
+            if (before != null) markRemoved(from);
+        } else if (before != null && sameContent(before, after) && !state.added.contains(from)
+                && !state.changed.contains(from)) {
+            state.folders.put(to, after);
+            // Chains (a -> b -> c) collapse into one relabel from the trained name
+            String origin = state.renamed.remove(from);
+            state.renamed.put(to, origin != null ? origin : from);
+        } else {
+            if (before != null) markRemoved(from);
+            state.folders.put(to, after);
+            state.added.add(to);
+        }
+        save();
+    }
+
+    public synchronized void recordRemoved(File folder) {
+        recordRemovedLocked(folder.getName());
+        save();
+    }
+
+    public synchronized void requestFull() {
+        state.full = true;
+        save();
+    }
+
+    /** Hands the pending delta to a training run and clears it; a failed run gives it back via {@link #restore}. */
+    public synchronized Delta takeDelta() {
+        List<List<String>> renames = new ArrayList<>();
+        state.renamed.forEach((to, from) -> renames.add(List.of(from, to)));
+        Delta d = new Delta(state.full, new ArrayList<>(state.added), new ArrayList<>(state.changed),
+                new ArrayList<>(state.removed), renames);
+        state.full = false;
+        state.added.clear();
+        state.changed.clear();
+        state.removed.clear();
+        state.renamed.clear();
+        save();
+        return d;
+    }
+
+    /** The run failed; merge its delta back so the next run retries it. */
+    public synchronized void restore(Delta delta) {
+        // Relabels may have been overtaken by later renames; re-encoding everything is the safe answer
+        state.full |= delta.full() || !delta.renamed().isEmpty();
+        for (String f : delta.removed()) if (!state.folders.containsKey(f)) state.removed.add(f);
+        for (String f : delta.added()) if (state.folders.containsKey(f) && !state.changed.contains(f)) state.added.add(f);
+        for (String f : delta.changed()) if (state.folders.containsKey(f) && !state.added.contains(f)) state.changed.add(f);
+        save();
+    }
+
+    public synchronized int pendingCount() {
+        return state.added.size() + state.changed.size() + state.removed.size() + state.renamed.size();
+    }
+
+    public synchronized boolean fullPending() {
+        return state.full;
+    }
+
+    private void recordFolderLocked(String name) {
+        Map<String, FileEntry> before = state.folders.get(name);
+        Map<String, FileEntry> after = scan(name, before);
+        if (after.isEmpty()) {
+            if (before != null) recordRemovedLocked(name);
+            return;
+        }
+        state.folders.put(name, after);
+        if (before == null) {
+            state.removed.remove(name);
+            state.added.add(name);
+        } else if (!sameContent(before, after) && !state.added.contains(name)) {
+            state.changed.add(name);
+            // Content changed, so a pending relabel is not enough any more
+            String origin = state.renamed.remove(name);
+            if (origin != null) {
+                state.removed.add(origin);
+                state.changed.remove(name);
+                state.added.add(name);
+            }
+        }
+    }
+
+    private void recordRemovedLocked(String name) {
+        if (state.folders.remove(name) == null) return;
+        markRemoved(name);
+    }
+
+    private void markRemoved(String name) {
+        state.changed.remove(name);
+        String origin = state.renamed.remove(name);
+        if (state.added.remove(name)) return; // never trained, nothing to drop
+        state.removed.add(origin != null ? origin : name);
+    }
+
+    private static boolean sameContent(Map<String, FileEntry> a, Map<String, FileEntry> b) {
+        if (a.size() != b.size()) return false;
+        for (Map.Entry<String, FileEntry> e : a.entrySet()) {
+            FileEntry other = b.get(e.getKey());
+            if (other == null || !other.sha256().equals(e.getValue().sha256())) return false;
+        }
+        return true;
+    }
+
+    // Re-hashes only files whose size or mtime differ from the previous entry
+    private Map<String, FileEntry> scan(String folderName, Map<String, FileEntry> previous) {
+        Map<String, FileEntry> out = new TreeMap<>();
+        File[] files = baseFolder.resolve(folderName).toFile().listFiles(File::isFile);
+        if (files == null) return out;
+        for (File f : files) {
+            if (!isImage(f.getName())) continue;
+            long size = f.length(), modified = f.lastModified();
+            FileEntry old = previous == null ? null : previous.get(f.getName());
+            if (old != null && old.size() == size && old.modified() == modified) {
+                out.put(f.getName(), old);
+            } else {
+                out.put(f.getName(), new FileEntry(sha256(f.toPath()), size, modified));
+            }
+        }
+        return out;
+    }
+
+    private static boolean isImage(String fileName) {
+        String lower = fileName.toLowerCase();
+        for (String suffix : IMAGE_SUFFIXES) if (lower.endsWith(suffix)) return true;
+        return false;
+    }
+
+    private static String sha256(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) md.update(buf, 0, n);
+            return HexFormat.of().formatHex(md.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("Error hashing " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void save() {
+        try {
+            Files.createDirectories(manifestFile.toAbsolutePath().getParent());
+            Path tmp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+            objectMapper.writeValue(tmp.toFile(), state);
+            Files.move(tmp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not save training manifest: " + e.getMessage());
+        }
+    }
+
+    /** Writes the delta as JSON for train_model.py --delta. */
+    public void writeDelta(Delta delta, Path target) throws IOException {
+        objectMapper.writeValue(target.toFile(), delta);
+    }
+}
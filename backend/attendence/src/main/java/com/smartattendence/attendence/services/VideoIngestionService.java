@@ -0,0 +1,140 @@
+package com.smartattendence.attendence.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs {@link IngestionJob}s for rooms that only have recorded lecture video.
+ * Sources are video files or image-sequence folders under the configured
+ * base folder; at most maxJobs run at once and the rest wait in order.
+ * Finished jobs are kept (up to KEEP_FINISHED) so their report can be read.
+ */
+@Service
+public class VideoIngestionService {
+
+    private static final int KEEP_FINISHED = 50;
+
+    @Autowired
+    private RecognitionGateway gateway;
+    @Autowired
+    private StudentService studentService;
+    @Autowired
+    private AttendanceService attendanceService;
+
+    private final Path baseFolder;
+    private final IngestionJob.Settings defaults;
+    private final ExecutorService runner;
+
+    private final Map<String, IngestionJob> jobs = new LinkedHashMap<>(); // guarded by this
+
+    public VideoIngestionService(@Value("${attendance.ingest.base-folder}") String baseFolder,
+                                 @Value("${attendance.ingest.ffmpeg:ffmpeg}") String ffmpeg,
+                                 @Value("${attendance.ingest.decode-fps:5}") int decodeFps,
+                                 @Value("${attendance.ingest.sequence-fps:25}") int sequenceFps,
+                                 @Value("${attendance.ingest.scene-change-distance:6}") int sceneChangeDistance,
+                                 @Value("${attendance.ingest.min-sample-gap-ms:200}") long minSampleGapMs,
+                                 @Value("${attendance.ingest.max-sample-gap-ms:5000}") long maxSampleGapMs,
+                                 @Value("${attendance.ingest.queue-capacity:32}") int queueCapacity,
+                                 @Value("${attendance.ingest.recognizer-workers:8}") int recognizerWorkers,
+                                 @Value("${attendance.ingest.min-hits:3}") int minHits,
+                                 @Value("${attendance.ingest.min-confidence:0.35}") double minConfidence,
+                                 @Value("${attendance.ingest.max-jobs:1}") int maxJobs) {
+        this.baseFolder = Path.of(baseFolder).toAbsolutePath().normalize();
+        this.defaults = new IngestionJob.Settings(ffmpeg, decodeFps, sequenceFps, sceneChangeDistance, minSampleGapMs,
+                maxSampleGapMs, queueCapacity, recognizerWorkers, minHits, minConfidence);
+        this.runner = Executors.newFixedThreadPool(Math.max(1, maxJobs), r -> {
+            Thread t = new Thread(r, "ingest-runner");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (this) {
+            jobs.values().forEach(IngestionJob::cancel);
+        }
+        runner.shutdownNow();
+    }
+
+    /**
+     * @param relativePath video file or image folder, relative to the ingest base folder
+     * @param sessionStart  when the recording started; marks are dated from it
+     * @param minHits       overrides the configured minimum, or null
+     * @param minConfidence overrides the configured minimum, or null
+     */
+    public IngestionJob submit(String relativePath, LocalDateTime sessionStart, Integer minHits, Double minConfidence) {
+        if (sessionStart == null) throw new RuntimeException("sessionStart is required");
+        if (sessionStart.isAfter(LocalDateTime.now())) throw new RuntimeException("sessionStart is in the future");
+        File source = resolve(relativePath);
+        IngestionJob.Settings settings = new IngestionJob.Settings(defaults.ffmpeg(), defaults.decodeFps(),
+                defaults.sequenceFps(), defaults.sceneChangeDistance(), defaults.minSampleGapMs(),
+                defaults.maxSampleGapMs(), defaults.queueCapacity(), defaults.recognizerWorkers(),
+                minHits != null ? minHits : defaults.minHits(),
+                minConfidence != null ? minConfidence : defaults.minConfidence());
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString().substring(0, 8), source, sessionStart, settings,
+                gateway, studentService, attendanceService);
+        synchronized (this) {
+            pruneFinished();
+            jobs.put(job.id(), job);
+        }
+        runner.execute(job);
+        return job;
+    }
+
+    // Only files under the base folder may be read
+    private File resolve(String relativePath) {
+        if (relativePath == null || relativePath.isBlank()) throw new RuntimeException("path is required");
+        Path p = baseFolder.resolve(relativePath).normalize();
+        if (!p.startsWith(baseFolder)) throw new RuntimeException("path must be inside the ingest folder");
+        File f = p.toFile();
+        if (!f.exists()) throw new RuntimeException("Not found: " + relativePath);
+        try {
+            if (!f.getCanonicalPath().startsWith(baseFolder.toFile().getCanonicalPath())) {
+                throw new RuntimeException("path must be inside the ingest folder");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error resolving " + relativePath + ": " + e.getMessage());
+        }
+        return f;
+    }
+
+    private void pruneFinished() {
+        List<String> finished = new ArrayList<>();
+        jobs.forEach((id, job) -> {
+            IngestionJob.State s = job.state();
+            if (s != IngestionJob.State.QUEUED && s != IngestionJob.State.RUNNING) finished.add(id);
+        });
+        for (int i = 0; i < finished.size() - KEEP_FINISHED; i++) jobs.remove(finished.get(i));
+    }
+
+    public synchronized IngestionJob get(String id) {
+        IngestionJob job = jobs.get(id);
+        if (job == null) throw new RuntimeException("Ingestion job not found: " + id);
+        return job;
+    }
+
+    public void cancel(String id) {
+        get(id).cancel();
+    }
+
+    public synchronized List<Map<String, Object>> list() {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (IngestionJob job : jobs.values()) out.add(job.status());
+        return out;
+    }
+}
@@ -0,0 +1,101 @@
+package com.smartattendence.attendence.archive;
+
+import com.smartattendence.attendence.dto.AttendanceView;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MonthSegmentTest {
+
+    private static final YearMonth MONTH = YearMonth.of(2024, 3);
+
+    @TempDir
+    Path dir;
+
+    private static List<AttendanceView> sampleRows(int n, long seed) {
+        Random rnd = new Random(seed);
+        List<AttendanceView> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int student = rnd.nextInt(300);
+            LocalDateTime ts = MONTH.atDay(1 + rnd.nextInt(MONTH.lengthOfMonth())).atTime(8, 0)
+                    .plusSeconds(rnd.nextInt(10 * 3600)).plusNanos(rnd.nextInt(1_000_000) * 1000L);
+            String name = student % 50 == 0 ? null : "Student " + student;
+            rows.add(new AttendanceView(1000L + i * 3L, "REG" + student, name, ts));
+        }
+        return rows;
+    }
+
+    @Test
+    void roundTripsEveryRowInTimestampOrder() throws IOException {
+        List<AttendanceView> rows = sampleRows(5000, 1);
+        MonthSegment written = MonthSegment.write(dir.resolve("m.col"), MONTH, rows);
+        MonthSegment seg = MonthSegment.open(dir.resolve("m.col"));
+
+        assertEquals(MONTH, seg.month());
+        assertEquals(rows.size(), seg.rows());
+        assertEquals(written.fileBytes(), Files.size(dir.resolve("m.col")));
+
+        List<AttendanceView> expected = new ArrayList<>(rows);
+        expected.sort(Comparator.comparing(AttendanceView::timestamp).thenComparing(AttendanceView::id));
+        MonthSegment.Columns cols = seg.load();
+        List<AttendanceView> actual = new ArrayList<>();
+        for (int i = 0; i < cols.size(); i++) actual.add(cols.row(i));
+        assertEquals(expected, actual);
+        assertEquals(expected.get(0).timestamp(), seg.minTimestamp());
+        assertEquals(expected.get(expected.size() - 1).timestamp(), seg.maxTimestamp());
+        assertTrue(cols.containsId(1000L + 3 * 42));
+        assertFalse(cols.containsId(1001L));
+    }
+
+    @Test
+    void scansMatchAFilteredListAndPruneWithTheFooter() throws IOException {
+        List<AttendanceView> rows = sampleRows(3000, 2);
+        MonthSegment seg = MonthSegment.write(dir.resolve("m.col"), MONTH, rows);
+        MonthSegment.Columns cols = seg.load();
+        LocalDateTime from = MONTH.atDay(10).atStartOfDay();
+        LocalDateTime to = MONTH.atDay(20).atStartOfDay();
+
+        List<AttendanceView> expected = rows.stream()
+                .filter(r -> r.registrationNo().equals("REG7"))
+                .filter(r -> !r.timestamp().isBefore(from) && r.timestamp().isBefore(to))
+                .sorted(Comparator.comparing(AttendanceView::timestamp).thenComparing(AttendanceView::id))
+                .toList();
+        assertEquals(expected, cols.scan("REG7", from, to, Long.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals(expected.subList(0, 2), cols.scan("REG7", from, to, Long.MIN_VALUE, 2));
+
+        // Resuming at a row's own (timestamp, id) returns what follows it
+        AttendanceView first = expected.get(0);
+        assertEquals(expected.subList(1, expected.size()),
+                cols.scan("REG7", first.timestamp(), to, first.id(), Integer.MAX_VALUE));
+
+        assertTrue(seg.mayContain("REG7"));
+        assertFalse(seg.mayContain("REG-UNKNOWN"));
+        assertTrue(seg.overlaps(from, to));
+        assertFalse(seg.overlaps(MONTH.plusMonths(1).atDay(1).atStartOfDay(), MONTH.plusMonths(2).atDay(1).atStartOfDay()));
+        assertTrue(cols.scan("REG-UNKNOWN", from, to, Long.MIN_VALUE, Integer.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void rejectsRowsOutsideTheMonthAndCorruptFiles() throws IOException {
+        List<AttendanceView> rows = List.of(new AttendanceView(1L, "REG1", "A", MONTH.plusMonths(1).atDay(1).atStartOfDay()));
+        assertThrows(IllegalArgumentException.class, () -> MonthSegment.write(dir.resolve("bad.col"), MONTH, rows));
+
+        Path p = dir.resolve("m.col");
+        MonthSegment.write(p, MONTH, sampleRows(500, 3));
+        byte[] bytes = Files.readAllBytes(p);
+        bytes[20] ^= 0x55; // inside the first column block
+        Files.write(p, bytes);
+        assertThrows(IOException.class, () -> MonthSegment.open(p).load());
+    }
+}
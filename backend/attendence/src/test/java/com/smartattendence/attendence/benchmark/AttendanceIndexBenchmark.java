@@ -0,0 +1,127 @@
+package com.smartattendence.attendence.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+/**
+ * Manual benchmark: DATE(timestamp) = ? versus a half-open timestamp range,
+ * with and without the attendance indexes, on a large scratch table.
+ *
+ * Not a unit test. Run against a disposable MySQL schema, e.g.
+ * <pre>
+ *   java -cp target/test-classes:&lt;mysql-connector.jar&gt; \
+ *     com.smartattendence.attendence.benchmark.AttendanceIndexBenchmark \
+ *     "jdbc:mysql://localhost:3308/smartattendance?rewriteBatchedStatements=true" root 1234 3000000
+ * </pre>
+ */
+public class AttendanceIndexBenchmark {
+
+    private static final String TABLE = "attendance_index_bench";
+
+    public static void main(String[] args) throws SQLException {
+        String url = args[0];
+        String user = args[1];
+        String password = args[2];
+        int rows = args.length > 3 ? Integer.parseInt(args[3]) : 3_000_000;
+
+        try (Connection c = DriverManager.getConnection(url, user, password)) {
+            seed(c, rows);
+            LocalDate day = LocalDate.now().minusDays(100);
+
+            System.out.println("== without indexes");
+            report(c, day);
+
+            long start = System.nanoTime();
+            exec(c, "CREATE INDEX idx_bench_reg_ts ON " + TABLE + " (registration_no, timestamp)");
+            exec(c, "CREATE INDEX idx_bench_ts ON " + TABLE + " (timestamp)");
+            System.out.printf("indexes built in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+            System.out.println("== with indexes");
+            report(c, day);
+            exec(c, "DROP TABLE " + TABLE);
+        }
+    }
+
+    private static void seed(Connection c, int rows) throws SQLException {
+        exec(c, "DROP TABLE IF EXISTS " + TABLE);
+        exec(c, "CREATE TABLE " + TABLE + " (id BIGINT PRIMARY KEY AUTO_INCREMENT, registration_no VARCHAR(255),"
+                + " name VARCHAR(255), timestamp DATETIME(6))");
+        Random random = new Random(1);
+        LocalDateTime base = LocalDate.now().minusDays(365).atStartOfDay();
+        long start = System.nanoTime();
+        c.setAutoCommit(false);
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO " + TABLE + " (registration_no, name, timestamp) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                int student = random.nextInt(20_000);
+                ps.setString(1, String.valueOf(student));
+                ps.setString(2, "Student " + student);
+                ps.setTimestamp(3, Timestamp.valueOf(base.plusSeconds(random.nextInt(365 * 86_400))));
+                ps.addBatch();
+                if (i % 10_000 == 9_999) {
+                    ps.executeBatch();
+                    c.commit();
+                }
+            }
+            ps.executeBatch();
+            c.commit();
+        }
+        c.setAutoCommit(true);
+        System.out.printf("seeded %d rows in %d ms%n", rows, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void report(Connection c, LocalDate day) throws SQLException {
+        Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        run(c, "DATE(timestamp) = ?",
+                "SELECT COUNT(*) FROM " + TABLE + " WHERE DATE(timestamp) = ?", java.sql.Date.valueOf(day));
+        run(c, "timestamp range",
+                "SELECT COUNT(*) FROM " + TABLE + " WHERE timestamp >= ? AND timestamp < ?", from, to);
+        run(c, "student + DATE(timestamp)",
+                "SELECT COUNT(*) FROM " + TABLE + " WHERE registration_no = ? AND DATE(timestamp) = ?", "42", java.sql.Date.valueOf(day));
+        run(c, "student + timestamp range",
+                "SELECT COUNT(*) FROM " + TABLE + " WHERE registration_no = ? AND timestamp >= ? AND timestamp < ?", "42", from, to);
+    }
+
+    private static void run(Connection c, String label, String sql, Object... params) throws SQLException {
+        String plan = "";
+        try (PreparedStatement ps = c.prepareStatement("EXPLAIN " + sql)) {
+            bind(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) plan = "type=" + rs.getString("type") + " key=" + rs.getString("key") + " rows=" + rs.getLong("rows");
+            }
+        }
+        long best = Long.MAX_VALUE;
+        long count = 0;
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            bind(ps, params);
+            for (int i = 0; i < 5; i++) {
+                long start = System.nanoTime();
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    count = rs.getLong(1);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        }
+        System.out.printf("%-28s %8.2f ms  matched=%d  %s%n", label, best / 1e6, count, plan);
+    }
+
+    private static void bind(PreparedStatement ps, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) ps.setObject(i + 1, params[i]);
+    }
+
+    private static void exec(Connection c, String sql) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.smartattendence.attendence.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartattendence.attendence.services.RecognitionGateway;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Manual load benchmark for {@link RecognitionGateway} against a stub recognizer,
+ * so the deadline, bulkhead, breaker and batching can be exercised without Python.
+ *
+ * The stub models one recognizer process: it handles one
+ * {@code POST /recognize_batch} at a time, takes callMs plus perFrameMs for
+ * each frame in the batch (+/- 50% jitter) and fails failRate of calls with a
+ * 500. Each kiosk sends a frame, waits for the answer and pauses thinkMs
+ * before the next one. Run it with batchMaxSize 1 and 8 to compare. Not a
+ * unit test, e.g.
+ * <pre>
+ *   java -cp target/test-classes:target/classes:&lt;jackson jars&gt; \
+ *     com.smartattendence.attendence.benchmark.RecognitionGatewayBenchmark \
+ *     2000 32 60 15 0.01 100 8   # requests, kiosks, callMs, perFrameMs, failRate, thinkMs, batchMaxSize
+ * </pre>
+ */
+public class RecognitionGatewayBenchmark {
+
+    private static final String FRAME = "data:image/jpeg;base64," + "A".repeat(40_000);
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int kiosks = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        long callMs = args.length > 2 ? Long.parseLong(args[2]) : 60;
+        long perFrameMs = args.length > 3 ? Long.parseLong(args[3]) : 15;
+        double failRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.01;
+        long thinkMs = args.length > 5 ? Long.parseLong(args[5]) : 100;
+        int batchMaxSize = args.length > 6 ? Integer.parseInt(args[6]) : 8;
+
+        ObjectMapper mapper = new ObjectMapper();
+        ExecutorService stubWorkers = Executors.newFixedThreadPool(16);
+        HttpServer stub = startStub(callMs, perFrameMs, failRate, mapper, stubWorkers);
+        String url = "http://127.0.0.1:" + stub.getAddress().getPort() + "/recognize_batch";
+        RecognitionGateway gateway = new RecognitionGateway(url, 3000, 2, 5, 2000, batchMaxSize, 20, 64, 1, 8, mapper);
+
+        Map<RecognitionGateway.Status, AtomicLong> outcomes = new EnumMap<>(RecognitionGateway.Status.class);
+        for (RecognitionGateway.Status s : RecognitionGateway.Status.values()) outcomes.put(s, new AtomicLong());
+        List<Long> okLatencies = Collections.synchronizedList(new ArrayList<>());
+
+        // One warm-up call so connection setup and class loading don't count against the deadline
+        gateway.recognize(FRAME).join();
+
+        long start = System.nanoTime();
+        Thread[] kiosk = new Thread[kiosks];
+        for (int k = 0; k < kiosks; k++) {
+            int frames = requests / kiosks + (k < requests % kiosks ? 1 : 0);
+            kiosk[k] = new Thread(() -> {
+                for (int i = 0; i < frames; i++) {
+                    RecognitionGateway.Recognition r = gateway.recognize(FRAME).join();
+                    outcomes.get(r.status()).incrementAndGet();
+                    if (r.status() == RecognitionGateway.Status.OK) okLatencies.add(r.latencyMs());
+                    try {
+                        Thread.sleep(thinkMs);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "kiosk-" + k);
+            kiosk[k].start();
+        }
+        for (Thread t : kiosk) t.join();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        stub.stop(0);
+        stubWorkers.shutdownNow();
+
+        System.out.printf("%d requests from %d kiosks in %d ms (%.0f req/s), stub %d ms + %d ms/frame, fail rate %.2f,"
+                        + " think %d ms, batch size %d%n", requests, kiosks, elapsedMs, requests * 1000.0 / Math.max(1, elapsedMs),
+                callMs, perFrameMs, failRate, thinkMs, batchMaxSize);
+        outcomes.forEach((s, n) -> System.out.printf("  %-12s %d%n", s, n.get()));
+        List<Long> sorted = new ArrayList<>(okLatencies);
+        Collections.sort(sorted);
+        if (!sorted.isEmpty()) {
+            System.out.printf("  ok latency p50=%d p95=%d p99=%d max=%d ms%n", pct(sorted, 50), pct(sorted, 95),
+                    pct(sorted, 99), sorted.get(sorted.size() - 1));
+        }
+        System.out.println("  gateway " + gateway.stats());
+    }
+
+    private static HttpServer startStub(long callMs, long perFrameMs, double failRate, ObjectMapper mapper,
+                                        ExecutorService workers) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        Object model = new Object();
+        Random random = new Random(1);
+        server.createContext("/recognize_batch", exchange -> {
+            int n = mapper.readTree(exchange.getRequestBody().readAllBytes()).path("images").size();
+            boolean fail;
+            synchronized (model) {
+                fail = random.nextDouble() < failRate;
+                try {
+                    Thread.sleep((long) ((callMs + perFrameMs * n) * (0.5 + random.nextDouble())));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            StringBuilder results = new StringBuilder();
+            for (int i = 0; i < n; i++) {
+                if (i > 0) results.append(',');
+                results.append("{\"faces\":[{\"name\":\"Stub_Student0001\",\"confidence\":0.82}]}");
+            }
+            byte[] body = (fail ? "{\"message\":\"stub failure\"}"
+                    : "{\"results\":[" + results + "]}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(fail ? 500 : 200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(workers);
+        server.start();
+        return server;
+    }
+
+    private static long pct(List<Long> sorted, int p) {
+        return sorted.get(Math.min(sorted.size() - 1, sorted.size() * p / 100));
+    }
+}
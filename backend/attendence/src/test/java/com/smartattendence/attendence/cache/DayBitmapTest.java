@@ -0,0 +1,40 @@
+package com.smartattendence.attendence.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DayBitmapTest {
+
+    @Test
+    void firstAddWinsAndRepeatsAreRejected() {
+        DayBitmap bits = new DayBitmap();
+        assertTrue(bits.add(42));
+        assertFalse(bits.add(42));
+        assertTrue(bits.contains(42));
+        assertTrue(bits.remove(42));
+        assertFalse(bits.contains(42));
+    }
+
+    @Test
+    void behavesLikeASortedSetAcrossContainerTypes() {
+        DayBitmap bits = new DayBitmap();
+        TreeSet<Integer> reference = new TreeSet<>();
+        Random rnd = new Random(5);
+        for (int i = 0; i < 50_000; i++) {
+            int x = rnd.nextInt(200_000);
+            if (rnd.nextInt(4) == 0) assertEquals(reference.remove(x), bits.remove(x));
+            else assertEquals(reference.add(x), bits.add(x));
+        }
+
+        List<Integer> seen = new ArrayList<>();
+        bits.forEach(seen::add);
+        assertEquals(new ArrayList<>(reference), seen);
+        assertEquals(reference.size(), bits.cardinality());
+    }
+}
@@ -0,0 +1,49 @@
+package com.smartattendence.attendence.recognition;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingGalleryTest {
+
+    private static float[] randomVector(Random rnd, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) v[i] = (float) rnd.nextGaussian();
+        return v;
+    }
+
+    @Test
+    void findsOwnerOfClosestEmbedding() {
+        Random rnd = new Random(7);
+        EmbeddingGallery gallery = new EmbeddingGallery(128);
+        float[] target = null;
+        for (int s = 0; s < 3000; s++) {
+            float[][] rows = { randomVector(rnd, 128), randomVector(rnd, 128) };
+            gallery.put("REG" + s, rows);
+            if (s == 1234) target = rows[1];
+        }
+
+        MatchResult l2 = gallery.search(target, Metric.L2, 0.6f);
+        assertEquals("REG1234", l2.registrationNo());
+        assertTrue(l2.matched());
+
+        MatchResult cos = gallery.search(target, Metric.COSINE, 0.4f);
+        assertEquals("REG1234", cos.registrationNo());
+    }
+
+    @Test
+    void removedStudentIsNeverReturned() {
+        Random rnd = new Random(11);
+        EmbeddingGallery gallery = new EmbeddingGallery(64);
+        float[] a = randomVector(rnd, 64);
+        gallery.put("A", new float[][] { a });
+        gallery.put("B", new float[][] { randomVector(rnd, 64) });
+
+        assertTrue(gallery.remove("A"));
+        assertEquals(1, gallery.size());
+        assertEquals("B", gallery.search(a, Metric.L2, 0.6f).registrationNo());
+        assertFalse(gallery.search(a, Metric.L2, 0.6f).matched());
+    }
+}
@@ -0,0 +1,86 @@
+package com.smartattendence.attendence.recognition;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GalleryFileWriterTest {
+
+    private static final int DIM = 16;
+
+    @TempDir
+    Path dir;
+
+    private static float[][] rows(Random rnd, int n) {
+        float[][] out = new float[n][DIM];
+        for (float[] row : out) {
+            for (int i = 0; i < DIM; i++) row[i] = (float) rnd.nextGaussian();
+        }
+        return out;
+    }
+
+    private static void assertRows(float[][] expected, float[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) assertArrayEquals(expected[i], actual[i]);
+    }
+
+    @Test
+    void appendRemoveAndReEnrolSurviveReopen() throws IOException {
+        Path file = dir.resolve("gallery.axg");
+        Random rnd = new Random(1);
+        float[][] a = rows(rnd, 3), b = rows(rnd, 2), a2 = rows(rnd, 4);
+
+        try (GalleryFileWriter w = GalleryFileWriter.openOrCreate(file, DIM)) {
+            w.append("A", a);
+            w.append("B", b);
+            assertTrue(w.remove("B"));
+            assertFalse(w.remove("B"));
+        }
+
+        Map<String, float[][]> loaded = GalleryFile.open(file).embeddingsByStudent();
+        assertEquals(1, loaded.size());
+        assertRows(a, loaded.get("A"));
+
+        // B is now only a dictionary entry; removing or re-enrolling it after a restart must work
+        try (GalleryFileWriter w = GalleryFileWriter.openOrCreate(file, DIM)) {
+            assertFalse(w.remove("B"));
+            w.append("B", b);
+            w.append("A", a2);
+        }
+
+        loaded = GalleryFile.open(file).embeddingsByStudent();
+        assertRows(a2, loaded.get("A"));
+        assertRows(b, loaded.get("B"));
+    }
+
+    @Test
+    void growsPastTheReservedCapacity() throws IOException {
+        Path file = dir.resolve("gallery.axg");
+        Random rnd = new Random(2);
+        float[][][] students = new float[700][][];
+        try (GalleryFileWriter w = GalleryFileWriter.openOrCreate(file, DIM)) {
+            for (int s = 0; s < students.length; s++) {
+                students[s] = rows(rnd, 2);
+                w.append("S" + s, students[s]);
+            }
+            students[5] = rows(rnd, 3);
+            w.append("S5", students[5]);
+        }
+
+        Map<String, float[][]> loaded = GalleryFile.open(file).embeddingsByStudent();
+        assertEquals(students.length, loaded.size());
+        for (int s = 0; s < students.length; s++) assertRows(students[s], loaded.get("S" + s));
+    }
+
+    @Test
+    void rejectsGalleriesTooLargeToMap() {
+        assertThrows(IllegalStateException.class, () -> GalleryFile.checkMappable(2_000_000, 512));
+        GalleryFile.checkMappable(1_000_000, 512);
+    }
+}
@@ -0,0 +1,72 @@
+package com.smartattendence.attendence.recognition;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+    private static final int DIM = 64;
+
+    private static float[][] studentRows(Random rnd) {
+        float[] centre = new float[DIM];
+        for (int i = 0; i < DIM; i++) centre[i] = (float) rnd.nextGaussian();
+        float[][] rows = new float[3][DIM];
+        for (float[] row : rows) {
+            for (int i = 0; i < DIM; i++) row[i] = centre[i] + (float) rnd.nextGaussian() * 0.05f;
+        }
+        return rows;
+    }
+
+    @Test
+    void recallAgainstExactSearchIsHigh() {
+        Random rnd = new Random(3);
+        EmbeddingGallery exact = new EmbeddingGallery(DIM);
+        HnswIndex index = new HnswIndex(DIM, Metric.L2, 16, 200, 64);
+        for (int s = 0; s < 2000; s++) {
+            float[][] rows = studentRows(rnd);
+            exact.put("S" + s, rows);
+            index.put("S" + s, rows);
+        }
+
+        RecallReport report = RecallReport.measure(exact, index, Metric.L2, 0.6f, 200, new int[] { 64 }, 5);
+        assertTrue(report.rows().get(0).recall() >= 0.95, "recall was " + report.rows().get(0).recall());
+    }
+
+    @Test
+    void deletedStudentsDisappearAndTriggerRebuild() {
+        Random rnd = new Random(9);
+        HnswIndex index = new HnswIndex(DIM, Metric.COSINE, 8, 100, 50);
+        float[][] kept = null;
+        for (int s = 0; s < 400; s++) {
+            float[][] rows = studentRows(rnd);
+            index.put("S" + s, rows);
+            if (s == 399) kept = rows;
+        }
+        for (int s = 0; s < 300; s++) assertTrue(index.remove("S" + s));
+
+        assertEquals(300, index.size());
+        assertEquals("S399", index.search(kept[0], 0.4f).registrationNo());
+    }
+
+    @Test
+    void reEnrolmentDoesNotPileUpTombstones() {
+        Random rnd = new Random(11);
+        HnswIndex index = new HnswIndex(DIM, Metric.L2, 8, 100, 50);
+        for (int s = 0; s < 100; s++) index.put("S" + s, studentRows(rnd));
+        float[][] latest = null;
+        for (int round = 0; round < 20; round++) {
+            for (int s = 0; s < 100; s++) {
+                float[][] rows = studentRows(rnd);
+                index.put("S" + s, rows);
+                if (s == 42) latest = rows;
+            }
+            assertTrue(index.tombstones() <= index.size(), "tombstones " + index.tombstones() + " after round " + round);
+        }
+
+        assertEquals(300, index.size());
+        assertEquals("S42", index.search(latest[0], 0.6f).registrationNo());
+    }
+}
@@ -0,0 +1,76 @@
+package com.smartattendence.attendence.recognition;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerceptualHashTest {
+
+    @Test
+    void jpegRoundTripAndSensorNoiseStayClose() throws IOException {
+        BufferedImage frame = scene(0, 0);
+        long original = PerceptualHash.dHash(frame);
+
+        assertTrue(PerceptualHash.distance(original, PerceptualHash.dHash(jpeg(frame))) <= 4);
+        assertTrue(PerceptualHash.distance(original, PerceptualHash.dHash(noisy(frame, 6, new Random(3)))) <= 4);
+    }
+
+    @Test
+    void differentSceneIsFarApart() {
+        long a = PerceptualHash.dHash(scene(0, 0));
+        long b = PerceptualHash.dHash(scene(220, 120));
+        assertTrue(PerceptualHash.distance(a, b) > 10);
+    }
+
+    @Test
+    void rejectsUndecodableBytes() {
+        assertThrows(IOException.class, () -> PerceptualHash.dHash(new byte[]{1, 2, 3, 4}));
+    }
+
+    // A bright "face" on a gradient background, shifted by (dx, dy)
+    private static BufferedImage scene(int dx, int dy) {
+        BufferedImage img = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        for (int x = 0; x < 640; x++) {
+            g.setColor(new Color(x * 255 / 640, 80, 255 - x * 255 / 640));
+            g.drawLine(x, 0, x, 479);
+        }
+        g.setColor(new Color(235, 200, 170));
+        g.fillOval(200 + dx, 100 + dy, 200, 260);
+        g.setColor(Color.DARK_GRAY);
+        g.fillOval(250 + dx, 180 + dy, 30, 20);
+        g.fillOval(320 + dx, 180 + dy, 30, 20);
+        g.dispose();
+        return img;
+    }
+
+    private static BufferedImage noisy(BufferedImage src, int amplitude, Random random) {
+        BufferedImage out = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                int p = src.getRGB(x, y), n = random.nextInt(2 * amplitude + 1) - amplitude;
+                int r = clamp(((p >> 16) & 0xff) + n), gr = clamp(((p >> 8) & 0xff) + n), b = clamp((p & 0xff) + n);
+                out.setRGB(x, y, (r << 16) | (gr << 8) | b);
+            }
+        }
+        return out;
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+
+    private static byte[] jpeg(BufferedImage img) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "jpg", out);
+        return out.toByteArray();
+    }
+}
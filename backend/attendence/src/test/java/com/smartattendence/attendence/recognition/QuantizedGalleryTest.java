@@ -0,0 +1,88 @@
+package com.smartattendence.attendence.recognition;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantizedGalleryTest {
+
+    private static final int DIM = 128;
+
+    @TempDir
+    Path dir;
+
+    private static float[][] student(Random rnd) {
+        float[] centre = new float[DIM];
+        for (int i = 0; i < DIM; i++) centre[i] = (float) rnd.nextGaussian() * 0.1f;
+        float[][] rows = new float[3][DIM];
+        for (float[] row : rows) {
+            for (int i = 0; i < DIM; i++) row[i] = centre[i] + (float) rnd.nextGaussian() * 0.01f;
+        }
+        return rows;
+    }
+
+    private static void fill(QuantizedGallery gallery, int students, Random rnd) {
+        for (int s = 0; s < students; s++) gallery.put("S" + s, student(rnd));
+    }
+
+    private GalleryFileWriter file() throws IOException {
+        return GalleryFileWriter.openOrCreate(dir.resolve("gallery.axg"), DIM);
+    }
+
+    @Test
+    void int8MatchesFloatBaseline() throws IOException {
+        try (GalleryFileWriter file = file()) {
+            QuantizedGallery gallery = new QuantizedGallery(file, QuantizedGallery.Mode.INT8, Metric.L2, 0, 16, 300);
+            fill(gallery, 500, new Random(1));
+
+            QuantizedGallery.Report report = gallery.report(100, 0.6f, 2);
+            assertTrue(report.trained());
+            assertEquals(1.0, report.top1Agreement(), 0.02);
+            assertTrue(report.heapBytesPerStudent() < report.floatBytesPerStudent() / 3);
+            assertEquals(report.heapBytesPerStudent() + report.mappedBytesPerStudent(), report.totalBytesPerStudent(), 1e-9);
+        }
+    }
+
+    @Test
+    void productQuantizationWithRerankKeepsAccuracy() throws IOException {
+        try (GalleryFileWriter file = file()) {
+            QuantizedGallery gallery = new QuantizedGallery(file, QuantizedGallery.Mode.PQ, Metric.COSINE, 16, 32, 600);
+            fill(gallery, 400, new Random(4));
+
+            QuantizedGallery.Report report = gallery.report(100, 0.4f, 5);
+            assertEquals(16, report.codeBytes());
+            assertTrue(report.top1Agreement() >= 0.97, "agreement was " + report.top1Agreement());
+        }
+    }
+
+    @Test
+    void rerankFollowsTheFileThroughRewriteAndReopen() throws IOException {
+        Random rnd = new Random(7);
+        float[][] removed;
+        try (GalleryFileWriter file = file()) {
+            QuantizedGallery gallery = new QuantizedGallery(file, QuantizedGallery.Mode.INT8, Metric.L2, 0, 16, 200);
+            // 1200 rows: the file outgrows its first 1024 rows of capacity and is rewritten with new row numbers
+            fill(gallery, 400, rnd);
+            gallery.put("S3", student(rnd));
+            removed = student(rnd);
+            gallery.put("GONE", removed);
+            assertTrue(gallery.remove("GONE"));
+            assertEquals(1.0, gallery.report(100, 0.6f, 8).top1Agreement(), 0.02);
+        }
+
+        try (GalleryFileWriter file = file()) {
+            QuantizedGallery gallery = new QuantizedGallery(file, QuantizedGallery.Mode.INT8, Metric.L2, 0, 16, 200);
+            assertTrue(gallery.isTrained());
+            assertEquals(400, gallery.studentCount());
+            assertEquals(1200, gallery.size());
+            QuantizedGallery.Report report = gallery.report(100, 0.6f, 9);
+            assertEquals(1.0, report.top1Agreement(), 0.02);
+            assertNotEquals("GONE", gallery.searchExact(removed[0], 10f).registrationNo());
+        }
+    }
+}
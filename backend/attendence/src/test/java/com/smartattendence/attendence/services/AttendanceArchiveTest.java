@@ -0,0 +1,54 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.archive.MonthSegment;
+import com.smartattendence.attendence.dto.AttendanceView;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttendanceArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    private static AttendanceView row(long id, String regNo, LocalDateTime ts) {
+        return new AttendanceView(id, regNo, "Student " + regNo, ts);
+    }
+
+    @Test
+    void startupFinishesCompleteRewritesAndDropsTornOnes() throws Exception {
+        YearMonth march = YearMonth.of(2024, 3), april = YearMonth.of(2024, 4);
+        LocalDateTime m = march.atDay(4).atTime(9, 0), a = april.atDay(2).atTime(9, 0);
+
+        // March: the old file still holds REG2; a rewrite without them died just before its rename
+        MonthSegment.write(dir.resolve("attendance-2024-03.col"), march, List.of(row(1, "REG1", m), row(2, "REG2", m)));
+        MonthSegment.write(dir.resolve("staged.col"), march, List.of(row(1, "REG1", m)));
+        Files.move(dir.resolve("staged.col"), dir.resolve("attendance-2024-03.col.tmp"));
+
+        // April: the rewrite died while writing; the old file stays
+        MonthSegment.write(dir.resolve("attendance-2024-04.col"), april, List.of(row(3, "REG3", a)));
+        MonthSegment.write(dir.resolve("staged.col"), april, List.of(row(3, "REG3", a), row(4, "REG4", a)));
+        byte[] torn = Files.readAllBytes(dir.resolve("staged.col"));
+        Files.write(dir.resolve("attendance-2024-04.col.tmp"), Arrays.copyOf(torn, torn.length / 2));
+        Files.delete(dir.resolve("staged.col"));
+
+        AttendanceArchive archive = new AttendanceArchive(true, dir.toString(), 3, 1, 4);
+        archive.start();
+        try {
+            assertFalse(Files.exists(dir.resolve("attendance-2024-03.col.tmp")));
+            assertFalse(Files.exists(dir.resolve("attendance-2024-04.col.tmp")));
+            assertEquals(List.of(march, april), archive.archivedMonths());
+            assertEquals(List.of(row(1, "REG1", m), row(3, "REG3", a)), archive.findAll(null));
+        } finally {
+            archive.stop();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.entity.Attendance;
+import com.smartattendence.attendence.repository.AttendanceRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttendanceBatchWriterTest {
+
+    // A table that rejects one registration number, failing any transaction it is part of
+    private static AttendanceRepository repository(List<Attendance> table, String rejected) {
+        AtomicLong ids = new AtomicLong();
+        return (AttendanceRepository) Proxy.newProxyInstance(AttendanceBatchWriterTest.class.getClassLoader(),
+                new Class<?>[] { AttendanceRepository.class }, (proxy, method, args) -> {
+                    List<Attendance> rows = new ArrayList<>();
+                    switch (method.getName()) {
+                        case "saveAll" -> ((Iterable<?>) args[0]).forEach(o -> rows.add((Attendance) o));
+                        case "save" -> rows.add((Attendance) args[0]);
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    }
+                    for (Attendance a : rows) a.setId(ids.incrementAndGet());
+                    for (Attendance a : rows) {
+                        if (a.getRegistrationNo().equals(rejected)) throw new IllegalStateException("Data too long");
+                    }
+                    table.addAll(rows);
+                    return method.getName().equals("save") ? rows.get(0) : rows;
+                });
+    }
+
+    @Test
+    void aBadMarkFailsAloneAndTheRestOfItsBatchIsWritten() throws Exception {
+        List<Attendance> table = new CopyOnWriteArrayList<>();
+        AttendanceBatchWriter writer = new AttendanceBatchWriter(50, 200, 100);
+        ReflectionTestUtils.setField(writer, "repo", repository(table, "BAD"));
+        ReflectionTestUtils.setField(writer, "jdbcTemplate", new JdbcTemplate() {
+            @Override
+            public int update(String sql, Object... args) {
+                return 1;
+            }
+        });
+        writer.start();
+        try {
+            List<CompletableFuture<Attendance>> marks = new ArrayList<>();
+            for (String regNo : List.of("A", "B", "BAD", "C")) marks.add(writer.submit(new Attendance(regNo, regNo)));
+
+            assertEquals("A", marks.get(0).join().getRegistrationNo());
+            assertEquals("B", marks.get(1).join().getRegistrationNo());
+            assertThrows(CompletionException.class, () -> marks.get(2).join());
+            assertEquals("C", marks.get(3).join().getRegistrationNo());
+            assertEquals(List.of("A", "B", "C"), table.stream().map(Attendance::getRegistrationNo).toList());
+            assertEquals(3, writer.marksWritten());
+        } finally {
+            writer.stop();
+        }
+    }
+}
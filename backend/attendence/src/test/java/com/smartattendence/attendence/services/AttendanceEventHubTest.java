@@ -0,0 +1,189 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.dto.AttendanceView;
+import com.smartattendence.attendence.entity.Attendance;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttendanceEventHubTest {
+
+    private record Sent(long id, String type, String regNo) {}
+
+    /** Records what the hub writes to the stream; holds every send while its stall latch is up. */
+    private static final class RecordingEmitter extends SseEmitter {
+        final List<Sent> sent = new CopyOnWriteArrayList<>();
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch stall;
+
+        RecordingEmitter(CountDownLatch stall) {
+            super(60_000L);
+            this.stall = stall;
+        }
+
+        @Override
+        public void send(SseEventBuilder event) throws IOException {
+            attempts.incrementAndGet();
+            try {
+                stall.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long id = 0;
+            String type = null, regNo = null;
+            for (DataWithMediaType part : event.build()) {
+                if (part.getData() instanceof AttendanceView mark) {
+                    regNo = mark.registrationNo();
+                    continue;
+                }
+                for (String line : part.getData().toString().split("\n")) {
+                    if (line.startsWith(":")) type = "ping";
+                    else if (line.startsWith("id:")) id = Long.parseLong(line.substring(3));
+                    else if (line.startsWith("event:")) type = line.substring(6);
+                }
+            }
+            sent.add(new Sent(id, type, regNo));
+        }
+
+        List<Sent> events() {
+            return sent.stream().filter(s -> !"ping".equals(s.type())).toList();
+        }
+
+        List<String> marks() {
+            return events().stream().map(s -> s.type().equals("mark") ? s.regNo() : s.type()).toList();
+        }
+    }
+
+    private final AtomicLong ids = new AtomicLong();
+    private volatile CountDownLatch stall = new CountDownLatch(0);
+    private AttendanceEventHub hub;
+
+    @AfterEach
+    void tearDown() {
+        stall.countDown();
+        if (hub != null) hub.shutdown();
+    }
+
+    private AttendanceEventHub hub(int replaySize, int bufferSize, long heartbeatMs) {
+        hub = new AttendanceEventHub(replaySize, bufferSize, 60_000, heartbeatMs) {
+            @Override
+            protected SseEmitter newEmitter(long timeoutMs) {
+                return new RecordingEmitter(stall);
+            }
+        };
+        return hub;
+    }
+
+    private RecordingEmitter subscribe(String lastEventId, String regNo) {
+        return (RecordingEmitter) hub.subscribe(lastEventId, null, regNo);
+    }
+
+    private void publish(String... regNos) {
+        for (String regNo : regNos) {
+            Attendance a = new Attendance();
+            a.setId(ids.incrementAndGet());
+            a.setRegistrationNo(regNo);
+            a.setName("Student " + regNo);
+            a.setTimestamp(LocalDateTime.now());
+            hub.publish(a);
+        }
+    }
+
+    private static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("timed out waiting for " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitMarks(RecordingEmitter emitter, List<String> expected) throws InterruptedException {
+        await(() -> emitter.marks().size() >= expected.size(), expected.size() + " events");
+        assertEquals(expected, emitter.marks());
+    }
+
+    @Test
+    void stalledSubscriberIsCoalescedIntoOneResyncWithoutHoldingUpOthers() throws Exception {
+        hub(64, 4, 60_000);
+        stall = new CountDownLatch(1);
+        RecordingEmitter slow = subscribe(null, null);
+        // Its sender is stuck writing the opening ping, as with a browser that stopped reading
+        await(() -> slow.attempts.get() == 1, "the stalled send");
+        CountDownLatch slowStall = stall;
+        stall = new CountDownLatch(0);
+        RecordingEmitter fast = subscribe(null, null);
+
+        // Published at the pace the healthy client reads them
+        List<String> regNos = List.of("A", "B", "C", "D", "E", "F");
+        for (int i = 0; i < regNos.size(); i++) {
+            publish(regNos.get(i));
+            awaitMarks(fast, regNos.subList(0, i + 1));
+        }
+        assertTrue(slow.sent.isEmpty());
+        // A-D filled its buffer; E found it full and replaced them all with a resync
+        assertEquals(1L, hub.stats().get("coalescedResyncs"));
+        assertEquals(5L, hub.stats().get("droppedEvents"));
+
+        slowStall.countDown();
+        awaitMarks(slow, List.of("resync", "F"));
+        // The resync carries E's id, so a reconnect after it resumes at F
+        assertEquals(fast.events().get(4).id(), slow.events().get(0).id());
+    }
+
+    @Test
+    void reconnectIsReplayedFromTheRingByLastEventId() throws Exception {
+        hub(4, 64, 60_000);
+        RecordingEmitter live = subscribe(null, null);
+        publish("A", "B", "C");
+        awaitMarks(live, List.of("A", "B", "C"));
+        String afterA = Long.toString(live.events().get(0).id());
+
+        awaitMarks(subscribe(afterA, null), List.of("B", "C"));
+        awaitMarks(subscribe(afterA, "C"), List.of("C"));
+        assertEquals(3L, hub.stats().get("replayed"));
+
+        // The ring holds the last 4: C-F. After A, B would be missing; after B, nothing is
+        publish("D", "E", "F");
+        awaitMarks(live, List.of("A", "B", "C", "D", "E", "F"));
+        String afterB = Long.toString(live.events().get(1).id());
+        String afterF = Long.toString(live.events().get(5).id());
+        awaitMarks(subscribe(afterA, null), List.of("resync"));
+        awaitMarks(subscribe(afterB, null), List.of("C", "D", "E", "F"));
+
+        // Up to date, an id from another run of the backend, and a garbled id
+        RecordingEmitter current = subscribe(afterF, null);
+        await(() -> current.sent.size() == 1, "opening ping");
+        assertEquals(List.of(), current.marks());
+        awaitMarks(subscribe(Long.toString(Long.parseLong(afterF) + 1000), null), List.of("resync"));
+        awaitMarks(subscribe("not-an-id", null), List.of("resync"));
+
+        publish("G");
+        awaitMarks(current, List.of("G"));
+    }
+
+    @Test
+    void idleStreamsGetHeartbeatsThatAreNotCountedAsEvents() throws Exception {
+        hub(16, 16, 30);
+        RecordingEmitter idle = subscribe(null, null);
+        await(() -> idle.sent.size() >= 4, "heartbeats");
+        assertTrue(idle.sent.stream().allMatch(s -> s.type().equals("ping")));
+        assertEquals(0L, hub.stats().get("delivered"));
+
+        publish("A");
+        awaitMarks(idle, List.of("A"));
+        assertEquals(1L, hub.stats().get("delivered"));
+    }
+}
@@ -0,0 +1,165 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartattendence.attendence.entity.Attendance;
+import com.smartattendence.attendence.entity.AttendanceSyncKey;
+import com.smartattendence.attendence.entity.Student;
+import com.smartattendence.attendence.repository.AttendanceSyncKeyRepository;
+import com.smartattendence.attendence.services.AttendanceSyncService.Result;
+import com.smartattendence.attendence.services.AttendanceSyncService.Status;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttendanceSyncServiceTest {
+
+    // Today, but never in the future: the service rejects kiosk clocks running ahead
+    private static final LocalDateTime MIDNIGHT = LocalDate.now().atStartOfDay();
+
+    /** The attendance and attendance_sync_key tables, in memory. */
+    private static final class FakeDb {
+        final List<Attendance> rows = new CopyOnWriteArrayList<>();
+        final List<AttendanceSyncKey> keys = new CopyOnWriteArrayList<>();
+        final AtomicLong ids = new AtomicLong();
+
+        @SuppressWarnings("unchecked")
+        AttendanceSyncKeyRepository keyRepository() {
+            return (AttendanceSyncKeyRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { AttendanceSyncKeyRepository.class }, (proxy, method, args) -> {
+                        if (!method.getName().equals("findByKeys")) throw new UnsupportedOperationException(method.getName());
+                        String kioskId = (String) args[0];
+                        Collection<String> wanted = (Collection<String>) args[1];
+                        return keys.stream().filter(k -> k.getKioskId().equals(kioskId) && wanted.contains(k.getKey())).toList();
+                    });
+        }
+
+        AttendanceService attendanceService() {
+            return new AttendanceService() {
+                @Override
+                public List<Attendance> saveSynced(List<Attendance> marks, List<AttendanceSyncKey> batchKeys) {
+                    for (Attendance a : marks) a.setId(ids.incrementAndGet());
+                    for (int i = 0; i < marks.size(); i++) batchKeys.get(i).setAttendanceId(marks.get(i).getId());
+                    rows.addAll(marks);
+                    keys.addAll(batchKeys);
+                    return marks;
+                }
+            };
+        }
+    }
+
+    private static AttendanceSyncService service(FakeDb db, long maxBytes, int keyCacheSize) {
+        AttendanceSyncService sync = new AttendanceSyncService(1000, maxBytes, keyCacheSize, 300_000, 7);
+        ReflectionTestUtils.setField(sync, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(sync, "studentService", new StudentService() {
+            @Override
+            public Student getStudentByReg(String regNo) {
+                Student s = new Student();
+                s.setRegistrationNo(regNo);
+                s.setName("Student " + regNo);
+                return s;
+            }
+        });
+        ReflectionTestUtils.setField(sync, "attendanceService", db.attendanceService());
+        ReflectionTestUtils.setField(sync, "dailyTracker", new DailyAttendanceTracker(7));
+        ReflectionTestUtils.setField(sync, "eventHub", new AttendanceEventHub(16, 16, 60_000, 60_000));
+        ReflectionTestUtils.setField(sync, "syncKeys", db.keyRepository());
+        return sync;
+    }
+
+    private static String event(String key, String kioskId, String regNo, int minute) {
+        return "{\"key\": \"" + key + "\", \"kioskId\": \"" + kioskId + "\", \"registrationNo\": \"" + regNo
+                + "\", \"timestamp\": \"" + MIDNIGHT.plusMinutes(minute) + "\"}\n";
+    }
+
+    private static Map<String, Object> send(AttendanceSyncService sync, String body) throws IOException {
+        return sync.sync(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Result> results(Map<String, Object> out) {
+        return (List<Result>) out.get("results");
+    }
+
+    private static List<Status> statuses(Map<String, Object> out) {
+        return results(out).stream().map(Result::status).toList();
+    }
+
+    private static List<Long> attendanceIds(Map<String, Object> out) {
+        return results(out).stream().map(Result::attendanceId).toList();
+    }
+
+    @Test
+    void replayedBatchIsAnsweredFromTheKeysAndWritesNothing() throws Exception {
+        FakeDb db = new FakeDb();
+        String batch = event("k1-1", "lab-1", "A", 0) + event("k1-2", "lab-1", "B", 1) + event("k1-3", "lab-1", "A", 2);
+        AttendanceSyncService sync = service(db, 1 << 20, 1000);
+
+        Map<String, Object> first = send(sync, batch);
+        assertEquals(List.of(Status.APPLIED, Status.APPLIED, Status.ALREADY_MARKED), statuses(first));
+
+        // The kiosk never saw the answer and retries; a second copy of the service knows the keys only from the table
+        Map<String, Object> fromMemory = send(sync, batch);
+        Map<String, Object> fromTable = send(service(db, 1 << 20, 1000), batch);
+        for (Map<String, Object> out : List.of(fromMemory, fromTable)) {
+            assertEquals(List.of(Status.DUPLICATE, Status.DUPLICATE, Status.DUPLICATE), statuses(out));
+            assertEquals(attendanceIds(first), attendanceIds(out));
+        }
+        assertEquals(3L, sync.stats().get("keyMemoryHits"));
+        assertEquals(2, db.rows.size());
+        assertEquals(3, db.keys.size());
+    }
+
+    @Test
+    void sameKeyFromTwoKiosksIsTwoEvents() throws Exception {
+        FakeDb db = new FakeDb();
+        AttendanceSyncService sync = service(db, 1 << 20, 1000);
+
+        send(sync, event("k-000001", "lab-1", "A", 0));
+        Map<String, Object> out = send(sync, event("k-000001", "lab-2", "B", 0) + event("k-000001", "lab-1", "C", 0));
+        assertEquals(List.of(Status.APPLIED, Status.DUPLICATE), statuses(out));
+
+        // Once the in-memory index has forgotten, the table lookup must still tell the kiosks apart
+        sync = service(db, 1 << 20, 1);
+        out = send(sync, event("k-000002", "lab-1", "D", 0));
+        out = send(sync, event("k-000002", "lab-2", "E", 0) + event("k-000001", "lab-3", "F", 0)
+                + event("k-000001", "lab-1", "A", 0));
+        assertEquals(List.of(Status.APPLIED, Status.APPLIED, Status.DUPLICATE), statuses(out));
+        assertEquals(List.of("A", "B", "D", "E", "F"), db.rows.stream().map(Attendance::getRegistrationNo).toList());
+    }
+
+    @Test
+    void gzipBodyIsLimitedByItsDecompressedSize() throws Exception {
+        FakeDb db = new FakeDb();
+        StringBuilder batch = new StringBuilder();
+        for (int i = 0; i < 200; i++) batch.append(event("k-" + i, "lab-1", "R" + i, 0));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(bytes)) {
+            gz.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        long limit = batch.length() / 2;
+        assertTrue(bytes.size() < limit, "compressed body should be under the limit");
+
+        AttendanceSyncService sync = service(db, limit, 1000);
+        IOException e = assertThrows(IOException.class, () -> sync.sync(new ByteArrayInputStream(bytes.toByteArray()), true));
+        assertTrue(e.getMessage().contains("exceeds"), e.getMessage());
+        assertTrue(db.rows.isEmpty());
+
+        Map<String, Object> out = service(db, batch.length(), 1000).sync(new ByteArrayInputStream(bytes.toByteArray()), true);
+        assertEquals(200, out.get("applied"));
+    }
+}
@@ -0,0 +1,277 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.entity.Attendance;
+import com.smartattendence.attendence.repository.AttendanceRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttendanceWalTest {
+
+    private static final LocalDateTime MORNING = LocalDateTime.of(2024, 3, 4, 9, 0);
+
+    @TempDir
+    Path dir;
+
+    /** The attendance table and checkpoint row, in memory; writes apply at once, as if every commit succeeded. */
+    private static final class FakeDb {
+        final List<Attendance> rows = new CopyOnWriteArrayList<>();
+        final AtomicLong ids = new AtomicLong();
+        final AtomicInteger lostCommits = new AtomicInteger();
+        volatile Long checkpoint;
+        volatile boolean down;
+
+        void check() {
+            if (down) throw new IllegalStateException("database unavailable");
+        }
+
+        List<String> regNos() {
+            return rows.stream().map(Attendance::getRegistrationNo).toList();
+        }
+
+        AttendanceRepository repository() {
+            return (AttendanceRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { AttendanceRepository.class }, (proxy, method, args) -> {
+                        if (!method.getName().equals("saveAll")) throw new UnsupportedOperationException(method.getName());
+                        check();
+                        List<Attendance> saved = new ArrayList<>();
+                        for (Object o : (Iterable<?>) args[0]) {
+                            Attendance a = (Attendance) o;
+                            a.setId(ids.incrementAndGet());
+                            saved.add(a);
+                        }
+                        rows.addAll(saved);
+                        return saved;
+                    });
+        }
+
+        JdbcTemplate jdbc() {
+            return new JdbcTemplate() {
+                @Override
+                public <T> List<T> queryForList(String sql, Class<T> type, Object... args) {
+                    check();
+                    return checkpoint == null ? List.of() : List.of(type.cast(checkpoint));
+                }
+
+                @Override
+                public int update(String sql, Object... args) {
+                    check();
+                    long lsn = (Long) args[1];
+                    checkpoint = checkpoint == null ? lsn : Math.max(checkpoint, lsn);
+                    return 1;
+                }
+            };
+        }
+
+        // Commits "fail" after the writes went through, like a connection lost while waiting for the ack
+        PlatformTransactionManager transactions() {
+            return new PlatformTransactionManager() {
+                @Override
+                public TransactionStatus getTransaction(TransactionDefinition definition) {
+                    return new SimpleTransactionStatus();
+                }
+
+                @Override
+                public void commit(TransactionStatus status) {
+                    if (lostCommits.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                        throw new IllegalStateException("connection lost during commit");
+                    }
+                }
+
+                @Override
+                public void rollback(TransactionStatus status) {
+                }
+            };
+        }
+    }
+
+    private AttendanceWal open(FakeDb db, long segmentBytes) throws IOException {
+        AttendanceWal wal = new AttendanceWal(true, dir.toString(), segmentBytes, 1000, 1000);
+        ReflectionTestUtils.setField(wal, "repo", db.repository());
+        ReflectionTestUtils.setField(wal, "jdbcTemplate", db.jdbc());
+        ReflectionTestUtils.setField(wal, "transactionManager", db.transactions());
+        ReflectionTestUtils.setField(wal, "dailyTracker", new DailyAttendanceTracker(7));
+        ReflectionTestUtils.setField(wal, "eventHub", new AttendanceEventHub(16, 16, 60_000, 60_000));
+        wal.start();
+        return wal;
+    }
+
+    private static void mark(AttendanceWal wal, String regNo, int minute) {
+        Attendance a = new Attendance(regNo, "Student " + regNo);
+        a.setTimestamp(MORNING.plusMinutes(minute));
+        wal.append(a).join();
+    }
+
+    private static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("timed out waiting for " + what);
+            Thread.sleep(10);
+        }
+    }
+
+    private static long stat(AttendanceWal wal, String name) {
+        return ((Number) wal.stats().get(name)).longValue();
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".wal")).sorted().toList();
+        }
+    }
+
+    @Test
+    void restartSkipsWhatTheCheckpointCovers() throws Exception {
+        FakeDb db = new FakeDb();
+        AttendanceWal wal = open(db, 1 << 20);
+        for (int i = 0; i < 5; i++) mark(wal, "R" + i, i);
+        await(() -> db.rows.size() == 5, "first flush");
+        wal.stop();
+
+        wal = open(db, 1 << 20);
+        assertEquals(5L, stat(wal, "recovered"));
+        AttendanceWal reopened = wal;
+        await(() -> stat(reopened, "skippedOnReplay") == 5, "replay");
+        mark(wal, "R5", 5);
+        await(() -> db.rows.size() == 6, "new mark");
+        wal.stop();
+        assertEquals(List.of("R0", "R1", "R2", "R3", "R4", "R5"), db.regNos());
+    }
+
+    @Test
+    void retryAfterALostCommitInsertsNothingTwice() throws Exception {
+        FakeDb db = new FakeDb();
+        db.lostCommits.set(1);
+        AttendanceWal wal = open(db, 1 << 20);
+        mark(wal, "A", 0);
+        await(() -> stat(wal, "flushFailures") == 1 && stat(wal, "skippedOnReplay") == 1, "retry");
+        mark(wal, "B", 1);
+        await(() -> db.rows.size() == 2, "next flush");
+        wal.stop();
+        assertEquals(List.of("A", "B"), db.regNos());
+    }
+
+    @Test
+    void tornTailIsCutOffAndTheRestReplayed() throws Exception {
+        FakeDb db = new FakeDb();
+        db.down = true;
+        AttendanceWal wal = open(db, 1 << 20);
+        for (int i = 0; i < 4; i++) mark(wal, "T" + i, i);
+        wal.stop();
+
+        Path segment = segmentFiles().get(0);
+        long intact = Files.size(segment);
+        // A record header promising 100 bytes, followed by only a few of them
+        Files.write(segment, new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 9, 9, 9 }, java.nio.file.StandardOpenOption.APPEND);
+
+        db.down = false;
+        wal = open(db, 1 << 20);
+        assertEquals(intact, Files.size(segment));
+        assertEquals(4L, stat(wal, "recovered"));
+        await(() -> db.rows.size() == 4, "replay");
+        wal.stop();
+        assertEquals(List.of("T0", "T1", "T2", "T3"), db.regNos());
+    }
+
+    @Test
+    void recordWithABadChecksumIsRejected() throws Exception {
+        FakeDb db = new FakeDb();
+        db.down = true;
+        AttendanceWal wal = open(db, 1 << 20);
+        for (int i = 0; i < 3; i++) mark(wal, "C" + i, i);
+        wal.stop();
+
+        Path segment = segmentFiles().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 0x20; // inside the last record's name
+        Files.write(segment, bytes);
+
+        db.down = false;
+        wal = open(db, 1 << 20);
+        assertEquals(2L, stat(wal, "recovered"));
+        await(() -> db.rows.size() == 2, "replay");
+        wal.stop();
+        assertEquals(List.of("C0", "C1"), db.regNos());
+    }
+
+    @Test
+    void rotatesSegmentsAndDeletesThemOnceApplied() throws Exception {
+        FakeDb db = new FakeDb();
+        db.down = true;
+        AttendanceWal wal = open(db, 256);
+        for (int i = 0; i < 40; i++) mark(wal, "S" + i, i);
+        wal.stop();
+        int written = segmentFiles().size();
+        assertTrue(written > 3, "only " + written + " segments");
+
+        db.down = false;
+        wal = open(db, 256);
+        assertEquals(40L, stat(wal, "recovered"));
+        await(() -> db.rows.size() == 40, "replay");
+        await(() -> {
+            try {
+                return segmentFiles().size() == 1;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "applied segments to be deleted");
+        assertEquals(written - 1L, stat(wal, "segmentsDeleted"));
+        wal.stop();
+        for (int i = 0; i < 40; i++) assertEquals("S" + i, db.rows.get(i).getRegistrationNo());
+    }
+
+    @Test
+    void discardedStudentsMarksNeverReachTheTable() throws Exception {
+        FakeDb db = new FakeDb();
+        db.down = true;
+        AttendanceWal wal = open(db, 1 << 20);
+        mark(wal, "A", 0);
+        mark(wal, "B", 1);
+        mark(wal, "A", 2);
+        wal.discard("A");
+        mark(wal, "A", 3); // marked again after the delete: kept
+        db.down = false;
+        await(() -> db.rows.size() == 2, "flush");
+        wal.stop();
+        assertEquals(List.of("B", "A"), db.regNos());
+        assertEquals(MORNING.plusMinutes(3), db.rows.get(1).getTimestamp());
+    }
+
+    @Test
+    void discardSurvivesARestart() throws Exception {
+        FakeDb db = new FakeDb();
+        db.down = true;
+        AttendanceWal wal = open(db, 1 << 20);
+        mark(wal, "A", 0);
+        mark(wal, "B", 1);
+        wal.discard("A");
+        wal.stop();
+
+        db.down = false;
+        wal = open(db, 1 << 20);
+        assertEquals(1L, stat(wal, "recovered"));
+        await(() -> db.rows.size() == 1, "replay");
+        wal.stop();
+        assertEquals(List.of("B"), db.regNos());
+    }
+}
@@ -0,0 +1,38 @@
+package com.smartattendence.attendence.services;
+
+import com.smartattendence.attendence.entity.Attendance;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DailyAttendanceTrackerTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private static Attendance mark(String regNo, LocalDateTime at) {
+        Attendance a = new Attendance();
+        a.setRegistrationNo(regNo);
+        a.setTimestamp(at);
+        return a;
+    }
+
+    @Test
+    void firstMarkOfTheDayWinsAndRollingOverStartsAnEmptyList() {
+        DailyAttendanceTracker tracker = new DailyAttendanceTracker(7);
+        assertTrue(tracker.markIfFirst(mark("A", TODAY.atTime(9, 0))));
+        assertFalse(tracker.markIfFirst(mark("A", TODAY.atTime(9, 5))));
+        assertEquals(1, tracker.todaysAttendance().size());
+
+        // The first mark dated tomorrow rolls the tracker over; a late mark for today stays out of the new list
+        assertTrue(tracker.markIfFirst(mark("A", TODAY.plusDays(1).atTime(0, 1))));
+        assertTrue(tracker.markIfFirst(mark("B", TODAY.atTime(23, 59))));
+        assertEquals(List.of("A"), tracker.todaysAttendance().stream().map(Attendance::getRegistrationNo).toList());
+        assertTrue(tracker.isMarked("B", TODAY));
+        assertTrue(tracker.covers(TODAY.minusDays(5)));
+        assertFalse(tracker.covers(TODAY.minusDays(6)));
+    }
+}
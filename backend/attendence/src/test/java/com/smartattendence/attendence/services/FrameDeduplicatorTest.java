@@ -0,0 +1,127 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartattendence.attendence.recognition.PerceptualHash;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameDeduplicatorTest {
+
+    private static final int[] FACE_BOX = { 250, 120, 390, 300 };
+
+    /** Answers every frame with the next scripted result and keeps count. */
+    private static final class ScriptedGateway extends RecognitionGateway {
+        final List<RecognitionGateway.Recognition> script = new ArrayList<>();
+        int calls;
+
+        ScriptedGateway() {
+            super("http://127.0.0.1:1/recognize_batch", 1000, 1, 5, 1000, 1, 0, 1, 1, 1, new ObjectMapper());
+        }
+
+        @Override
+        public CompletableFuture<Recognition> recognize(String image) {
+            return CompletableFuture.completedFuture(script.get(calls++));
+        }
+    }
+
+    private static RecognitionGateway.Recognition seen(String... names) {
+        List<RecognitionGateway.Face> faces = new ArrayList<>();
+        for (String name : names) faces.add(new RecognitionGateway.Face(name, 0.9, FACE_BOX));
+        return new RecognitionGateway.Recognition(RecognitionGateway.Status.OK, faces, null, 120);
+    }
+
+    private static FrameDeduplicator deduplicator(ScriptedGateway gateway) {
+        FrameDeduplicator dedupe = new FrameDeduplicator(true, 4, 60_000, 4);
+        ReflectionTestUtils.setField(dedupe, "gateway", gateway);
+        return dedupe;
+    }
+
+    // The kiosk's backdrop, with no face (null) or one of two faces in FACE_BOX, alike but for hair and features
+    private static BufferedImage frame(Integer face) {
+        BufferedImage img = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        for (int x = 0; x < 640; x++) {
+            g.setColor(new Color(x * 255 / 640, 80, 255 - x * 255 / 640));
+            g.drawLine(x, 0, x, 479);
+        }
+        if (face != null) {
+            g.setColor(new Color(235, 200, 170));
+            g.fillOval(260, 130, 120, 160);
+            g.setColor(Color.DARK_GRAY);
+            if (face == 0) {
+                g.fillOval(282, 175, 24, 14);
+                g.fillOval(334, 175, 24, 14);
+                g.fillRect(300, 250, 40, 8);
+            } else {
+                g.fillRect(262, 130, 116, 22);
+                g.fillOval(290, 215, 20, 12);
+                g.fillOval(330, 215, 20, 12);
+                g.fillRect(310, 265, 20, 6);
+            }
+        }
+        g.dispose();
+        return img;
+    }
+
+    private static String jpeg(BufferedImage img) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "jpg", out);
+        return "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    private static PerceptualHash.Decoded decoded(String image) throws IOException {
+        return PerceptualHash.decode(Base64.getMimeDecoder().decode(image.substring(image.indexOf(',') + 1)), 320, 240);
+    }
+
+    @Test
+    void differentFaceOnTheSameBackdropIsRecognizedAgain() throws Exception {
+        String alice = jpeg(frame(0)), bob = jpeg(frame(1));
+        // The whole frames are close enough that the frame hash alone would hand Bob Alice's result
+        assertTrue(PerceptualHash.distance(decoded(alice).hash(), decoded(bob).hash()) <= 4);
+
+        ScriptedGateway gateway = new ScriptedGateway();
+        gateway.script.add(seen("Alice"));
+        gateway.script.add(seen("Bob"));
+        FrameDeduplicator dedupe = deduplicator(gateway);
+
+        assertEquals("Alice", dedupe.recognize("k1", alice).join().faces().get(0).name());
+        assertEquals("Alice", dedupe.recognize("k1", alice).join().faces().get(0).name());
+        assertEquals(1, gateway.calls);
+        assertEquals("Bob", dedupe.recognize("k1", bob).join().faces().get(0).name());
+        assertEquals(2, gateway.calls);
+        assertEquals(1L, dedupe.stats().get("faceMismatches"));
+    }
+
+    @Test
+    void emptyFramesAreReusedButFacesWithoutABoxAreNot() throws Exception {
+        String empty = jpeg(frame(null)), alice = jpeg(frame(0));
+        ScriptedGateway gateway = new ScriptedGateway();
+        gateway.script.add(new RecognitionGateway.Recognition(RecognitionGateway.Status.OK, List.of(), null, 80));
+        RecognitionGateway.Face unboxed = new RecognitionGateway.Face("Alice", 0.9, null);
+        gateway.script.add(new RecognitionGateway.Recognition(RecognitionGateway.Status.OK, List.of(unboxed), null, 120));
+        gateway.script.add(seen("Alice"));
+        FrameDeduplicator dedupe = deduplicator(gateway);
+
+        assertTrue(dedupe.recognize("k1", empty).join().faces().isEmpty());
+        assertTrue(dedupe.recognize("k1", empty).join().faces().isEmpty());
+        assertEquals(1, gateway.calls);
+
+        dedupe.recognize("k1", alice).join();
+        dedupe.recognize("k1", alice).join();
+        assertEquals(3, gateway.calls);
+        assertEquals(1L, dedupe.stats().get("skipped"));
+    }
+}
@@ -0,0 +1,181 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartattendence.attendence.recognition.Metric;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelTrainingSchedulerTest {
+
+    @TempDir
+    Path dir;
+
+    private ModelTrainingScheduler scheduler;
+    private TrainingManifest manifest;
+    private FaceMatchService matcher;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) scheduler.shutdown();
+    }
+
+    // train_model.py replaced by StubTrainer, run in dir, which also holds registered_images and the manifest
+    private ModelTrainingScheduler scheduler(long debounceMs, long maxDelayMs, long timeoutMs) throws Exception {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Path stub = Path.of(ModelTrainingSchedulerTest.class.getResource("/training/StubTrainer.java").toURI());
+        Files.createDirectories(dir.resolve("registered_images"));
+        manifest = new TrainingManifest(dir.resolve("registered_images").toString(),
+                dir.resolve("models/manifest.json").toString());
+        ReflectionTestUtils.setField(manifest, "objectMapper", new ObjectMapper());
+        manifest.load();
+        matcher = new FaceMatchService(2, Metric.L2, 0.6f, FaceMatchService.IndexType.EXACT, 16, 200, 64, "", "NONE", 64, 32, 1000);
+
+        scheduler = new ModelTrainingScheduler(java, stub.toString(), dir.toString(), debounceMs, maxDelayMs, timeoutMs);
+        ReflectionTestUtils.setField(scheduler, "manifest", manifest);
+        ReflectionTestUtils.setField(scheduler, "faceMatchService", matcher);
+        ReflectionTestUtils.setField(scheduler, "objectMapper", new ObjectMapper());
+        return scheduler;
+    }
+
+    private void behave(String properties) throws Exception {
+        Files.writeString(dir.resolve("stub-trainer.properties"), properties);
+    }
+
+    // Written and reported to the manifest, as registration does
+    private void folder(String name) throws Exception {
+        Path folder = Files.createDirectories(dir.resolve("registered_images").resolve(name));
+        Files.writeString(folder.resolve("img0.jpg"), name);
+        manifest.recordFolder(folder.toFile());
+    }
+
+    private List<String> runLog() throws Exception {
+        Path log = dir.resolve("runs.log");
+        return Files.exists(log) ? Files.readAllLines(log) : List.of();
+    }
+
+    private static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("timed out waiting for " + what);
+            Thread.sleep(20);
+        }
+    }
+
+    private void awaitIdleAfter(long runs) throws InterruptedException {
+        await(() -> {
+            Map<String, Object> s = scheduler.status();
+            return (Long) s.get("runs") >= runs && s.get("state") == ModelTrainingScheduler.State.IDLE;
+        }, "run " + runs + " to finish");
+    }
+
+    @Test
+    void fullRunDropsStudentsWhoseFolderIsGone() throws Exception {
+        scheduler(50, 5_000, 60_000);
+        // Enrolled by an earlier run; their folder was deleted before this full retrain
+        matcher.enroll("7", new float[][] { { 1, 0 } });
+        folder("Alice_0001");
+        behave("export={\"full\": true, \"students\": {\"Alice_0001\": [[0, 1]]}, \"removed\": []}\n");
+
+        scheduler.requestTraining("test");
+        awaitIdleAfter(1);
+        assertEquals(List.of("start full", "end"), runLog());
+        assertEquals(0, scheduler.status().get("lastExitCode"));
+        assertEquals(Set.of("1"), matcher.enrolledRegistrationNos());
+    }
+
+    @Test
+    void burstOfRequestsIsOneRun() throws Exception {
+        scheduler(300, 10_000, 60_000);
+        folder("Alice_0001");
+        behave("exit=0\n");
+
+        for (int i = 0; i < 5; i++) {
+            scheduler.requestTraining("burst " + i);
+            Thread.sleep(30);
+        }
+        assertEquals(ModelTrainingScheduler.State.PENDING, scheduler.status().get("state"));
+        awaitIdleAfter(1);
+        Thread.sleep(600); // well past another debounce window
+        assertEquals(List.of("start full", "end"), runLog());
+        assertEquals(1L, scheduler.status().get("runs"));
+        assertEquals(5L, scheduler.status().get("requests"));
+    }
+
+    @Test
+    void steadyTrickleStillTrainsWithinMaxDelay() throws Exception {
+        scheduler(400, 800, 60_000);
+        folder("Alice_0001");
+        behave("exit=0\n");
+
+        // Each request slides the 400 ms debounce, but the window may not outlast 800 ms from the first
+        long first = System.currentTimeMillis();
+        while (runLog().isEmpty()) {
+            assertTrue(System.currentTimeMillis() - first < 15_000, "the trickle kept postponing training");
+            scheduler.requestTraining("trickle");
+            Thread.sleep(100);
+        }
+        awaitIdleAfter(1);
+        assertEquals("start full", runLog().get(0));
+    }
+
+    @Test
+    void requestsDuringARunBecomeExactlyOneFollowUp() throws Exception {
+        scheduler(100, 5_000, 60_000);
+        folder("Alice_0001");
+        behave("sleepMs=1500\n");
+
+        scheduler.requestTraining("first");
+        await(() -> !uncheckedRunLog().isEmpty(), "the first run to start");
+        folder("Bob_0002");
+        for (int i = 0; i < 3; i++) scheduler.requestTraining("during the run " + i);
+        Map<String, Object> running = scheduler.status();
+        assertEquals(ModelTrainingScheduler.State.RUNNING, running.get("state"));
+        assertEquals(true, running.get("followUpQueued"));
+
+        awaitIdleAfter(2);
+        Thread.sleep(400);
+        // One after the other, never overlapping, and the follow-up only trains what changed
+        assertEquals(List.of("start full", "end", "start delta", "end"), runLog());
+        assertEquals(2L, scheduler.status().get("runs"));
+        assertEquals(false, scheduler.status().get("followUpQueued"));
+    }
+
+    @Test
+    void hungScriptIsKilledAndTheSchedulerRecovers() throws Exception {
+        scheduler(50, 5_000, 2_000);
+        folder("Alice_0001");
+        behave("sleepMs=60000\n");
+
+        scheduler.requestTraining("hangs");
+        awaitIdleAfter(1);
+        Map<String, Object> status = scheduler.status();
+        assertNull(status.get("lastExitCode"));
+        assertTrue(((String) status.get("lastError")).contains("killed"), (String) status.get("lastError"));
+        assertEquals(List.of("start full"), runLog());
+        // The failed run's delta is given back, so the next one is still a full retrain
+        behave("exit=0\n");
+        scheduler.requestTraining("after the hang");
+        awaitIdleAfter(2);
+        assertEquals(List.of("start full", "start full", "end"), runLog());
+        assertEquals(0, scheduler.status().get("lastExitCode"));
+    }
+
+    private List<String> uncheckedRunLog() {
+        try {
+            return runLog();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
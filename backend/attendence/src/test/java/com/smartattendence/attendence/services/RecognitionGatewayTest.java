@@ -0,0 +1,232 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartattendence.attendence.services.RecognitionGateway.Circuit;
+import com.smartattendence.attendence.services.RecognitionGateway.Lane;
+import com.smartattendence.attendence.services.RecognitionGateway.Recognition;
+import com.smartattendence.attendence.services.RecognitionGateway.Status;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecognitionGatewayTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private record Batch(int size, long arrivedAt) {}
+
+    /** /recognize_batch that fails while failing is set, and holds calls while a gate is up. */
+    private static final class StubRecognizer {
+        final HttpServer server;
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger frames = new AtomicInteger();
+        final List<Batch> batches = new CopyOnWriteArrayList<>();
+        volatile boolean failing;
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        StubRecognizer() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "stub-recognizer");
+                t.setDaemon(true);
+                return t;
+            }));
+            server.createContext("/recognize_batch", this::handle);
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/recognize_batch";
+        }
+
+        private void handle(HttpExchange ex) throws IOException {
+            JsonNode images = MAPPER.readTree(ex.getRequestBody()).path("images");
+            batches.add(new Batch(images.size(), System.nanoTime()));
+            calls.incrementAndGet();
+            frames.addAndGet(images.size());
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StringBuilder results = new StringBuilder();
+            for (int i = 0; i < images.size(); i++) {
+                if (i > 0) results.append(',');
+                results.append("{\"faces\":[{\"name\":\"S1\",\"confidence\":0.9}]}");
+            }
+            byte[] body = ("{\"results\":[" + results + "]}").getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(failing ? 500 : 200, body.length);
+            ex.getResponseBody().write(body);
+            ex.close();
+        }
+    }
+
+    private StubRecognizer stub;
+    private RecognitionGateway gateway;
+
+    @AfterEach
+    void tearDown() {
+        if (gateway != null) gateway.shutdown();
+        if (stub != null) {
+            stub.gate.countDown();
+            stub.server.stop(0);
+        }
+    }
+
+    private static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("timed out waiting for " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void breakerOpensThenLetsOneTrialThroughAndCloses() throws Exception {
+        stub = new StubRecognizer();
+        gateway = new RecognitionGateway(stub.url(), 5000, 4, 2, 300, 1, 0, 8, 1, 4, MAPPER);
+
+        stub.failing = true;
+        assertEquals(Status.ERROR, gateway.recognize("a").join().status());
+        assertEquals(Circuit.CLOSED, gateway.circuit());
+        assertEquals(Status.ERROR, gateway.recognize("b").join().status());
+        assertEquals(Circuit.OPEN, gateway.circuit());
+
+        // Open: failed fast, the recognizer never sees the frame
+        assertEquals(Status.CIRCUIT_OPEN, gateway.recognize("c").join().status());
+        assertEquals(2, stub.calls.get());
+
+        Thread.sleep(350);
+        stub.failing = false;
+        stub.gate = new CountDownLatch(1);
+        CompletableFuture<Recognition> trial = gateway.recognize("d");
+        assertEquals(Circuit.HALF_OPEN, gateway.circuit());
+        // Half-open: one trial at a time, from either lane
+        assertEquals(Status.CIRCUIT_OPEN, gateway.recognize("e").join().status());
+        assertEquals(Status.CIRCUIT_OPEN, gateway.recognize("f", Lane.INGESTION).join().status());
+
+        stub.gate.countDown();
+        assertEquals(Status.OK, trial.join().status());
+        assertEquals(Circuit.CLOSED, gateway.circuit());
+        assertEquals(Status.OK, gateway.recognize("g").join().status());
+    }
+
+    @Test
+    void failedTrialReopensTheBreaker() throws Exception {
+        stub = new StubRecognizer();
+        gateway = new RecognitionGateway(stub.url(), 5000, 4, 1, 200, 1, 0, 8, 1, 4, MAPPER);
+
+        stub.failing = true;
+        assertEquals(Status.ERROR, gateway.recognize("a").join().status());
+        assertEquals(Circuit.OPEN, gateway.circuit());
+        Thread.sleep(250);
+        assertEquals(Status.ERROR, gateway.recognize("b").join().status());
+        assertEquals(Circuit.OPEN, gateway.circuit());
+        assertEquals(Status.CIRCUIT_OPEN, gateway.recognize("c").join().status());
+    }
+
+    @Test
+    void fullQueueTurnsFramesAwayPerLane() throws Exception {
+        stub = new StubRecognizer();
+        stub.gate = new CountDownLatch(1);
+        // Kiosks: one call slot and room for one more frame. Ingestion: its own slot and queue of one.
+        gateway = new RecognitionGateway(stub.url(), 5000, 1, 5, 1000, 1, 0, 1, 1, 1, MAPPER);
+
+        CompletableFuture<Recognition> inFlight = gateway.recognize("k1");
+        await(() -> stub.calls.get() == 1, "first kiosk call");
+        CompletableFuture<Recognition> queued = gateway.recognize("k2");
+        assertEquals(Status.BUSY, gateway.recognize("k3").join().status());
+
+        // Kiosks have filled their lane; ingestion still gets its own slot
+        CompletableFuture<Recognition> ingest = gateway.recognize("v1", Lane.INGESTION);
+        await(() -> stub.calls.get() == 2, "ingestion call");
+        CompletableFuture<Recognition> ingestQueued = gateway.recognize("v2", Lane.INGESTION);
+        assertEquals(Status.BUSY, gateway.recognize("v3", Lane.INGESTION).join().status());
+
+        assertEquals(1, gateway.stats().get("inFlight"));
+        assertEquals(1, gateway.stats().get("queued"));
+
+        stub.gate.countDown();
+        for (CompletableFuture<Recognition> f : List.of(inFlight, queued, ingest, ingestQueued)) {
+            assertEquals(Status.OK, f.join().status());
+        }
+        assertEquals(4, stub.frames.get());
+        assertEquals(Circuit.CLOSED, gateway.circuit());
+    }
+
+    @Test
+    void loneFrameOnAnIdleRecognizerGoesOutAtOnce() throws Exception {
+        stub = new StubRecognizer();
+        gateway = new RecognitionGateway(stub.url(), 5000, 2, 5, 1000, 8, 2000, 64, 1, 4, MAPPER);
+
+        long sent = System.nanoTime();
+        assertEquals(Status.OK, gateway.recognize("a").join().status());
+        assertEquals(List.of(1), stub.batches.stream().map(Batch::size).toList());
+        long waitedMs = (stub.batches.get(0).arrivedAt() - sent) / 1_000_000;
+        assertTrue(waitedMs < 1000, "idle recognizer waited " + waitedMs + " ms for more frames");
+    }
+
+    @Test
+    void fullBatchGoesOutWithoutWaitingForTheDeadline() throws Exception {
+        stub = new StubRecognizer();
+        stub.gate = new CountDownLatch(1);
+        gateway = new RecognitionGateway(stub.url(), 10_000, 2, 5, 1000, 4, 5000, 64, 1, 4, MAPPER);
+
+        // The first frame takes a slot, so the recognizer is no longer idle and the rest queue up
+        List<CompletableFuture<Recognition>> results = new ArrayList<>();
+        results.add(gateway.recognize("first"));
+        await(() -> stub.calls.get() == 1, "first call");
+        long queuedAt = System.nanoTime();
+        for (int i = 0; i < 6; i++) results.add(gateway.recognize("f" + i));
+        await(() -> stub.calls.get() == 2, "full batch");
+        assertEquals(4, stub.batches.get(1).size());
+        assertTrue((stub.batches.get(1).arrivedAt() - queuedAt) / 1_000_000 < 2500, "full batch waited for the deadline");
+
+        stub.gate.countDown();
+        for (CompletableFuture<Recognition> r : results) assertEquals(Status.OK, r.join().status());
+        // The 2 frames left over go out once a slot frees up
+        assertEquals(List.of(1, 4, 2), stub.batches.stream().map(Batch::size).toList());
+        assertEquals(4L, ((Map<?, ?>) gateway.stats().get("batching")).get("largestBatch"));
+    }
+
+    @Test
+    void partialBatchGoesOutWhenItsOldestFrameHasWaitedMaxWait() throws Exception {
+        stub = new StubRecognizer();
+        stub.gate = new CountDownLatch(1);
+        long maxWaitMs = 300;
+        gateway = new RecognitionGateway(stub.url(), 10_000, 2, 5, 1000, 8, maxWaitMs, 64, 1, 4, MAPPER);
+
+        CompletableFuture<Recognition> first = gateway.recognize("first");
+        await(() -> stub.calls.get() == 1, "first call");
+        long queuedAt = System.nanoTime();
+        CompletableFuture<Recognition> a = gateway.recognize("a");
+        CompletableFuture<Recognition> b = gateway.recognize("b");
+        await(() -> stub.calls.get() == 2, "deadline flush");
+
+        long waitedMs = (stub.batches.get(1).arrivedAt() - queuedAt) / 1_000_000;
+        assertEquals(2, stub.batches.get(1).size());
+        assertTrue(waitedMs >= maxWaitMs - 20, "sent after only " + waitedMs + " ms");
+        assertTrue(waitedMs < maxWaitMs + 700, "sent " + waitedMs + " ms after queueing, max wait is " + maxWaitMs);
+
+        stub.gate.countDown();
+        for (CompletableFuture<Recognition> r : List.of(first, a, b)) assertEquals(Status.OK, r.join().status());
+    }
+}
@@ -0,0 +1,100 @@
+package com.smartattendence.attendence.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecognizerSidecarTest {
+
+    private static RecognizerSidecar stubSidecar(int port, boolean modelLoads, long startupTimeoutMs) throws Exception {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Path stub = Path.of(RecognizerSidecarTest.class.getResource("/sidecar/StubRecognizer.java").toURI());
+        return new RecognizerSidecar(true,
+                List.of(java, stub.toString(), String.valueOf(port), "300", String.valueOf(modelLoads)),
+                new File(".").getAbsolutePath(),
+                "http://127.0.0.1:" + port + "/health",
+                50, startupTimeoutMs, 100, 1_000);
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    @Test
+    void becomesReadyOnlyAfterHealthAnswersAndRestartsAfterCrash() throws Exception {
+        RecognizerSidecar sidecar = stubSidecar(freePort(), true, 30_000);
+        assertFalse(sidecar.isReady());
+        sidecar.start();
+        try {
+            assertTrue(sidecar.awaitReady(30_000), "stub never became ready");
+            Map<String, Object> status = sidecar.status();
+            assertEquals(1L, status.get("launches"));
+            assertTrue((Long) status.get("lastStartupMs") >= 300, "ready before the model finished loading");
+
+            long pid = (Long) status.get("pid");
+            ProcessHandle.of(pid).ifPresent(ProcessHandle::destroyForcibly);
+
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (System.currentTimeMillis() < deadline
+                    && ((Long) sidecar.status().get("restarts") < 1 || !sidecar.isReady())) {
+                Thread.sleep(50);
+            }
+            assertTrue(sidecar.isReady(), "not restarted after crash");
+            assertEquals(2L, sidecar.status().get("launches"));
+            assertNotEquals(pid, sidecar.status().get("pid"));
+        } finally {
+            sidecar.stop();
+        }
+        assertFalse(sidecar.isReady());
+        assertNull(sidecar.status().get("pid"));
+    }
+
+    @Test
+    void recognizerWhoseModelFailedToLoadIsNeverReady() throws Exception {
+        int port = freePort();
+        // Long enough to be probed many times once the stub is up, short enough to see a relaunch
+        RecognizerSidecar sidecar = stubSidecar(port, false, 8_000);
+        HttpClient http = HttpClient.newHttpClient();
+        HttpRequest health = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/health")).GET().build();
+        sidecar.start();
+        try {
+            // The stub is listening and answering, just not with 200
+            int status = -1;
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (System.currentTimeMillis() < deadline && status < 0) {
+                try {
+                    status = http.send(health, HttpResponse.BodyHandlers.discarding()).statusCode();
+                } catch (IOException e) {
+                    Thread.sleep(50);
+                }
+            }
+            assertEquals(503, status);
+            assertFalse(sidecar.isReady());
+
+            // Never ready, so it is killed at the startup timeout and launched again
+            deadline = System.currentTimeMillis() + 30_000;
+            while (System.currentTimeMillis() < deadline && (Long) sidecar.status().get("launches") < 2) {
+                assertFalse(sidecar.isReady(), "a recognizer without a model was marked ready");
+                Thread.sleep(50);
+            }
+            assertEquals(2L, sidecar.status().get("launches"));
+            assertEquals(-1L, sidecar.status().get("lastStartupMs"));
+            assertFalse(sidecar.awaitReady(500));
+        } finally {
+            sidecar.stop();
+        }
+    }
+}
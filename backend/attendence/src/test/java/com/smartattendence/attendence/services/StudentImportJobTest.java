@@ -0,0 +1,151 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartattendence.attendence.entity.Student;
+import com.smartattendence.attendence.services.StudentImportJob.RowError;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StudentImportJobTest {
+
+    private static final String HEADER = "name,email,registrationNo,password";
+
+    @TempDir
+    Path dir;
+
+    private final List<Student> inserted = new ArrayList<>();
+    private final List<String> trainingRequests = new ArrayList<>();
+    private StudentRegistrationService registration;
+    private ModelTrainingScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (registration != null) registration.shutdown();
+        if (scheduler != null) scheduler.shutdown();
+    }
+
+    private Path images() {
+        return dir.resolve("registered_images");
+    }
+
+    private StudentImportJob job(String csv, Map<String, byte[]> zipEntries, long maxImageBytes) throws IOException {
+        File csvFile = dir.resolve("students.csv").toFile();
+        Files.write(csvFile.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+        File archive = dir.resolve("images.zip").toFile();
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive.toPath()))) {
+            for (Map.Entry<String, byte[]> e : zipEntries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(e.getKey()));
+                zip.write(e.getValue());
+                zip.closeEntry();
+            }
+        }
+
+        StudentService students = new StudentService() {
+            @Override
+            public Set<String> findRegistered(Collection<String> regNos) {
+                return new HashSet<>();
+            }
+
+            @Override
+            public void insertBatch(List<Student> batch) {
+                inserted.addAll(batch);
+            }
+        };
+        registration = new StudentRegistrationService(images().toString(), 5_000_000, 50_000_000, 4);
+        TrainingManifest manifest = new TrainingManifest(images().toString(), dir.resolve("manifest.json").toString());
+        ReflectionTestUtils.setField(manifest, "objectMapper", new ObjectMapper());
+        scheduler = new ModelTrainingScheduler("python", "train_model.py", dir.toString(), 1000, 1000, 1000) {
+            @Override
+            public synchronized void requestTraining(String reason) {
+                trainingRequests.add(reason);
+            }
+        };
+        return new StudentImportJob("t1", csvFile, archive, images(), new StudentImportJob.Settings(2, maxImageBytes, 100),
+                students, registration, manifest, scheduler);
+    }
+
+    private static byte[] image(int size) {
+        return new byte[size];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<RowError> errors(StudentImportJob job) {
+        return (List<RowError>) job.status().get("errors");
+    }
+
+    @Test
+    void quotedFieldsAndLineNumbersFollowRfc4180() throws Exception {
+        String csv = "\uFEFF" + HEADER + "\r\n"
+                + "\"Smith, Anna\",anna@example.com,0001,pw\r\n"           // line 2: comma inside quotes
+                + "\"Bob \"\"The Builder\"\"\",bob@example.com,0002,pw\r\n" // line 3: doubled quotes
+                + "\"Carol\r\nsecond line\",carol@example.com,,pw\r\n"     // lines 4-5: no registrationNo
+                + "Dave,dave@example.com,0004,pw\r\n"                      // line 6: no images
+                + "\r\n";
+        StudentImportJob job = job(csv, Map.of(
+                "export/Smith,_Anna0001/front.jpg", image(100), // matched by folder name; leading path ignored
+                "0002/a.png", image(100),                       // by registration number
+                "unrelated/readme.jpg", image(100)), 1000);
+        job.run();
+
+        assertEquals(StudentImportJob.State.DONE, job.state());
+        assertEquals(4, job.status().get("rows"));
+        assertEquals(List.of("Smith, Anna", "Bob \"The Builder\""), inserted.stream().map(Student::getName).toList());
+        assertEquals(List.of(
+                new RowError(4, null, "name and registrationNo are required"),
+                new RowError(6, "0004", "no images for 0004 in the archive")), errors(job));
+        assertTrue(Files.exists(images().resolve("Smith,_Anna0001/img1.jpg")));
+        assertEquals(1, trainingRequests.size());
+    }
+
+    @Test
+    void lfOnlyFileWithoutTrailingNewlineAndDuplicates() throws Exception {
+        String csv = HEADER + "\n"
+                + "Ann,ann@example.com,0001,pw\n"
+                + "Ann Again,ann2@example.com,0001,pw\n"
+                + "Bob,bob@example.com,0002,pw";
+        StudentImportJob job = job(csv, Map.of("0001/a.jpg", image(10), "Bob0002/a.jpg", image(10)), 1000);
+        job.run();
+
+        assertEquals(List.of("Ann", "Bob"), inserted.stream().map(Student::getName).toList());
+        assertEquals(List.of(new RowError(3, "0001", "duplicate of line 2")), errors(job));
+    }
+
+    @Test
+    void oversizedImageFailsOnlyItsOwnRow() throws Exception {
+        String csv = HEADER + "\nAnn,ann@example.com,0001,pw\nBob,bob@example.com,0002,pw\n";
+        Map<String, byte[]> zip = new LinkedHashMap<>();
+        zip.put("Ann0001/small.jpg", image(500));
+        zip.put("Ann0001/huge.jpg", image(5000));
+        zip.put("Ann0001/after.jpg", image(500));
+        zip.put("Bob0002/a.jpg", image(500));
+        zip.put("Bob0002/b.jpg", image(1000));
+        StudentImportJob job = job(csv, zip, 1000);
+        job.run();
+
+        assertEquals(StudentImportJob.State.DONE, job.state());
+        assertEquals(List.of("Bob"), inserted.stream().map(Student::getName).toList());
+        assertEquals(List.of(new RowError(2, "0001", "huge.jpg exceeds 1000 bytes")), errors(job));
+        assertFalse(Files.exists(images().resolve("Ann0001")));
+        assertEquals(2, images().resolve("Bob0002").toFile().list().length);
+        assertEquals(List.of("import t1 (1 students)"), trainingRequests);
+    }
+}
@@ -0,0 +1,144 @@
+package com.smartattendence.attendence.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartattendence.attendence.services.TrainingManifest.Delta;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrainingManifestTest {
+
+    @TempDir
+    Path dir;
+
+    private Path images() {
+        return dir.resolve("registered_images");
+    }
+
+    // A fresh instance reads the manifest and reconciles it with the disk, as on backend startup
+    private TrainingManifest start() {
+        TrainingManifest manifest = new TrainingManifest(images().toString(), dir.resolve("manifest.json").toString());
+        ReflectionTestUtils.setField(manifest, "objectMapper", new ObjectMapper());
+        manifest.load();
+        return manifest;
+    }
+
+    private File folder(String name, String... contents) throws IOException {
+        Path folder = Files.createDirectories(images().resolve(name));
+        for (int i = 0; i < contents.length; i++) Files.writeString(folder.resolve("img" + i + ".jpg"), contents[i]);
+        return folder.toFile();
+    }
+
+    private File rename(String from, String to) throws IOException {
+        return Files.move(images().resolve(from), images().resolve(to)).toFile();
+    }
+
+    private static void assertDelta(Delta d, List<String> added, List<String> changed, List<String> removed,
+                                    List<List<String>> renamed) {
+        assertFalse(d.full());
+        assertEquals(added, d.added());
+        assertEquals(changed, d.changed());
+        assertEquals(removed, d.removed());
+        assertEquals(renamed, d.renamed());
+    }
+
+    @Test
+    void changesMadeWhileTheBackendWasDownArePickedUpOnStartup() throws IOException {
+        folder("A_1", "a0", "a1");
+        folder("B_2", "b0");
+        folder(".upload-tmp", "partial");
+        TrainingManifest manifest = start();
+        assertTrue(manifest.fullPending());
+        assertTrue(manifest.takeDelta().full());
+
+        // Offline: B's image replaced, A deleted, C added, and an image-less folder that is not a student yet
+        Files.writeString(images().resolve("B_2/img0.jpg"), "b0, retaken");
+        Files.writeString(images().resolve("A_1/notes.txt"), "ignored");
+        for (File f : images().resolve("A_1").toFile().listFiles()) Files.delete(f.toPath());
+        Files.delete(images().resolve("A_1"));
+        folder("C_3", "c0");
+        folder("D_4");
+
+        manifest = start();
+        assertDelta(manifest.takeDelta(), List.of("C_3"), List.of("B_2"), List.of("A_1"), List.of());
+        assertEquals(0, start().pendingCount());
+    }
+
+    @Test
+    void untouchedFilesAreNotReportedAsChanged() throws IOException {
+        folder("A_1", "a0");
+        start().takeDelta();
+        // Same content rewritten: new mtime, same hash
+        Files.writeString(images().resolve("A_1/img0.jpg"), "a0");
+        assertEquals(0, start().pendingCount());
+    }
+
+    @Test
+    void renameWithTheSameImagesIsARelabel() throws IOException {
+        folder("A_1", "a0", "a1");
+        folder("B_2", "b0");
+        TrainingManifest manifest = start();
+        manifest.takeDelta();
+
+        manifest.recordRenamed(images().resolve("A_1").toFile(), rename("A_1", "Alice_1"));
+        // Renamed twice before training: one relabel from the trained name
+        manifest.recordRenamed(images().resolve("Alice_1").toFile(), rename("Alice_1", "Alicia_1"));
+        assertDelta(manifest.takeDelta(), List.of(), List.of(), List.of(), List.of(List.of("A_1", "Alicia_1")));
+
+        // Renamed and given new images: the old encodings go, the folder is encoded from scratch
+        File renamed = rename("B_2", "Bob_2");
+        Files.writeString(renamed.toPath().resolve("img0.jpg"), "b0, retaken");
+        manifest.recordRenamed(images().resolve("B_2").toFile(), renamed);
+        assertDelta(manifest.takeDelta(), List.of("Bob_2"), List.of(), List.of("B_2"), List.of());
+    }
+
+    @Test
+    void relabelThenNewImagesBecomesDropAndAdd() throws IOException {
+        folder("A_1", "a0");
+        TrainingManifest manifest = start();
+        manifest.takeDelta();
+
+        manifest.recordRenamed(images().resolve("A_1").toFile(), rename("A_1", "Alice_1"));
+        manifest.recordFolder(folder("Alice_1", "a0, retaken"));
+        assertDelta(manifest.takeDelta(), List.of("Alice_1"), List.of(), List.of("A_1"), List.of());
+    }
+
+    @Test
+    void failedRunGetsItsDeltaBack() throws IOException {
+        folder("A_1", "a0");
+        folder("B_2", "b0");
+        TrainingManifest manifest = start();
+        manifest.takeDelta();
+
+        manifest.recordFolder(folder("C_3", "c0"));
+        Files.writeString(images().resolve("A_1/img0.jpg"), "a0, retaken");
+        manifest.recordFolder(images().resolve("A_1").toFile());
+        Files.delete(images().resolve("B_2/img0.jpg"));
+        manifest.recordRemoved(images().resolve("B_2").toFile());
+        Delta failed = manifest.takeDelta();
+        assertDelta(failed, List.of("C_3"), List.of("A_1"), List.of("B_2"), List.of());
+        assertEquals(0, manifest.pendingCount());
+
+        // While the run was failing, C was deleted again: it must not come back as an add, and whatever
+        // the failed run managed to encode for it is dropped
+        Files.delete(images().resolve("C_3/img0.jpg"));
+        manifest.recordRemoved(images().resolve("C_3").toFile());
+        manifest.restore(failed);
+        assertDelta(manifest.takeDelta(), List.of(), List.of("A_1"), List.of("C_3", "B_2"), List.of());
+
+        // A failed relabel may have been overtaken by later renames, so it comes back as a full retrain
+        manifest.recordRenamed(images().resolve("A_1").toFile(), rename("A_1", "Alice_1"));
+        manifest.restore(manifest.takeDelta());
+        assertTrue(manifest.fullPending());
+        // And it survives a restart
+        assertTrue(start().fullPending());
+    }
+}
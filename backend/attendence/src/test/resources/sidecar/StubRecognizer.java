@@ -0,0 +1,30 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Stand-in for attendance_api.py in tests: "loads a model" for the given
+ * delay, then answers GET /health with 200. With modelLoads=false the load
+ * fails but the server still starts, answering 503 as attendance_api.py does.
+ * Run as a single-file program:
+ * {@code java StubRecognizer.java <port> <loadDelayMs> [modelLoads]}.
+ */
+public class StubRecognizer {
+    public static void main(String[] args) throws Exception {
+        int port = Integer.parseInt(args[0]);
+        long loadDelayMs = Long.parseLong(args[1]);
+        boolean modelLoaded = args.length < 3 || Boolean.parseBoolean(args[2]);
+        System.out.println("loading model");
+        Thread.sleep(loadDelayMs);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/health", ex -> {
+            byte[] body = ("{\"ready\": " + modelLoaded + "}").getBytes();
+            ex.sendResponseHeaders(modelLoaded ? 200 : 503, body.length);
+            ex.getResponseBody().write(body);
+            ex.close();
+        });
+        server.start();
+        System.out.println(modelLoaded ? "model loaded, serving on " + port : "model failed to load, serving on " + port);
+    }
+}
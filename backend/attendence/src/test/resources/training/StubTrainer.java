@@ -0,0 +1,42 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/**
+ * Stand-in for train_model.py in tests. Takes the same arguments
+ * ({@code --export-embeddings <file> [--delta <file>]}) and behaves as
+ * stub-trainer.properties in the working directory says, read afresh on
+ * every run: sleepMs (how long "training" takes), exit (the exit code) and
+ * export (JSON to write as the exported embeddings). Appends "start" and
+ * "end" lines to runs.log. Run as a single-file program:
+ * {@code java StubTrainer.java --export-embeddings <file> ...}.
+ */
+public class StubTrainer {
+    public static void main(String[] args) throws Exception {
+        Properties behaviour = new Properties();
+        Path config = Path.of("stub-trainer.properties");
+        if (Files.exists(config)) {
+            try (var in = Files.newInputStream(config)) {
+                behaviour.load(in);
+            }
+        }
+        String exportTo = null, delta = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--export-embeddings")) exportTo = args[i + 1];
+            if (args[i].equals("--delta")) delta = args[i + 1];
+        }
+        log("start " + (delta == null ? "full" : "delta"));
+        System.out.println("training");
+        Thread.sleep(Long.parseLong(behaviour.getProperty("sleepMs", "0")));
+
+        String export = behaviour.getProperty("export");
+        if (export != null && exportTo != null) Files.writeString(Path.of(exportTo), export);
+        log("end");
+        System.exit(Integer.parseInt(behaviour.getProperty("exit", "0")));
+    }
+
+    private static void log(String line) throws Exception {
+        Files.writeString(Path.of("runs.log"), line + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}